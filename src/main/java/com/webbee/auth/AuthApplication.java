@@ -1,9 +1,14 @@
 package com.webbee.auth;
 
+import com.webbee.auth.config.AuthRuntimeHints;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
+@ImportRuntimeHints(AuthRuntimeHints.class)
 public class AuthApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,23 @@
+package com.webbee.auth.audit.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Instant;
+
+/**
+ * Событие аудита, ожидающее записи в таблицу audit_events.
+ */
+@Getter
+@Builder
+@AllArgsConstructor
+public class AuditEvent {
+
+    private final Instant createdAt;
+    private final AuditEventType type;
+    private final String username;
+    private final String actor;
+    private final String details;
+
+}
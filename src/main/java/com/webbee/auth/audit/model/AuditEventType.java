@@ -0,0 +1,13 @@
+package com.webbee.auth.audit.model;
+
+/**
+ * Типы событий аудита.
+ */
+public enum AuditEventType {
+
+    LOGIN_SUCCESS,
+    LOGIN_FAILURE,
+    ROLES_CHANGED,
+    USERS_IMPORTED
+
+}
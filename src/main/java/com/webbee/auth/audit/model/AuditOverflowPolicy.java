@@ -0,0 +1,18 @@
+package com.webbee.auth.audit.model;
+
+/**
+ * Поведение при заполненном буфере событий аудита.
+ */
+public enum AuditOverflowPolicy {
+
+    /**
+     * Событие отбрасывается сразу, поток запроса не ждет
+     */
+    DROP,
+
+    /**
+     * Поток запроса ждет освобождения места не дольше заданного таймаута, затем событие отбрасывается
+     */
+    BLOCK
+
+}
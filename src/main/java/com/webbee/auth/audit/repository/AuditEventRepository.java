@@ -0,0 +1,64 @@
+package com.webbee.auth.audit.repository;
+
+import com.webbee.auth.audit.model.AuditEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Репозиторий для записи событий аудита в секционированную таблицу audit_events.
+ * Работает через JDBC напрямую: события только добавляются и никогда не читаются сервисом.
+ */
+@Repository
+@RequiredArgsConstructor
+public class AuditEventRepository {
+
+    private static final String INSERT_PREFIX = "INSERT INTO audit_events (created_at, event_type, username, actor, details) VALUES ";
+    private static final String ROW_PLACEHOLDER = "(?, ?, ?, ?, ?)";
+    private static final int COLUMNS = 5;
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Вставляет события одним многострочным INSERT
+     */
+    public void insertBatch(List<AuditEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX.length() + events.size() * (ROW_PLACEHOLDER.length() + 2));
+        sql.append(INSERT_PREFIX);
+        Object[] args = new Object[events.size() * COLUMNS];
+        for (int i = 0; i < events.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(ROW_PLACEHOLDER);
+            AuditEvent event = events.get(i);
+            int offset = i * COLUMNS;
+            args[offset] = Timestamp.from(event.getCreatedAt());
+            args[offset + 1] = event.getType().name();
+            args[offset + 2] = event.getUsername();
+            args[offset + 3] = event.getActor();
+            args[offset + 4] = event.getDetails();
+        }
+        jdbcTemplate.update(sql.toString(), args);
+    }
+
+    /**
+     * Создает месячную секцию, если её еще нет
+     */
+    public void createMonthlyPartition(YearMonth month) {
+        String partition = "audit_events_" + month.format(PARTITION_SUFFIX);
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partition
+                + " PARTITION OF audit_events FOR VALUES FROM ('" + month.atDay(1)
+                + "') TO ('" + month.plusMonths(1).atDay(1) + "')");
+    }
+
+}
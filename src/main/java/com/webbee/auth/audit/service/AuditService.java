@@ -0,0 +1,137 @@
+package com.webbee.auth.audit.service;
+
+import com.webbee.auth.audit.model.AuditEvent;
+import com.webbee.auth.audit.model.AuditEventType;
+import com.webbee.auth.audit.model.AuditOverflowPolicy;
+import com.webbee.auth.utils.BoundedRingBuffer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Сервис публикации событий аудита.
+ * Событие помещается в ограниченный неблокирующий буфер и записывается в базу
+ * фоновым {@link AuditWriter}, поэтому публикация не добавляет запросов к БД в поток запроса.
+ * При заполненном буфере событие отбрасывается сразу или после ожидания, в зависимости от политики.
+ */
+@Service
+public class AuditService {
+
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final boolean enabled;
+    private final AuditOverflowPolicy overflowPolicy;
+    private final long blockTimeoutNanos;
+    private final BoundedRingBuffer<AuditEvent> buffer;
+    private final Counter publishedCounter;
+    private final Counter droppedCounter;
+
+    public AuditService(@Value("${audit.enabled:true}") boolean enabled,
+                        @Value("${audit.buffer-capacity:8192}") int bufferCapacity,
+                        @Value("${audit.overflow-policy:DROP}") AuditOverflowPolicy overflowPolicy,
+                        @Value("${audit.block-timeout:50ms}") Duration blockTimeout,
+                        MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutNanos = blockTimeout.toNanos();
+        this.buffer = new BoundedRingBuffer<>(bufferCapacity);
+        this.publishedCounter = meterRegistry.counter("auth.audit.events.published");
+        this.droppedCounter = meterRegistry.counter("auth.audit.events.dropped");
+        Gauge.builder("auth.audit.buffer.size", buffer, BoundedRingBuffer::size)
+                .description("События аудита, ожидающие записи")
+                .register(meterRegistry);
+        Gauge.builder("auth.audit.buffer.lag", this, AuditService::oldestPendingAgeMillis)
+                .description("Возраст самого старого незаписанного события, мс")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Публикует событие аудита. Инициатор определяется по текущему контексту безопасности
+     */
+    public void publish(AuditEventType type, String username, String details) {
+        publish(type, username, currentActor(), details);
+    }
+
+    /**
+     * Публикует событие после фиксации текущей транзакции, чтобы откаченные изменения не попадали в аудит.
+     * Вне транзакции событие публикуется сразу
+     */
+    public void publishAfterCommit(AuditEventType type, String username, String details) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            publish(type, username, details);
+            return;
+        }
+        String actor = currentActor();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                publish(type, username, actor, details);
+            }
+        });
+    }
+
+    /**
+     * Извлекает из буфера не более maxEvents событий для записи
+     */
+    int drainTo(Collection<AuditEvent> target, int maxEvents) {
+        return buffer.drainTo(target, maxEvents);
+    }
+
+    boolean hasPending() {
+        return buffer.size() > 0;
+    }
+
+    private void publish(AuditEventType type, String username, String actor, String details) {
+        if (!enabled) {
+            return;
+        }
+        AuditEvent event = AuditEvent.builder()
+                .createdAt(Instant.now())
+                .type(type)
+                .username(username)
+                .actor(actor)
+                .details(details)
+                .build();
+
+        if (buffer.offer(event) || overflowPolicy == AuditOverflowPolicy.BLOCK && offerWithTimeout(event)) {
+            publishedCounter.increment();
+        } else {
+            droppedCounter.increment();
+        }
+    }
+
+    private boolean offerWithTimeout(AuditEvent event) {
+        long deadline = System.nanoTime() + blockTimeoutNanos;
+        while (System.nanoTime() < deadline) {
+            LockSupport.parkNanos(BLOCK_PARK_NANOS);
+            if (buffer.offer(event)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private double oldestPendingAgeMillis() {
+        AuditEvent oldest = buffer.peek();
+        return oldest == null ? 0 : Duration.between(oldest.getCreatedAt(), Instant.now()).toMillis();
+    }
+
+    private String currentActor() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication == null ? null : authentication.getName();
+    }
+
+}
@@ -0,0 +1,141 @@
+package com.webbee.auth.audit.service;
+
+import com.webbee.auth.audit.model.AuditEvent;
+import com.webbee.auth.audit.repository.AuditEventRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Фоновый писатель событий аудита.
+ * Отдельный поток забирает события из буфера {@link AuditService} пачками
+ * и записывает их многострочными INSERT. Неудачная пачка повторяется
+ * ограниченное число раз, после чего события считаются потерянными.
+ * При остановке приложения буфер дописывается до конца.
+ */
+@Slf4j
+@Component
+public class AuditWriter implements SmartLifecycle {
+
+    private final AuditService auditService;
+    private final AuditEventRepository auditEventRepository;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final int maxRetries;
+    private final Counter writtenCounter;
+    private final Counter failedCounter;
+    private final Timer lagTimer;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    public AuditWriter(AuditService auditService,
+                       AuditEventRepository auditEventRepository,
+                       @Value("${audit.batch-size:500}") int batchSize,
+                       @Value("${audit.flush-interval:200ms}") Duration flushInterval,
+                       @Value("${audit.max-retries:3}") int maxRetries,
+                       MeterRegistry meterRegistry) {
+        this.auditService = auditService;
+        this.auditEventRepository = auditEventRepository;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.maxRetries = maxRetries;
+        this.writtenCounter = meterRegistry.counter("auth.audit.events.written");
+        this.failedCounter = meterRegistry.counter("auth.audit.events.failed");
+        this.lagTimer = Timer.builder("auth.audit.write.lag")
+                .description("Время от публикации события до его записи в базу")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void start() {
+        ensurePartitions();
+        running = true;
+        worker = Thread.ofPlatform()
+                .name("audit-writer")
+                .daemon(true)
+                .start(this::run);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        LockSupport.unpark(worker);
+        try {
+            worker.join(Duration.ofSeconds(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Заранее создает секции текущего и следующего месяца, чтобы события не попадали в секцию по умолчанию
+     */
+    @Scheduled(cron = "${audit.partition-cron:0 0 3 * * *}")
+    public void ensurePartitions() {
+        YearMonth current = YearMonth.now(ZoneOffset.UTC);
+        try {
+            auditEventRepository.createMonthlyPartition(current);
+            auditEventRepository.createMonthlyPartition(current.plusMonths(1));
+        } catch (RuntimeException e) {
+            log.warn("Failed to create audit partitions for {}", current, e);
+        }
+    }
+
+    private void run() {
+        List<AuditEvent> batch = new ArrayList<>(batchSize);
+        int attempts = 0;
+        while (running || auditService.hasPending() || !batch.isEmpty()) {
+            if (batch.isEmpty()) {
+                auditService.drainTo(batch, batchSize);
+            }
+            if (batch.isEmpty()) {
+                LockSupport.parkNanos(flushIntervalNanos);
+                continue;
+            }
+            try {
+                auditEventRepository.insertBatch(batch);
+                recordWritten(batch);
+                batch.clear();
+                attempts = 0;
+            } catch (RuntimeException e) {
+                if (++attempts > maxRetries || !running) {
+                    log.error("Dropping {} audit events after {} failed attempts", batch.size(), attempts, e);
+                    failedCounter.increment(batch.size());
+                    batch.clear();
+                    attempts = 0;
+                } else {
+                    log.warn("Failed to write {} audit events, attempt {}", batch.size(), attempts, e);
+                    LockSupport.parkNanos(flushIntervalNanos);
+                }
+            }
+        }
+    }
+
+    private void recordWritten(List<AuditEvent> batch) {
+        writtenCounter.increment(batch.size());
+        Instant now = Instant.now();
+        for (AuditEvent event : batch) {
+            lagTimer.record(Duration.between(event.getCreatedAt(), now));
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.webbee.auth.config;
+
+import com.webbee.auth.dto.AuthStatusDto;
+import com.webbee.auth.entity.Role;
+import com.webbee.auth.entity.User;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.util.ClassUtils;
+
+import java.util.List;
+
+/**
+ * Метаданные достижимости для сборки native-image.
+ * Описывает то, что GraalVM не может вывести статическим анализом:
+ * DTO, которые Jackson разбирает через рефлексию, сущности Hibernate,
+ * реализации JJWT, создаваемые по имени класса, и ресурсы Liquibase.
+ * DTO регистрируются сканированием пакета {@link #DTO_PACKAGE} при AOT-обработке, поэтому новые DTO не нужно
+ * добавлять сюда вручную.
+ */
+public class AuthRuntimeHints implements RuntimeHintsRegistrar {
+
+    static final String DTO_PACKAGE = AuthStatusDto.class.getPackageName();
+
+    private static final List<Class<?>> ENTITY_TYPES = List.of(User.class, Role.class);
+
+    /**
+     * Классы jjwt-impl и jjwt-jackson, которые jjwt-api загружает по имени или через ServiceLoader
+     */
+    private static final List<String> JJWT_TYPES = List.of(
+            "io.jsonwebtoken.impl.DefaultClaimsBuilder",
+            "io.jsonwebtoken.impl.DefaultJwtBuilder",
+            "io.jsonwebtoken.impl.DefaultJwtHeaderBuilder",
+            "io.jsonwebtoken.impl.DefaultJwtParserBuilder",
+            "io.jsonwebtoken.impl.io.StandardCompressionAlgorithms",
+            "io.jsonwebtoken.impl.security.KeysBridge",
+            "io.jsonwebtoken.impl.security.StandardCurves",
+            "io.jsonwebtoken.impl.security.StandardEncryptionAlgorithms",
+            "io.jsonwebtoken.impl.security.StandardHashAlgorithms",
+            "io.jsonwebtoken.impl.security.StandardKeyAlgorithms",
+            "io.jsonwebtoken.impl.security.StandardKeyOperations",
+            "io.jsonwebtoken.impl.security.StandardSecureDigestAlgorithms",
+            "io.jsonwebtoken.jackson.io.JacksonSerializer",
+            "io.jsonwebtoken.jackson.io.JacksonDeserializer"
+    );
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(), dtoTypes(classLoader));
+
+        ENTITY_TYPES.forEach(type -> hints.reflection().registerType(type,
+                MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                MemberCategory.INVOKE_DECLARED_METHODS,
+                MemberCategory.DECLARED_FIELDS));
+
+        JJWT_TYPES.forEach(type -> hints.reflection().registerType(TypeReference.of(type),
+                MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                MemberCategory.INVOKE_PUBLIC_METHODS));
+
+        hints.resources()
+                .registerPattern("db/changelog/*.yaml")
+                .registerPattern("db/changelog/*.csv");
+    }
+
+    /**
+     * Все классы верхнего уровня пакета DTO; вложенные построители Lombok регистрирует {@link BindingReflectionHintsRegistrar}
+     */
+    private static Class<?>[] dtoTypes(ClassLoader classLoader) {
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+        scanner.setResourceLoader(new DefaultResourceLoader(classLoader));
+        scanner.addIncludeFilter((metadataReader, metadataReaderFactory) -> !metadataReader.getClassMetadata().hasEnclosingClass());
+        return scanner.findCandidateComponents(DTO_PACKAGE).stream()
+                .map(BeanDefinition::getBeanClassName)
+                .sorted()
+                .map(name -> ClassUtils.resolveClassName(name, classLoader))
+                .toArray(Class<?>[]::new);
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.webbee.auth.config;
+
+import com.webbee.auth.limiter.ConcurrencyLimitFilter;
+import com.webbee.auth.limiter.ConcurrencyLimiter;
+import com.webbee.auth.limiter.GradientLimit;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpMethod;
+import org.springframework.security.web.servlet.util.matcher.PathPatternRequestMatcher;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Конфигурация адаптивного ограничения параллельных запросов.
+ * Дорогие эндпоинты AuthController (вход и регистрация с BCrypt, выход с записью в базу)
+ * и дешевые чтения (GET /user-roles/{login}, POST /user-roles/batch, GET /auth/availability)
+ * ограничиваются раздельно, чтобы перегрузка входа не отнимала место у проверок ролей и наоборот.
+ * Фильтр стоит перед цепочкой Spring Security, отклоненный запрос не разбирает токен.
+ */
+@Configuration
+@ConditionalOnProperty(name = "concurrency-limit.enabled", havingValue = "true", matchIfMissing = true)
+public class ConcurrencyLimitConfig {
+
+    @Bean
+    public ConcurrencyLimiter authConcurrencyLimiter(@Value("${concurrency-limit.auth.initial:20}") int initial,
+                                                     @Value("${concurrency-limit.auth.min:4}") int min,
+                                                     @Value("${concurrency-limit.auth.max:200}") int max,
+                                                     @Value("${concurrency-limit.window:1s}") Duration window,
+                                                     MeterRegistry meterRegistry) {
+        return new ConcurrencyLimiter("auth", new GradientLimit(initial, min, max, window.toNanos()), meterRegistry);
+    }
+
+    @Bean
+    public ConcurrencyLimiter rolesConcurrencyLimiter(@Value("${concurrency-limit.roles.initial:100}") int initial,
+                                                      @Value("${concurrency-limit.roles.min:10}") int min,
+                                                      @Value("${concurrency-limit.roles.max:1000}") int max,
+                                                      @Value("${concurrency-limit.window:1s}") Duration window,
+                                                      MeterRegistry meterRegistry) {
+        return new ConcurrencyLimiter("roles", new GradientLimit(initial, min, max, window.toNanos()), meterRegistry);
+    }
+
+    @Bean
+    public FilterRegistrationBean<ConcurrencyLimitFilter> concurrencyLimitFilter(
+            @Qualifier("authConcurrencyLimiter") ConcurrencyLimiter authLimiter,
+            @Qualifier("rolesConcurrencyLimiter") ConcurrencyLimiter rolesLimiter) {
+        PathPatternRequestMatcher.Builder paths = PathPatternRequestMatcher.withDefaults();
+        FilterRegistrationBean<ConcurrencyLimitFilter> registration = new FilterRegistrationBean<>(new ConcurrencyLimitFilter(List.of(
+                new ConcurrencyLimitFilter.Route(paths.matcher(HttpMethod.POST, "/auth/signin"), authLimiter),
+                new ConcurrencyLimitFilter.Route(paths.matcher(HttpMethod.PUT, "/auth/signup"), authLimiter),
+                new ConcurrencyLimitFilter.Route(paths.matcher(HttpMethod.POST, "/auth/signout"), authLimiter),
+                new ConcurrencyLimitFilter.Route(paths.matcher(HttpMethod.GET, "/auth/availability"), rolesLimiter),
+                new ConcurrencyLimitFilter.Route(paths.matcher(HttpMethod.GET, "/user-roles/{login}"), rolesLimiter),
+                new ConcurrencyLimitFilter.Route(paths.matcher(HttpMethod.POST, "/user-roles/batch"), rolesLimiter)
+        )));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 100);
+        return registration;
+    }
+
+}
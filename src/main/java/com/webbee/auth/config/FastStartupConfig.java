@@ -0,0 +1,24 @@
+package com.webbee.auth.config;
+
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Конфигурация быстрого старта.
+ * При включенной ленивой инициализации (профиль fast-start) откладывает создание
+ * только бинов springdoc/OpenAPI до первого обращения к документации,
+ * остальные бины создаются при старте как обычно.
+ */
+@Configuration
+public class FastStartupConfig {
+
+    private static final String SPRINGDOC_PACKAGE = "org.springdoc.";
+
+    @Bean
+    public LazyInitializationExcludeFilter eagerExceptSpringdoc() {
+        return (beanName, beanDefinition, beanType) ->
+                beanType == null || !beanType.getName().startsWith(SPRINGDOC_PACKAGE);
+    }
+
+}
@@ -1,7 +1,9 @@
 package com.webbee.auth.config;
 
 import com.webbee.auth.security.filter.JwtFilter;
+import com.webbee.auth.security.service.CompiledRoleHierarchy;
 import com.webbee.auth.security.service.UserDetailsServiceImpl;
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -18,10 +20,18 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.HttpStatusEntryPoint;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.servlet.util.matcher.PathPatternRequestMatcher;
+import org.springframework.security.web.util.matcher.AndRequestMatcher;
+import org.springframework.security.web.util.matcher.DispatcherTypeRequestMatcher;
+import org.springframework.security.web.util.matcher.OrRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+
+import java.util.Arrays;
 
 /**
  * Конфигурационный класс безопасности Spring Security для аутентификации и авторизации.
- * Конфигурация использует подход с JWT токенами для аутентификации
+ * Конфигурация использует подход с JWT токенами для аутентификации.
+ * Проверки ролей выполняются по битовой маске из {@link CompiledRoleHierarchy} с учетом иерархии ролей
  */
 @Configuration
 @EnableWebSecurity
@@ -31,15 +41,23 @@ public class SecurityConfig {
 
     private final UserDetailsServiceImpl userDetailsServiceImpl;
     private final JwtFilter jwtFilter;
+    private final CompiledRoleHierarchy roleHierarchy;
 
     @Bean
     public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
         return http
                 .authorizeHttpRequests(request ->
                         request
-                                .requestMatchers("/auth/signup", "/auth/signin").permitAll()
-                                .requestMatchers("/user-roles/save").hasRole("ADMIN")
+                                .requestMatchers(asyncDispatchOf("/role-changes/stream", "/users", "/users/by-role/**", "/users/export")).permitAll()
+                                .requestMatchers("/auth/signup", "/auth/signin", "/auth/availability").permitAll()
+                                .requestMatchers("/user-roles/save").access(roleHierarchy.requireRole("ADMIN"))
+                                .requestMatchers("/user-roles/batch").authenticated()
+                                .requestMatchers("/role-changes/**").access(roleHierarchy.requireRole("ADMIN"))
+                                .requestMatchers("/users/**").access(roleHierarchy.requireRole("ADMIN"))
                                 .requestMatchers("/user-roles/{login}").authenticated()
+                                .requestMatchers("/auth/signout").authenticated()
+                                .requestMatchers("/actuator/health/**").permitAll()
+                                .requestMatchers("/actuator/**").access(roleHierarchy.requireRole("ADMIN"))
                                 .anyRequest().permitAll())
 
                 .csrf(AbstractHttpConfigurer::disable)
@@ -53,6 +71,16 @@ public class SecurityConfig {
                 .build();
     }
 
+    /**
+     * Повторная ASYNC-диспетчеризация потоковых ответов перечисленных эндпоинтов. Доступ к ним проверен при исходном запросе,
+     * а JWT в повторной диспетчеризации не разбирается, поэтому она пропускается только для этих путей
+     */
+    private static RequestMatcher asyncDispatchOf(String... patterns) {
+        PathPatternRequestMatcher.Builder paths = PathPatternRequestMatcher.withDefaults();
+        return new AndRequestMatcher(new DispatcherTypeRequestMatcher(DispatcherType.ASYNC),
+                new OrRequestMatcher(Arrays.stream(patterns).map(paths::matcher).toArray(RequestMatcher[]::new)));
+    }
+
     @Bean
     public BCryptPasswordEncoder passwordEncoder() {
         return new BCryptPasswordEncoder(10);
@@ -3,22 +3,27 @@ package com.webbee.auth.controller;
 import com.webbee.auth.dto.AuthStatusDto;
 import com.webbee.auth.dto.LoginRequest;
 import com.webbee.auth.dto.RegistrationDto;
+import com.webbee.auth.dto.UsernameAvailabilityDto;
 import com.webbee.auth.service.AuthService;
+import com.webbee.auth.utils.JwtUtils;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
@@ -73,4 +78,36 @@ public class AuthController {
         return new ResponseEntity<>(response, HttpStatus.FORBIDDEN);
     }
 
+    @PostMapping("/signout")
+    @Operation(
+            summary = "Завершение сессии",
+            description = "Отзывает непрозрачный токен сессии из заголовка Authorization. " +
+                    "Действует только в режиме jwt.token-mode=opaque, JWT отозвать нельзя."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Сессия завершена",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = AuthStatusDto.class))),
+            @ApiResponse(responseCode = "400", description = "Токен не является токеном сессии",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = AuthStatusDto.class))),
+            @ApiResponse(responseCode = "401", description = "Сессия уже завершена или истекла")
+    })
+    public ResponseEntity<AuthStatusDto> signOut(HttpServletRequest request) {
+        AuthStatusDto response = authService.logout(JwtUtils.parseToken(request));
+        return new ResponseEntity<>(response, HttpStatusCode.valueOf(response.getCode()));
+    }
+
+    @GetMapping("/availability")
+    @Operation(
+            summary = "Проверка доступности логина",
+            description = "Проверяет, свободен ли логин для регистрации. " +
+                    "Предназначен для форм регистрации: для заведомо свободных логинов ответ формируется без обращения к базе данных."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Проверка выполнена",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = UsernameAvailabilityDto.class)))
+    })
+    public ResponseEntity<UsernameAvailabilityDto> checkAvailability(@RequestParam String username) {
+        return new ResponseEntity<>(authService.checkUsernameAvailability(username), HttpStatus.OK);
+    }
+
 }
@@ -0,0 +1,95 @@
+package com.webbee.auth.controller;
+
+import com.webbee.auth.dto.RoleChangeDto;
+import com.webbee.auth.dto.RoleChangePageDto;
+import com.webbee.auth.service.RoleChangeFeed;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@RestController
+@RequestMapping("/role-changes")
+@RequiredArgsConstructor
+@Tag(name = "Role Change Feed", description = "API журнала изменений ролей")
+public class RoleChangeController {
+
+    private final RoleChangeFeed roleChangeFeed;
+
+    @GetMapping
+    @Operation(
+            summary = "Изменения ролей после версии",
+            description = "Возвращает изменения ролей с версией больше since в порядке версий. " +
+                    "Каждая запись содержит полный набор ролей пользователя после изменения. " +
+                    "Следующая страница запрашивается с since = nextVersion, пока hasMore = true. Доступно администраторам."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Страница изменений",
+                    content = @Content(schema = @Schema(implementation = RoleChangePageDto.class))
+            ),
+            @ApiResponse(responseCode = "400", description = "Отрицательная версия"),
+            @ApiResponse(responseCode = "401", description = "Не авторизован"),
+            @ApiResponse(responseCode = "403", description = "Недостаточно прав")
+    })
+    public ResponseEntity<RoleChangePageDto> getChanges(@RequestParam(defaultValue = "0") long since,
+                                                        @RequestParam(defaultValue = "100") int limit) {
+        return ResponseEntity.ok(roleChangeFeed.changesSince(requireVersion(since), limit));
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(
+            summary = "Подписка на изменения ролей",
+            description = "Поток Server-Sent Events с событиями role-change, идентификатор события равен версии. " +
+                    "Поток начинается после версии since или заголовка Last-Event-ID, " +
+                    "а без них - с текущего конца журнала. Доступно администраторам."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Поток изменений",
+                    content = @Content(mediaType = MediaType.TEXT_EVENT_STREAM_VALUE, schema = @Schema(implementation = RoleChangeDto.class))
+            ),
+            @ApiResponse(responseCode = "400", description = "Некорректная версия"),
+            @ApiResponse(responseCode = "401", description = "Не авторизован"),
+            @ApiResponse(responseCode = "403", description = "Недостаточно прав")
+    })
+    public SseEmitter stream(@RequestParam(required = false) Long since,
+                             @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        long from;
+        if (since != null) {
+            from = since;
+        } else if (lastEventId != null) {
+            try {
+                from = Long.parseLong(lastEventId.trim());
+            } catch (NumberFormatException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid Last-Event-ID");
+            }
+        } else {
+            from = roleChangeFeed.latestVersion();
+        }
+        return roleChangeFeed.subscribe(requireVersion(from));
+    }
+
+    private static long requireVersion(long version) {
+        if (version < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Version must not be negative");
+        }
+        return version;
+    }
+
+}
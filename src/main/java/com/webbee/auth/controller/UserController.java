@@ -0,0 +1,194 @@
+package com.webbee.auth.controller;
+
+import com.webbee.auth.dto.UserImportResultDto;
+import com.webbee.auth.dto.UserListItemDto;
+import com.webbee.auth.repository.UserListingRepository;
+import com.webbee.auth.service.UserBulkService;
+import com.webbee.auth.service.UserListingService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.persistence.EntityNotFoundException;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/users")
+@RequiredArgsConstructor
+@Tag(name = "Users", description = "API выгрузки пользователей")
+public class UserController {
+
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+
+    private final UserListingService userListingService;
+    private final UserBulkService userBulkService;
+
+    /**
+     * Время на выгрузку одного потокового ответа, остальные асинхронные запросы его не наследуют
+     */
+    @Value("${users.stream.timeout:10m}")
+    private Duration streamTimeout;
+
+    @GetMapping
+    @Operation(
+            summary = "Список пользователей с ролями",
+            description = "Потоково выгружает пользователей с id больше after в порядке id, " +
+                    "с необязательными фильтрами по роли и префиксу имени. " +
+                    "Без limit выгружаются все пользователи, с limit следующая страница запрашивается с after = nextAfter. " +
+                    "Доступно администраторам."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Пользователи в поле users и ключ следующей страницы nextAfter",
+                    content = @Content(array = @ArraySchema(schema = @Schema(implementation = UserListItemDto.class)))
+            ),
+            @ApiResponse(responseCode = "400", description = "Некорректные after или limit"),
+            @ApiResponse(responseCode = "401", description = "Не авторизован"),
+            @ApiResponse(responseCode = "403", description = "Недостаточно прав")
+    })
+    public ResponseEntity<StreamingResponseBody> listUsers(@RequestParam(required = false) String role,
+                                                           @RequestParam(required = false) String prefix,
+                                                           @RequestParam(defaultValue = "0") long after,
+                                                           @RequestParam(required = false) Integer limit,
+                                                           HttpServletRequest request) {
+        UserListingRepository.Query query = new UserListingRepository.Query(blankToNull(role), blankToNull(prefix), after, limit);
+        validate(query);
+        return stream(query, request);
+    }
+
+    @GetMapping("/by-role")
+    @Operation(
+            summary = "Число пользователей по ролям",
+            description = "Возвращает число пользователей каждой роли каталога, включая роли без пользователей. Доступно администраторам."
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Роль - число пользователей"),
+            @ApiResponse(responseCode = "401", description = "Не авторизован"),
+            @ApiResponse(responseCode = "403", description = "Недостаточно прав")
+    })
+    public ResponseEntity<Map<String, Long>> countUsersByRole() {
+        return ResponseEntity.ok(userListingService.countUsersByRole());
+    }
+
+    @GetMapping("/by-role/{role}")
+    @Operation(
+            summary = "Пользователи роли",
+            description = "Потоково выгружает пользователей с указанной ролью в порядке id в том же формате, что и список пользователей. " +
+                    "Следующая страница запрашивается с after = nextAfter. Доступно администраторам."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Пользователи в поле users и ключ следующей страницы nextAfter",
+                    content = @Content(array = @ArraySchema(schema = @Schema(implementation = UserListItemDto.class)))
+            ),
+            @ApiResponse(responseCode = "400", description = "Некорректные after или limit"),
+            @ApiResponse(responseCode = "401", description = "Не авторизован"),
+            @ApiResponse(responseCode = "403", description = "Недостаточно прав"),
+            @ApiResponse(responseCode = "404", description = "Роль не существует")
+    })
+    public ResponseEntity<StreamingResponseBody> listRoleMembers(@PathVariable String role,
+                                                                 @RequestParam(defaultValue = "0") long after,
+                                                                 @RequestParam(required = false) Integer limit,
+                                                                 HttpServletRequest request) {
+        UserListingRepository.Query query = new UserListingRepository.Query(role, null, after, limit);
+        validate(query);
+        if (!userListingService.roleExists(role)) {
+            throw new EntityNotFoundException("There is no role with that name");
+        }
+        return stream(query, request);
+    }
+
+    @GetMapping(value = "/export", produces = "text/csv")
+    @Operation(
+            summary = "Выгрузка пользователей в CSV",
+            description = "Потоково выгружает всех пользователей в CSV с заголовком username,email,password,roles " +
+                    "(password - хеш BCrypt, роли через |) протоколом COPY. Файл принимается обратно POST /users/import. Доступно администраторам."
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "CSV-файл", content = @Content(mediaType = "text/csv")),
+            @ApiResponse(responseCode = "401", description = "Не авторизован"),
+            @ApiResponse(responseCode = "403", description = "Недостаточно прав")
+    })
+    public ResponseEntity<StreamingResponseBody> exportUsers(HttpServletRequest request) {
+        extendAsyncTimeout(request);
+        return ResponseEntity.ok()
+                .contentType(TEXT_CSV)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename("users.csv").build().toString())
+                .body(userBulkService::exportUsers);
+    }
+
+    @PostMapping(value = "/import", consumes = "text/csv")
+    @Operation(
+            summary = "Загрузка пользователей из CSV",
+            description = "Загружает CSV в формате выгрузки через COPY во временную таблицу и переносит его одной транзакцией: " +
+                    "новые пользователи создаются, у существующих обновляются email, пароль и роли. " +
+                    "Выпущенные измененным пользователям токены отзываются. Доступно администраторам."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Импорт выполнен",
+                    content = @Content(schema = @Schema(implementation = UserImportResultDto.class))
+            ),
+            @ApiResponse(responseCode = "400", description = "Некорректная строка, повтор логина или email, неизвестная роль"),
+            @ApiResponse(responseCode = "401", description = "Не авторизован"),
+            @ApiResponse(responseCode = "403", description = "Недостаточно прав")
+    })
+    public ResponseEntity<UserImportResultDto> importUsers(InputStream body, Authentication authentication) {
+        return ResponseEntity.ok(userBulkService.importUsers(body, authentication.getName()));
+    }
+
+    private ResponseEntity<StreamingResponseBody> stream(UserListingRepository.Query query, HttpServletRequest request) {
+        extendAsyncTimeout(request);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> userListingService.writeUsers(query, out));
+    }
+
+    /**
+     * Задает таймаут асинхронной обработки текущего запроса до того, как StreamingResponseBody ее запустит
+     */
+    private void extendAsyncTimeout(HttpServletRequest request) {
+        WebAsyncUtils.getAsyncManager(request).getAsyncWebRequest().setTimeout(streamTimeout.toMillis());
+    }
+
+    private static void validate(UserListingRepository.Query query) {
+        if (query.afterId() < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "after must not be negative");
+        }
+        if (query.limit() != null && query.limit() <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be positive");
+        }
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value;
+    }
+
+}
@@ -2,7 +2,11 @@ package com.webbee.auth.controller;
 
 import com.webbee.auth.dto.ChangeUserRolesRequest;
 import com.webbee.auth.dto.RoleStatusDto;
+import com.webbee.auth.dto.UserRolesBatchDto;
+import com.webbee.auth.dto.UserRolesBatchRequest;
+import com.webbee.auth.security.service.CompiledRoleHierarchy;
 import com.webbee.auth.service.UserRoleService;
+import com.webbee.auth.utils.Identities;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -11,19 +15,29 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
 
-import java.security.Principal;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/user-roles")
@@ -31,7 +45,16 @@ import java.util.List;
 @Tag(name = "User Role Management", description = "API для управления ролями пользователей")
 public class UserRoleController {
 
+    /**
+     * Ответ можно хранить только у запросившего клиента и нужно перепроверять по ETag перед использованием
+     */
+    private static final CacheControl ROLES_CACHE_CONTROL = CacheControl.noCache().cachePrivate();
+
     private final UserRoleService userRoleService;
+    private final CompiledRoleHierarchy roleHierarchy;
+
+    @Value("${user-roles.batch.max-size:500}")
+    private int batchMaxSize;
 
     @PutMapping("/save")
     @Operation(
@@ -65,9 +88,10 @@ public class UserRoleController {
             summary = "Получение ролей пользователя",
             description = "Возвращает список ролей для указанного пользователя. " +
                     "Доступ к информации регулируется следующими правилами:\n" +
-                    "- Администраторы (роль ADMIN) могут просматривать роли любого пользователя\n" +
+                    "- Администраторы (роль ADMIN, в том числе через иерархию ролей) могут просматривать роли любого пользователя\n" +
                     "- Обычные пользователи могут просматривать только свои собственные роли\n" +
-                    "- Если пользователь не найден или у него нет ролей, возвращается соответствующая ошибка"
+                    "- Если пользователь не найден или у него нет ролей, возвращается соответствующая ошибка\n" +
+                    "Ответ содержит ETag версии ролей; запрос с If-None-Match и неизменившейся версией получает 304 без загрузки ролей"
     )
     @ApiResponses({
             @ApiResponse(
@@ -75,30 +99,104 @@ public class UserRoleController {
                     description = "Роли получены успешно",
                     content = @Content(array = @ArraySchema(schema = @Schema(type = "string")))
             ),
+            @ApiResponse(responseCode = "304", description = "Роли не изменились с версии из If-None-Match"),
             @ApiResponse(responseCode = "401", description = "Не авторизован"),
             @ApiResponse(responseCode = "403", description = "Доступ запрещен"),
             @ApiResponse(responseCode = "404", description = "Пользователь не найден или у него нет ролей")
     })
     public ResponseEntity<List<String>> getUserRoles(@PathVariable String login,
-                                                     Principal principal) {
+                                                     @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) List<String> ifNoneMatch,
+                                                     Authentication authentication) {
+
+        String authenticatedUserLogin = Identities.canonical(authentication.getName());
+        boolean admin = roleHierarchy.isAdmin(authentication);
+
+        if (!admin && !authenticatedUserLogin.equals(Identities.canonical(login))) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
+        }
+
+        if (ifNoneMatch != null && !ifNoneMatch.isEmpty()) {
+            Optional<String> currentEtag = userRoleService.getRolesVersion(login)
+                    .map(version -> rolesEtag(version.getId(), version.getRolesVersion()));
+            if (currentEtag.isPresent() && matchesAny(ifNoneMatch, currentEtag.get())) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .eTag(currentEtag.get())
+                        .cacheControl(ROLES_CACHE_CONTROL)
+                        .build();
+            }
+        }
+
+        Optional<UserRoleService.VersionedRoles> versionedRoles = userRoleService.getVersionedRoles(login);
+        List<String> userRoles = versionedRoles.map(UserRoleService.VersionedRoles::roles).orElse(List.of());
+        if (admin && userRoles.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User has no roles");
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().cacheControl(ROLES_CACHE_CONTROL);
+        versionedRoles.ifPresent(roles -> response.eTag(rolesEtag(roles.userId(), roles.version())));
+        return response.body(userRoles);
+    }
+
+    @PostMapping("/batch")
+    @Operation(
+            summary = "Получение ролей нескольких пользователей",
+            description = "Возвращает роли всех указанных пользователей одним запросом к базе. " +
+                    "Правила доступа те же, что у GET /user-roles/{login}, и применяются к каждому пользователю:\n" +
+                    "- Администраторы получают роли любых пользователей\n" +
+                    "- Обычные пользователи получают только свои роли, остальные логины возвращаются в denied\n" +
+                    "- Пользователи, которых нет или у которых нет ролей, в roles отсутствуют"
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Роли получены успешно",
+                    content = @Content(schema = @Schema(implementation = UserRolesBatchDto.class))
+            ),
+            @ApiResponse(responseCode = "400", description = "Список логинов пуст или превышает допустимый размер"),
+            @ApiResponse(responseCode = "401", description = "Не авторизован")
+    })
+    public ResponseEntity<UserRolesBatchDto> getUserRolesBatch(@RequestBody UserRolesBatchRequest request,
+                                                               Authentication authentication) {
+        if (request.getUsernames() == null || request.getUsernames().isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Usernames must not be empty");
+        }
+        if (request.getUsernames().size() > batchMaxSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "No more than " + batchMaxSize + " usernames per request");
+        }
+
+        boolean admin = roleHierarchy.isAdmin(authentication);
+        String authenticatedUserLogin = Identities.canonical(authentication.getName());
+        Set<String> allowed = new LinkedHashSet<>();
+        Set<String> denied = new LinkedHashSet<>();
+        request.getUsernames().stream()
+                .filter(Objects::nonNull)
+                .forEach(login -> (admin || authenticatedUserLogin.equals(Identities.canonical(login)) ? allowed : denied).add(login));
 
-        String authenticatedUserLogin = principal.getName();
-        List<String> authenticatedUserRoles = userRoleService.getRoles(authenticatedUserLogin);
+        Map<String, List<String>> roles = allowed.isEmpty() ? Map.of() : userRoleService.getRolesBatch(allowed);
+        return ResponseEntity.ok(UserRolesBatchDto.builder()
+                .roles(roles)
+                .denied(denied)
+                .build());
+    }
+
+    /**
+     * ETag включает идентификатор пользователя, чтобы пересозданный с тем же логином пользователь
+     * не совпал по версии с удаленным
+     */
+    private static String rolesEtag(Long userId, long version) {
+        return "\"" + userId + "." + version + "\"";
+    }
 
-        if (authenticatedUserRoles.contains("ADMIN")) {
-            List<String> userRoles = userRoleService.getRoles(login);
-            if (userRoles.isEmpty()) {
-                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User has no roles");
+    private static boolean matchesAny(List<String> ifNoneMatch, String etag) {
+        for (String candidate : ifNoneMatch) {
+            String value = candidate.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
             }
-            return new ResponseEntity<>(userRoles, HttpStatus.OK);
-        } else {
-            if (authenticatedUserLogin.equals(login)) {
-                List<String> userRoles = userRoleService.getRoles(login);
-                return new ResponseEntity<>(userRoles, HttpStatus.OK);
-            } else {
-                throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
+            if (value.equals("*") || value.equals(etag)) {
+                return true;
             }
         }
+        return false;
     }
 
 }
@@ -0,0 +1,34 @@
+package com.webbee.auth.datasource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Маршрутизирующий источник данных: транзакции только на чтение уходят на реплику,
+ * все остальное - на основную базу. Должен оборачиваться в LazyConnectionDataSourceProxy,
+ * чтобы соединение выбиралось при первом запросе, когда признак readOnly транзакции уже известен.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    private static final String PRIMARY = "primary";
+    private static final String REPLICA = "replica";
+
+    private final ReplicaStalenessGuard stalenessGuard;
+
+    public ReadWriteRoutingDataSource(DataSource primary, DataSource replica, ReplicaStalenessGuard stalenessGuard) {
+        this.stalenessGuard = stalenessGuard;
+        setTargetDataSources(Map.of(PRIMARY, primary, REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return TransactionSynchronizationManager.isCurrentTransactionReadOnly() && stalenessGuard.isReplicaReadable()
+                ? REPLICA
+                : PRIMARY;
+    }
+
+}
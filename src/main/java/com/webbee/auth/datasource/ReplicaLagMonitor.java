@@ -0,0 +1,53 @@
+package com.webbee.auth.datasource;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Периодически измеряет отставание реплики.
+ * Если отставание превышает допустимое или реплика недоступна, все чтения переводятся на основную базу
+ * до следующего успешного замера.
+ */
+@Slf4j
+public class ReplicaLagMonitor {
+
+    private static final String LAG_QUERY = "SELECT CASE "
+            + "WHEN NOT pg_is_in_recovery() OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 "
+            + "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0) END";
+
+    private final JdbcTemplate replicaJdbcTemplate;
+    private final ReplicaStalenessGuard stalenessGuard;
+    private final long maxLagMillis;
+
+    private volatile double lagMillis;
+
+    public ReplicaLagMonitor(DataSource replica, ReplicaStalenessGuard stalenessGuard, Duration maxLag, MeterRegistry meterRegistry) {
+        this.replicaJdbcTemplate = new JdbcTemplate(replica);
+        this.stalenessGuard = stalenessGuard;
+        this.maxLagMillis = maxLag.toMillis();
+        Gauge.builder("auth.datasource.replica.lag", this, monitor -> monitor.lagMillis)
+                .description("Отставание реплики от основной базы, мс")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${replica.lag-check-interval:1s}")
+    public void checkLag() {
+        try {
+            Double measured = replicaJdbcTemplate.queryForObject(LAG_QUERY, Double.class);
+            lagMillis = measured == null ? 0 : measured;
+            stalenessGuard.setReplicaInSync(lagMillis <= maxLagMillis);
+        } catch (RuntimeException e) {
+            log.warn("Replica lag check failed, routing reads to primary", e);
+            lagMillis = Double.NaN;
+            stalenessGuard.setReplicaInSync(false);
+        }
+    }
+
+}
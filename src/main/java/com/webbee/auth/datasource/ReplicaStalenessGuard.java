@@ -0,0 +1,155 @@
+package com.webbee.auth.datasource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ограничитель устаревания данных при чтении с реплики.
+ * Запоминает пользователей, данные которых недавно изменились, и на заданное окно
+ * направляет чтения по ним на основную базу, чтобы изменение было видно сразу после записи.
+ * Кроме того, хранит признак допустимого отставания реплики, который выставляет {@link ReplicaLagMonitor}.
+ */
+@Component
+public class ReplicaStalenessGuard {
+
+    private static final ThreadLocal<Boolean> PINNED_TO_PRIMARY = new ThreadLocal<>();
+    private static final PrimaryPin NO_PIN = () -> { };
+
+    private final boolean enabled;
+    private final long readYourWritesWindowNanos;
+    private final ConcurrentHashMap<String, Long> recentWrites = new ConcurrentHashMap<>();
+
+    private volatile boolean replicaInSync = true;
+
+    public ReplicaStalenessGuard(@Value("${replica.enabled:false}") boolean enabled,
+                                 @Value("${replica.read-your-writes-window:5s}") Duration readYourWritesWindow) {
+        this.enabled = enabled;
+        this.readYourWritesWindowNanos = readYourWritesWindow.toNanos();
+    }
+
+    /**
+     * Отмечает изменение данных пользователя. Внутри транзакции отметка ставится после фиксации
+     */
+    public void recordWrite(String username) {
+        if (!enabled || username == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    recentWrites.put(username, System.nanoTime());
+                }
+            });
+        } else {
+            recentWrites.put(username, System.nanoTime());
+        }
+    }
+
+    /**
+     * То же, что {@link #recordWrite(String)}, для нескольких пользователей одной отметкой после фиксации
+     */
+    public void recordWrites(Collection<String> usernames) {
+        if (!enabled || usernames.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    long now = System.nanoTime();
+                    usernames.forEach(username -> recentWrites.put(username, now));
+                }
+            });
+        } else {
+            long now = System.nanoTime();
+            usernames.forEach(username -> recentWrites.put(username, now));
+        }
+    }
+
+    /**
+     * Закрепляет чтения текущего потока за основной базой, если данные пользователя менялись недавно.
+     * Закрепление снимается при закрытии возвращенного объекта
+     */
+    public PrimaryPin pinToPrimaryIfRecentlyWritten(String username) {
+        if (!enabled || username == null || !isRecentlyWritten(username) || PINNED_TO_PRIMARY.get() != null) {
+            return NO_PIN;
+        }
+        PINNED_TO_PRIMARY.set(Boolean.TRUE);
+        return PINNED_TO_PRIMARY::remove;
+    }
+
+    /**
+     * То же, что {@link #pinToPrimaryIfRecentlyWritten(String)}, для чтения данных нескольких пользователей:
+     * достаточно недавнего изменения у любого из них
+     */
+    public PrimaryPin pinToPrimaryIfAnyRecentlyWritten(Collection<String> usernames) {
+        if (!enabled || PINNED_TO_PRIMARY.get() != null || usernames.stream().noneMatch(this::isRecentlyWritten)) {
+            return NO_PIN;
+        }
+        PINNED_TO_PRIMARY.set(Boolean.TRUE);
+        return PINNED_TO_PRIMARY::remove;
+    }
+
+    /**
+     * Безусловно закрепляет чтения текущего потока за основной базой
+     */
+    public PrimaryPin pinToPrimary() {
+        if (!enabled || PINNED_TO_PRIMARY.get() != null) {
+            return NO_PIN;
+        }
+        PINNED_TO_PRIMARY.set(Boolean.TRUE);
+        return PINNED_TO_PRIMARY::remove;
+    }
+
+    /**
+     * Проверяет, можно ли выполнять текущее чтение на реплике
+     */
+    public boolean isReplicaReadable() {
+        return replicaInSync && PINNED_TO_PRIMARY.get() == null;
+    }
+
+    /**
+     * Проверяет, пойдет ли чтение данных пользователя из текущего потока на основную базу
+     */
+    public boolean readsFromPrimary(String username) {
+        return !enabled || !isReplicaReadable() || username != null && isRecentlyWritten(username);
+    }
+
+    void setReplicaInSync(boolean replicaInSync) {
+        this.replicaInSync = replicaInSync;
+    }
+
+    boolean isRecentlyWritten(String username) {
+        Long writtenAt = recentWrites.get(username);
+        return writtenAt != null && System.nanoTime() - writtenAt < readYourWritesWindowNanos;
+    }
+
+    /**
+     * Удаляет отметки, вышедшие за окно
+     */
+    @Scheduled(fixedDelayString = "${replica.read-your-writes-window:5s}")
+    public void purgeExpired() {
+        long now = System.nanoTime();
+        recentWrites.values().removeIf(writtenAt -> now - writtenAt >= readYourWritesWindowNanos);
+    }
+
+    /**
+     * Закрепление чтений за основной базой в пределах try-with-resources
+     */
+    @FunctionalInterface
+    public interface PrimaryPin extends AutoCloseable {
+
+        @Override
+        void close();
+
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.webbee.auth.dto;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * DTO записи журнала изменений ролей.
+ * Содержит полный набор ролей пользователя после изменения и версию, по которой потребитель продолжает чтение
+ */
+
+@Builder
+@Getter
+@Setter
+public class RoleChangeDto {
+
+    private Long version;
+    private String username;
+    private List<String> roles;
+    private Instant changedAt;
+
+}
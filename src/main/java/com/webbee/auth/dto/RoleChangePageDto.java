@@ -0,0 +1,23 @@
+package com.webbee.auth.dto;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * DTO страницы журнала изменений ролей.
+ * nextVersion передается в since следующего запроса; hasMore означает, что изменения прочитаны не все
+ */
+
+@Builder
+@Getter
+@Setter
+public class RoleChangePageDto {
+
+    private List<RoleChangeDto> changes;
+    private Long nextVersion;
+    private Boolean hasMore;
+
+}
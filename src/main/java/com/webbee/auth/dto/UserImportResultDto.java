@@ -0,0 +1,21 @@
+package com.webbee.auth.dto;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * DTO результата импорта пользователей из CSV
+ */
+
+@Builder
+@Getter
+@Setter
+public class UserImportResultDto {
+
+    private long rows;
+    private long created;
+    private long updated;
+    private long rolesChanged;
+
+}
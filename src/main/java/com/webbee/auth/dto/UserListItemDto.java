@@ -0,0 +1,23 @@
+package com.webbee.auth.dto;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * DTO пользователя в выгрузке списка пользователей
+ */
+
+@Builder
+@Getter
+@Setter
+public class UserListItemDto {
+
+    private Long id;
+    private String username;
+    private String email;
+    private List<String> roles;
+
+}
@@ -0,0 +1,24 @@
+package com.webbee.auth.dto;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * DTO с ролями нескольких пользователей.
+ * roles содержит найденных пользователей с ролями, denied - пользователей, роли которых запрашивающему недоступны
+ */
+
+@Builder
+@Getter
+@Setter
+public class UserRolesBatchDto {
+
+    private Map<String, List<String>> roles;
+    private Set<String> denied;
+
+}
@@ -0,0 +1,24 @@
+package com.webbee.auth.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Set;
+
+/**
+ * DTO для запроса ролей нескольких пользователей.
+ */
+
+@Builder
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserRolesBatchRequest {
+
+    private Set<String> usernames;
+
+}
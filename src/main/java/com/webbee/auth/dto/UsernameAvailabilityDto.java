@@ -0,0 +1,20 @@
+package com.webbee.auth.dto;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * DTO с результатом проверки доступности логина.
+ * Используется формами регистрации до отправки запроса на создание пользователя
+ */
+
+@Builder
+@Getter
+@Setter
+public class UsernameAvailabilityDto {
+
+    private String username;
+    private Boolean available;
+
+}
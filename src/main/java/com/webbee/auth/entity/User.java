@@ -15,6 +15,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.Instant;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -38,6 +39,27 @@ public class User {
     private String password;
     @Column(name = "email", nullable = false)
     private String email;
+    /**
+     * Обновляется только пакетно через {@link com.webbee.auth.service.LastLoginTracker},
+     * поэтому исключено из INSERT и UPDATE, формируемых Hibernate
+     */
+    @Column(name = "last_login_at", insertable = false, updatable = false)
+    private Instant lastLoginAt;
+    /**
+     * Увеличивается атомарным UPDATE при каждом сохранении ролей
+     * ({@link com.webbee.auth.repository.UserRepository#incrementRolesVersion(Long)}),
+     * поэтому исключено из INSERT и UPDATE, формируемых Hibernate
+     */
+    @Column(name = "roles_version", insertable = false, updatable = false)
+    @Builder.Default
+    private Long rolesVersion = 0L;
+    /**
+     * Версия выпущенных пользователю токенов, см. {@link com.webbee.auth.security.service.TokenVersionRegistry}.
+     * Меняется только атомарным UPDATE
+     */
+    @Column(name = "token_version", insertable = false, updatable = false)
+    @Builder.Default
+    private Long tokenVersion = 0L;
 
     @ManyToMany(fetch = FetchType.EAGER)
     @JoinTable(name = "user_roles",
@@ -0,0 +1,76 @@
+package com.webbee.auth.limiter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Фильтр сброса нагрузки. Запрос сопоставляется с первой подходящей группой эндпоинтов,
+ * и если ее лимит исчерпан, сразу получает 503 без обращения к безопасности, контроллерам и базе.
+ * Ответ 5xx или исключение считаются перегрузкой и уменьшают лимит.
+ */
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    private final List<Route> routes;
+
+    public ConcurrencyLimitFilter(List<Route> routes) {
+        this.routes = List.copyOf(routes);
+    }
+
+    @Override
+    protected void doFilterInternal(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            FilterChain filterChain
+    ) throws ServletException, IOException {
+        ConcurrencyLimiter limiter = limiterFor(request);
+        if (limiter == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        ConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+        if (permit == null) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.setContentType("application/json");
+            response.getWriter().write("{\"error\": \"Service is overloaded\"}");
+            return;
+        }
+        boolean dropped = true;
+        try {
+            filterChain.doFilter(request, response);
+            dropped = response.getStatus() >= HttpStatus.INTERNAL_SERVER_ERROR.value();
+        } finally {
+            if (request.isAsyncStarted()) {
+                permit.ignore();
+            } else {
+                permit.release(dropped);
+            }
+        }
+    }
+
+    private ConcurrencyLimiter limiterFor(HttpServletRequest request) {
+        for (Route route : routes) {
+            if (route.matcher().matches(request)) {
+                return route.limiter();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Группа эндпоинтов с общим лимитом
+     */
+    public record Route(RequestMatcher matcher, ConcurrencyLimiter limiter) {
+
+    }
+
+}
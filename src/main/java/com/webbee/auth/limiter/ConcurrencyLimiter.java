@@ -0,0 +1,89 @@
+package com.webbee.auth.limiter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ограничитель числа одновременно выполняемых запросов группы эндпоинтов.
+ * Запрос сверх текущего лимита {@link GradientLimit} не ставится в очередь, а сразу отклоняется.
+ */
+public final class ConcurrencyLimiter {
+
+    private final GradientLimit limit;
+    private final AtomicInteger inflight = new AtomicInteger();
+    private final Counter rejected;
+
+    public ConcurrencyLimiter(String name, GradientLimit limit, MeterRegistry meterRegistry) {
+        this.limit = limit;
+        Gauge.builder("auth.concurrency.limit", limit, GradientLimit::getLimit)
+                .description("Текущий лимит одновременных запросов")
+                .tag("limiter", name)
+                .register(meterRegistry);
+        Gauge.builder("auth.concurrency.inflight", inflight, AtomicInteger::get)
+                .description("Выполняемые запросы")
+                .tag("limiter", name)
+                .register(meterRegistry);
+        this.rejected = Counter.builder("auth.concurrency.rejected")
+                .description("Запросы, отклоненные из-за превышения лимита")
+                .tag("limiter", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Занимает место для запроса. Возвращает null, если лимит исчерпан
+     */
+    public Permit tryAcquire() {
+        int current;
+        do {
+            current = inflight.get();
+            if (current >= limit.getLimit()) {
+                rejected.increment();
+                return null;
+            }
+        } while (!inflight.compareAndSet(current, current + 1));
+        return new Permit(System.nanoTime(), current + 1);
+    }
+
+    public int getLimit() {
+        return limit.getLimit();
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    /**
+     * Место, занятое запросом. Освобождается ровно один раз
+     */
+    public final class Permit {
+
+        private final long startNanos;
+        private final int inflightAtStart;
+
+        private Permit(long startNanos, int inflightAtStart) {
+            this.startNanos = startNanos;
+            this.inflightAtStart = inflightAtStart;
+        }
+
+        /**
+         * Освобождает место и передает длительность запроса в алгоритм лимита
+         */
+        public void release(boolean dropped) {
+            long now = System.nanoTime();
+            inflight.decrementAndGet();
+            limit.onSample(now, now - startNanos, inflightAtStart, dropped);
+        }
+
+        /**
+         * Освобождает место без учета длительности (например, для асинхронных ответов)
+         */
+        public void ignore() {
+            inflight.decrementAndGet();
+        }
+
+    }
+
+}
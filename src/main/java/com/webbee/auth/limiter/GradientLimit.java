@@ -0,0 +1,96 @@
+package com.webbee.auth.limiter;
+
+/**
+ * Адаптивный лимит параллельных запросов по градиенту задержки.
+ * Задержки собираются в окна; среднее окна (короткая задержка) сравнивается с медленно меняющейся базовой задержкой.
+ * Пока короткая задержка не превышает базовую больше чем в {@value #TOLERANCE} раза, лимит растет на sqrt(limit),
+ * при росте задержки лимит уменьшается пропорционально градиенту, но не больше чем вдвое за окно.
+ * Ошибки сервера уменьшают лимит мультипликативно. Лимит не растет, если нагрузка его не достигала.
+ */
+public final class GradientLimit {
+
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final double BACKOFF_RATIO = 0.9;
+    private static final int BASELINE_WINDOWS = 50;
+    private static final int MIN_WINDOW_SAMPLES = 10;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long windowNanos;
+    private volatile int limit;
+    private double estimatedLimit;
+    private double baselineRttNanos;
+    private long windowStartNanos = -1;
+    private long windowRttSumNanos;
+    private int windowSamples;
+    private int windowMaxInflight;
+    private boolean windowDropped;
+
+    public GradientLimit(int initialLimit, int minLimit, int maxLimit, long windowNanos) {
+        if (minLimit < 1 || minLimit > maxLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Concurrency limit bounds must satisfy 1 <= min <= initial <= max");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.windowNanos = windowNanos;
+        this.limit = initialLimit;
+        this.estimatedLimit = initialLimit;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Учитывает завершенный запрос.
+     *
+     * @param nowNanos момент завершения
+     * @param rttNanos длительность запроса
+     * @param inflight число выполнявшихся запросов в момент его начала
+     * @param dropped запрос завершился ошибкой сервера
+     */
+    public synchronized void onSample(long nowNanos, long rttNanos, int inflight, boolean dropped) {
+        if (windowStartNanos < 0) {
+            windowStartNanos = nowNanos;
+        }
+        windowRttSumNanos += rttNanos;
+        windowSamples++;
+        windowMaxInflight = Math.max(windowMaxInflight, inflight);
+        windowDropped |= dropped;
+        if (nowNanos - windowStartNanos < windowNanos || windowSamples < MIN_WINDOW_SAMPLES) {
+            return;
+        }
+        update((double) windowRttSumNanos / windowSamples, windowMaxInflight, windowDropped);
+        windowStartNanos = nowNanos;
+        windowRttSumNanos = 0;
+        windowSamples = 0;
+        windowMaxInflight = 0;
+        windowDropped = false;
+    }
+
+    private void update(double shortRttNanos, int inflight, boolean dropped) {
+        if (baselineRttNanos == 0) {
+            baselineRttNanos = shortRttNanos;
+        } else {
+            baselineRttNanos += (shortRttNanos - baselineRttNanos) / BASELINE_WINDOWS;
+        }
+        if (baselineRttNanos > 2 * shortRttNanos) {
+            // задержка заметно упала (например, прогрелся кеш): базовая задержка догоняет быстрее
+            baselineRttNanos = Math.max(shortRttNanos, baselineRttNanos * 0.9);
+        }
+        double target;
+        if (dropped) {
+            target = estimatedLimit * BACKOFF_RATIO;
+        } else if (inflight < estimatedLimit / 2) {
+            return;
+        } else {
+            double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * baselineRttNanos / shortRttNanos));
+            target = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        }
+        double smoothed = estimatedLimit * (1 - SMOOTHING) + target * SMOOTHING;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, smoothed));
+        limit = (int) estimatedLimit;
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.webbee.auth.repository;
+
+import com.webbee.auth.entity.Role;
+import com.webbee.auth.entity.User;
+import com.webbee.auth.repository.projection.UserRolesVersionView;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.HashSet;
+import java.util.Optional;
+
+/**
+ * Чтение пользователей подготовленными запросами без Hibernate: нет контекста персистентности,
+ * проверки изменений и отдельного запроса ролей. Пользователь и его роли читаются одним запросом
+ * по индексу uk_users_username_lower. Соединение берется из текущей транзакции, поэтому
+ * маршрутизация на реплику и закрепление за основной базой работают так же, как для {@link JpaUserStore}.
+ */
+@Repository
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "user-store.backend", havingValue = "jdbc")
+public class JdbcUserStore implements UserStore {
+
+    private static final String SELECT_USER_WITH_ROLES = "SELECT u.id, u.username, u.password, u.email, u.last_login_at, "
+            + "u.roles_version, u.token_version, r.id, r.name FROM users u "
+            + "LEFT JOIN user_roles ur ON ur.user_id = u.id "
+            + "LEFT JOIN roles r ON r.id = ur.role_id "
+            + "WHERE lower(u.username) = lower(?)";
+    private static final String EXISTS_BY_USERNAME = "SELECT EXISTS (SELECT 1 FROM users WHERE lower(username) = lower(?))";
+    private static final String SELECT_ROLES_VERSION = "SELECT id, roles_version FROM users WHERE lower(username) = lower(?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public Optional<User> findByUsername(String username) {
+        return Optional.ofNullable(jdbcTemplate.query(SELECT_USER_WITH_ROLES, JdbcUserStore::mapUserWithRoles, username));
+    }
+
+    @Override
+    public boolean existsByUsername(String username) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(EXISTS_BY_USERNAME, Boolean.class, username));
+    }
+
+    @Override
+    public Optional<UserRolesVersionView> findRolesVersionByUsername(String username) {
+        return jdbcTemplate.query(SELECT_ROLES_VERSION,
+                (resultSet, rowNum) -> (UserRolesVersionView) new RolesVersion(resultSet.getLong(1), resultSet.getLong(2)),
+                username).stream().findFirst();
+    }
+
+    /**
+     * Строки результата отличаются только ролью, у пользователя без ролей одна строка с пустой ролью
+     */
+    private static User mapUserWithRoles(ResultSet resultSet) throws SQLException {
+        if (!resultSet.next()) {
+            return null;
+        }
+        Timestamp lastLoginAt = resultSet.getTimestamp(5);
+        User user = User.builder()
+                .id(resultSet.getLong(1))
+                .username(resultSet.getString(2))
+                .password(resultSet.getString(3))
+                .email(resultSet.getString(4))
+                .lastLoginAt(lastLoginAt != null ? lastLoginAt.toInstant() : null)
+                .rolesVersion(resultSet.getLong(6))
+                .tokenVersion(resultSet.getLong(7))
+                .roles(new HashSet<>(2))
+                .build();
+        do {
+            long roleId = resultSet.getLong(8);
+            if (!resultSet.wasNull()) {
+                user.getRoles().add(new Role(roleId, resultSet.getString(9)));
+            }
+        } while (resultSet.next());
+        return user;
+    }
+
+    private record RolesVersion(Long id, Long rolesVersion) implements UserRolesVersionView {
+
+        @Override
+        public Long getId() {
+            return id;
+        }
+
+        @Override
+        public Long getRolesVersion() {
+            return rolesVersion;
+        }
+
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.webbee.auth.repository;
+
+import com.webbee.auth.entity.User;
+import com.webbee.auth.repository.projection.UserRolesVersionView;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+/**
+ * Чтение пользователей через Hibernate: пользователь загружается в контекст персистентности,
+ * роли - отдельным запросом EAGER-коллекции.
+ */
+@Repository
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "user-store.backend", havingValue = "jpa", matchIfMissing = true)
+public class JpaUserStore implements UserStore {
+
+    private final UserRepository userRepository;
+
+    @Override
+    public Optional<User> findByUsername(String username) {
+        return userRepository.findByUsername(username);
+    }
+
+    @Override
+    public boolean existsByUsername(String username) {
+        return userRepository.existsByUsername(username);
+    }
+
+    @Override
+    public Optional<UserRolesVersionView> findRolesVersionByUsername(String username) {
+        return userRepository.findRolesVersionByUsername(username);
+    }
+
+}
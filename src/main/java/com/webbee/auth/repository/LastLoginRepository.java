@@ -0,0 +1,50 @@
+package com.webbee.auth.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Репозиторий для пакетного обновления времени последнего входа пользователей.
+ */
+@Repository
+@RequiredArgsConstructor
+public class LastLoginRepository {
+
+    private static final String UPDATE_PREFIX = "UPDATE users u SET last_login_at = v.last_login_at FROM (VALUES ";
+    private static final String ROW_PLACEHOLDER = "(?::bigint, ?::timestamptz)";
+    private static final String UPDATE_SUFFIX = ") AS v(id, last_login_at) "
+            + "WHERE u.id = v.id AND (u.last_login_at IS NULL OR u.last_login_at < v.last_login_at)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Обновляет время последнего входа одним запросом UPDATE ... FROM (VALUES ...).
+     * Более раннее время не перезаписывает уже сохраненное более позднее
+     *
+     * @return количество обновленных строк
+     */
+    public int updateLastLogin(Map<Long, Instant> lastLogins) {
+        if (lastLogins.isEmpty()) {
+            return 0;
+        }
+        StringBuilder sql = new StringBuilder(UPDATE_PREFIX);
+        Object[] args = new Object[lastLogins.size() * 2];
+        int i = 0;
+        for (Map.Entry<Long, Instant> entry : lastLogins.entrySet()) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(ROW_PLACEHOLDER);
+            args[i++] = entry.getKey();
+            args[i++] = Timestamp.from(entry.getValue());
+        }
+        sql.append(UPDATE_SUFFIX);
+        return jdbcTemplate.update(sql.toString(), args);
+    }
+
+}
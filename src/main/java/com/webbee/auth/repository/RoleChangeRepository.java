@@ -0,0 +1,84 @@
+package com.webbee.auth.repository;
+
+import com.webbee.auth.dto.RoleChangeDto;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Репозиторий журнала изменений ролей role_changes.
+ * Версии берутся из последовательности без блокировок, поэтому запись с меньшей версией может стать видна позже записи
+ * с большей. Читатели отдают записи только до надежной границы {@link Head}: писатель получает номер транзакции до версии,
+ * и когда все транзакции с номерами меньше границы завершены, записей ниже прочитанного максимума уже не появится.
+ */
+@Repository
+@RequiredArgsConstructor
+public class RoleChangeRepository {
+
+    static final String ASSIGN_XID = "SELECT pg_current_xact_id()";
+    private static final String INSERT = "INSERT INTO role_changes (username, roles) VALUES (?, ?) RETURNING version";
+    private static final String SELECT_SINCE = "SELECT version, username, roles, changed_at FROM role_changes "
+            + "WHERE version > ? AND version <= ? ORDER BY version LIMIT ?";
+    private static final String SELECT_HEAD = "SELECT (SELECT COALESCE(MAX(version), 0) FROM role_changes), "
+            + "pg_current_xact_id()::text::bigint";
+    private static final String SELECT_OLDEST_RUNNING_XID = "SELECT pg_snapshot_xmin(pg_current_snapshot())::text::bigint";
+
+    private static final RowMapper<RoleChangeDto> ROW_MAPPER = (resultSet, rowNum) -> RoleChangeDto.builder()
+            .version(resultSet.getLong(1))
+            .username(resultSet.getString(2))
+            .roles(Arrays.asList((String[]) resultSet.getArray(3).getArray()))
+            .changedAt(resultSet.getTimestamp(4).toInstant())
+            .build();
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Добавляет запись в журнал. Должен вызываться в транзакции, изменяющей роли.
+     * Номер транзакции назначается до получения версии из последовательности
+     *
+     * @return версия записи
+     */
+    public long append(String username, Collection<String> roles) {
+        jdbcTemplate.query(ASSIGN_XID, resultSet -> null);
+        Long version = jdbcTemplate.queryForObject(INSERT, Long.class, username, roles.toArray(String[]::new));
+        return version == null ? 0 : version;
+    }
+
+    /**
+     * Читает не более limit записей с версией больше since и не больше upTo в порядке версий
+     */
+    public List<RoleChangeDto> findSince(long since, long upTo, int limit) {
+        return jdbcTemplate.query(SELECT_SINCE, ROW_MAPPER, since, upTo, limit);
+    }
+
+    /**
+     * Читает версию последней видимой записи и назначает запросу номер транзакции, который становится границей этой версии.
+     * Выполняется вне транзакции на основной базе: запрос фиксируется сразу, и его номер учитывается в следующих снимках
+     */
+    public Head findHead() {
+        return jdbcTemplate.queryForObject(SELECT_HEAD, (resultSet, rowNum) -> new Head(resultSet.getLong(1), resultSet.getLong(2)));
+    }
+
+    /**
+     * Номер самой старой незавершенной транзакции: все транзакции с меньшими номерами завершены
+     */
+    public long findOldestRunningXid() {
+        Long xid = jdbcTemplate.queryForObject(SELECT_OLDEST_RUNNING_XID, Long.class);
+        return xid == null ? 0 : xid;
+    }
+
+    /**
+     * Последняя видимая версия и номер транзакции, прочитавшей ее.
+     * Транзакция, которая держит меньшую версию, получила номер раньше, поэтому когда самая старая незавершенная
+     * транзакция не меньше horizon, все версии до version включительно зафиксированы или отменены
+     */
+    public record Head(long version, long horizon) {
+
+    }
+
+}
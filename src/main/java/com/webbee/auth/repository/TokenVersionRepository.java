@@ -0,0 +1,64 @@
+package com.webbee.auth.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Репозиторий версий токенов пользователей users.token_version.
+ * Новая версия берется из общей последовательности, поэтому версии всех пользователей вместе возрастают
+ * и изменения можно дочитывать по последней увиденной версии. Увеличение выполняется под транзакционной
+ * рекомендательной блокировкой, чтобы версии фиксировались в порядке возрастания и читатель не пропускал меньшую.
+ */
+@Repository
+@RequiredArgsConstructor
+public class TokenVersionRepository {
+
+    static final long LOCK_KEY = 0x746f6b656e766572L;
+    static final String LOCK = "SELECT pg_advisory_xact_lock(?)";
+    private static final String BUMP = "UPDATE users SET token_version = nextval('users_token_version_seq') WHERE id = ? RETURNING token_version";
+    private static final String SELECT_VERSION = "SELECT token_version FROM users WHERE id = ?";
+    private static final String SELECT_CHANGED = "SELECT id, token_version FROM users "
+            + "WHERE token_version > ? ORDER BY token_version LIMIT ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Присваивает пользователю новую версию токенов. Должен вызываться в транзакции
+     *
+     * @return новая версия или 0, если пользователя нет
+     */
+    public long bump(Long userId) {
+        jdbcTemplate.query(LOCK, resultSet -> null, LOCK_KEY);
+        List<Long> versions = jdbcTemplate.queryForList(BUMP, Long.class, userId);
+        return versions.isEmpty() ? 0 : versions.get(0);
+    }
+
+    /**
+     * Читает не более limit пользователей с версией больше указанной в порядке версий
+     *
+     * @return идентификатор пользователя - версия
+     */
+    public Map<Long, Long> findChangedSince(long version, int limit) {
+        Map<Long, Long> versions = new LinkedHashMap<>();
+        jdbcTemplate.query(SELECT_CHANGED, resultSet -> {
+            versions.put(resultSet.getLong(1), resultSet.getLong(2));
+        }, version, limit);
+        return versions;
+    }
+
+    /**
+     * Читает текущую версию токенов одного пользователя
+     *
+     * @return версия или 0, если пользователя нет
+     */
+    public long findVersion(Long userId) {
+        List<Long> versions = jdbcTemplate.queryForList(SELECT_VERSION, Long.class, userId);
+        return versions.isEmpty() ? 0 : versions.get(0);
+    }
+
+}
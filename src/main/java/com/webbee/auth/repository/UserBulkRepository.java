@@ -0,0 +1,193 @@
+package com.webbee.auth.repository;
+
+import com.webbee.auth.dto.UserImportResultDto;
+import lombok.RequiredArgsConstructor;
+import org.postgresql.PGConnection;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Репозиторий массовой выгрузки и загрузки пользователей с ролями в CSV через протокол COPY PostgreSQL.
+ * Формат: заголовок username,email,password,roles; password - хеш BCrypt, роли разделены символом |.
+ * Загрузка идет во временную таблицу user_import и затем переносится в users и user_roles несколькими
+ * запросами над всем набором сразу. Логины и email приводятся к канонической форме (без пробелов по краям,
+ * в нижнем регистре), существующие пользователи сопоставляются по lower(username) без учета регистра.
+ * Все методы должны вызываться в одной транзакции.
+ */
+@Repository
+@RequiredArgsConstructor
+public class UserBulkRepository {
+
+    private static final String EXPORT = "COPY (SELECT u.username, u.email, u.password, array_to_string(ARRAY("
+            + "SELECT r.name FROM user_roles ur JOIN roles r ON r.id = ur.role_id WHERE ur.user_id = u.id ORDER BY r.name), '|') AS roles "
+            + "FROM users u ORDER BY u.id) TO STDOUT WITH (FORMAT csv, HEADER true)";
+    private static final String CREATE_STAGING = "CREATE TEMP TABLE user_import (row_number BIGINT GENERATED ALWAYS AS IDENTITY, "
+            + "username TEXT, email TEXT, password TEXT, roles TEXT) ON COMMIT DROP";
+    private static final String COPY_INTO_STAGING = "COPY user_import (username, email, password, roles) FROM STDIN WITH (FORMAT csv, HEADER true)";
+    private static final String CANONICALIZE_STAGING = "UPDATE user_import SET username = lower(btrim(username)), email = lower(btrim(email))";
+    private static final String ANALYZE_STAGING = "ANALYZE user_import";
+    private static final String FIND_INVALID_ROW = "SELECT row_number FROM user_import "
+            + "WHERE coalesce(username, '') = '' OR coalesce(email, '') = '' OR password IS NULL OR password !~ '^\\$2[aby]?\\$\\d{2}\\$' "
+            + "ORDER BY row_number LIMIT 1";
+    private static final String FIND_DUPLICATE_USERNAME = "SELECT username FROM user_import GROUP BY username HAVING count(*) > 1 LIMIT 1";
+    private static final String FIND_DUPLICATE_EMAIL = "SELECT email FROM user_import GROUP BY email HAVING count(*) > 1 LIMIT 1";
+    private static final String FIND_TAKEN_EMAIL = "SELECT i.email FROM user_import i JOIN users u ON lower(u.email) = i.email "
+            + "WHERE lower(u.username) <> i.username ORDER BY i.row_number LIMIT 1";
+    private static final String FIND_UNKNOWN_ROLES = "SELECT DISTINCT trim(role) FROM user_import, unnest(string_to_array(roles, '|')) AS role "
+            + "WHERE trim(role) <> '' AND trim(role) NOT IN (SELECT name FROM roles) LIMIT 10";
+    private static final String CREATE_UPSERTED = "CREATE TEMP TABLE user_import_upserted (id BIGINT PRIMARY KEY, username TEXT NOT NULL, "
+            + "inserted BOOLEAN NOT NULL) ON COMMIT DROP";
+    private static final String UPSERT_USERS = "WITH updated AS ("
+            + "UPDATE users u SET email = i.email, password = i.password FROM user_import i "
+            + "WHERE lower(u.username) = i.username AND (u.email, u.password) IS DISTINCT FROM (i.email, i.password) "
+            + "RETURNING u.id, lower(u.username) AS username), "
+            + "inserted AS ("
+            + "INSERT INTO users (username, email, password) SELECT i.username, i.email, i.password FROM user_import i "
+            + "WHERE NOT EXISTS (SELECT 1 FROM users u WHERE lower(u.username) = i.username) ORDER BY i.row_number "
+            + "RETURNING id, username) "
+            + "INSERT INTO user_import_upserted SELECT id, username, true FROM inserted UNION ALL SELECT id, username, false FROM updated";
+    private static final String COUNT_UPSERTED = "SELECT count(*) FILTER (WHERE inserted), count(*) FILTER (WHERE NOT inserted) FROM user_import_upserted";
+    private static final String CREATE_CHANGED_ROLES = "CREATE TEMP TABLE user_import_roles (id BIGINT PRIMARY KEY, username TEXT NOT NULL, "
+            + "roles TEXT[] NOT NULL) ON COMMIT DROP";
+    private static final String FIND_CHANGED_ROLES = "INSERT INTO user_import_roles SELECT u.id, u.username, n.roles "
+            + "FROM user_import i JOIN users u ON lower(u.username) = i.username "
+            + "CROSS JOIN LATERAL (SELECT ARRAY(SELECT DISTINCT trim(role) FROM unnest(string_to_array(coalesce(i.roles, ''), '|')) AS role "
+            + "WHERE trim(role) <> '' ORDER BY 1) AS roles) n "
+            + "WHERE n.roles IS DISTINCT FROM ARRAY(SELECT r.name FROM user_roles ur JOIN roles r ON r.id = ur.role_id "
+            + "WHERE ur.user_id = u.id ORDER BY r.name)";
+    private static final String DELETE_CHANGED_ROLES = "DELETE FROM user_roles ur USING user_import_roles c WHERE ur.user_id = c.id";
+    private static final String INSERT_CHANGED_ROLES = "INSERT INTO user_roles (user_id, role_id) SELECT c.id, r.id "
+            + "FROM user_import_roles c CROSS JOIN LATERAL unnest(c.roles) AS role(name) JOIN roles r ON r.name = role.name";
+    private static final String EXISTING_USERS = "NOT EXISTS (SELECT 1 FROM user_import_upserted p WHERE p.id = c.id AND p.inserted)";
+    private static final String BUMP_ROLES_VERSION = "UPDATE users u SET roles_version = u.roles_version + 1 FROM user_import_roles c "
+            + "WHERE u.id = c.id AND " + EXISTING_USERS;
+    private static final String APPEND_ROLE_CHANGES = "INSERT INTO role_changes (username, roles) SELECT username, roles FROM user_import_roles ORDER BY id";
+    private static final String FIND_CHANGED_EXISTING = "SELECT username FROM user_import_upserted WHERE NOT inserted "
+            + "UNION SELECT lower(c.username) FROM user_import_roles c WHERE " + EXISTING_USERS;
+    private static final String BUMP_TOKEN_VERSION = "UPDATE users SET token_version = nextval('users_token_version_seq') WHERE id IN ("
+            + "SELECT id FROM user_import_upserted WHERE NOT inserted "
+            + "UNION SELECT c.id FROM user_import_roles c WHERE " + EXISTING_USERS + ")";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Выгружает всех пользователей с ролями в поток в порядке id
+     *
+     * @return число пользователей
+     */
+    public long copyOut(OutputStream out) {
+        return copy(connection -> connection.getCopyAPI().copyOut(EXPORT, out));
+    }
+
+    /**
+     * Создает временную таблицу user_import, загружает в нее CSV и приводит логины и email к канонической форме
+     *
+     * @return число строк
+     */
+    public long copyIntoStaging(InputStream in) {
+        jdbcTemplate.execute(CREATE_STAGING);
+        long rows = copy(connection -> connection.getCopyAPI().copyIn(COPY_INTO_STAGING, in));
+        jdbcTemplate.update(CANONICALIZE_STAGING);
+        jdbcTemplate.execute(ANALYZE_STAGING);
+        return rows;
+    }
+
+    /**
+     * Номер первой строки данных без логина, email или с паролем, не похожим на хеш BCrypt
+     */
+    public Optional<Long> findInvalidRow() {
+        return jdbcTemplate.queryForList(FIND_INVALID_ROW, Long.class).stream().findFirst();
+    }
+
+    public Optional<String> findDuplicateUsername() {
+        return jdbcTemplate.queryForList(FIND_DUPLICATE_USERNAME, String.class).stream().findFirst();
+    }
+
+    /**
+     * Email, который встречается в файле больше одного раза
+     */
+    public Optional<String> findDuplicateEmail() {
+        return jdbcTemplate.queryForList(FIND_DUPLICATE_EMAIL, String.class).stream().findFirst();
+    }
+
+    /**
+     * Email из файла, уже принадлежащий другому существующему пользователю
+     */
+    public Optional<String> findTakenEmail() {
+        return jdbcTemplate.queryForList(FIND_TAKEN_EMAIL, String.class).stream().findFirst();
+    }
+
+    /**
+     * Роли из файла, которых нет в таблице roles (не больше 10)
+     */
+    public List<String> findUnknownRoles() {
+        return jdbcTemplate.queryForList(FIND_UNKNOWN_ROLES, String.class);
+    }
+
+    /**
+     * Переносит загруженные строки: создает новых пользователей, обновляет email и пароль существующих,
+     * заменяет роли только тем, у кого набор ролей отличается, и записывает эти изменения в журнал role_changes.
+     * Версии ролей и токенов увеличиваются только существующим пользователям с измененными данными или ролями:
+     * созданным этим же импортом кешировать и отзывать нечего, а лишнее обновление строк users заметно удлиняет импорт.
+     * Существующие обновляются и новые вставляются двумя подзапросами одного запроса, а не INSERT ... ON CONFLICT:
+     * у секционированной таблицы users (changeset partition-users-by-hash) нет общего уникального индекса по lower(username)
+     */
+    public UserImportResultDto merge(long rows) {
+        jdbcTemplate.execute(CREATE_UPSERTED);
+        jdbcTemplate.update(UPSERT_USERS);
+        long[] upserted = jdbcTemplate.queryForObject(COUNT_UPSERTED, (resultSet, rowNum) -> new long[]{resultSet.getLong(1), resultSet.getLong(2)});
+        jdbcTemplate.execute(CREATE_CHANGED_ROLES);
+        int rolesChanged = jdbcTemplate.update(FIND_CHANGED_ROLES);
+        if (rolesChanged > 0) {
+            jdbcTemplate.update(DELETE_CHANGED_ROLES);
+            jdbcTemplate.update(INSERT_CHANGED_ROLES);
+            jdbcTemplate.update(BUMP_ROLES_VERSION);
+            jdbcTemplate.query(RoleChangeRepository.ASSIGN_XID, resultSet -> null);
+            jdbcTemplate.update(APPEND_ROLE_CHANGES);
+        }
+        jdbcTemplate.query(TokenVersionRepository.LOCK, resultSet -> null, TokenVersionRepository.LOCK_KEY);
+        jdbcTemplate.update(BUMP_TOKEN_VERSION);
+        return UserImportResultDto.builder()
+                .rows(rows)
+                .created(upserted[0])
+                .updated(upserted[1])
+                .rolesChanged(rolesChanged)
+                .build();
+    }
+
+    /**
+     * Канонические логины существующих пользователей, у которых импорт изменил данные или роли.
+     * Вызывается после {@link #merge(long)} в той же транзакции
+     */
+    public List<String> findChangedExistingUsernames() {
+        return jdbcTemplate.queryForList(FIND_CHANGED_EXISTING, String.class);
+    }
+
+    private long copy(CopyOperation operation) {
+        Long rows = jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            try {
+                return operation.run(connection.unwrap(PGConnection.class));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return rows == null ? 0 : rows;
+    }
+
+    @FunctionalInterface
+    private interface CopyOperation {
+
+        long run(PGConnection connection) throws SQLException, IOException;
+
+    }
+
+}
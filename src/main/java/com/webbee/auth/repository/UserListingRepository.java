@@ -0,0 +1,125 @@
+package com.webbee.auth.repository;
+
+import com.webbee.auth.dto.UserListItemDto;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Репозиторий выгрузки списка пользователей с ролями.
+ * Строки читаются курсором по fetchSize штук и сразу передаются обработчику, не накапливаясь ни в памяти,
+ * ни в контексте персистентности. Продолжение выгрузки - по ключу users.id (keyset), без OFFSET.
+ * С фильтром по роли выборка идет от индекса idx_user_roles_role_id_user_id (role_id, user_id),
+ * который уже упорядочен по user_id, поэтому страница участников роли не требует просмотра всех пользователей.
+ * Идентификатор роли читается отдельно и передается параметром: с ним планировщик знает, насколько роль редкая.
+ * Курсор PostgreSQL работает только внутри транзакции, поэтому вызывать нужно в транзакции.
+ */
+@Repository
+@RequiredArgsConstructor
+public class UserListingRepository {
+
+    private static final String SELECT_COLUMNS = "SELECT u.id, u.username, u.email, "
+            + "ARRAY(SELECT r.name FROM user_roles ur JOIN roles r ON r.id = ur.role_id WHERE ur.user_id = u.id ORDER BY r.name)";
+    private static final String FROM_USERS = " FROM users u WHERE u.id > ?";
+    private static final String FROM_ROLE_MEMBERS = " FROM user_roles m JOIN users u ON u.id = m.user_id "
+            + "WHERE m.role_id = ? AND m.user_id > ?";
+    private static final String USERNAME_PREFIX_FILTER = " AND u.username LIKE ?";
+    private static final String ORDER_BY_ID = " ORDER BY u.id";
+    private static final String ORDER_BY_MEMBER_ID = " ORDER BY m.user_id";
+    private static final String LIMIT = " LIMIT ?";
+    private static final String SELECT_ROLE_ID = "SELECT id FROM roles WHERE name = ?";
+    private static final String COUNT_BY_ROLE = "SELECT r.name, count(m.user_id) FROM roles r "
+            + "LEFT JOIN user_roles m ON m.role_id = r.id GROUP BY r.id, r.name ORDER BY r.name";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Передает обработчику пользователей с id больше query.afterId() в порядке id
+     */
+    public void forEachUser(Query query, int fetchSize, Consumer<UserListItemDto> consumer) {
+        Long roleId = null;
+        if (query.role() != null) {
+            List<Long> roleIds = jdbcTemplate.queryForList(SELECT_ROLE_ID, Long.class, query.role());
+            if (roleIds.isEmpty()) {
+                return;
+            }
+            roleId = roleIds.get(0);
+        }
+        Statement select = select(query, roleId);
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(select.sql());
+            statement.setFetchSize(fetchSize);
+            for (int i = 0; i < select.parameters().size(); i++) {
+                statement.setObject(i + 1, select.parameters().get(i));
+            }
+            return statement;
+        }, resultSet -> {
+            Array roles = resultSet.getArray(4);
+            consumer.accept(UserListItemDto.builder()
+                    .id(resultSet.getLong(1))
+                    .username(resultSet.getString(2))
+                    .email(resultSet.getString(3))
+                    .roles(Arrays.asList((String[]) roles.getArray()))
+                    .build());
+            roles.free();
+        });
+    }
+
+    /**
+     * Число пользователей каждой роли каталога, включая роли без пользователей
+     */
+    public Map<String, Long> countUsersByRole() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        jdbcTemplate.query(COUNT_BY_ROLE, resultSet -> {
+            counts.put(resultSet.getString(1), resultSet.getLong(2));
+        });
+        return counts;
+    }
+
+    static Statement select(Query query, Long roleId) {
+        StringBuilder sql = new StringBuilder(SELECT_COLUMNS);
+        List<Object> parameters = new ArrayList<>(4);
+        if (roleId != null) {
+            sql.append(FROM_ROLE_MEMBERS);
+            parameters.add(roleId);
+        } else {
+            sql.append(FROM_USERS);
+        }
+        parameters.add(query.afterId());
+        if (query.usernamePrefix() != null) {
+            sql.append(USERNAME_PREFIX_FILTER);
+            parameters.add(escapeLike(query.usernamePrefix()) + "%");
+        }
+        sql.append(roleId != null ? ORDER_BY_MEMBER_ID : ORDER_BY_ID);
+        if (query.limit() != null) {
+            sql.append(LIMIT);
+            parameters.add(query.limit());
+        }
+        return new Statement(sql.toString(), parameters);
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /**
+     * Условия выгрузки. role и usernamePrefix необязательны, limit = null - до конца таблицы
+     */
+    public record Query(String role, String usernamePrefix, long afterId, Integer limit) {
+
+    }
+
+    record Statement(String sql, List<Object> parameters) {
+
+    }
+
+}
@@ -1,9 +1,19 @@
 package com.webbee.auth.repository;
 
 import com.webbee.auth.entity.User;
+import com.webbee.auth.repository.projection.TransactionSnapshotView;
+import com.webbee.auth.repository.projection.UserIdentityView;
+import com.webbee.auth.repository.projection.UserRolesVersionView;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Репозиторий для работы с сущностью User
@@ -11,13 +21,51 @@ import java.util.Optional;
 public interface UserRepository extends JpaRepository<User, Long> {
 
     /**
-     * Находит пользователя по имени
+     * Находит пользователя по имени без учета регистра (индекс uk_users_username_lower)
      */
-    Optional<User> findByUsername(String username);
+    @Query("SELECT u FROM User u WHERE lower(u.username) = lower(:username)")
+    Optional<User> findByUsername(@Param("username") String username);
 
     /**
-     * Находит пользователя по email
+     * Находит пользователя по email без учета регистра (индекс uk_users_email_lower)
      */
-    Optional<User> findByEmail(String email);
+    @Query("SELECT u FROM User u WHERE lower(u.email) = lower(:email)")
+    Optional<User> findByEmail(@Param("email") String email);
+
+    /**
+     * Проверяет существование пользователя с указанным именем без учета регистра
+     */
+    @Query("SELECT CASE WHEN count(u) > 0 THEN true ELSE false END FROM User u WHERE lower(u.username) = lower(:username)")
+    boolean existsByUsername(@Param("username") String username);
+
+    /**
+     * Потоково читает логины и email пользователей с идентификатором больше указанного.
+     * Должен вызываться внутри транзакции, иначе драйвер PostgreSQL загрузит всю выборку в память
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<UserIdentityView> findByIdGreaterThanOrderByIdAsc(Long id);
+
+    /**
+     * Читает версию ролей пользователя без загрузки ролей, логин сравнивается без учета регистра
+     */
+    @Query("SELECT u.id AS id, u.rolesVersion AS rolesVersion FROM User u WHERE lower(u.username) = lower(:username)")
+    Optional<UserRolesVersionView> findRolesVersionByUsername(@Param("username") String username);
+
+    /**
+     * Увеличивает версию ролей пользователя одним UPDATE, параллельные изменения не теряют увеличение
+     */
+    @Modifying
+    @Query("UPDATE User u SET u.rolesVersion = u.rolesVersion + 1 WHERE u.id = :id")
+    int incrementRolesVersion(@Param("id") Long id);
+
+    /**
+     * Возвращает границы снимка текущей транзакции.
+     * В транзакции REPEATABLE READ первый запрос фиксирует снимок, которым читаются и все последующие запросы
+     */
+    @Query(value = "SELECT pg_snapshot_xmin(s)::text::bigint AS xmin, pg_snapshot_xmax(s)::text::bigint AS xmax FROM pg_current_snapshot() s", nativeQuery = true)
+    TransactionSnapshotView currentSnapshot();
 
 }
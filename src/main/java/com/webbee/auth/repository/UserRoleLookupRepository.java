@@ -0,0 +1,49 @@
+package com.webbee.auth.repository;
+
+import com.webbee.auth.utils.Identities;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Репозиторий для пакетного чтения ролей пользователей без загрузки сущностей.
+ */
+@Repository
+@RequiredArgsConstructor
+public class UserRoleLookupRepository {
+
+    private static final String SELECT_ROLES = "SELECT u.username, r.name FROM users u "
+            + "JOIN user_roles ur ON ur.user_id = u.id "
+            + "JOIN roles r ON r.id = ur.role_id "
+            + "WHERE lower(u.username) = ANY(?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Читает роли всех указанных пользователей одним запросом lower(username) = ANY(?) по индексу uk_users_username_lower.
+     * Логины сравниваются без учета регистра, ключи результата - логины в том виде, в котором они сохранены.
+     * Пользователи, которых нет или у которых нет ролей, в результат не попадают
+     */
+    public Map<String, List<String>> findRolesByUsernames(Collection<String> usernames) {
+        Map<String, List<String>> roles = new LinkedHashMap<>();
+        if (usernames.isEmpty()) {
+            return roles;
+        }
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(SELECT_ROLES);
+            statement.setArray(1, connection.createArrayOf("text", usernames.stream().map(Identities::canonical).distinct().toArray()));
+            return statement;
+        }, resultSet -> {
+            roles.computeIfAbsent(resultSet.getString(1), username -> new ArrayList<>(2)).add(resultSet.getString(2));
+        });
+        return roles;
+    }
+
+}
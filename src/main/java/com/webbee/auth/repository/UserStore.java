@@ -0,0 +1,31 @@
+package com.webbee.auth.repository;
+
+import com.webbee.auth.entity.User;
+import com.webbee.auth.repository.projection.UserRolesVersionView;
+
+import java.util.Optional;
+
+/**
+ * Чтение пользователей на горячих путях: вход, чтение ролей, проверка доступности логина.
+ * Реализация выбирается свойством user-store.backend: jpa ({@link JpaUserStore}, по умолчанию)
+ * или jdbc ({@link JdbcUserStore}). Запись пользователей и ролей всегда идет через {@link UserRepository}.
+ * Логин сравнивается без учета регистра.
+ */
+public interface UserStore {
+
+    /**
+     * Находит пользователя вместе с ролями. Возвращенный объект нельзя использовать для изменения пользователя
+     */
+    Optional<User> findByUsername(String username);
+
+    /**
+     * Проверяет существование пользователя с указанным именем
+     */
+    boolean existsByUsername(String username);
+
+    /**
+     * Читает версию ролей пользователя без загрузки ролей
+     */
+    Optional<UserRolesVersionView> findRolesVersionByUsername(String username);
+
+}
@@ -0,0 +1,13 @@
+package com.webbee.auth.repository.projection;
+
+/**
+ * Проекция границ снимка текущей транзакции PostgreSQL.
+ * xmin - самая старая еще не завершенная транзакция, xmax - первая еще не выданная.
+ */
+public interface TransactionSnapshotView {
+
+    Long getXmin();
+
+    Long getXmax();
+
+}
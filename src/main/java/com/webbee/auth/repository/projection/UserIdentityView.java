@@ -0,0 +1,14 @@
+package com.webbee.auth.repository.projection;
+
+/**
+ * Проекция идентификационных полей пользователя без загрузки сущности и её ролей.
+ */
+public interface UserIdentityView {
+
+    Long getId();
+
+    String getUsername();
+
+    String getEmail();
+
+}
@@ -0,0 +1,12 @@
+package com.webbee.auth.repository.projection;
+
+/**
+ * Проекция версии ролей пользователя без загрузки сущности и её ролей.
+ */
+public interface UserRolesVersionView {
+
+    Long getId();
+
+    Long getRolesVersion();
+
+}
@@ -1,14 +1,18 @@
 package com.webbee.auth.security.filter;
 
 import com.webbee.auth.security.model.TokenAuthentication;
+import com.webbee.auth.security.model.TokenData;
 import com.webbee.auth.security.service.JwtService;
+import com.webbee.auth.security.service.TokenVersionRegistry;
 import com.webbee.auth.utils.JwtUtils;
+import io.jsonwebtoken.ExpiredJwtException;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.CredentialsExpiredException;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -18,13 +22,15 @@ import java.util.Optional;
 
 /**
  * Фильтр для обработки JWT.
- * Этот фильтр перехватывает все HTTP запросы и проверяет наличие JWT токена
+ * Этот фильтр перехватывает все HTTP запросы и проверяет наличие JWT токена.
+ * JWT с версией старше текущей версии пользователя в {@link TokenVersionRegistry} отклоняется
  */
 @Component
 @RequiredArgsConstructor
 public class JwtFilter extends OncePerRequestFilter {
 
     private final JwtService jwtService;
+    private final TokenVersionRegistry tokenVersionRegistry;
 
     @Override
     protected void doFilterInternal(
@@ -36,14 +42,23 @@ public class JwtFilter extends OncePerRequestFilter {
         String token = JwtUtils.parseToken(request);
 
         if (Optional.ofNullable(token).isPresent()) {
-            if (jwtService.isTokenExpired(token)) {
+            TokenData tokenData;
+            try {
+                tokenData = jwtService.parseToken(token);
+            } catch (ExpiredJwtException | CredentialsExpiredException e) {
                 response.setStatus(HttpStatus.UNAUTHORIZED.value());
                 response.setContentType("application/json");
                 response.getWriter().write("{\"error\": \"Token has been expired\"}");
                 return;
             }
+            if (tokenData.getTokenVersion() != null && !tokenVersionRegistry.isCurrent(tokenData.getId(), tokenData.getTokenVersion())) {
+                response.setStatus(HttpStatus.UNAUTHORIZED.value());
+                response.setContentType("application/json");
+                response.getWriter().write("{\"error\": \"Token has been revoked\"}");
+                return;
+            }
 
-            TokenAuthentication authentication = new TokenAuthentication(jwtService.parseToken(token));
+            TokenAuthentication authentication = new TokenAuthentication(tokenData);
             SecurityContextHolder.getContext().setAuthentication(authentication);
         }
 
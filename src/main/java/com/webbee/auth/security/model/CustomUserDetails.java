@@ -17,12 +17,26 @@ public class CustomUserDetails implements UserDetails {
     private Collection<? extends GrantedAuthority> authorities;
     @Getter
     private String email;
+    @Getter
+    private Long id;
+    @Getter
+    private long tokenVersion;
 
     public CustomUserDetails(String username, String password, Collection<? extends GrantedAuthority> authorities, String email) {
+        this(username, password, authorities, email, null);
+    }
+
+    public CustomUserDetails(String username, String password, Collection<? extends GrantedAuthority> authorities, String email, Long id) {
+        this(username, password, authorities, email, id, 0L);
+    }
+
+    public CustomUserDetails(String username, String password, Collection<? extends GrantedAuthority> authorities, String email, Long id, long tokenVersion) {
         this.username = username;
         this.password = password;
         this.authorities = authorities;
         this.email = email;
+        this.id = id;
+        this.tokenVersion = tokenVersion;
     }
 
     @Override
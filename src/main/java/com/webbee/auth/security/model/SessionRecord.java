@@ -0,0 +1,9 @@
+package com.webbee.auth.security.model;
+
+/**
+ * Запись серверной сессии для непрозрачного токена.
+ * roleMask - маска ролей по каталогу RoleCatalog без учета иерархии
+ */
+public record SessionRecord(long userId, String username, long roleMask, long expiresAtMillis) {
+
+}
@@ -22,4 +22,14 @@ public class TokenData {
     private String token;
     private List<? extends GrantedAuthority> authorities;
 
+    /**
+     * Маска ролей с учетом иерархии, см. CompiledRoleHierarchy
+     */
+    private long roleMask;
+
+    /**
+     * Версия токенов пользователя на момент выпуска, null для токенов сессий
+     */
+    private Long tokenVersion;
+
 }
@@ -0,0 +1,177 @@
+package com.webbee.auth.security.service;
+
+import com.webbee.auth.security.model.TokenAuthentication;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.access.hierarchicalroles.RoleHierarchy;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Иерархия ролей, скомпилированная при старте в битовые маски замыканий.
+ * Формат настройки security.role-hierarchy: "SUPERUSER > DEAL_SUPERUSER, CONTRACTOR_SUPERUSER; DEAL_SUPERUSER > CREDIT_USER".
+ * Для каждой роли каталога хранится маска всех ролей, которые она включает,
+ * поэтому проверка роли сводится к одной битовой операции над маской из токена.
+ */
+@Component
+public class CompiledRoleHierarchy implements RoleHierarchy {
+
+    private static final String ADMIN_ROLE = "ADMIN";
+
+    private final RoleCatalog roleCatalog;
+    private final long[] closureByBit;
+    private final long adminBit;
+
+    public CompiledRoleHierarchy(RoleCatalog roleCatalog,
+                                 @Value("${security.role-hierarchy:}") String hierarchy) {
+        this.roleCatalog = roleCatalog;
+        this.closureByBit = compile(roleCatalog, hierarchy);
+        this.adminBit = roleBit(ADMIN_ROLE);
+    }
+
+    /**
+     * Маска с учетом всех ролей, включенных в роли исходной маски
+     */
+    public long effectiveMask(long mask) {
+        long result = 0;
+        long remaining = mask;
+        while (remaining != 0) {
+            result |= closureByBit[Long.numberOfTrailingZeros(remaining)];
+            remaining &= remaining - 1;
+        }
+        return result;
+    }
+
+    /**
+     * Маска с учетом иерархии для набора authority. Роли вне каталога не учитываются
+     */
+    public long effectiveMask(Collection<? extends GrantedAuthority> authorities) {
+        long mask = 0;
+        for (GrantedAuthority authority : authorities) {
+            int bit = roleCatalog.bitOf(authority.getAuthority());
+            if (bit >= 0) {
+                mask |= 1L << bit;
+            }
+        }
+        return effectiveMask(mask);
+    }
+
+    /**
+     * Маска для аутентификации. Для JWT маска вычисляется один раз при разборе токена
+     */
+    public long effectiveMask(Authentication authentication) {
+        if (authentication == null || !authentication.isAuthenticated()) {
+            return 0;
+        }
+        if (authentication instanceof TokenAuthentication tokenAuthentication) {
+            return tokenAuthentication.getTokenData().getRoleMask();
+        }
+        return effectiveMask(authentication.getAuthorities());
+    }
+
+    /**
+     * Маска одной роли для последующих проверок через {@link #hasRole(Authentication, long)}
+     */
+    public long roleBit(String role) {
+        int bit = roleCatalog.bitOf(role);
+        if (bit < 0) {
+            throw new IllegalArgumentException("Unknown role: " + role);
+        }
+        return 1L << bit;
+    }
+
+    public boolean hasRole(Authentication authentication, long roleBit) {
+        return (effectiveMask(authentication) & roleBit) != 0;
+    }
+
+    /**
+     * Есть ли у пользователя роль ADMIN напрямую или через иерархию
+     */
+    public boolean isAdmin(Authentication authentication) {
+        return hasRole(authentication, adminBit);
+    }
+
+    /**
+     * Правило доступа для цепочки фильтров, заменяющее hasRole
+     */
+    public <T> AuthorizationManager<T> requireRole(String role) {
+        long roleBit = roleBit(role);
+        return (authentication, context) -> new AuthorizationDecision(hasRole(authentication.get(), roleBit));
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getReachableGrantedAuthorities(Collection<? extends GrantedAuthority> authorities) {
+        if (authorities == null || authorities.isEmpty()) {
+            return List.of();
+        }
+        List<GrantedAuthority> reachable = new ArrayList<>(roleCatalog.decode(effectiveMask(authorities)));
+        for (GrantedAuthority authority : authorities) {
+            if (roleCatalog.bitOf(authority.getAuthority()) < 0) {
+                reachable.add(authority);
+            }
+        }
+        return reachable;
+    }
+
+    private static long[] compile(RoleCatalog roleCatalog, String hierarchy) {
+        long[] closure = new long[roleCatalog.size()];
+        for (int bit = 0; bit < closure.length; bit++) {
+            closure[bit] = 1L << bit;
+        }
+        long[] direct = new long[closure.length];
+        for (String rule : hierarchy.split(";")) {
+            if (rule.isBlank()) {
+                continue;
+            }
+            String[] parts = rule.split(">");
+            if (parts.length != 2) {
+                throw new IllegalStateException("Invalid role hierarchy rule: " + rule.trim());
+            }
+            int parent = knownBit(roleCatalog, parts[0]);
+            for (String child : parts[1].split(",")) {
+                direct[parent] |= 1L << knownBit(roleCatalog, child);
+            }
+        }
+        for (int bit = 0; bit < closure.length; bit++) {
+            closure[bit] |= direct[bit];
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int bit = 0; bit < closure.length; bit++) {
+                long expanded = closure[bit];
+                for (long included = closure[bit]; included != 0; included &= included - 1) {
+                    expanded |= closure[Long.numberOfTrailingZeros(included)];
+                }
+                if (expanded != closure[bit]) {
+                    closure[bit] = expanded;
+                    changed = true;
+                }
+            }
+        }
+        for (int bit = 0; bit < closure.length; bit++) {
+            for (long children = direct[bit]; children != 0; children &= children - 1) {
+                if ((closure[Long.numberOfTrailingZeros(children)] & (1L << bit)) != 0) {
+                    String role = roleCatalog.decode(1L << bit).get(0).getAuthority();
+                    throw new IllegalStateException("Role hierarchy contains a cycle through " + role);
+                }
+            }
+        }
+        return closure;
+    }
+
+    private static int knownBit(RoleCatalog roleCatalog, String role) {
+        int bit = roleCatalog.bitOf(role.trim());
+        if (bit < 0) {
+            throw new IllegalStateException("Role hierarchy references unknown role: " + role.trim());
+        }
+        return bit;
+    }
+
+}
@@ -0,0 +1,224 @@
+package com.webbee.auth.security.service;
+
+import com.webbee.auth.security.model.CustomUserDetails;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Кеш учетных данных недавно вошедших пользователей (хеш пароля, идентификатор, роли).
+ * Используется только как запасной вариант: если для пользователя есть свежая запись, запрос в базу
+ * выполняется в отдельном пуле и ожидается не дольше credential-cache.latency-threshold.
+ * Если база не ответила за это время или пул запросов занят, вход обслуживается из кеша,
+ * а ответ базы, пришедший позже, обновляет запись. Запись старше credential-cache.freshness не используется никогда.
+ * При изменении ролей или пароля запись удаляется через {@link #invalidate(String)}.
+ */
+@Component
+public class CredentialCache {
+
+    private final boolean enabled;
+    private final int maxSize;
+    private final long freshnessNanos;
+    private final long latencyThresholdNanos;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final ThreadPoolExecutor lookups;
+    private final Counter servedOnSlowDatabase;
+    private final Counter servedOnSaturation;
+
+    public CredentialCache(@Value("${credential-cache.enabled:false}") boolean enabled,
+                           @Value("${credential-cache.max-size:10000}") int maxSize,
+                           @Value("${credential-cache.freshness:60s}") Duration freshness,
+                           @Value("${credential-cache.latency-threshold:150ms}") Duration latencyThreshold,
+                           @Value("${credential-cache.lookup-threads:16}") int lookupThreads,
+                           MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxSize = maxSize;
+        this.freshnessNanos = freshness.toNanos();
+        this.latencyThresholdNanos = latencyThreshold.toNanos();
+        this.lookups = enabled ? newLookupExecutor(lookupThreads) : null;
+        this.servedOnSlowDatabase = servedCounter(meterRegistry, "slow-database");
+        this.servedOnSaturation = servedCounter(meterRegistry, "lookup-saturated");
+        Gauge.builder("auth.credential-cache.size", entries, Map::size)
+                .description("Пользователи в кеше учетных данных")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Загружает пользователя через loader с защитой от медленной базы.
+     * Без свежей записи в кеше loader вызывается в текущем потоке, как обычно
+     */
+    public CustomUserDetails load(String username, Function<String, CustomUserDetails> loader) {
+        if (!enabled) {
+            return loader.apply(username);
+        }
+        Entry cached = freshEntry(username);
+        long generation = invalidations.get();
+        if (cached == null) {
+            return store(username, loader.apply(username), generation);
+        }
+        CompletableFuture<CustomUserDetails> lookup;
+        try {
+            lookup = CompletableFuture.supplyAsync(() -> loader.apply(username), lookups);
+        } catch (RejectedExecutionException e) {
+            servedOnSaturation.increment();
+            return cached.details();
+        }
+        lookup.whenComplete((details, failure) -> {
+            if (details != null) {
+                store(username, details, generation);
+            } else if (failure != null && failure.getCause() instanceof UsernameNotFoundException) {
+                entries.remove(username);
+            }
+        });
+        try {
+            return lookup.get(latencyThresholdNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            servedOnSlowDatabase.increment();
+            return cached.details();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return cached.details();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Удаляет запись пользователя. Внутри транзакции запись удаляется еще раз после фиксации,
+     * чтобы параллельный вход не вернул в кеш данные, прочитанные до изменения
+     */
+    public void invalidate(String username) {
+        if (!enabled) {
+            return;
+        }
+        evict(username);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(username);
+                }
+            });
+        }
+    }
+
+    /**
+     * Удаляет все записи, например после массового импорта пользователей. Внутри транзакции - еще раз после ее завершения
+     */
+    public void invalidateAll() {
+        if (!enabled) {
+            return;
+        }
+        evictAll();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evictAll();
+                }
+            });
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (lookups != null) {
+            lookups.shutdownNow();
+        }
+    }
+
+    private Entry freshEntry(String username) {
+        Entry entry = entries.get(username);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.loadedAtNanos() >= freshnessNanos) {
+            entries.remove(username, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Сохраняет результат запроса, если с его начала не было инвалидации.
+     * Если кеш заполнен и после удаления устаревших записей места не стало, результат не сохраняется
+     */
+    private CustomUserDetails store(String username, CustomUserDetails details, long generation) {
+        if (invalidations.get() != generation) {
+            return details;
+        }
+        if (entries.size() >= maxSize && !entries.containsKey(username)) {
+            purgeExpired();
+            if (entries.size() >= maxSize) {
+                return details;
+            }
+        }
+        Entry entry = new Entry(details, System.nanoTime());
+        entries.put(username, entry);
+        if (invalidations.get() != generation) {
+            entries.remove(username, entry);
+        }
+        return details;
+    }
+
+    private void evict(String username) {
+        invalidations.incrementAndGet();
+        entries.remove(username);
+    }
+
+    private void evictAll() {
+        invalidations.incrementAndGet();
+        entries.clear();
+    }
+
+    private void purgeExpired() {
+        long now = System.nanoTime();
+        entries.values().removeIf(entry -> now - entry.loadedAtNanos() >= freshnessNanos);
+    }
+
+    private static ThreadPoolExecutor newLookupExecutor(int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(threads),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "credential-lookup-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    private static Counter servedCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("auth.credential-cache.served")
+                .description("Входы, обслуженные из кеша учетных данных")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    private record Entry(CustomUserDetails details, long loadedAtNanos) {
+
+    }
+
+}
@@ -0,0 +1,249 @@
+package com.webbee.auth.security.service;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+/**
+ * Выпуск JWT с подписью HS256 без промежуточных объектов.
+ * Заголовок закодирован заранее, JSON payload пишется байтами в буфер потока,
+ * Base64URL кодируется в тот же переиспользуемый буфер, подпись считает {@link Mac} потока.
+ * На каждый токен создается только итоговая строка. Результат проверяется обычным парсером JJWT.
+ */
+final class Hs256JwtEncoder {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int SIGNATURE_SIZE = 32;
+    private static final byte[] BASE64URL = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEADER = (base64Url("{\"alg\":\"HS256\"}".getBytes(StandardCharsets.US_ASCII)) + ".")
+            .getBytes(StandardCharsets.US_ASCII);
+    private static final int INITIAL_PAYLOAD_SIZE = 512;
+
+    private final SecretKey key;
+    private final ThreadLocal<Writer> writers;
+
+    Hs256JwtEncoder(SecretKey key) {
+        if (key.getEncoded().length < SIGNATURE_SIZE) {
+            throw new IllegalArgumentException("HS256 requires a key of at least 256 bits");
+        }
+        this.key = key;
+        this.writers = ThreadLocal.withInitial(() -> new Writer(newMac()));
+    }
+
+    /**
+     * Начинает новый токен. Писатель принадлежит текущему потоку и действителен до вызова {@link Writer#sign()}
+     */
+    Writer begin() {
+        Writer writer = writers.get();
+        writer.reset();
+        return writer;
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    private static String base64Url(byte[] source) {
+        byte[] target = new byte[encodedLength(source.length)];
+        return new String(target, 0, encode(source, source.length, target, 0), StandardCharsets.US_ASCII);
+    }
+
+    private static int encodedLength(int length) {
+        return (length * 4 + 2) / 3;
+    }
+
+    /**
+     * Base64URL без выравнивания. Возвращает позицию после последнего записанного символа
+     */
+    private static int encode(byte[] source, int length, byte[] target, int position) {
+        int full = length - length % 3;
+        for (int i = 0; i < full; i += 3) {
+            int bits = (source[i] & 0xFF) << 16 | (source[i + 1] & 0xFF) << 8 | source[i + 2] & 0xFF;
+            target[position++] = BASE64URL[bits >>> 18];
+            target[position++] = BASE64URL[bits >>> 12 & 0x3F];
+            target[position++] = BASE64URL[bits >>> 6 & 0x3F];
+            target[position++] = BASE64URL[bits & 0x3F];
+        }
+        if (length - full == 1) {
+            int bits = source[full] & 0xFF;
+            target[position++] = BASE64URL[bits >>> 2];
+            target[position++] = BASE64URL[bits << 4 & 0x3F];
+        } else if (length - full == 2) {
+            int bits = (source[full] & 0xFF) << 8 | source[full + 1] & 0xFF;
+            target[position++] = BASE64URL[bits >>> 10];
+            target[position++] = BASE64URL[bits >>> 4 & 0x3F];
+            target[position++] = BASE64URL[bits << 2 & 0x3F];
+        }
+        return position;
+    }
+
+    /**
+     * Запись claims одного токена. Методы возвращают тот же объект, чтобы вызовы можно было объединять в цепочку
+     */
+    static final class Writer {
+
+        private final Mac mac;
+        private final byte[] signature = new byte[SIGNATURE_SIZE];
+        private byte[] payload = new byte[INITIAL_PAYLOAD_SIZE];
+        private byte[] token = new byte[HEADER.length + encodedLength(INITIAL_PAYLOAD_SIZE) + 1 + encodedLength(SIGNATURE_SIZE)];
+        private int length;
+        private boolean firstElement;
+
+        private Writer(Mac mac) {
+            this.mac = mac;
+        }
+
+        Writer claim(String name, String value) {
+            name(name);
+            string(value);
+            return this;
+        }
+
+        Writer claim(String name, long value) {
+            name(name);
+            number(value);
+            return this;
+        }
+
+        Writer startArray(String name) {
+            name(name);
+            put('[');
+            firstElement = true;
+            return this;
+        }
+
+        Writer element(String value) {
+            if (!firstElement) {
+                put(',');
+            }
+            firstElement = false;
+            string(value);
+            return this;
+        }
+
+        Writer endArray() {
+            put(']');
+            return this;
+        }
+
+        /**
+         * Завершает payload, подписывает токен и возвращает его в компактной форме
+         */
+        String sign() {
+            put('}');
+            int size = HEADER.length + encodedLength(length) + 1 + encodedLength(SIGNATURE_SIZE);
+            if (token.length < size) {
+                token = new byte[Math.max(size, token.length * 2)];
+            }
+            System.arraycopy(HEADER, 0, token, 0, HEADER.length);
+            int position = encode(payload, length, token, HEADER.length);
+            try {
+                mac.update(token, 0, position);
+                mac.doFinal(signature, 0);
+            } catch (ShortBufferException e) {
+                throw new IllegalStateException(e);
+            }
+            token[position++] = '.';
+            position = encode(signature, SIGNATURE_SIZE, token, position);
+            return new String(token, 0, position, StandardCharsets.ISO_8859_1);
+        }
+
+        private void reset() {
+            length = 0;
+            put('{');
+        }
+
+        private void name(String name) {
+            if (length > 1) {
+                put(',');
+            }
+            string(name);
+            put(':');
+        }
+
+        private void number(long value) {
+            ensureCapacity(20);
+            if (value < 0) {
+                payload[length++] = '-';
+            } else {
+                value = -value;
+            }
+            int start = length;
+            do {
+                payload[length++] = (byte) ('0' - value % 10);
+                value /= 10;
+            } while (value != 0);
+            for (int left = start, right = length - 1; left < right; left++, right--) {
+                byte digit = payload[left];
+                payload[left] = payload[right];
+                payload[right] = digit;
+            }
+        }
+
+        /**
+         * Строка JSON в UTF-8: кавычки, обратная косая черта и управляющие символы экранируются,
+         * непарные суррогаты заменяются на '?', как это делает String.getBytes
+         */
+        private void string(String value) {
+            ensureCapacity(value.length() * 6 + 2);
+            payload[length++] = '"';
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    payload[length++] = '\\';
+                    payload[length++] = (byte) c;
+                } else if (c < 0x20) {
+                    payload[length++] = '\\';
+                    payload[length++] = 'u';
+                    payload[length++] = '0';
+                    payload[length++] = '0';
+                    payload[length++] = HEX[c >>> 4];
+                    payload[length++] = HEX[c & 0xF];
+                } else if (c < 0x80) {
+                    payload[length++] = (byte) c;
+                } else if (c < 0x800) {
+                    payload[length++] = (byte) (0xC0 | c >>> 6);
+                    payload[length++] = (byte) (0x80 | c & 0x3F);
+                } else if (Character.isSurrogate(c)) {
+                    if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                        payload[length++] = (byte) (0xF0 | codePoint >>> 18);
+                        payload[length++] = (byte) (0x80 | codePoint >>> 12 & 0x3F);
+                        payload[length++] = (byte) (0x80 | codePoint >>> 6 & 0x3F);
+                        payload[length++] = (byte) (0x80 | codePoint & 0x3F);
+                    } else {
+                        payload[length++] = '?';
+                    }
+                } else {
+                    payload[length++] = (byte) (0xE0 | c >>> 12);
+                    payload[length++] = (byte) (0x80 | c >>> 6 & 0x3F);
+                    payload[length++] = (byte) (0x80 | c & 0x3F);
+                }
+            }
+            payload[length++] = '"';
+        }
+
+        private void put(char c) {
+            ensureCapacity(1);
+            payload[length++] = (byte) c;
+        }
+
+        private void ensureCapacity(int additional) {
+            if (length + additional + 1 > payload.length) {
+                payload = Arrays.copyOf(payload, Math.max(length + additional + 1, payload.length * 2));
+            }
+        }
+
+    }
+
+}
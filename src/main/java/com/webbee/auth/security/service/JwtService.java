@@ -5,8 +5,10 @@ import com.webbee.auth.security.model.TokenData;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
 import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
+import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
@@ -20,6 +22,8 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -27,22 +31,71 @@ import java.util.stream.Collectors;
  * Сервис для работы с JWT (JSON Web Token) в системе аутентификации и авторизации.
  * Предоставляет полный набор функций для работы с JWT токенами, включая генерацию,
  * парсинг, валидацию и извлечение пользовательских данных.
+ * При jwt.compact-claims=true роли записываются битовой маской по каталогу {@link RoleCatalog},
+ * а имя пользователя передается только в subject. Разбор поддерживает оба формата.
+ * При jwt.token-mode=opaque вместо JWT выдаются непрозрачные токены сессий {@link SessionTokenService}.
+ * При jwt.fast-encoder=true токены выпускаются через {@link Hs256JwtEncoder} без промежуточных объектов, по умолчанию - через JJWT.
+ * Ненулевая версия токенов пользователя записывается в claim tokenVersion (tv в компактном формате),
+ * токены с устаревшей версией отклоняет {@link TokenVersionRegistry}. Версия берется только из тех же
+ * данных пользователя, что и роли: устаревшие роли не должны получить новую версию.
  */
 @Service
+@RequiredArgsConstructor
 public class JwtService {
 
+    static final String USERNAME_CLAIM = "username";
+    static final String ROLES_CLAIM = "roles";
+    static final String USER_ID_CLAIM = "userId";
+    static final String COMPACT_USER_ID_CLAIM = "uid";
+    static final String CATALOG_CLAIM = "rc";
+    static final String ROLE_MASK_CLAIM = "rm";
+    static final String TOKEN_VERSION_CLAIM = "tokenVersion";
+    static final String COMPACT_TOKEN_VERSION_CLAIM = "tv";
+
+    private final RoleCatalog roleCatalog;
+    private final CompiledRoleHierarchy roleHierarchy;
+    private final SessionTokenService sessionTokenService;
+
     @Value("${jwt.secret}")
     private String secretKey;
 
     @Value("${jwt.life-time}")
     private Long lifeTime;
 
+    @Value("${jwt.compact-claims:false}")
+    private boolean compactClaims;
+
+    @Value("${jwt.fast-encoder:false}")
+    private boolean fastEncoder;
+
+    private volatile SecretKey signingKey;
+    private volatile JwtParser parser;
+    private volatile Hs256JwtEncoder encoder;
+
     /**
      * Создает подписанный JWT токен, содержащий информацию о пользователе,
      * его ролях и времени создания. Токен подписывается секретным ключом
-     * и имеет ограниченное время жизни
+     * и имеет ограниченное время жизни.
+     * В режиме непрозрачных токенов возвращает токен сессии, если ее удалось сохранить
      */
     public String generateJwtToken(CustomUserDetails userDetails, Long userId) {
+        if (sessionTokenService.isEnabled()) {
+            Optional<String> sessionToken = sessionTokenService.createSession(userDetails.getUsername(), userId, userDetails.getAuthorities());
+            if (sessionToken.isPresent()) {
+                return sessionToken.get();
+            }
+        }
+        return generateSignedToken(userDetails, userId);
+    }
+
+    /**
+     * Создает подписанный JWT в любом режиме токенов, не создавая сессию.
+     * Используется прогревом, чтобы фиктивные сессии не попадали в хранилище и журнал сессий
+     */
+    public String generateSignedToken(CustomUserDetails userDetails, Long userId) {
+        if (fastEncoder) {
+            return encodeToken(userDetails, userId, System.currentTimeMillis());
+        }
         Map<String, Object> claims = buildClaims(userDetails, userId);
         Date now = new Date();
         Date expirationDate = new Date(now.getTime() + lifeTime);
@@ -56,33 +109,96 @@ public class JwtService {
                 .compact();
     }
 
+    /**
+     * Выпускает токен с теми же claims, что и {@link #buildClaims}, записывая их напрямую в буфер кодировщика.
+     * Время в iat и exp округляется до секунд так же, как в JJWT
+     */
+    private String encodeToken(CustomUserDetails userDetails, Long userId, long nowMillis) {
+        Hs256JwtEncoder.Writer token = getEncoder().begin();
+        OptionalLong roleMask = compactClaims ? roleCatalog.encode(userDetails.getAuthorities()) : OptionalLong.empty();
+        long tokenVersion = userDetails.getTokenVersion();
+        if (roleMask.isPresent()) {
+            writeUserId(token, COMPACT_USER_ID_CLAIM, userId)
+                    .claim(CATALOG_CLAIM, roleCatalog.getId())
+                    .claim(ROLE_MASK_CLAIM, roleMask.getAsLong());
+            writeTokenVersion(token, COMPACT_TOKEN_VERSION_CLAIM, tokenVersion);
+        } else {
+            token.claim(USERNAME_CLAIM, userDetails.getUsername()).startArray(ROLES_CLAIM);
+            for (GrantedAuthority authority : userDetails.getAuthorities()) {
+                token.element(authority.getAuthority());
+            }
+            writeUserId(token.endArray(), USER_ID_CLAIM, userId);
+            writeTokenVersion(token, TOKEN_VERSION_CLAIM, tokenVersion);
+        }
+        return token.claim(Claims.SUBJECT, userDetails.getUsername())
+                .claim(Claims.ISSUED_AT, nowMillis / 1000)
+                .claim(Claims.EXPIRATION, (nowMillis + lifeTime) / 1000)
+                .sign();
+    }
+
+    private static Hs256JwtEncoder.Writer writeUserId(Hs256JwtEncoder.Writer token, String claim, Long userId) {
+        return userId != null ? token.claim(claim, userId) : token;
+    }
+
+    private static void writeTokenVersion(Hs256JwtEncoder.Writer token, String claim, long tokenVersion) {
+        if (tokenVersion > 0) {
+            token.claim(claim, tokenVersion);
+        }
+    }
+
     /**
      * Формирует структуру данных, содержащую пользовательскую информацию
      * для включения в JWT токен
      */
     private Map<String, Object> buildClaims(CustomUserDetails userDetails, Long userId) {
         Map<String, Object> claims = new HashMap<>();
+        if (compactClaims) {
+            OptionalLong roleMask = roleCatalog.encode(userDetails.getAuthorities());
+            if (roleMask.isPresent()) {
+                claims.put(COMPACT_USER_ID_CLAIM, userId);
+                claims.put(CATALOG_CLAIM, roleCatalog.getId());
+                claims.put(ROLE_MASK_CLAIM, roleMask.getAsLong());
+                putTokenVersion(claims, COMPACT_TOKEN_VERSION_CLAIM, userDetails.getTokenVersion());
+                return claims;
+            }
+        }
         Set<String> roles = userDetails.getAuthorities().stream()
                 .map(GrantedAuthority::getAuthority)
                 .collect(Collectors.toSet());
 
-        claims.put("username", userDetails.getUsername());
-        claims.put("roles", roles);
-        claims.put("userId", userId);
+        claims.put(USERNAME_CLAIM, userDetails.getUsername());
+        claims.put(ROLES_CLAIM, roles);
+        claims.put(USER_ID_CLAIM, userId);
+        putTokenVersion(claims, TOKEN_VERSION_CLAIM, userDetails.getTokenVersion());
         return claims;
     }
 
+    private static void putTokenVersion(Map<String, Object> claims, String claim, long tokenVersion) {
+        if (tokenVersion > 0) {
+            claims.put(claim, tokenVersion);
+        }
+    }
+
     /**
     * Парсит JWT токен и извлекает структурированные данные пользователя.
+    * Подпись проверяется один раз, истекший токен приводит к ExpiredJwtException
     */
     public TokenData parseToken(String token) {
         validateTokenFormat(token);
+        if (SessionTokenService.isOpaqueToken(token)) {
+            return sessionTokenService.parse(token);
+        }
+        Claims claims = getAllClaimsFromToken(token);
+        List<? extends GrantedAuthority> authorities = getAuthorities(claims);
+        Long roleMask = claims.get(ROLE_MASK_CLAIM, Long.class);
 
         return TokenData.builder()
                 .token(token)
-                .username(getUserNameFromToken(token))
-                .authorities(createAuthorities(getRolesFromToken(token)))
-                .id(getUserIdFromToken(token))
+                .username(claims.getSubject())
+                .authorities(authorities)
+                .roleMask(roleMask != null ? roleHierarchy.effectiveMask(roleMask) : roleHierarchy.effectiveMask(authorities))
+                .id(getUserId(claims))
+                .tokenVersion(getTokenVersion(claims))
                 .build();
     }
 
@@ -91,6 +207,9 @@ public class JwtService {
      *
      */
     public boolean isTokenExpired(String token) {
+        if (SessionTokenService.isOpaqueToken(token)) {
+            return !sessionTokenService.isActive(token);
+        }
         try {
             Date expiration = getAllClaimsFromToken(token).getExpiration();
             return expiration.before(new Date());
@@ -101,10 +220,16 @@ public class JwtService {
         }
     }
 
+    /**
+     * Отзывает токен сессии. JWT отозвать нельзя, для него возвращается false
+     */
+    public boolean revokeToken(String token) {
+        validateTokenFormat(token);
+        return SessionTokenService.isOpaqueToken(token) && sessionTokenService.revoke(token);
+    }
 
     public Long getUserIdFromToken(String token) {
-        Claims claims = getAllClaimsFromToken(token);
-        return claims.get("userId", Long.class);
+        return getUserId(getAllClaimsFromToken(token));
     }
 
     public String getUserNameFromToken(String token) {
@@ -114,7 +239,45 @@ public class JwtService {
 
     public List<String> getRolesFromToken(String token) {
         Claims claims = getAllClaimsFromToken(token);
-        Object roles = claims.get("roles");
+        if (claims.containsKey(ROLE_MASK_CLAIM)) {
+            return getAuthorities(claims).stream()
+                    .map(GrantedAuthority::getAuthority)
+                    .toList();
+        }
+        return getRoleNames(claims);
+    }
+
+    private Long getUserId(Claims claims) {
+        Long userId = claims.get(COMPACT_USER_ID_CLAIM, Long.class);
+        return userId != null ? userId : claims.get(USER_ID_CLAIM, Long.class);
+    }
+
+    /**
+     * Токены, выпущенные до появления версии, считаются версией 0
+     */
+    private long getTokenVersion(Claims claims) {
+        Long tokenVersion = claims.get(COMPACT_TOKEN_VERSION_CLAIM, Long.class);
+        if (tokenVersion == null) {
+            tokenVersion = claims.get(TOKEN_VERSION_CLAIM, Long.class);
+        }
+        return tokenVersion != null ? tokenVersion : 0L;
+    }
+
+    private List<? extends GrantedAuthority> getAuthorities(Claims claims) {
+        Long roleMask = claims.get(ROLE_MASK_CLAIM, Long.class);
+        if (roleMask == null) {
+            return createAuthorities(getRoleNames(claims));
+        }
+        Long catalogId = claims.get(CATALOG_CLAIM, Long.class);
+        if (catalogId == null || catalogId != roleCatalog.getId()) {
+            throw new IllegalArgumentException("Token was issued for another role catalog");
+        }
+        return roleCatalog.decode(roleMask);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> getRoleNames(Claims claims) {
+        Object roles = claims.get(ROLES_CLAIM);
         if (roles instanceof List) {
             return (List<String>) roles;
         }
@@ -123,9 +286,7 @@ public class JwtService {
 
     private Claims getAllClaimsFromToken(String token) {
         try {
-            return Jwts.parser()
-                    .verifyWith(getSigningKey())
-                    .build()
+            return getParser()
                     .parseSignedClaims(token)
                     .getPayload();
         } catch (ExpiredJwtException e) {
@@ -147,11 +308,37 @@ public class JwtService {
         }
     }
 
+    private JwtParser getParser() {
+        JwtParser current = parser;
+        if (current == null) {
+            current = Jwts.parser()
+                    .verifyWith(getSigningKey())
+                    .build();
+            parser = current;
+        }
+        return current;
+    }
+
+    private Hs256JwtEncoder getEncoder() {
+        Hs256JwtEncoder current = encoder;
+        if (current == null) {
+            current = new Hs256JwtEncoder(getSigningKey());
+            encoder = current;
+        }
+        return current;
+    }
+
     private SecretKey getSigningKey() {
+        SecretKey current = signingKey;
+        if (current != null) {
+            return current;
+        }
         try {
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
             byte[] hash = digest.digest(secretKey.getBytes(StandardCharsets.UTF_8));
-            return Keys.hmacShaKeyFor(hash);
+            current = Keys.hmacShaKeyFor(hash);
+            signingKey = current;
+            return current;
         } catch (Exception e) {
             throw new RuntimeException("Error creating signing key", e);
         }
@@ -0,0 +1,157 @@
+package com.webbee.auth.security.service;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Каталог ролей, задающий номера битов в масках ролей (компактный формат JWT, иерархия ролей).
+ * Порядок ролей берется из db/changelog/data.csv: номер строки задает номер бита в маске ролей.
+ * Идентификатор каталога вычисляется по списку ролей, поэтому изменение каталога
+ * делает ранее выданные компактные токены недействительными, а не меняет их смысл.
+ */
+@Component
+public class RoleCatalog {
+
+    static final String LOCATION = "db/changelog/data.csv";
+
+    private static final String ROLE_PREFIX = "ROLE_";
+    private static final int MAX_ROLES = Long.SIZE - 1;
+    private static final int PREALLOCATED_ROLE_LIMIT = 10;
+
+    private final List<SimpleGrantedAuthority> authorities;
+    private final Map<String, Integer> bitByAuthority;
+    private final long id;
+    private final List<List<SimpleGrantedAuthority>> preallocated;
+    private final ConcurrentHashMap<Long, List<SimpleGrantedAuthority>> decoded = new ConcurrentHashMap<>();
+
+    public RoleCatalog() {
+        this(readRoles());
+    }
+
+    RoleCatalog(List<String> roles) {
+        if (roles.size() > MAX_ROLES) {
+            throw new IllegalStateException("Role catalog cannot hold more than " + MAX_ROLES + " roles");
+        }
+        this.authorities = roles.stream()
+                .map(role -> new SimpleGrantedAuthority(ROLE_PREFIX + role))
+                .toList();
+        this.bitByAuthority = new HashMap<>();
+        for (int bit = 0; bit < authorities.size(); bit++) {
+            bitByAuthority.put(authorities.get(bit).getAuthority(), bit);
+        }
+        this.id = checksum(roles);
+        this.preallocated = preallocate();
+    }
+
+    /**
+     * Идентификатор версии каталога, который записывается в компактный токен
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Количество ролей в каталоге
+     */
+    public int size() {
+        return authorities.size();
+    }
+
+    /**
+     * Номер бита роли в маске или -1, если роли нет в каталоге.
+     * Принимает как имя роли, так и authority с префиксом ROLE_
+     */
+    public int bitOf(String role) {
+        String authority = role.startsWith(ROLE_PREFIX) ? role : ROLE_PREFIX + role;
+        Integer bit = bitByAuthority.get(authority);
+        return bit != null ? bit : -1;
+    }
+
+    /**
+     * Кодирует роли в битовую маску.
+     * Возвращает пустое значение, если хотя бы одной роли нет в каталоге
+     */
+    public OptionalLong encode(Collection<? extends GrantedAuthority> grantedAuthorities) {
+        long mask = 0;
+        for (GrantedAuthority authority : grantedAuthorities) {
+            Integer bit = bitByAuthority.get(authority.getAuthority());
+            if (bit == null) {
+                return OptionalLong.empty();
+            }
+            mask |= 1L << bit;
+        }
+        return OptionalLong.of(mask);
+    }
+
+    /**
+     * Возвращает неизменяемый список ролей для маски.
+     * Один и тот же список переиспользуется для всех токенов с одинаковой маской
+     */
+    public List<SimpleGrantedAuthority> decode(long mask) {
+        if (mask < 0 || mask >>> authorities.size() != 0) {
+            throw new IllegalArgumentException("Role mask does not match role catalog");
+        }
+        if (mask < preallocated.size()) {
+            return preallocated.get((int) mask);
+        }
+        return decoded.computeIfAbsent(mask, this::buildAuthorities);
+    }
+
+    private List<List<SimpleGrantedAuthority>> preallocate() {
+        if (authorities.size() > PREALLOCATED_ROLE_LIMIT) {
+            return List.of();
+        }
+        int combinations = 1 << authorities.size();
+        List<List<SimpleGrantedAuthority>> lists = new ArrayList<>(combinations);
+        for (long mask = 0; mask < combinations; mask++) {
+            lists.add(buildAuthorities(mask));
+        }
+        return List.copyOf(lists);
+    }
+
+    private List<SimpleGrantedAuthority> buildAuthorities(long mask) {
+        List<SimpleGrantedAuthority> result = new ArrayList<>(Long.bitCount(mask));
+        for (int bit = 0; bit < authorities.size(); bit++) {
+            if ((mask & (1L << bit)) != 0) {
+                result.add(authorities.get(bit));
+            }
+        }
+        return List.copyOf(result);
+    }
+
+    private static long checksum(List<String> roles) {
+        CRC32 crc = new CRC32();
+        crc.update(String.join("\n", roles).getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    private static List<String> readRoles() {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new ClassPathResource(LOCATION).getInputStream(), StandardCharsets.UTF_8))) {
+            return reader.lines()
+                    .skip(1)
+                    .map(String::trim)
+                    .filter(line -> !line.isEmpty())
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read role catalog " + LOCATION, e);
+        }
+    }
+
+}
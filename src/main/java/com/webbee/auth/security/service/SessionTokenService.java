@@ -0,0 +1,207 @@
+package com.webbee.auth.security.service;
+
+import com.webbee.auth.security.model.SessionRecord;
+import com.webbee.auth.security.model.TokenData;
+import com.webbee.auth.utils.MappedSessionStore;
+import com.webbee.auth.utils.OffHeapSessionTable;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.CredentialsExpiredException;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+/**
+ * Сервис непрозрачных токенов сессий.
+ * Включается свойством jwt.token-mode=opaque: вместо JWT выдается случайный 128-битный токен
+ * (22 символа Base64URL), а данные сессии хранятся в {@link OffHeapSessionTable} вне кучи.
+ * Поиск и отзыв сессии выполняются за O(1), истекшие сессии периодически вычищаются.
+ * Если задан session.persistence.directory, изменения сессий пишутся в журнал {@link MappedSessionStore},
+ * периодически сворачиваемый в снимок, и после перезапуска сессии восстанавливаются без повторного входа.
+ */
+@Slf4j
+@Service
+public class SessionTokenService {
+
+    private static final int TOKEN_BYTES = 16;
+    private static final int TOKEN_LENGTH = 22;
+
+    private final RoleCatalog roleCatalog;
+    private final CompiledRoleHierarchy roleHierarchy;
+    private final OffHeapSessionTable sessions;
+    private final MappedSessionStore store;
+    private final Duration ttl;
+    private final SecureRandom random = new SecureRandom();
+    private final Counter expiredCounter;
+
+    public SessionTokenService(RoleCatalog roleCatalog,
+                               CompiledRoleHierarchy roleHierarchy,
+                               @Value("${jwt.token-mode:jwt}") String tokenMode,
+                               @Value("${session.capacity:65536}") int capacity,
+                               @Value("${session.segments:64}") int segments,
+                               @Value("${session.ttl:30m}") Duration ttl,
+                               @Value("${session.persistence.directory:}") String persistenceDirectory,
+                               @Value("${session.persistence.journal-records:262144}") int journalRecords,
+                               MeterRegistry meterRegistry) {
+        this.roleCatalog = roleCatalog;
+        this.roleHierarchy = roleHierarchy;
+        this.sessions = "opaque".equalsIgnoreCase(tokenMode) ? new OffHeapSessionTable(capacity, segments) : null;
+        this.store = sessions != null && StringUtils.hasText(persistenceDirectory)
+                ? openStore(Path.of(persistenceDirectory), journalRecords)
+                : null;
+        this.ttl = ttl;
+        this.expiredCounter = Counter.builder("auth.sessions.expired")
+                .description("Сессии, удаленные по истечении срока действия")
+                .register(meterRegistry);
+        if (sessions != null) {
+            Gauge.builder("auth.sessions.active", sessions, OffHeapSessionTable::size)
+                    .description("Сессии в хранилище непрозрачных токенов")
+                    .register(meterRegistry);
+        }
+    }
+
+    public boolean isEnabled() {
+        return sessions != null;
+    }
+
+    /**
+     * Непрозрачный токен не содержит точек, в отличие от JWT
+     */
+    public static boolean isOpaqueToken(String token) {
+        return token.length() == TOKEN_LENGTH && token.indexOf('.') < 0;
+    }
+
+    /**
+     * Создает сессию и возвращает токен.
+     * Пустой результат означает, что сессию сохранить нельзя (роль вне каталога,
+     * слишком длинное имя или заполненное хранилище) и нужно выдать JWT
+     */
+    public Optional<String> createSession(String username, Long userId, Collection<? extends GrantedAuthority> authorities) {
+        if (sessions == null) {
+            return Optional.empty();
+        }
+        OptionalLong roleMask = roleCatalog.encode(authorities);
+        if (roleMask.isEmpty()) {
+            return Optional.empty();
+        }
+        byte[] tokenBytes = new byte[TOKEN_BYTES];
+        random.nextBytes(tokenBytes);
+        ByteBuffer key = ByteBuffer.wrap(tokenBytes);
+        SessionRecord session = new SessionRecord(userId, username, roleMask.getAsLong(), System.currentTimeMillis() + ttl.toMillis());
+        if (!sessions.put(key.getLong(0), key.getLong(8), session)) {
+            return Optional.empty();
+        }
+        if (store != null && !store.appendPut(key.getLong(0), key.getLong(8), session)) {
+            snapshot();
+        }
+        return Optional.of(Base64.getUrlEncoder().withoutPadding().encodeToString(tokenBytes));
+    }
+
+    /**
+     * Возвращает данные действующей сессии.
+     * Если сессия истекла или отозвана, выбрасывается CredentialsExpiredException
+     */
+    public TokenData parse(String token) {
+        ByteBuffer key = decode(token);
+        SessionRecord session = sessions.get(key.getLong(0), key.getLong(8), System.currentTimeMillis());
+        if (session == null) {
+            throw new CredentialsExpiredException("Session has expired or was revoked");
+        }
+        return TokenData.builder()
+                .token(token)
+                .id(session.userId())
+                .username(session.username())
+                .authorities(roleCatalog.decode(session.roleMask()))
+                .roleMask(roleHierarchy.effectiveMask(session.roleMask()))
+                .build();
+    }
+
+    public boolean isActive(String token) {
+        ByteBuffer key = decode(token);
+        return sessions.get(key.getLong(0), key.getLong(8), System.currentTimeMillis()) != null;
+    }
+
+    /**
+     * Отзывает сессию. Возвращает false, если сессии уже нет
+     */
+    public boolean revoke(String token) {
+        ByteBuffer key = decode(token);
+        if (!sessions.remove(key.getLong(0), key.getLong(8))) {
+            return false;
+        }
+        if (store != null && !store.appendRemove(key.getLong(0), key.getLong(8))) {
+            snapshot();
+        }
+        return true;
+    }
+
+    @Scheduled(fixedDelayString = "${session.sweep-interval:60000}")
+    public void sweepExpired() {
+        if (sessions != null) {
+            expiredCounter.increment(sessions.sweep(System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Сворачивает журнал в снимок действующих сессий.
+     * Вызывается по расписанию и при заполнении журнала: сессия уже находится в таблице и попадает в снимок
+     */
+    @Scheduled(fixedDelayString = "${session.persistence.snapshot-interval:300000}")
+    public void snapshot() {
+        if (store == null) {
+            return;
+        }
+        try {
+            store.snapshot(sessions, System.currentTimeMillis());
+        } catch (IOException e) {
+            log.warn("Failed to write session snapshot", e);
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (store != null) {
+            snapshot();
+            store.close();
+        }
+    }
+
+    private MappedSessionStore openStore(Path directory, int journalRecords) {
+        try {
+            MappedSessionStore sessionStore = MappedSessionStore.open(directory, journalRecords);
+            int applied = sessionStore.load(sessions, System.currentTimeMillis());
+            log.info("Restored {} sessions from {} journal and snapshot records", sessions.size(), applied);
+            return sessionStore;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open session store in " + directory, e);
+        }
+    }
+
+    private ByteBuffer decode(String token) {
+        if (sessions == null || !isOpaqueToken(token)) {
+            throw new IllegalArgumentException("Invalid session token");
+        }
+        try {
+            return ByteBuffer.wrap(Base64.getUrlDecoder().decode(token));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid session token", e);
+        }
+    }
+
+}
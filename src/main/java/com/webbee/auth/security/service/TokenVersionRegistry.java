@@ -0,0 +1,171 @@
+package com.webbee.auth.security.service;
+
+import com.webbee.auth.repository.TokenVersionRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Текущие версии токенов пользователей в памяти.
+ * Версия увеличивается при изменении ролей, и JWT с меньшей версией перестают приниматься без запросов к базе
+ * на каждый запрос: карта хранит только пользователей, у которых версия менялась, и раз в
+ * token-version.refresh-interval дочитывает из базы изменения после последней увиденной версии.
+ * Изменения, сделанные этим экземпляром, попадают в карту сразу после фиксации транзакции.
+ * Пока карта ни разу не загрузилась, версия каждого токена сверяется с базой, а при недоступной базе токен отклоняется.
+ * Запись удаляется через token-version.retention (по умолчанию время жизни JWT) после того, как экземпляр
+ * узнал о версии: все токены, выпущенные до нее, к этому моменту уже истекли.
+ */
+@Slf4j
+@Component
+public class TokenVersionRegistry {
+
+    private final TokenVersionRepository tokenVersionRepository;
+    private final boolean enabled;
+    private final int pageSize;
+    private final long retryIntervalNanos;
+    private final long retentionNanos;
+    private final ConcurrentHashMap<Long, KnownVersion> versions = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+    private volatile long lastLoadAttemptNanos;
+    private long watermark;
+
+    public TokenVersionRegistry(TokenVersionRepository tokenVersionRepository,
+                                @Value("${token-version.enabled:true}") boolean enabled,
+                                @Value("${token-version.page-size:10000}") int pageSize,
+                                @Value("${token-version.refresh-interval:1s}") Duration refreshInterval,
+                                @Value("${token-version.retention:${jwt.life-time}ms}") Duration retention,
+                                MeterRegistry meterRegistry) {
+        this.tokenVersionRepository = tokenVersionRepository;
+        this.enabled = enabled;
+        this.pageSize = pageSize;
+        this.retryIntervalNanos = refreshInterval.toNanos();
+        this.retentionNanos = retention.toNanos();
+        this.lastLoadAttemptNanos = System.nanoTime() - retryIntervalNanos;
+        Gauge.builder("auth.token-version.users", versions, Map::size)
+                .description("Пользователи с измененной версией токенов")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Проверяет, что токен выпущен не раньше последнего изменения версии пользователя.
+     * Токены без идентификатора пользователя не проверяются
+     */
+    public boolean isCurrent(Long userId, long tokenVersion) {
+        if (!enabled || userId == null) {
+            return true;
+        }
+        if (!loaded) {
+            loadOnFirstUse();
+        }
+        if (!loaded) {
+            return isCurrentInDatabase(userId, tokenVersion);
+        }
+        KnownVersion current = versions.get(userId);
+        return current == null || tokenVersion >= current.version();
+    }
+
+    /**
+     * Версия, которую нужно записать в новый токен пользователя
+     */
+    public long currentVersion(Long userId) {
+        if (!enabled || userId == null) {
+            return 0;
+        }
+        KnownVersion current = versions.get(userId);
+        return current == null ? 0 : current.version();
+    }
+
+    /**
+     * Увеличивает версию токенов пользователя, делая недействительными все выпущенные ему токены.
+     * Вызывается в транзакции, изменяющей роли
+     */
+    public void bump(Long userId) {
+        if (!enabled || userId == null) {
+            return;
+        }
+        long version = tokenVersionRepository.bump(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    remember(userId, version);
+                }
+            });
+        } else {
+            remember(userId, version);
+        }
+    }
+
+    /**
+     * Дочитывает изменения версий, сделанные после последней увиденной версии, в том числе другими экземплярами
+     */
+    @Scheduled(fixedDelayString = "${token-version.refresh-interval:1s}")
+    public void refresh() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            loadChanges();
+        } catch (RuntimeException e) {
+            log.warn("Failed to refresh token versions", e);
+        }
+        long now = System.nanoTime();
+        versions.values().removeIf(known -> now - known.seenAtNanos() >= retentionNanos);
+    }
+
+    /**
+     * Первая проверка до первого обновления по расписанию загружает карту сама.
+     * Если база недоступна, повтор не чаще refresh-interval, чтобы не нагружать ее на каждом запросе
+     */
+    private void loadOnFirstUse() {
+        long now = System.nanoTime();
+        if (now - lastLoadAttemptNanos < retryIntervalNanos) {
+            return;
+        }
+        lastLoadAttemptNanos = now;
+        refresh();
+    }
+
+    private boolean isCurrentInDatabase(Long userId, long tokenVersion) {
+        try {
+            return tokenVersion >= tokenVersionRepository.findVersion(userId);
+        } catch (RuntimeException e) {
+            log.warn("Token versions are not loaded and the database check failed, rejecting token of user {}: {}", userId, e.getMessage());
+            return false;
+        }
+    }
+
+    private void remember(Long userId, long version) {
+        versions.merge(userId, new KnownVersion(version, System.nanoTime()),
+                (known, update) -> update.version() > known.version() ? update : known);
+    }
+
+    private synchronized void loadChanges() {
+        Map<Long, Long> changes;
+        do {
+            changes = tokenVersionRepository.findChangedSince(watermark, pageSize);
+            for (Map.Entry<Long, Long> change : changes.entrySet()) {
+                remember(change.getKey(), change.getValue());
+                watermark = Math.max(watermark, change.getValue());
+            }
+        } while (changes.size() == pageSize);
+        loaded = true;
+    }
+
+    /**
+     * Версия и момент, когда экземпляр о ней узнал
+     */
+    private record KnownVersion(long version, long seenAtNanos) {
+
+    }
+
+}
@@ -1,14 +1,21 @@
 package com.webbee.auth.security.service;
 
+import com.webbee.auth.datasource.ReplicaStalenessGuard;
 import com.webbee.auth.entity.Role;
-import com.webbee.auth.repository.UserRepository;
+import com.webbee.auth.entity.User;
+import com.webbee.auth.repository.UserStore;
 import com.webbee.auth.security.model.CustomUserDetails;
+import com.webbee.auth.utils.Identities;
+import com.webbee.auth.utils.SingleFlight;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.stream.Collectors;
 
@@ -16,25 +23,86 @@ import java.util.stream.Collectors;
  * Реализация интерфейса UserDetailsService для загрузки пользовательских данных
  * Отвечает за загрузку информации о пользователе по его имени пользователя
  * и преобразование данных из сущности базы данных в объект.
+ * При включенном {@link CredentialCache} вход не ждет медленную базу дольше порога, если пользователь есть в кеше.
+ * Одновременные входы одного пользователя выполняют один общий запрос в базу; входы, которые должны читать
+ * с основной базы, не присоединяются к чтению с реплики, и наоборот.
+ * Логин ищется без учета регистра, ключи кеша и общих запросов - каноническая форма {@link Identities}.
  */
 @Service
 @RequiredArgsConstructor
 public class UserDetailsServiceImpl implements UserDetailsService {
 
-    private final UserRepository userRepository;
+    private final UserStore userStore;
+    private final CredentialCache credentialCache;
+    private final ReplicaStalenessGuard stalenessGuard;
+    private final PlatformTransactionManager transactionManager;
+    private final SingleFlight<LoginLookupKey, CustomUserDetails> lookups = new SingleFlight<>();
+
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        return userRepository.findByUsername(username)
-                .map(user -> new CustomUserDetails(
-                                user.getUsername(),
-                                user.getPassword(),
-                                user.getRoles().stream()
-                                        .map(Role::getName)
-                                        .map(role -> new SimpleGrantedAuthority("ROLE_" + role))
-                                        .collect(Collectors.toSet()),
-                                user.getEmail()
-                        )
-                ).orElseThrow(() -> new UsernameNotFoundException("Cant find user with name"));
+        return credentialCache.load(Identities.canonical(username),
+                name -> lookups.execute(new LoginLookupKey(name, stalenessGuard.readsFromPrimary(name)), this::loadFromDatabase));
+    }
+
+    /**
+     * Новые входы пользователя не присоединяются к запросу, начатому до изменения его данных
+     */
+    public void forgetInFlight(String username) {
+        String canonical = Identities.canonical(username);
+        lookups.forget(new LoginLookupKey(canonical, true));
+        lookups.forget(new LoginLookupKey(canonical, false));
+    }
+
+    /**
+     * Читает пользователя с основной базы в отдельной транзакции, минуя кеш учетных данных и общие запросы.
+     * Нужен, когда загруженные при входе данные старше версии токенов, известной {@link TokenVersionRegistry}:
+     * текущая транзакция входа могла уже получить соединение с реплики
+     */
+    public CustomUserDetails loadFromPrimary(String username) {
+        String canonical = Identities.canonical(username);
+        credentialCache.invalidate(canonical);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transaction.setReadOnly(true);
+        try (ReplicaStalenessGuard.PrimaryPin ignored = stalenessGuard.pinToPrimary()) {
+            return transaction.execute(status -> userStore.findByUsername(canonical)
+                    .map(UserDetailsServiceImpl::toDetails)
+                    .orElseThrow(() -> new UsernameNotFoundException("Cant find user with name")));
+        }
+    }
+
+    /**
+     * Может выполняться в пуле запросов кеша, поэтому закрепление за базой, указанной в ключе, выставляется здесь
+     */
+    private CustomUserDetails loadFromDatabase(LoginLookupKey key) {
+        try (ReplicaStalenessGuard.PrimaryPin ignored = key.primary()
+                ? stalenessGuard.pinToPrimary()
+                : stalenessGuard.pinToPrimaryIfRecentlyWritten(key.username())) {
+            return userStore.findByUsername(key.username())
+                    .map(UserDetailsServiceImpl::toDetails)
+                    .orElseThrow(() -> new UsernameNotFoundException("Cant find user with name"));
+        }
+    }
+
+    private static CustomUserDetails toDetails(User user) {
+        return new CustomUserDetails(
+                user.getUsername(),
+                user.getPassword(),
+                user.getRoles().stream()
+                        .map(Role::getName)
+                        .map(role -> new SimpleGrantedAuthority("ROLE_" + role))
+                        .collect(Collectors.toSet()),
+                user.getEmail(),
+                user.getId(),
+                user.getTokenVersion()
+        );
+    }
+
+    /**
+     * Ключ общего запроса входа: канонический логин и база, с которой он читает
+     */
+    private record LoginLookupKey(String username, boolean primary) {
+
     }
 
 }
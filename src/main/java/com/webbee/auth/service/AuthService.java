@@ -1,17 +1,26 @@
 package com.webbee.auth.service;
 
+import com.webbee.auth.audit.model.AuditEventType;
+import com.webbee.auth.audit.service.AuditService;
+import com.webbee.auth.datasource.ReplicaStalenessGuard;
 import com.webbee.auth.dto.AuthStatusDto;
 import com.webbee.auth.dto.LoginRequest;
 import com.webbee.auth.dto.RegistrationDto;
+import com.webbee.auth.dto.UsernameAvailabilityDto;
 import com.webbee.auth.entity.Role;
 import com.webbee.auth.entity.User;
 import com.webbee.auth.repository.RoleRepository;
 import com.webbee.auth.repository.UserRepository;
+import com.webbee.auth.repository.UserStore;
 import com.webbee.auth.security.model.CustomUserDetails;
 import com.webbee.auth.security.service.JwtService;
+import com.webbee.auth.security.service.TokenVersionRegistry;
+import com.webbee.auth.security.service.UserDetailsServiceImpl;
+import com.webbee.auth.utils.Identities;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
@@ -19,7 +28,7 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.Optional;
+import java.time.Instant;
 import java.util.Set;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -32,10 +41,17 @@ import java.util.stream.Collectors;
 public class AuthService {
 
     private final UserRepository userRepository;
+    private final UserStore userStore;
     private final BCryptPasswordEncoder passwordEncoder;
     private final AuthenticationProvider authenticationProvider;
     private final RoleRepository roleRepository;
     private final JwtService jwtService;
+    private final UserPresenceFilter userPresenceFilter;
+    private final AuditService auditService;
+    private final LastLoginTracker lastLoginTracker;
+    private final ReplicaStalenessGuard stalenessGuard;
+    private final TokenVersionRegistry tokenVersionRegistry;
+    private final UserDetailsServiceImpl userDetailsService;
 
     private static final Pattern EMAIL_PATTERN = Pattern.compile(
             "^[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,}$"
@@ -45,19 +61,23 @@ public class AuthService {
      * Регистрирует нового пользователя в системе.
      * регистрация нового пользователя, включая
      * валидацию входных данных, проверку уникальности, хеширование пароля
-     * и назначение базовых ролей
+     * и назначение базовых ролей. Логин и email сохраняются в канонической форме {@link Identities}
      */
     @Transactional
     public AuthStatusDto registration(RegistrationDto request) {
         if (!isEmailValid(request.getEmail())) {
             return createErrorResponse();
         }
+        String username = Identities.canonical(request.getUsername());
+        String email = Identities.canonical(request.getEmail());
 
-        if (userRepository.findByUsername(request.getUsername()).isPresent()) {
+        if (!userPresenceFilter.isUsernameDefinitelyAbsent(username)
+                && userRepository.findByUsername(username).isPresent()) {
             return createErrorResponse();
         }
 
-        if (userRepository.findByEmail(request.getEmail()).isPresent()) {
+        if (!userPresenceFilter.isEmailDefinitelyAbsent(email)
+                && userRepository.findByEmail(email).isPresent()) {
             return createErrorResponse();
         }
 
@@ -66,12 +86,14 @@ public class AuthService {
                 .collect(Collectors.toSet());
 
         userRepository.save(User.builder()
-                .username(request.getUsername())
+                .username(username)
                 .password(passwordEncoder.encode(request.getPassword()))
-                .email(request.getEmail())
+                .email(email)
                 .roles(roles)
                 .build()
         );
+        userPresenceFilter.register(username, email);
+        stalenessGuard.recordWrite(username);
 
         return createSuccessResponse();
     }
@@ -80,24 +102,81 @@ public class AuthService {
      * Выполняет аутентификацию пользователя и выдает JWT токен.
      * вход пользователя в систему, включая
      * проверку учетных данных и генерацию JWT токена
-     * для последующего использования в запросах.
+     * для последующего использования в запросах. Логин сравнивается без учета регистра.
      */
     @Transactional(readOnly = true)
     public AuthStatusDto login(LoginRequest request) {
-        Optional<User> existingUser = userRepository.findByUsername(request.getUsername());
+        String username = Identities.canonical(request.getUsername());
+        if (userPresenceFilter.isUsernameDefinitelyAbsent(username)) {
+            auditService.publish(AuditEventType.LOGIN_FAILURE, username, "unknown user");
+            return AuthStatusDto.builder()
+                    .code(HttpStatus.FORBIDDEN.value())
+                    .build();
+        }
+        try (ReplicaStalenessGuard.PrimaryPin ignored = stalenessGuard.pinToPrimaryIfRecentlyWritten(username)) {
+            return authenticate(username, request.getPassword());
+        }
+    }
+
+    /**
+     * Проверяет, свободен ли логин для регистрации (без учета регистра).
+     * Если фильтр гарантирует отсутствие логина, запрос в базу данных не выполняется
+     */
+    @Transactional(readOnly = true)
+    public UsernameAvailabilityDto checkUsernameAvailability(String username) {
+        String canonical = Identities.canonical(username);
+        boolean available = userPresenceFilter.isUsernameDefinitelyAbsent(canonical)
+                || !userStore.existsByUsername(canonical);
+        return UsernameAvailabilityDto.builder()
+                .username(username)
+                .available(available)
+                .build();
+    }
+
+    /**
+     * Завершает сессию непрозрачного токена.
+     * Для JWT и уже завершенных сессий возвращается код 400
+     */
+    public AuthStatusDto logout(String token) {
+        if (token == null || !jwtService.revokeToken(token)) {
+            return createErrorResponse();
+        }
+        return createSuccessResponse();
+    }
+
+    /**
+     * Идентификатор пользователя берется из загруженных при проверке пароля данных,
+     * поэтому отдельный запрос пользователя выполняется только если провайдер его не заполнил.
+     * Данные могли быть прочитаны с отстающей реплики или из кеша учетных данных: если реестр уже знает
+     * более новую версию токенов, пользователь перечитывается с основной базы, а при повторном расхождении
+     * или изменившемся пароле вход отклоняется
+     */
+    private AuthStatusDto authenticate(String username, String password) {
         try {
             Authentication authentication = authenticationProvider.authenticate(
-                    new UsernamePasswordAuthenticationToken(request.getUsername(), request.getPassword())
+                    new UsernamePasswordAuthenticationToken(username, password)
             );
 
             CustomUserDetails userDetails = (CustomUserDetails) authentication.getPrincipal();
-            Long userId = existingUser.get().getId();
+            Long userId = userDetails.getId() != null
+                    ? userDetails.getId()
+                    : userStore.findByUsername(username).map(User::getId).orElse(null);
+            if (tokenVersionRegistry.currentVersion(userId) > userDetails.getTokenVersion()) {
+                userDetails = userDetailsService.loadFromPrimary(username);
+                if (tokenVersionRegistry.currentVersion(userId) > userDetails.getTokenVersion()
+                        || !passwordEncoder.matches(password, userDetails.getPassword())) {
+                    throw new BadCredentialsException("Stale user details");
+                }
+            }
             String token = jwtService.generateJwtToken(userDetails, userId);
+            auditService.publish(AuditEventType.LOGIN_SUCCESS, username, null);
+            lastLoginTracker.record(userId, Instant.now());
             return AuthStatusDto.builder()
                     .code(HttpStatus.OK.value())
                     .token(token)
                     .build();
         } catch (AuthenticationException e) {
+            auditService.publish(AuditEventType.LOGIN_FAILURE, username, e.getClass().getSimpleName());
             return AuthStatusDto.builder()
                     .code(HttpStatus.FORBIDDEN.value())
                     .build();
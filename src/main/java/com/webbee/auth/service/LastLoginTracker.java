@@ -0,0 +1,90 @@
+package com.webbee.auth.service;
+
+import com.webbee.auth.repository.LastLoginRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Сервис учета времени последнего входа пользователей.
+ * Время входа накапливается в памяти, для каждого пользователя хранится только последнее значение.
+ * Накопленные значения периодически записываются в users.last_login_at пакетными запросами,
+ * поэтому вход пользователя не добавляет синхронного UPDATE.
+ */
+@Slf4j
+@Service
+public class LastLoginTracker {
+
+    private final LastLoginRepository lastLoginRepository;
+    private final boolean enabled;
+    private final int maxBatchSize;
+    private final ConcurrentHashMap<Long, Instant> pending = new ConcurrentHashMap<>();
+
+    public LastLoginTracker(LastLoginRepository lastLoginRepository,
+                            @Value("${last-login.enabled:true}") boolean enabled,
+                            @Value("${last-login.max-batch-size:1000}") int maxBatchSize,
+                            MeterRegistry meterRegistry) {
+        this.lastLoginRepository = lastLoginRepository;
+        this.enabled = enabled;
+        this.maxBatchSize = maxBatchSize;
+        Gauge.builder("auth.last-login.pending", pending, Map::size)
+                .description("Пользователи с незаписанным временем последнего входа")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Запоминает время входа пользователя. Более раннее время не вытесняет более позднее
+     */
+    public void record(Long userId, Instant loginTime) {
+        if (enabled && userId != null) {
+            pending.merge(userId, loginTime, (current, candidate) -> candidate.isAfter(current) ? candidate : current);
+        }
+    }
+
+    /**
+     * Записывает накопленные значения в базу пачками не больше max-batch-size.
+     * При ошибке значения возвращаются в очередь и будут записаны при следующем сбросе
+     */
+    @Scheduled(fixedDelayString = "${last-login.flush-interval:5000}")
+    @PreDestroy
+    public void flush() {
+        int remaining = pending.size();
+        while (remaining > 0) {
+            Map<Long, Instant> batch = takeBatch();
+            if (batch.isEmpty()) {
+                return;
+            }
+            remaining -= batch.size();
+            try {
+                lastLoginRepository.updateLastLogin(batch);
+            } catch (RuntimeException e) {
+                log.warn("Failed to flush last login time for {} users", batch.size(), e);
+                batch.forEach(this::record);
+                return;
+            }
+        }
+    }
+
+    private Map<Long, Instant> takeBatch() {
+        Map<Long, Instant> batch = new LinkedHashMap<>();
+        Iterator<Map.Entry<Long, Instant>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext() && batch.size() < maxBatchSize) {
+            Map.Entry<Long, Instant> entry = iterator.next();
+            if (pending.remove(entry.getKey(), entry.getValue())) {
+                batch.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return batch;
+    }
+
+}
@@ -0,0 +1,383 @@
+package com.webbee.auth.service;
+
+import com.webbee.auth.dto.RoleChangeDto;
+import com.webbee.auth.dto.RoleChangePageDto;
+import com.webbee.auth.repository.RoleChangeRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Журнал изменений ролей для инкрементального обновления кешей в других сервисах.
+ * Каждое сохранение ролей добавляет запись с монотонно растущей версией в той же транзакции.
+ * Версии выдаются последовательностью без блокировок, поэтому журнал отдается только до надежной границы
+ * (см. {@link RoleChangeRepository.Head}): за ней записи с меньшими версиями уже не появятся.
+ * Журнал читается постранично по версии или подпиской Server-Sent Events. Поток рассылки раз в role-feed.poll-interval
+ * (и сразу после фиксации изменения в этом экземпляре) читает новые записи один раз для всех подписчиков и раскладывает
+ * их по ограниченным очередям подписчиков; отправкой из очереди занимается отдельный виртуальный поток каждого подписчика.
+ * Подписчик, который не забирает события дольше role-feed.send-timeout, отключается и переподключается с Last-Event-ID.
+ */
+@Slf4j
+@Service
+public class RoleChangeFeed {
+
+    static final String EVENT_NAME = "role-change";
+
+    private final RoleChangeRepository roleChangeRepository;
+    private final int pageSize;
+    private final int queueCapacity;
+    private final long sseTimeoutMillis;
+    private final long heartbeatNanos;
+    private final long sendTimeoutNanos;
+    private final Queue<Subscriber> joining = new ConcurrentLinkedQueue<>();
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final Deque<RoleChangeRepository.Head> pendingHeads = new ArrayDeque<>();
+    private final ScheduledExecutorService publisher;
+    private final ExecutorService senders;
+    private volatile long watermark;
+
+    public RoleChangeFeed(RoleChangeRepository roleChangeRepository,
+                          @Value("${role-feed.page-size:500}") int pageSize,
+                          @Value("${role-feed.poll-interval:1s}") Duration pollInterval,
+                          @Value("${role-feed.heartbeat-interval:15s}") Duration heartbeatInterval,
+                          @Value("${role-feed.sse-timeout:30m}") Duration sseTimeout,
+                          @Value("${role-feed.subscriber-queue:1000}") int queueCapacity,
+                          @Value("${role-feed.send-timeout:30s}") Duration sendTimeout,
+                          MeterRegistry meterRegistry) {
+        this.roleChangeRepository = roleChangeRepository;
+        this.pageSize = pageSize;
+        this.queueCapacity = queueCapacity;
+        this.sseTimeoutMillis = sseTimeout.toMillis();
+        this.heartbeatNanos = heartbeatInterval.toNanos();
+        this.sendTimeoutNanos = sendTimeout.toNanos();
+        this.publisher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "role-feed-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.senders = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("role-feed-sender-", 0).factory());
+        publisher.scheduleWithFixedDelay(this::publish, pollInterval.toMillis(), pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+        Gauge.builder("auth.role-feed.subscribers", subscribers, List::size)
+                .description("Подписчики журнала изменений ролей")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Добавляет изменение ролей в журнал. Вызывается в транзакции, сохраняющей роли;
+     * после ее фиксации подписчики получают изменение без ожидания очередного опроса
+     */
+    public void record(String username, Collection<String> roles) {
+        roleChangeRepository.append(username, roles);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    wakeUp();
+                }
+            });
+        } else {
+            wakeUp();
+        }
+    }
+
+    /**
+     * Возвращает не более limit изменений с версией больше since и не больше надежной границы.
+     * Читает основную базу вне транзакции: граница считается по ее незавершенным транзакциям
+     */
+    public RoleChangePageDto changesSince(long since, int limit) {
+        int size = Math.max(1, Math.min(limit, pageSize));
+        List<RoleChangeDto> changes = roleChangeRepository.findSince(since, advanceWatermark(), size + 1);
+        boolean hasMore = changes.size() > size;
+        if (hasMore) {
+            changes = changes.subList(0, size);
+        }
+        return RoleChangePageDto.builder()
+                .changes(changes)
+                .nextVersion(changes.isEmpty() ? since : changes.get(changes.size() - 1).getVersion())
+                .hasMore(hasMore)
+                .build();
+    }
+
+    /**
+     * Надежная граница журнала: версия, до которой включительно пропусков гарантированно нет
+     */
+    public long latestVersion() {
+        return advanceWatermark();
+    }
+
+    /**
+     * Подписывает на изменения с версией больше since. Идентификатор каждого события равен версии,
+     * поэтому после разрыва клиент продолжает с Last-Event-ID
+     */
+    public SseEmitter subscribe(long since) {
+        SseEmitter emitter = new SseEmitter(sseTimeoutMillis);
+        register(emitter, since);
+        return emitter;
+    }
+
+    void register(SseEmitter emitter, long since) {
+        Subscriber subscriber = new Subscriber(emitter, since, queueCapacity);
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(error -> remove(subscriber));
+        joining.add(subscriber);
+        wakeUp();
+    }
+
+    /**
+     * Сдвигает надежную границу и раскладывает записи до нее по очередям подписчиков.
+     * Подписчику с заполненной очередью записи не добавляются: он получит их с места, где остановился, когда освободит очередь.
+     * Выполняется только в потоке рассылки и не блокируется на отправке
+     */
+    synchronized void publish() {
+        try {
+            Subscriber subscriber;
+            while ((subscriber = joining.poll()) != null) {
+                subscribers.add(subscriber);
+            }
+            long now = System.nanoTime();
+            for (Subscriber live : subscribers) {
+                if (live.isStalled(now, sendTimeoutNanos)) {
+                    drop(live, new IOException("Subscriber did not accept role changes in time"));
+                }
+            }
+            if (subscribers.isEmpty()) {
+                return;
+            }
+            long upTo = advanceWatermark();
+            List<RoleChangeDto> changes;
+            do {
+                long from = subscribers.stream()
+                        .filter(Subscriber::hasRoom)
+                        .mapToLong(Subscriber::getCursor)
+                        .min()
+                        .orElse(upTo);
+                if (from >= upTo) {
+                    break;
+                }
+                changes = roleChangeRepository.findSince(from, upTo, pageSize);
+                for (RoleChangeDto change : changes) {
+                    for (Subscriber live : subscribers) {
+                        if (live.getCursor() < change.getVersion() && live.offer(change, now)) {
+                            scheduleSending(live);
+                        }
+                    }
+                }
+            } while (changes.size() == pageSize);
+            for (Subscriber live : subscribers) {
+                if (now - live.getLastQueuedNanos() >= heartbeatNanos && live.offerHeartbeat(now)) {
+                    scheduleSending(live);
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to publish role changes", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        publisher.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.getEmitter().complete());
+        joining.forEach(subscriber -> subscriber.getEmitter().complete());
+        senders.shutdownNow();
+    }
+
+    /**
+     * Читает последнюю версию и номер прочитавшей ее транзакции, затем самую старую незавершенную транзакцию.
+     * Прочитанные версии становятся границей, когда завершены все транзакции с номерами меньше их horizon
+     */
+    private synchronized long advanceWatermark() {
+        RoleChangeRepository.Head head = roleChangeRepository.findHead();
+        RoleChangeRepository.Head last = pendingHeads.peekLast();
+        if (head.version() > (last == null ? watermark : last.version())) {
+            pendingHeads.addLast(head);
+        }
+        long oldestRunning = roleChangeRepository.findOldestRunningXid();
+        while (!pendingHeads.isEmpty() && pendingHeads.peekFirst().horizon() <= oldestRunning) {
+            watermark = Math.max(watermark, pendingHeads.removeFirst().version());
+        }
+        return watermark;
+    }
+
+    private void scheduleSending(Subscriber subscriber) {
+        if (subscriber.startSending()) {
+            try {
+                senders.execute(() -> send(subscriber));
+            } catch (RejectedExecutionException e) {
+                // рассылка остановлена при завершении приложения
+            }
+        }
+    }
+
+    /**
+     * Отправляет события из очереди подписчика. Выполняется в отдельном потоке на подписчика,
+     * поэтому медленный клиент задерживает только себя
+     */
+    private void send(Subscriber subscriber) {
+        do {
+            SseEmitter.SseEventBuilder event;
+            while ((event = subscriber.peek()) != null) {
+                try {
+                    subscriber.getEmitter().send(event);
+                    subscriber.sent(System.nanoTime());
+                } catch (IOException | IllegalStateException e) {
+                    drop(subscriber, e);
+                    return;
+                }
+            }
+        } while (subscriber.finishSending());
+        if (subscriber.getCursor() < watermark) {
+            // очередь опустела раньше, чем подписчик догнал журнал: остаток досылается без ожидания опроса
+            wakeUp();
+        }
+    }
+
+    private void drop(Subscriber subscriber, Exception e) {
+        if (subscriber.close()) {
+            remove(subscriber);
+            // завершение ждет зависшую отправку этого подписчика, поэтому не выполняется в потоке рассылки
+            senders.execute(() -> subscriber.getEmitter().completeWithError(e));
+        }
+    }
+
+    private void remove(Subscriber subscriber) {
+        subscriber.close();
+        subscribers.remove(subscriber);
+        joining.remove(subscriber);
+    }
+
+    private void wakeUp() {
+        try {
+            publisher.execute(this::publish);
+        } catch (RejectedExecutionException e) {
+            // рассылка остановлена при завершении приложения
+        }
+    }
+
+    /**
+     * Подписчик, очередь еще не отправленных ему событий и версия последнего поставленного в очередь изменения
+     */
+    private static final class Subscriber {
+
+        private final SseEmitter emitter;
+        private final BlockingQueue<SseEmitter.SseEventBuilder> queue;
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile long cursor;
+        private volatile long lastQueuedNanos;
+        private volatile long lastSentNanos;
+
+        private Subscriber(SseEmitter emitter, long cursor, int capacity) {
+            this.emitter = emitter;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.cursor = cursor;
+            this.lastQueuedNanos = System.nanoTime();
+            this.lastSentNanos = lastQueuedNanos;
+        }
+
+        private SseEmitter getEmitter() {
+            return emitter;
+        }
+
+        private long getCursor() {
+            return cursor;
+        }
+
+        private long getLastQueuedNanos() {
+            return lastQueuedNanos;
+        }
+
+        private boolean hasRoom() {
+            return !closed.get() && queue.remainingCapacity() > 0;
+        }
+
+        private boolean offer(RoleChangeDto change, long now) {
+            if (closed.get() || !queue.offer(SseEmitter.event()
+                    .id(String.valueOf(change.getVersion()))
+                    .name(EVENT_NAME)
+                    .data(change, MediaType.APPLICATION_JSON))) {
+                return false;
+            }
+            cursor = change.getVersion();
+            lastQueuedNanos = now;
+            return true;
+        }
+
+        private boolean offerHeartbeat(long now) {
+            if (closed.get() || !queue.offer(SseEmitter.event().comment("heartbeat"))) {
+                return false;
+            }
+            lastQueuedNanos = now;
+            return true;
+        }
+
+        private SseEmitter.SseEventBuilder peek() {
+            return closed.get() ? null : queue.peek();
+        }
+
+        private void sent(long now) {
+            queue.poll();
+            lastSentNanos = now;
+        }
+
+        /**
+         * Очередь не пуста, а последняя отправка завершилась дольше timeout назад
+         */
+        private boolean isStalled(long now, long timeoutNanos) {
+            return !queue.isEmpty() && now - lastSentNanos > timeoutNanos;
+        }
+
+        private boolean startSending() {
+            if (!sending.compareAndSet(false, true)) {
+                return false;
+            }
+            // ожидание отсчитывается от начала отправки, а не от предыдущего события
+            lastSentNanos = System.nanoTime();
+            return true;
+        }
+
+        /**
+         * Снимает признак отправки; возвращает true, если за это время в очереди появились события и отправку
+         * продолжает тот же поток
+         */
+        private boolean finishSending() {
+            sending.set(false);
+            return !closed.get() && !queue.isEmpty() && sending.compareAndSet(false, true);
+        }
+
+        private boolean close() {
+            if (!closed.compareAndSet(false, true)) {
+                return false;
+            }
+            queue.clear();
+            return true;
+        }
+
+    }
+
+}
@@ -0,0 +1,192 @@
+package com.webbee.auth.service;
+
+import com.webbee.auth.repository.RoleRepository;
+import com.webbee.auth.repository.UserStore;
+import com.webbee.auth.security.model.CustomUserDetails;
+import com.webbee.auth.security.service.JwtService;
+import com.webbee.auth.security.service.RoleCatalog;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Прогрев сервиса перед тем, как он начнет принимать трафик.
+ * Выполняется при ApplicationReadyEvent, то есть до перевода readiness-пробы в ACCEPTING_TRAFFIC:
+ * заполняет пулы соединений Hikari, прогоняет выпуск и разбор JWT, проверку пароля BCrypt
+ * через провайдер аутентификации и основные запросы репозиториев, чтобы JIT скомпилировал горячие пути.
+ * Фильтр присутствия пользователей строится в той же фазе. Ошибки прогрева не мешают старту.
+ */
+@Slf4j
+@Service
+public class StartupWarmup {
+
+    private static final String WARMUP_USER_PREFIX = "warmup-";
+
+    private final JwtService jwtService;
+    private final RoleCatalog roleCatalog;
+    private final AuthenticationProvider authenticationProvider;
+    private final UserStore userStore;
+    private final RoleRepository roleRepository;
+    private final UserRoleService userRoleService;
+    private final ObjectProvider<HikariDataSource> dataSources;
+    private final ApplicationEventPublisher eventPublisher;
+    private final boolean enabled;
+    private final int tokenIterations;
+    private final int hashIterations;
+    private final int queryIterations;
+    private final long maxDurationNanos;
+
+    public StartupWarmup(JwtService jwtService,
+                         RoleCatalog roleCatalog,
+                         AuthenticationProvider authenticationProvider,
+                         UserStore userStore,
+                         RoleRepository roleRepository,
+                         UserRoleService userRoleService,
+                         ObjectProvider<HikariDataSource> dataSources,
+                         ApplicationEventPublisher eventPublisher,
+                         @Value("${warmup.enabled:true}") boolean enabled,
+                         @Value("${warmup.token-iterations:10000}") int tokenIterations,
+                         @Value("${warmup.hash-iterations:20}") int hashIterations,
+                         @Value("${warmup.query-iterations:200}") int queryIterations,
+                         @Value("${warmup.max-duration:30s}") Duration maxDuration) {
+        this.jwtService = jwtService;
+        this.roleCatalog = roleCatalog;
+        this.authenticationProvider = authenticationProvider;
+        this.userStore = userStore;
+        this.roleRepository = roleRepository;
+        this.userRoleService = userRoleService;
+        this.dataSources = dataSources;
+        this.eventPublisher = eventPublisher;
+        this.enabled = enabled;
+        this.tokenIterations = tokenIterations;
+        this.hashIterations = hashIterations;
+        this.queryIterations = queryIterations;
+        this.maxDurationNanos = maxDuration.toNanos();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!enabled) {
+            return;
+        }
+        AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.REFUSING_TRAFFIC);
+        long started = System.nanoTime();
+        long deadline = started + maxDurationNanos;
+        run("connection pool", this::prefillPools);
+        run("tokens", () -> warmUpTokens(deadline));
+        run("repository queries", () -> warmUpQueries(deadline));
+        run("password hashing", () -> warmUpAuthentication(deadline));
+        log.info("Warm-up finished in {} ms", Duration.ofNanos(System.nanoTime() - started).toMillis());
+        AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.ACCEPTING_TRAFFIC);
+    }
+
+    /**
+     * Открывает одновременно minimumIdle соединений каждого пула, чтобы первые запросы не ждали их создания
+     */
+    int prefillPools() throws SQLException {
+        int opened = 0;
+        for (HikariDataSource dataSource : dataSources.orderedStream().toList()) {
+            int target = Math.min(dataSource.getMinimumIdle(), dataSource.getMaximumPoolSize());
+            List<Connection> held = new ArrayList<>(target);
+            try {
+                for (int i = 0; i < target; i++) {
+                    held.add(dataSource.getConnection());
+                }
+            } finally {
+                for (Connection connection : held) {
+                    connection.close();
+                }
+            }
+            opened += held.size();
+        }
+        return opened;
+    }
+
+    /**
+     * Выпускает и разбирает подписанные JWT пользователя со всеми ролями каталога.
+     * Сессии непрозрачных токенов не создаются: иначе каждый старт писал бы фиктивные сессии в журнал
+     */
+    int warmUpTokens(long deadline) {
+        long allRoles = roleCatalog.size() == Long.SIZE ? -1L : (1L << roleCatalog.size()) - 1;
+        CustomUserDetails user = new CustomUserDetails(WARMUP_USER_PREFIX + "tokens", "", roleCatalog.decode(allRoles), "", 0L);
+        int done = 0;
+        while (done < tokenIterations && System.nanoTime() < deadline) {
+            jwtService.parseToken(jwtService.generateSignedToken(user, 0L));
+            done++;
+        }
+        return done;
+    }
+
+    /**
+     * Выполняет основные запросы входа и ролей для несуществующего пользователя
+     */
+    int warmUpQueries(long deadline) {
+        String username = missingUsername();
+        int done = 0;
+        while (done < queryIterations && System.nanoTime() < deadline) {
+            userStore.findByUsername(username);
+            userStore.existsByUsername(username);
+            roleRepository.findByName("USER");
+            userRoleService.getRoles(username);
+            done++;
+        }
+        return done;
+    }
+
+    /**
+     * Проверка пароля несуществующего пользователя: провайдер выполняет загрузку пользователя
+     * и сравнение с фиктивным хешем BCrypt той же стоимости, что и при обычном входе
+     */
+    int warmUpAuthentication(long deadline) {
+        String username = missingUsername();
+        int done = 0;
+        while (done < hashIterations && System.nanoTime() < deadline) {
+            try {
+                authenticationProvider.authenticate(new UsernamePasswordAuthenticationToken(username, "warmup"));
+            } catch (AuthenticationException e) {
+                // ожидаемо: пользователя не существует
+            }
+            done++;
+        }
+        return done;
+    }
+
+    private void run(String stage, WarmupStage warmupStage) {
+        long started = System.nanoTime();
+        try {
+            int done = warmupStage.run();
+            log.info("Warm-up stage '{}': {} iterations in {} ms", stage, done, Duration.ofNanos(System.nanoTime() - started).toMillis());
+        } catch (Exception e) {
+            log.warn("Warm-up stage '{}' failed", stage, e);
+        }
+    }
+
+    private static String missingUsername() {
+        return WARMUP_USER_PREFIX + UUID.randomUUID();
+    }
+
+    @FunctionalInterface
+    private interface WarmupStage {
+
+        int run() throws Exception;
+
+    }
+
+}
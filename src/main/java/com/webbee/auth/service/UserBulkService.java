@@ -0,0 +1,97 @@
+package com.webbee.auth.service;
+
+import com.webbee.auth.audit.model.AuditEventType;
+import com.webbee.auth.audit.service.AuditService;
+import com.webbee.auth.datasource.ReplicaStalenessGuard;
+import com.webbee.auth.dto.UserImportResultDto;
+import com.webbee.auth.repository.UserBulkRepository;
+import com.webbee.auth.security.service.CredentialCache;
+import com.webbee.auth.security.service.TokenVersionRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Массовая выгрузка и загрузка пользователей с ролями в CSV.
+ * Данные передаются протоколом COPY прямо между HTTP-потоком и базой, поэтому память не зависит от размера файла.
+ * Импорт выполняется одной транзакцией: ошибка в любой строке отменяет его целиком.
+ * После фиксации фильтр присутствия и реестр версий токенов дочитывают изменения сразу, не дожидаясь расписания.
+ * Измененные существующие пользователи читаются с основной базы в окне read-your-writes,
+ * а начатые до импорта общие запросы их ролей и учетных данных отвязываются.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UserBulkService {
+
+    private final UserBulkRepository userBulkRepository;
+    private final CredentialCache credentialCache;
+    private final UserPresenceFilter userPresenceFilter;
+    private final TokenVersionRegistry tokenVersionRegistry;
+    private final AuditService auditService;
+    private final ReplicaStalenessGuard stalenessGuard;
+    private final UserRoleService userRoleService;
+
+    /**
+     * Выгружает пользователей в CSV. Выполняется в readOnly транзакции, то есть на реплике, если она доступна
+     */
+    @Transactional(readOnly = true)
+    public long exportUsers(OutputStream out) throws IOException {
+        try {
+            return userBulkRepository.copyOut(out);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Загружает пользователей из CSV и переносит их в users и user_roles
+     */
+    @Transactional
+    public UserImportResultDto importUsers(InputStream in, String actor) {
+        long rows = userBulkRepository.copyIntoStaging(in);
+        userBulkRepository.findInvalidRow().ifPresent(row -> {
+            throw new IllegalArgumentException("Invalid username, email or password hash in CSV row " + row);
+        });
+        userBulkRepository.findDuplicateUsername().ifPresent(username -> {
+            throw new IllegalArgumentException("Duplicate username in CSV: " + username);
+        });
+        userBulkRepository.findDuplicateEmail().ifPresent(email -> {
+            throw new IllegalArgumentException("Duplicate email in CSV: " + email);
+        });
+        userBulkRepository.findTakenEmail().ifPresent(email -> {
+            throw new IllegalArgumentException("Email is already used by another user: " + email);
+        });
+        List<String> unknownRoles = userBulkRepository.findUnknownRoles();
+        if (!unknownRoles.isEmpty()) {
+            throw new IllegalArgumentException("There is no role with that name: " + String.join(", ", unknownRoles));
+        }
+        UserImportResultDto result = userBulkRepository.merge(rows);
+        List<String> changedUsernames = userBulkRepository.findChangedExistingUsernames();
+        stalenessGuard.recordWrites(changedUsernames);
+        userRoleService.forgetInFlightLookups(changedUsernames);
+        credentialCache.invalidateAll();
+        auditService.publishAfterCommit(AuditEventType.USERS_IMPORTED, actor, String.format("rows=%d,created=%d,updated=%d,rolesChanged=%d",
+                result.getRows(), result.getCreated(), result.getUpdated(), result.getRolesChanged()));
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                userPresenceFilter.refresh();
+                tokenVersionRegistry.refresh();
+            }
+        });
+        log.info("Imported {} users: {} created, {} updated, {} with changed roles",
+                result.getRows(), result.getCreated(), result.getUpdated(), result.getRolesChanged());
+        return result;
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.webbee.auth.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.webbee.auth.dto.UserListItemDto;
+import com.webbee.auth.repository.RoleRepository;
+import com.webbee.auth.repository.UserListingRepository;
+import com.webbee.auth.utils.SingleFlight;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Потоковая выгрузка пользователей с ролями в JSON вида {"users": [...], "nextAfter": id}.
+ * Каждая строка курсора сразу записывается в ответ, поэтому память не зависит от числа пользователей.
+ * nextAfter передается, только если выгрузка остановилась на limit, и служит параметром after следующей страницы.
+ * Число пользователей по ролям считается агрегатом по всей user_roles, поэтому результат переиспользуется
+ * в течение users.role-counts.ttl, а одновременные промахи выполняют один общий подсчет.
+ */
+@Service
+public class UserListingService {
+
+    private final UserListingRepository userListingRepository;
+    private final RoleRepository roleRepository;
+    private final ObjectMapper objectMapper;
+    private final int fetchSize;
+    private final long roleCountsTtlNanos;
+    private final SingleFlight<Boolean, RoleCounts> roleCountLoads = new SingleFlight<>();
+    private volatile RoleCounts roleCounts;
+
+    public UserListingService(UserListingRepository userListingRepository,
+                              RoleRepository roleRepository,
+                              ObjectMapper objectMapper,
+                              @Value("${users.list.fetch-size:500}") int fetchSize,
+                              @Value("${users.role-counts.ttl:10s}") Duration roleCountsTtl) {
+        this.userListingRepository = userListingRepository;
+        this.roleRepository = roleRepository;
+        this.objectMapper = objectMapper;
+        this.fetchSize = fetchSize;
+        this.roleCountsTtlNanos = roleCountsTtl.toNanos();
+    }
+
+    /**
+     * Записывает пользователей в поток. Выполняется в readOnly транзакции, то есть на реплике, если она доступна
+     */
+    @Transactional(readOnly = true)
+    public void writeUsers(UserListingRepository.Query query, OutputStream out) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("users");
+            long[] written = new long[2];
+            userListingRepository.forEachUser(query, fetchSize, user -> {
+                write(generator, user);
+                written[0]++;
+                written[1] = user.getId();
+            });
+            generator.writeEndArray();
+            if (query.limit() != null && written[0] == query.limit()) {
+                generator.writeNumberField("nextAfter", written[1]);
+            } else {
+                generator.writeNullField("nextAfter");
+            }
+            generator.writeEndObject();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Число пользователей каждой роли, не старше users.role-counts.ttl
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Long> countUsersByRole() {
+        RoleCounts current = roleCounts;
+        if (current != null && System.nanoTime() - current.loadedAtNanos() < roleCountsTtlNanos) {
+            return current.counts();
+        }
+        return roleCountLoads.execute(Boolean.TRUE, ignored -> {
+            RoleCounts loaded = new RoleCounts(Collections.unmodifiableMap(userListingRepository.countUsersByRole()), System.nanoTime());
+            roleCounts = loaded;
+            return loaded;
+        }).counts();
+    }
+
+    @Transactional(readOnly = true)
+    public boolean roleExists(String role) {
+        return roleRepository.findByName(role).isPresent();
+    }
+
+    private static void write(JsonGenerator generator, UserListItemDto user) {
+        try {
+            generator.writeStartObject();
+            generator.writeNumberField("id", user.getId());
+            generator.writeStringField("username", user.getUsername());
+            generator.writeStringField("email", user.getEmail());
+            generator.writeArrayFieldStart("roles");
+            for (String role : user.getRoles()) {
+                generator.writeString(role);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Подсчет пользователей по ролям и момент его выполнения
+     */
+    private record RoleCounts(Map<String, Long> counts, long loadedAtNanos) {
+
+    }
+
+}
@@ -0,0 +1,178 @@
+package com.webbee.auth.service;
+
+import com.webbee.auth.repository.UserRepository;
+import com.webbee.auth.repository.projection.TransactionSnapshotView;
+import com.webbee.auth.repository.projection.UserIdentityView;
+import com.webbee.auth.utils.BloomFilter;
+import com.webbee.auth.utils.Identities;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Сервис отрицательных проверок существования пользователей.
+ * Держит в памяти фильтры Блума по логинам и email, что позволяет отвечать
+ * "такого пользователя точно нет" без обращения к базе данных.
+ * Фильтры заполняются потоковым чтением таблицы users при старте,
+ * пополняются при регистрации и периодически догружают пользователей,
+ * созданных другими экземплярами сервиса.
+ * Значения добавляются и проверяются в канонической форме {@link Identities}, как и поиск в базе без учета регистра.
+ * Оба фильтра и последний прочитанный идентификатор публикуются одним неизменяемым {@link Snapshot}.
+ * Идентификаторы выдаются последовательностью до фиксации транзакции, поэтому меньший id может появиться в таблице
+ * позже большего. Догрузка перечитывает хвост после надежной границы, а граница сдвигается на максимум очередного
+ * чтения только тогда, когда все транзакции, которые могли держать меньшие id, уже завершились.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UserPresenceFilter {
+
+    private final UserRepository userRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${user-filter.enabled:true}")
+    private boolean enabled;
+
+    @Value("${user-filter.expected-insertions:1000000}")
+    private long expectedInsertions;
+
+    @Value("${user-filter.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * Строит фильтры после старта приложения.
+     * До завершения первой загрузки все проверки возвращают "возможно существует", и запросы идут в базу
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        Snapshot built = loadNewUsers(new Snapshot(
+                new BloomFilter(expectedInsertions, falsePositiveRate),
+                new BloomFilter(expectedInsertions, falsePositiveRate),
+                0,
+                List.of()));
+        snapshot = built;
+        log.info("User presence filter built, last user id {}", built.maxSeenId());
+    }
+
+    /**
+     * Догружает пользователей, зарегистрированных через другие экземпляры сервиса
+     */
+    @Scheduled(fixedDelayString = "${user-filter.refresh-interval:1000}")
+    public synchronized void refresh() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            snapshot = loadNewUsers(current);
+        }
+    }
+
+    /**
+     * Добавляет только что сохраненного пользователя в фильтры
+     */
+    public void register(String username, String email) {
+        Snapshot current = snapshot;
+        if (current != null) {
+            current.put(username, email);
+        }
+    }
+
+    /**
+     * Возвращает true, только если пользователя с таким логином гарантированно нет
+     */
+    public boolean isUsernameDefinitelyAbsent(String username) {
+        Snapshot current = snapshot;
+        return current != null && username != null && !current.usernames().mightContain(Identities.canonical(username));
+    }
+
+    /**
+     * Возвращает true, только если пользователя с таким email гарантированно нет
+     */
+    public boolean isEmailDefinitelyAbsent(String email) {
+        Snapshot current = snapshot;
+        return current != null && email != null && !current.emails().mightContain(Identities.canonical(email));
+    }
+
+    /**
+     * Дописывает в фильтры снимка пользователей после надежной границы и возвращает снимок с новыми границами.
+     * Снимок транзакции и строки читаются одним снимком REPEATABLE READ, чтобы xmin относился ровно к прочитанным строкам
+     */
+    private Snapshot loadNewUsers(Snapshot from) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        transaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        Snapshot loaded = transaction.execute(status -> {
+            TransactionSnapshotView txSnapshot = userRepository.currentSnapshot();
+            long maxId = from.maxSeenId();
+            try (Stream<UserIdentityView> users = userRepository.findByIdGreaterThanOrderByIdAsc(from.lastSeenId())) {
+                for (UserIdentityView user : (Iterable<UserIdentityView>) users::iterator) {
+                    from.put(user.getUsername(), user.getEmail());
+                    maxId = Math.max(maxId, user.getId());
+                }
+            }
+            return from.advance(maxId, txSnapshot.getXmin(), txSnapshot.getXmax());
+        });
+        return loaded == null ? from : loaded;
+    }
+
+    /**
+     * Фильтры логинов и email, идентификатор, до которого включительно пропусков гарантированно нет,
+     * и прочитанные после него чтения, ожидающие завершения параллельных транзакций
+     */
+    private record Snapshot(BloomFilter usernames, BloomFilter emails, long lastSeenId, List<PendingScan> pending) {
+
+        void put(String username, String email) {
+            usernames.put(Identities.canonical(username));
+            emails.put(Identities.canonical(email));
+        }
+
+        long maxSeenId() {
+            return pending.isEmpty() ? lastSeenId : pending.get(pending.size() - 1).maxId();
+        }
+
+        /**
+         * Учитывает очередное чтение с максимумом maxId, выполненное снимком (xmin, xmax).
+         * Граница чтения становится xmax следующего чтения: транзакция, получившая номер после него,
+         * взяла id из последовательности уже после предыдущего чтения. Когда xmin очередного чтения догоняет
+         * границу, все транзакции с меньшими id завершены и их строки попали в это чтение
+         */
+        Snapshot advance(long maxId, long xmin, long xmax) {
+            List<PendingScan> next = new ArrayList<>(pending.size() + 1);
+            for (PendingScan scan : pending) {
+                next.add(scan.horizon() == PendingScan.UNKNOWN ? new PendingScan(scan.maxId(), xmax) : scan);
+            }
+            next.add(new PendingScan(maxId, PendingScan.UNKNOWN));
+            long safeId = lastSeenId;
+            while (next.get(0).horizon() != PendingScan.UNKNOWN && next.get(0).horizon() <= xmin) {
+                safeId = Math.max(safeId, next.remove(0).maxId());
+            }
+            return new Snapshot(usernames, emails, safeId, List.copyOf(next));
+        }
+
+    }
+
+    /**
+     * Чтение, максимум которого еще не стал надежной границей, и номер транзакции, после завершения всех
+     * транзакций до которого граница может сдвинуться
+     */
+    private record PendingScan(long maxId, long horizon) {
+
+        static final long UNKNOWN = -1;
+
+    }
+
+}
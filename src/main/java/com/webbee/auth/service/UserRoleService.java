@@ -1,25 +1,44 @@
 package com.webbee.auth.service;
 
+import com.webbee.auth.audit.model.AuditEventType;
+import com.webbee.auth.audit.service.AuditService;
+import com.webbee.auth.datasource.ReplicaStalenessGuard;
 import com.webbee.auth.dto.ChangeUserRolesRequest;
 import com.webbee.auth.dto.RoleStatusDto;
 import com.webbee.auth.entity.Role;
 import com.webbee.auth.entity.User;
 import com.webbee.auth.repository.RoleRepository;
 import com.webbee.auth.repository.UserRepository;
+import com.webbee.auth.repository.UserRoleLookupRepository;
+import com.webbee.auth.repository.UserStore;
+import com.webbee.auth.repository.projection.UserRolesVersionView;
+import com.webbee.auth.security.service.CredentialCache;
+import com.webbee.auth.security.service.TokenVersionRegistry;
+import com.webbee.auth.security.service.UserDetailsServiceImpl;
+import com.webbee.auth.utils.Identities;
+import com.webbee.auth.utils.SingleFlight;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
- * Сервис для управления ролями пользователей в системе
+ * Сервис для управления ролями пользователей в системе.
+ * Одновременные запросы ролей одного пользователя к одной базе выполняют один общий запрос.
+ * Транзакцию открывает только выполняющий его запрос, ожидающие не занимают соединения из пула.
  */
 @Service
 @RequiredArgsConstructor
@@ -27,13 +46,26 @@ public class UserRoleService {
 
     private final UserRepository userRepository;
     private final RoleRepository roleRepository;
+    private final UserStore userStore;
+    private final UserRoleLookupRepository userRoleLookupRepository;
+    private final AuditService auditService;
+    private final ReplicaStalenessGuard stalenessGuard;
+    private final CredentialCache credentialCache;
+    private final UserDetailsServiceImpl userDetailsService;
+    private final RoleChangeFeed roleChangeFeed;
+    private final TokenVersionRegistry tokenVersionRegistry;
+    private final PlatformTransactionManager transactionManager;
+    private final SingleFlight<RoleLookupKey, Optional<VersionedRoles>> roleLookups = new SingleFlight<>();
 
     /**
      * Назначает или изменяет роли для указанного пользователя.
+     * Выпущенные пользователю токены перестают приниматься после фиксации транзакции.
+     * Пользователь ищется без учета регистра, в журнал и ответ попадает сохраненный логин.
      */
     @Transactional
     public RoleStatusDto saveRoles(ChangeUserRolesRequest request) {
-        Optional<User> user = userRepository.findByUsername(request.getUsername());
+        String username = Identities.canonical(request.getUsername());
+        Optional<User> user = userRepository.findByUsername(username);
         RoleStatusDto response;
         if (user.isPresent()) {
             Set<Role> roles = new HashSet<>();
@@ -43,10 +75,17 @@ public class UserRoleService {
                 roles.add(rl);
             });
             user.get().setRoles(roles);
+            userRepository.incrementRolesVersion(user.get().getId());
+            tokenVersionRegistry.bump(user.get().getId());
             Set<String> strRoles = roles.stream().map(Role::getName).collect(Collectors.toSet());
+            auditService.publishAfterCommit(AuditEventType.ROLES_CHANGED, user.get().getUsername(), String.join(",", strRoles));
+            roleChangeFeed.record(user.get().getUsername(), strRoles);
+            stalenessGuard.recordWrite(username);
+            credentialCache.invalidate(username);
+            forgetInFlightLookups(List.of(username));
             response = RoleStatusDto.builder()
                     .code(200)
-                    .username(request.getUsername())
+                    .username(user.get().getUsername())
                     .roles(strRoles)
                     .build();
         } else {
@@ -63,17 +102,101 @@ public class UserRoleService {
     /**
      * Получает список текущих ролей для указанного пользователя.
      */
-    @Transactional()
     public List<String> getRoles(String username) {
-        Optional<User> userOptional = userRepository.findByUsername(username);
-        if (userOptional.isPresent()) {
-            User user = userOptional.get();
-            return user.getRoles().stream()
-                    .map(Role::getName)
-                    .collect(Collectors.toList());
-        } else {
-            return Collections.emptyList();
+        return getVersionedRoles(username)
+                .map(VersionedRoles::roles)
+                .orElse(Collections.emptyList());
+    }
+
+    /**
+     * Получает роли пользователя вместе с версией, прочитанной не позже самих ролей.
+     * Пустой результат означает, что пользователь не найден.
+     * Запросы, которые должны читать с основной базы, не присоединяются к чтению с реплики, и наоборот.
+     */
+    public Optional<VersionedRoles> getVersionedRoles(String username) {
+        String canonical = Identities.canonical(username);
+        return roleLookups.execute(new RoleLookupKey(canonical, stalenessGuard.readsFromPrimary(canonical)), this::loadRoles);
+    }
+
+    /**
+     * Получает только версию ролей пользователя, без загрузки самих ролей.
+     */
+    @Transactional(readOnly = true)
+    public Optional<UserRolesVersionView> getRolesVersion(String username) {
+        try (ReplicaStalenessGuard.PrimaryPin ignored = stalenessGuard.pinToPrimaryIfRecentlyWritten(Identities.canonical(username))) {
+            return userStore.findRolesVersionByUsername(username);
+        }
+    }
+
+    /**
+     * Получает роли нескольких пользователей одним запросом.
+     * Пользователи, которых нет или у которых нет ролей, в результат не попадают.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, List<String>> getRolesBatch(Collection<String> usernames) {
+        try (ReplicaStalenessGuard.PrimaryPin ignored = stalenessGuard.pinToPrimaryIfAnyRecentlyWritten(usernames)) {
+            return userRoleLookupRepository.findRolesByUsernames(usernames);
+        }
+    }
+
+    /**
+     * Закрепление выставляется до открытия транзакции, чтобы она получила соединение с базы, указанной в ключе
+     */
+    private Optional<VersionedRoles> loadRoles(RoleLookupKey key) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        try (ReplicaStalenessGuard.PrimaryPin ignored = key.primary()
+                ? stalenessGuard.pinToPrimary()
+                : stalenessGuard.pinToPrimaryIfRecentlyWritten(key.username())) {
+            return transaction.execute(status -> userStore.findByUsername(key.username())
+                    .map(user -> new VersionedRoles(
+                            user.getId(),
+                            user.getRolesVersion(),
+                            user.getRoles().stream()
+                                    .map(Role::getName)
+                                    .toList()
+                    )));
         }
     }
 
+    /**
+     * Отвязывает общие запросы ролей и входа пользователей, данные которых изменены в текущей транзакции.
+     * Запросы, начатые до фиксации изменения, могли прочитать старые данные, поэтому ключи отвязываются
+     * сразу и еще раз после завершения транзакции
+     */
+    public void forgetInFlightLookups(Collection<String> usernames) {
+        if (usernames.isEmpty()) {
+            return;
+        }
+        usernames.forEach(this::forgetLookups);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    usernames.forEach(UserRoleService.this::forgetLookups);
+                }
+            });
+        }
+    }
+
+    private void forgetLookups(String username) {
+        roleLookups.forget(new RoleLookupKey(username, true));
+        roleLookups.forget(new RoleLookupKey(username, false));
+        userDetailsService.forgetInFlight(username);
+    }
+
+    /**
+     * Роли пользователя и версия, которую увеличивает каждое сохранение ролей
+     */
+    public record VersionedRoles(Long userId, long version, List<String> roles) {
+
+    }
+
+    /**
+     * Ключ общего запроса ролей: канонический логин и база, с которой он читает
+     */
+    private record RoleLookupKey(String username, boolean primary) {
+
+    }
+
 }
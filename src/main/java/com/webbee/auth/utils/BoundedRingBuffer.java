@@ -0,0 +1,123 @@
+package com.webbee.auth.utils;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Ограниченный неблокирующий кольцевой буфер для нескольких производителей и потребителей.
+ * Каждая ячейка хранит порядковый номер, по которому производитель и потребитель
+ * определяют, свободна ли она, поэтому операции выполняются одним CAS без блокировок.
+ * Емкость округляется вверх до степени двойки, но не меньше двух.
+ */
+public final class BoundedRingBuffer<T> {
+
+    private final AtomicReferenceArray<T> slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    public BoundedRingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Capacity must be in (0, 2^30]");
+        }
+        int size = Math.max(2, Integer.highestOneBit(capacity - 1) << 1);
+        this.slots = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Добавляет элемент в буфер.
+     *
+     * @return false, если буфер заполнен
+     */
+    public boolean offer(T element) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.set(index, element);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Извлекает элемент из головы буфера.
+     *
+     * @return null, если буфер пуст
+     */
+    public T poll() {
+        long position = head.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    T element = slots.get(index);
+                    slots.set(index, null);
+                    sequences.set(index, position + mask + 1);
+                    return element;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * Возвращает элемент из головы буфера без извлечения.
+     * При конкурентном извлечении может вернуть null для непустого буфера
+     */
+    public T peek() {
+        long position = head.get();
+        int index = (int) (position & mask);
+        return sequences.get(index) == position + 1 ? slots.get(index) : null;
+    }
+
+    /**
+     * Переносит в коллекцию не более maxElements элементов.
+     *
+     * @return количество перенесенных элементов
+     */
+    public int drainTo(Collection<? super T> target, int maxElements) {
+        int drained = 0;
+        while (drained < maxElements) {
+            T element = poll();
+            if (element == null) {
+                break;
+            }
+            target.add(element);
+            drained++;
+        }
+        return drained;
+    }
+
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+}
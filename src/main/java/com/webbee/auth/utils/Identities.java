@@ -0,0 +1,18 @@
+package com.webbee.auth.utils;
+
+import java.util.Locale;
+
+/**
+ * Каноническая форма логина и email: без пробелов по краям и в нижнем регистре.
+ * В базе уникальность и поиск идут по lower(username) и lower(email), поэтому "Ivan" и "ivan" - один пользователь.
+ * В этой же форме хранятся ключи фильтров присутствия, кешей и закреплений за основной базой.
+ */
+public final class Identities {
+
+    private Identities() {}
+
+    public static String canonical(String identity) {
+        return identity == null ? null : identity.trim().toLowerCase(Locale.ROOT);
+    }
+
+}
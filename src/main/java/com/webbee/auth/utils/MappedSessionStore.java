@@ -0,0 +1,314 @@
+package com.webbee.auth.utils;
+
+import com.webbee.auth.security.model.SessionRecord;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Хранение состояния {@link OffHeapSessionTable} на локальном диске: снимок и журнал в отображаемых в память файлах.
+ * Запись журнала: crc32 (4 байта), тип (4), поколение (8) и образ слота таблицы (128).
+ * При загрузке записи журнала читаются до первой записи с неверной контрольной суммой или чужим поколением,
+ * поэтому запись, оборванная при падении процесса, отбрасывается вместе со всем хвостом.
+ * Снимок пишется во временный файл и атомарно переименовывается, после чего поколение журнала увеличивается,
+ * а записи прошлого поколения перестают читаться. Повторное применение записей идемпотентно.
+ */
+public final class MappedSessionStore implements Closeable {
+
+    static final String SNAPSHOT_FILE = "sessions.snapshot";
+    static final String JOURNAL_FILE = "sessions.journal";
+
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_HEADER_SIZE = 16;
+    static final int RECORD_SIZE = RECORD_HEADER_SIZE + OffHeapSessionTable.SLOT_SIZE;
+
+    private static final int MAGIC = 0x53455353;
+    private static final int VERSION = 1;
+    private static final int TYPE_PUT = 1;
+    private static final int TYPE_REMOVE = 2;
+    private static final int SNAPSHOT_BATCH_RECORDS = 512;
+    private static final byte[] EMPTY_SLOT = new byte[OffHeapSessionTable.SLOT_SIZE];
+
+    private final Path snapshotPath;
+    private final FileChannel journalChannel;
+    private final MappedByteBuffer journal;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final CRC32 crc = new CRC32();
+    private long generation;
+    private int position = HEADER_SIZE;
+
+    private MappedSessionStore(Path directory, int journalRecords) throws IOException {
+        Files.createDirectories(directory);
+        this.snapshotPath = directory.resolve(SNAPSHOT_FILE);
+        long requestedSize = HEADER_SIZE + (long) journalRecords * RECORD_SIZE;
+        if (requestedSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Session journal cannot exceed 2 GB");
+        }
+        this.journalChannel = FileChannel.open(directory.resolve(JOURNAL_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = Math.max(requestedSize, Math.min(journalChannel.size(), Integer.MAX_VALUE));
+        this.journal = journalChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    /**
+     * Открывает хранилище в каталоге, создавая файлы при необходимости
+     */
+    public static MappedSessionStore open(Path directory, int journalRecords) throws IOException {
+        return new MappedSessionStore(directory, journalRecords);
+    }
+
+    /**
+     * Загружает снимок и журнал в таблицу. Записи копируются из отображенных файлов в слоты таблицы напрямую.
+     * Возвращает число примененных записей
+     */
+    public int load(OffHeapSessionTable table, long nowMillis) throws IOException {
+        lock.lock();
+        try {
+            int loaded = 0;
+            long snapshotGeneration = 0;
+            if (Files.exists(snapshotPath)) {
+                try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+                    MappedByteBuffer snapshot = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                    snapshotGeneration = readHeader(snapshot);
+                    int end = (int) channel.size() - RECORD_SIZE;
+                    for (int offset = HEADER_SIZE; offset <= end && isValid(snapshot, offset, snapshotGeneration); offset += RECORD_SIZE) {
+                        loaded += apply(table, snapshot, offset, nowMillis);
+                    }
+                }
+            }
+            long journalGeneration = journal.getInt(0) == MAGIC ? journal.getLong(8) : -1;
+            generation = snapshotGeneration;
+            position = HEADER_SIZE;
+            if (journalGeneration == snapshotGeneration) {
+                while (position + RECORD_SIZE <= journal.capacity() && isValid(journal, position, generation)) {
+                    loaded += apply(table, journal, position, nowMillis);
+                    position += RECORD_SIZE;
+                }
+                clearTail();
+            } else {
+                writeJournalHeader();
+            }
+            return loaded;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Добавляет в журнал создание сессии. Возвращает false, если журнал заполнен и нужен снимок
+     */
+    public boolean appendPut(long keyHi, long keyLo, SessionRecord session) {
+        lock.lock();
+        try {
+            if (position + RECORD_SIZE > journal.capacity()) {
+                return false;
+            }
+            journal.put(position + RECORD_HEADER_SIZE, EMPTY_SLOT);
+            if (!OffHeapSessionTable.writeSlot(journal, position + RECORD_HEADER_SIZE, keyHi, keyLo, session)) {
+                throw new IllegalArgumentException("Session does not fit into a slot");
+            }
+            commit(TYPE_PUT);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Добавляет в журнал удаление сессии. Возвращает false, если журнал заполнен и нужен снимок
+     */
+    public boolean appendRemove(long keyHi, long keyLo) {
+        lock.lock();
+        try {
+            if (position + RECORD_SIZE > journal.capacity()) {
+                return false;
+            }
+            journal.put(position + RECORD_HEADER_SIZE, EMPTY_SLOT);
+            OffHeapSessionTable.writeKey(journal, position + RECORD_HEADER_SIZE, keyHi, keyLo);
+            commit(TYPE_REMOVE);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Записывает снимок действующих сессий и начинает новое поколение журнала.
+     * Добавление в журнал на время записи снимка блокируется
+     */
+    public void snapshot(OffHeapSessionTable table, long nowMillis) throws IOException {
+        lock.lock();
+        try {
+            long nextGeneration = generation + 1;
+            Path temporary = snapshotPath.resolveSibling(SNAPSHOT_FILE + ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer batch = ByteBuffer.allocateDirect(SNAPSHOT_BATCH_RECORDS * RECORD_SIZE);
+                channel.position(HEADER_SIZE);
+                SnapshotWriter writer = new SnapshotWriter(channel, batch, nextGeneration);
+                table.forEachLiveSlot(nowMillis, writer);
+                writer.flush();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                writeHeader(header, nextGeneration);
+                channel.write(header.rewind(), 0);
+                channel.force(true);
+            }
+            Files.move(temporary, snapshotPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            forceDirectory();
+            generation = nextGeneration;
+            position = HEADER_SIZE;
+            writeJournalHeader();
+            journal.force();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Сбрасывает журнал на диск
+     */
+    public void force() {
+        lock.lock();
+        try {
+            journal.force();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        journalChannel.close();
+    }
+
+    private void commit(int type) {
+        journal.putInt(position + 4, type);
+        journal.putLong(position + 8, generation);
+        journal.putInt(position, checksum(journal, position));
+        position += RECORD_SIZE;
+    }
+
+    /**
+     * Стирает тип у записей после оборванной, чтобы уцелевшие записи того же поколения
+     * не стали снова достижимыми после новых добавлений
+     */
+    private void clearTail() {
+        for (int offset = position; offset + RECORD_SIZE <= journal.capacity(); offset += RECORD_SIZE) {
+            if (journal.getInt(offset + 4) != 0) {
+                journal.putInt(offset + 4, 0);
+            }
+        }
+    }
+
+    private int apply(OffHeapSessionTable table, ByteBuffer buffer, int offset, long nowMillis) {
+        int payload = offset + RECORD_HEADER_SIZE;
+        if (buffer.getInt(offset + 4) == TYPE_REMOVE) {
+            table.remove(OffHeapSessionTable.keyHi(buffer, payload), OffHeapSessionTable.keyLo(buffer, payload));
+            return 1;
+        }
+        table.putSlotImage(buffer, payload, nowMillis);
+        return 1;
+    }
+
+    private boolean isValid(ByteBuffer buffer, int offset, long expectedGeneration) {
+        int type = buffer.getInt(offset + 4);
+        return (type == TYPE_PUT || type == TYPE_REMOVE)
+                && buffer.getLong(offset + 8) == expectedGeneration
+                && buffer.getInt(offset) == checksum(buffer, offset);
+    }
+
+    private int checksum(ByteBuffer buffer, int offset) {
+        crc.reset();
+        crc.update(buffer.slice(offset + 4, RECORD_SIZE - 4));
+        return (int) crc.getValue();
+    }
+
+    private void writeJournalHeader() {
+        writeHeader(journal.slice(0, HEADER_SIZE), generation);
+    }
+
+    private static void writeHeader(ByteBuffer header, long generation) {
+        header.putInt(0, MAGIC);
+        header.putInt(4, VERSION);
+        header.putLong(8, generation);
+    }
+
+    private static long readHeader(ByteBuffer header) throws IOException {
+        if (header.capacity() < HEADER_SIZE || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IOException("Unsupported session snapshot format");
+        }
+        return header.getLong(8);
+    }
+
+    private void forceDirectory() {
+        try (FileChannel directory = FileChannel.open(snapshotPath.getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            // не все файловые системы позволяют синхронизировать каталог, переименование при этом уже выполнено
+        }
+    }
+
+    /**
+     * Копирует образы слотов в буфер пачками и дописывает их в файл снимка
+     */
+    private final class SnapshotWriter implements OffHeapSessionTable.SlotVisitor {
+
+        private final FileChannel channel;
+        private final ByteBuffer batch;
+        private final long snapshotGeneration;
+        private IOException failure;
+
+        private SnapshotWriter(FileChannel channel, ByteBuffer batch, long snapshotGeneration) {
+            this.channel = channel;
+            this.batch = batch;
+            this.snapshotGeneration = snapshotGeneration;
+        }
+
+        @Override
+        public void visit(ByteBuffer buffer, int offset) {
+            if (failure != null) {
+                return;
+            }
+            int record = batch.position();
+            batch.putInt(0);
+            batch.putInt(TYPE_PUT);
+            batch.putLong(snapshotGeneration);
+            batch.put(buffer.slice(offset, OffHeapSessionTable.SLOT_SIZE));
+            batch.putInt(record, checksum(batch, record));
+            if (!batch.hasRemaining()) {
+                writeBatch();
+            }
+        }
+
+        private void flush() throws IOException {
+            writeBatch();
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        private void writeBatch() {
+            batch.flip();
+            try {
+                while (batch.hasRemaining()) {
+                    channel.write(batch);
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+            batch.clear();
+        }
+
+    }
+
+}
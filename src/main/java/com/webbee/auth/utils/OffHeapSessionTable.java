@@ -0,0 +1,334 @@
+package com.webbee.auth.utils;
+
+import com.webbee.auth.security.model.SessionRecord;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Хеш-таблица сессий с фиксированными слотами вне кучи.
+ * Ключ - 128-битный случайный идентификатор токена, поэтому его биты используются как хеш напрямую.
+ * Таблица разбита на сегменты со своей блокировкой, внутри сегмента - открытая адресация
+ * с линейным пробированием и удалением со сдвигом назад, без надгробий.
+ * Слот занимает {@value #SLOT_SIZE} байт, имя пользователя хранится в слоте и ограничено {@value #MAX_USERNAME_BYTES} байтами UTF-8.
+ */
+public final class OffHeapSessionTable {
+
+    public static final int SLOT_SIZE = 128;
+    public static final int MAX_USERNAME_BYTES = 80;
+
+    private static final int KEY_HI = 0;
+    private static final int KEY_LO = 8;
+    private static final int EXPIRES_AT = 16;
+    private static final int USER_ID = 24;
+    private static final int ROLE_MASK = 32;
+    private static final int STATE = 40;
+    private static final int USERNAME_LENGTH = 44;
+    private static final int USERNAME = 48;
+
+    private static final int EMPTY = 0;
+    private static final int USED = 1;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final int segmentSlotMask;
+    private final int maxEntriesPerSegment;
+
+    /**
+     * @param capacity общее число слотов, округляется вверх до степени двойки
+     * @param segmentCount число сегментов, округляется вверх до степени двойки
+     */
+    public OffHeapSessionTable(int capacity, int segmentCount) {
+        int segmentsPowerOfTwo = ceilingPowerOfTwo(Math.max(1, segmentCount));
+        int slotsPerSegment = ceilingPowerOfTwo(Math.max(4, capacity / segmentsPowerOfTwo));
+        if ((long) slotsPerSegment * SLOT_SIZE > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Session table segment is too large, increase segment count");
+        }
+        this.segments = new Segment[segmentsPowerOfTwo];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(ByteBuffer.allocateDirect(slotsPerSegment * SLOT_SIZE));
+        }
+        this.segmentMask = segmentsPowerOfTwo - 1;
+        this.segmentSlotMask = slotsPerSegment - 1;
+        this.maxEntriesPerSegment = slotsPerSegment - slotsPerSegment / 4;
+    }
+
+    /**
+     * Сохраняет или заменяет сессию.
+     * Возвращает false, если сегмент заполнен или имя пользователя не помещается в слот
+     */
+    public boolean put(long keyHi, long keyLo, SessionRecord session) {
+        byte[] username = session.username().getBytes(StandardCharsets.UTF_8);
+        if (username.length > MAX_USERNAME_BYTES) {
+            return false;
+        }
+        Segment segment = segmentFor(keyHi);
+        segment.lock.writeLock().lock();
+        try {
+            int slot = segment.find(keyHi, keyLo);
+            if (slot < 0) {
+                if (segment.size >= maxEntriesPerSegment) {
+                    return false;
+                }
+                slot = ~slot;
+                segment.size++;
+            }
+            segment.write(slot, keyHi, keyLo, session, username);
+            return true;
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Возвращает действующую сессию или null, если ее нет или срок действия истек
+     */
+    public SessionRecord get(long keyHi, long keyLo, long nowMillis) {
+        Segment segment = segmentFor(keyHi);
+        segment.lock.readLock().lock();
+        try {
+            int slot = segment.find(keyHi, keyLo);
+            if (slot < 0) {
+                return null;
+            }
+            SessionRecord session = segment.read(slot);
+            return session.expiresAtMillis() > nowMillis ? session : null;
+        } finally {
+            segment.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Удаляет сессию. Возвращает false, если сессии не было
+     */
+    public boolean remove(long keyHi, long keyLo) {
+        Segment segment = segmentFor(keyHi);
+        segment.lock.writeLock().lock();
+        try {
+            int slot = segment.find(keyHi, keyLo);
+            if (slot < 0) {
+                return false;
+            }
+            segment.delete(slot);
+            return true;
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Удаляет сессии с истекшим сроком действия, сегменты обходятся по очереди.
+     * Возвращает число удаленных сессий
+     */
+    public int sweep(long nowMillis) {
+        int removed = 0;
+        for (Segment segment : segments) {
+            segment.lock.writeLock().lock();
+            try {
+                int slot = 0;
+                while (slot <= segmentSlotMask) {
+                    if (segment.isUsed(slot) && segment.buffer.getLong(slot * SLOT_SIZE + EXPIRES_AT) <= nowMillis) {
+                        segment.delete(slot);
+                        removed++;
+                    } else {
+                        slot++;
+                    }
+                }
+            } finally {
+                segment.lock.writeLock().unlock();
+            }
+        }
+        return removed;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    public int capacity() {
+        return segments.length * (segmentSlotMask + 1);
+    }
+
+    /**
+     * Вставляет сессию из образа слота в другом буфере (снимок или журнал) без разбора полей.
+     * Истекшие сессии пропускаются. Возвращает false, если сессия не вставлена
+     */
+    public boolean putSlotImage(ByteBuffer source, int offset, long nowMillis) {
+        if (source.getLong(offset + EXPIRES_AT) <= nowMillis) {
+            return false;
+        }
+        long keyHi = source.getLong(offset + KEY_HI);
+        long keyLo = source.getLong(offset + KEY_LO);
+        Segment segment = segmentFor(keyHi);
+        segment.lock.writeLock().lock();
+        try {
+            int slot = segment.find(keyHi, keyLo);
+            if (slot < 0) {
+                if (segment.size >= maxEntriesPerSegment) {
+                    return false;
+                }
+                slot = ~slot;
+                segment.size++;
+            }
+            segment.buffer.put(slot * SLOT_SIZE, source, offset, SLOT_SIZE);
+            segment.buffer.putInt(slot * SLOT_SIZE + STATE, USED);
+            return true;
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Обходит действующие сессии, передавая образ слота. Сегмент блокируется на чтение на время обхода
+     */
+    public void forEachLiveSlot(long nowMillis, SlotVisitor visitor) {
+        for (Segment segment : segments) {
+            segment.lock.readLock().lock();
+            try {
+                for (int slot = 0; slot <= segmentSlotMask; slot++) {
+                    int offset = slot * SLOT_SIZE;
+                    if (segment.isUsed(slot) && segment.buffer.getLong(offset + EXPIRES_AT) > nowMillis) {
+                        visitor.visit(segment.buffer, offset);
+                    }
+                }
+            } finally {
+                segment.lock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Записывает образ слота в произвольный буфер. Возвращает false, если имя не помещается в слот
+     */
+    static boolean writeSlot(ByteBuffer buffer, int offset, long keyHi, long keyLo, SessionRecord session) {
+        byte[] username = session.username().getBytes(StandardCharsets.UTF_8);
+        if (username.length > MAX_USERNAME_BYTES) {
+            return false;
+        }
+        writeSlot(buffer, offset, keyHi, keyLo, session, username);
+        return true;
+    }
+
+    static void writeKey(ByteBuffer buffer, int offset, long keyHi, long keyLo) {
+        buffer.putLong(offset + KEY_HI, keyHi);
+        buffer.putLong(offset + KEY_LO, keyLo);
+    }
+
+    static long keyHi(ByteBuffer buffer, int offset) {
+        return buffer.getLong(offset + KEY_HI);
+    }
+
+    static long keyLo(ByteBuffer buffer, int offset) {
+        return buffer.getLong(offset + KEY_LO);
+    }
+
+    private static void writeSlot(ByteBuffer buffer, int offset, long keyHi, long keyLo, SessionRecord session, byte[] username) {
+        buffer.putLong(offset + KEY_HI, keyHi);
+        buffer.putLong(offset + KEY_LO, keyLo);
+        buffer.putLong(offset + EXPIRES_AT, session.expiresAtMillis());
+        buffer.putLong(offset + USER_ID, session.userId());
+        buffer.putLong(offset + ROLE_MASK, session.roleMask());
+        buffer.putInt(offset + USERNAME_LENGTH, username.length);
+        buffer.put(offset + USERNAME, username);
+        buffer.putInt(offset + STATE, USED);
+    }
+
+    private Segment segmentFor(long keyHi) {
+        return segments[(int) (keyHi >>> 32) & segmentMask];
+    }
+
+    private static int ceilingPowerOfTwo(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    /**
+     * Получатель образов слотов при обходе таблицы
+     */
+    @FunctionalInterface
+    public interface SlotVisitor {
+
+        void visit(ByteBuffer buffer, int offset);
+
+    }
+
+    private final class Segment {
+
+        private final ByteBuffer buffer;
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private volatile int size;
+
+        private Segment(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * Номер слота с ключом или ~номер первого свободного слота, если ключа нет
+         */
+        private int find(long keyHi, long keyLo) {
+            int slot = home(keyLo);
+            while (isUsed(slot)) {
+                int offset = slot * SLOT_SIZE;
+                if (buffer.getLong(offset + KEY_HI) == keyHi && buffer.getLong(offset + KEY_LO) == keyLo) {
+                    return slot;
+                }
+                slot = (slot + 1) & segmentSlotMask;
+            }
+            return ~slot;
+        }
+
+        private boolean isUsed(int slot) {
+            return buffer.getInt(slot * SLOT_SIZE + STATE) == USED;
+        }
+
+        private int home(long keyLo) {
+            return (int) keyLo & segmentSlotMask;
+        }
+
+        private void write(int slot, long keyHi, long keyLo, SessionRecord session, byte[] username) {
+            writeSlot(buffer, slot * SLOT_SIZE, keyHi, keyLo, session, username);
+        }
+
+        private SessionRecord read(int slot) {
+            int offset = slot * SLOT_SIZE;
+            byte[] username = new byte[buffer.getInt(offset + USERNAME_LENGTH)];
+            buffer.get(offset + USERNAME, username);
+            return new SessionRecord(
+                    buffer.getLong(offset + USER_ID),
+                    new String(username, StandardCharsets.UTF_8),
+                    buffer.getLong(offset + ROLE_MASK),
+                    buffer.getLong(offset + EXPIRES_AT));
+        }
+
+        /**
+         * Удаление со сдвигом назад: последующие записи цепочки переносятся в освободившийся слот,
+         * если их исходная позиция не лежит между освободившимся слотом и текущим
+         */
+        private void delete(int slot) {
+            int hole = slot;
+            int next = slot;
+            while (true) {
+                next = (next + 1) & segmentSlotMask;
+                if (!isUsed(next)) {
+                    break;
+                }
+                int home = home(buffer.getLong(next * SLOT_SIZE + KEY_LO));
+                boolean staysInPlace = hole <= next
+                        ? hole < home && home <= next
+                        : hole < home || home <= next;
+                if (!staysInPlace) {
+                    buffer.put(hole * SLOT_SIZE, buffer, next * SLOT_SIZE, SLOT_SIZE);
+                    hole = next;
+                }
+            }
+            buffer.putInt(hole * SLOT_SIZE + STATE, EMPTY);
+            size--;
+        }
+
+    }
+
+}
@@ -0,0 +1,65 @@
+package com.webbee.auth.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Объединение одновременных запросов по ключу (single flight).
+ * Первый вызов для ключа выполняет загрузку в своем потоке, вызовы, пришедшие до ее завершения,
+ * ждут и получают тот же результат или то же исключение. После завершения ключ освобождается,
+ * так что результат не кешируется: следующий вызов снова выполняет загрузку.
+ */
+public final class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+
+    /**
+     * Возвращает результат загрузки для ключа, присоединяясь к уже выполняющейся, если она есть
+     */
+    public V execute(K key, Function<? super K, ? extends V> loader) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> running = flights.putIfAbsent(key, flight);
+        if (running != null) {
+            return await(running);
+        }
+        try {
+            V value = loader.apply(key);
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    /**
+     * Отвязывает ключ от выполняющейся загрузки: ее текущие участники получат результат,
+     * а новые вызовы начнут собственную загрузку. Используется после изменения данных
+     */
+    public void forget(K key) {
+        flights.remove(key);
+    }
+
+    public int inFlight() {
+        return flights.size();
+    }
+
+    private static <V> V await(CompletableFuture<V> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+}
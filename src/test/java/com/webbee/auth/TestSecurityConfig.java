@@ -1,9 +1,14 @@
 package com.webbee.auth;
 
+import com.webbee.auth.security.service.CompiledRoleHierarchy;
 import com.webbee.auth.security.service.JwtService;
+import com.webbee.auth.security.service.RoleCatalog;
+import com.webbee.auth.security.service.TokenVersionRegistry;
+import jakarta.servlet.DispatcherType;
 import org.mockito.Mockito;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
 import org.springframework.context.annotation.Primary;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -15,17 +20,25 @@ import org.springframework.security.web.SecurityFilterChain;
 @TestConfiguration
 @EnableWebSecurity
 @EnableMethodSecurity
+@Import({RoleCatalog.class, CompiledRoleHierarchy.class})
 public class TestSecurityConfig {
 
     @Bean
     @Primary
-    public SecurityFilterChain testSecurityFilterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain testSecurityFilterChain(HttpSecurity http, CompiledRoleHierarchy roleHierarchy) throws Exception {
         return http
                 .authorizeHttpRequests(request ->
                         request
-                                .requestMatchers("/auth/signup", "/auth/signin").permitAll()
-                                .requestMatchers("/user-roles/save").hasRole("ADMIN")
+                                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+                                .requestMatchers("/auth/signup", "/auth/signin", "/auth/availability").permitAll()
+                                .requestMatchers("/user-roles/save").access(roleHierarchy.requireRole("ADMIN"))
+                                .requestMatchers("/user-roles/batch").authenticated()
+                                .requestMatchers("/role-changes/**").access(roleHierarchy.requireRole("ADMIN"))
+                                .requestMatchers("/users/**").access(roleHierarchy.requireRole("ADMIN"))
                                 .requestMatchers("/user-roles/{login}").authenticated()
+                                .requestMatchers("/auth/signout").authenticated()
+                                .requestMatchers("/actuator/health/**").permitAll()
+                                .requestMatchers("/actuator/**").access(roleHierarchy.requireRole("ADMIN"))
                                 .anyRequest().permitAll())
                 .csrf(AbstractHttpConfigurer::disable)
                 .sessionManagement(sessionManagement ->
@@ -39,4 +52,12 @@ public class TestSecurityConfig {
         return Mockito.mock(JwtService.class);
     }
 
+    @Bean
+    @Primary
+    public TokenVersionRegistry tokenVersionRegistry() {
+        TokenVersionRegistry tokenVersionRegistry = Mockito.mock(TokenVersionRegistry.class);
+        Mockito.when(tokenVersionRegistry.isCurrent(Mockito.any(), Mockito.anyLong())).thenReturn(true);
+        return tokenVersionRegistry;
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,73 @@
+package com.webbee.auth.audit.service;
+
+import com.webbee.auth.audit.model.AuditEvent;
+import com.webbee.auth.audit.model.AuditEventType;
+import com.webbee.auth.audit.model.AuditOverflowPolicy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AuditServiceTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void shouldBufferEventsUntilDrained() {
+        AuditService auditService = new AuditService(true, 8, AuditOverflowPolicy.DROP, Duration.ZERO, meterRegistry);
+
+        auditService.publish(AuditEventType.LOGIN_SUCCESS, "testuser", null);
+        auditService.publish(AuditEventType.LOGIN_FAILURE, "other", "BadCredentialsException");
+
+        List<AuditEvent> drained = new ArrayList<>();
+        assertThat(auditService.drainTo(drained, 10)).isEqualTo(2);
+        assertThat(drained).extracting(AuditEvent::getType)
+                .containsExactly(AuditEventType.LOGIN_SUCCESS, AuditEventType.LOGIN_FAILURE);
+        assertThat(auditService.hasPending()).isFalse();
+        assertThat(meterRegistry.counter("auth.audit.events.published").count()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldDropEventsWhenBufferIsFull() {
+        AuditService auditService = new AuditService(true, 2, AuditOverflowPolicy.DROP, Duration.ZERO, meterRegistry);
+
+        for (int i = 0; i < 5; i++) {
+            auditService.publish(AuditEventType.LOGIN_SUCCESS, "user" + i, null);
+        }
+
+        assertThat(meterRegistry.counter("auth.audit.events.published").count()).isEqualTo(2);
+        assertThat(meterRegistry.counter("auth.audit.events.dropped").count()).isEqualTo(3);
+        assertThat(meterRegistry.get("auth.audit.buffer.size").gauge().value()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldDropAfterBlockTimeoutWhenBufferStaysFull() {
+        AuditService auditService = new AuditService(true, 2, AuditOverflowPolicy.BLOCK, Duration.ofMillis(5), meterRegistry);
+
+        for (int i = 0; i < 3; i++) {
+            auditService.publish(AuditEventType.LOGIN_SUCCESS, "user" + i, null);
+        }
+
+        assertThat(meterRegistry.counter("auth.audit.events.dropped").count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldIgnoreEventsWhenDisabled() {
+        AuditService auditService = new AuditService(false, 8, AuditOverflowPolicy.DROP, Duration.ZERO, meterRegistry);
+
+        auditService.publish(AuditEventType.ROLES_CHANGED, "testuser", "ADMIN");
+
+        assertThat(auditService.hasPending()).isFalse();
+    }
+
+}
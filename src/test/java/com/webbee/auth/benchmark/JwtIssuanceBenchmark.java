@@ -0,0 +1,74 @@
+package com.webbee.auth.benchmark;
+
+import com.webbee.auth.security.model.CustomUserDetails;
+import com.webbee.auth.security.service.CompiledRoleHierarchy;
+import com.webbee.auth.security.service.JwtService;
+import com.webbee.auth.security.service.RoleCatalog;
+import com.webbee.auth.security.service.SessionTokenService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Выпуск JWT через JJWT и через Hs256JwtEncoder. Выделение памяти на токен показывает gc.alloc.rate.norm.
+ * Запуск: mvn -Pbenchmark -DskipTests test-compile exec:exec -Dbenchmark.include=JwtIssuanceBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtIssuanceBenchmark {
+
+    @Param({"false", "true"})
+    private boolean fastEncoder;
+
+    @Param({"false", "true"})
+    private boolean compactClaims;
+
+    private JwtService jwtService;
+    private CustomUserDetails userDetails;
+
+    @Setup
+    public void setUp() {
+        RoleCatalog roleCatalog = new RoleCatalog();
+        CompiledRoleHierarchy roleHierarchy = new CompiledRoleHierarchy(roleCatalog, "");
+        SessionTokenService sessionTokenService = new SessionTokenService(
+                roleCatalog, roleHierarchy, "jwt", 0, 1, Duration.ZERO, "", 0, new SimpleMeterRegistry());
+        jwtService = new JwtService(roleCatalog, roleHierarchy, sessionTokenService);
+        ReflectionTestUtils.setField(jwtService, "secretKey", "BenchmarkSecret");
+        ReflectionTestUtils.setField(jwtService, "lifeTime", TimeUnit.HOURS.toMillis(1));
+        ReflectionTestUtils.setField(jwtService, "compactClaims", compactClaims);
+        ReflectionTestUtils.setField(jwtService, "fastEncoder", fastEncoder);
+        userDetails = new CustomUserDetails(
+                "contractor-superuser",
+                "password",
+                Set.of(new SimpleGrantedAuthority("ROLE_USER"),
+                        new SimpleGrantedAuthority("ROLE_CONTRACTOR_RUS"),
+                        new SimpleGrantedAuthority("ROLE_CONTRACTOR_SUPERUSER"),
+                        new SimpleGrantedAuthority("ROLE_DEAL_SUPERUSER")),
+                "contractor@example.com");
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwtService.generateJwtToken(userDetails, 100500L);
+    }
+
+}
@@ -0,0 +1,115 @@
+package com.webbee.auth.benchmark;
+
+import com.webbee.auth.repository.UserRoleLookupRepository;
+import liquibase.integration.spring.SpringLiquibase;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Обычная и секционированная по хешу таблица users (changeset partition-users-by-hash) на заполненной базе PostgreSQL
+ * в Testcontainers: поиск по логину затрагивает одну секцию, вставка идет через маршрутизацию по секциям
+ * и триггер user_email_keys, обновление по id проверяет первичные ключи всех секций.
+ * Запуск (нужен Docker): mvn -Pbenchmark -DskipTests test-compile exec:exec -Dbenchmark.include=UserPartitioningBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserPartitioningBenchmark {
+
+    private static final String FIND_BY_USERNAME = "SELECT u.id, u.username, u.password, u.email, u.roles_version, u.token_version "
+            + "FROM users u WHERE lower(u.username) = lower(?)";
+    private static final String FIND_ROLES = "SELECT r.name FROM user_roles ur JOIN roles r ON r.id = ur.role_id WHERE ur.user_id = ?";
+    private static final String INSERT_USER = "INSERT INTO users (username, password, email) VALUES (?, 'hash', ?)";
+    private static final String TOUCH_LAST_LOGIN = "UPDATE users SET last_login_at = now() WHERE id = ?";
+
+    @Param({"0", "16"})
+    private int partitions;
+
+    @Param({"1000000"})
+    private int users;
+
+    private PostgreSQLContainer<?> postgres;
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private UserRoleLookupRepository userRoleLookupRepository;
+    private final AtomicLong registered = new AtomicLong();
+
+    @Setup
+    public void setUp() throws Exception {
+        postgres = new PostgreSQLContainer<>("postgres:16");
+        postgres.start();
+        dataSource = new SingleConnectionDataSource(postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword(), true);
+        SpringLiquibase liquibase = new SpringLiquibase();
+        liquibase.setDataSource(dataSource);
+        liquibase.setChangeLog("classpath:db/changelog/changelog-master.yaml");
+        liquibase.setChangeLogParameters(Map.of("usersPartitions", String.valueOf(partitions)));
+        liquibase.setResourceLoader(new DefaultResourceLoader());
+        liquibase.afterPropertiesSet();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update("INSERT INTO users (username, password, email) "
+                + "SELECT 'User' || n, 'hash', 'user' || n || '@example.com' FROM generate_series(1, ?) n", users);
+        jdbcTemplate.update("INSERT INTO user_roles (user_id, role_id) SELECT u.id, r.id FROM users u, roles r WHERE r.name = 'USER'");
+        jdbcTemplate.update("INSERT INTO user_roles (user_id, role_id) SELECT u.id, r.id FROM users u, roles r WHERE r.name = 'ADMIN' AND u.id % 100 = 0");
+        jdbcTemplate.execute("VACUUM ANALYZE");
+        userRoleLookupRepository = new UserRoleLookupRepository(jdbcTemplate);
+    }
+
+    @TearDown
+    public void tearDown() {
+        dataSource.destroy();
+        postgres.stop();
+    }
+
+    /**
+     * Те же два запроса, что выполняет UserRepository.findByUsername: пользователь и затем его роли (EAGER)
+     */
+    @Benchmark
+    public List<String> findUserWithRolesByUsername() {
+        Long id = jdbcTemplate.query(FIND_BY_USERNAME, (resultSet, rowNum) -> resultSet.getLong(1), randomUsername()).get(0);
+        return jdbcTemplate.queryForList(FIND_ROLES, String.class, id);
+    }
+
+    @Benchmark
+    public Map<String, List<String>> findRolesByUsernames() {
+        return userRoleLookupRepository.findRolesByUsernames(List.of(randomUsername(), randomUsername(), randomUsername()));
+    }
+
+    @Benchmark
+    public int registerUser() {
+        long n = registered.incrementAndGet();
+        return jdbcTemplate.update(INSERT_USER, "bench" + n, "bench" + n + "@example.com");
+    }
+
+    @Benchmark
+    public int touchLastLoginById() {
+        return jdbcTemplate.update(TOUCH_LAST_LOGIN, ThreadLocalRandom.current().nextLong(1, users + 1));
+    }
+
+    private String randomUsername() {
+        return "user" + ThreadLocalRandom.current().nextInt(1, users + 1);
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.webbee.auth.config;
+
+import com.webbee.auth.dto.RoleChangeDto;
+import com.webbee.auth.dto.RoleChangePageDto;
+import com.webbee.auth.dto.UserImportResultDto;
+import com.webbee.auth.dto.UserListItemDto;
+import com.webbee.auth.dto.UserRolesBatchDto;
+import com.webbee.auth.dto.UserRolesBatchRequest;
+import com.webbee.auth.entity.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AuthRuntimeHintsTest {
+
+    private final RuntimeHints hints = new RuntimeHints();
+
+    @Test
+    void shouldRegisterEveryDtoOfPackage() {
+        new AuthRuntimeHints().registerHints(hints, getClass().getClassLoader());
+
+        List.of(RoleChangeDto.class, RoleChangePageDto.class, UserImportResultDto.class, UserListItemDto.class,
+                        UserRolesBatchDto.class, UserRolesBatchRequest.class)
+                .forEach(type -> assertThat(RuntimeHintsPredicates.reflection().onType(type)
+                        .withMemberCategory(MemberCategory.INVOKE_DECLARED_CONSTRUCTORS)).as(type.getSimpleName()).accepts(hints));
+    }
+
+    @Test
+    void shouldRegisterEntitiesAndChangelog() {
+        new AuthRuntimeHints().registerHints(hints, getClass().getClassLoader());
+
+        assertThat(RuntimeHintsPredicates.reflection().onType(User.class).withMemberCategory(MemberCategory.DECLARED_FIELDS)).accepts(hints);
+        assertThat(RuntimeHintsPredicates.resource().forResource("db/changelog/changelog-master.yaml")).accepts(hints);
+    }
+
+}
@@ -5,6 +5,9 @@ import com.webbee.auth.TestSecurityConfig;
 import com.webbee.auth.dto.AuthStatusDto;
 import com.webbee.auth.dto.LoginRequest;
 import com.webbee.auth.dto.RegistrationDto;
+import com.webbee.auth.dto.UsernameAvailabilityDto;
+import com.webbee.auth.security.model.TokenData;
+import com.webbee.auth.security.service.JwtService;
 import com.webbee.auth.service.AuthService;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -15,13 +18,18 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.util.List;
+
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -48,6 +56,9 @@ class AuthControllerTest {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private JwtService jwtService;
+
     @Test
     @DisplayName("PUT /auth/signup - успешная регистрация пользователя")
     void signUp_ValidRequest_ReturnsSuccess() throws Exception {
@@ -194,4 +205,51 @@ class AuthControllerTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    @DisplayName("POST /auth/signout - сессия завершена")
+    @WithMockUser(username = "testuser")
+    void signOut_ActiveSession_ReturnsSuccess() throws Exception {
+
+        when(jwtService.parseToken("session-token")).thenReturn(TokenData.builder()
+                .token("session-token")
+                .username("testuser")
+                .authorities(List.of())
+                .build());
+        when(authService.logout("session-token")).thenReturn(AuthStatusDto.builder().code(HttpStatus.OK.value()).build());
+        mockMvc.perform(post("/auth/signout")
+                        .header("Authorization", "Bearer session-token"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.code").value(200));
+        verify(authService).logout("session-token");
+
+    }
+
+    @Test
+    @DisplayName("POST /auth/signout - неавторизованный пользователь")
+    void signOut_Unauthorized_ReturnsForbidden() throws Exception {
+
+        mockMvc.perform(post("/auth/signout"))
+                .andExpect(status().isForbidden());
+        verifyNoInteractions(authService);
+
+    }
+
+    @Test
+    @DisplayName("GET /auth/availability - логин свободен")
+    void checkAvailability_FreeUsername_ReturnsAvailable() throws Exception {
+
+        UsernameAvailabilityDto response = UsernameAvailabilityDto.builder()
+                .username("newuser")
+                .available(true)
+                .build();
+        when(authService.checkUsernameAvailability("newuser")).thenReturn(response);
+        mockMvc.perform(get("/auth/availability").param("username", "newuser"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.username").value("newuser"))
+                .andExpect(jsonPath("$.available").value(true));
+        verify(authService).checkUsernameAvailability("newuser");
+
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.webbee.auth.controller;
+
+import com.webbee.auth.TestSecurityConfig;
+import com.webbee.auth.dto.RoleChangeDto;
+import com.webbee.auth.dto.RoleChangePageDto;
+import com.webbee.auth.service.RoleChangeFeed;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(RoleChangeController.class)
+@TestPropertySource(properties = {
+    "spring.autoconfigure.exclude=org.springframework.boot.autoconfigure.liquibase.LiquibaseAutoConfiguration," +
+    "org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration," +
+    "org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration",
+    "jwt.secret=TestSecret",
+    "spring.liquibase.enabled=false",
+    "spring.jpa.hibernate.ddl-auto=none"
+})
+@Import(TestSecurityConfig.class)
+class RoleChangeControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private RoleChangeFeed roleChangeFeed;
+
+    @Test
+    @DisplayName("GET /role-changes - администратор получает изменения после версии")
+    @WithMockUser(username = "admin", roles = {"ADMIN"})
+    void getChanges_AdminUser_ReturnsPage() throws Exception {
+
+        RoleChangeDto change = RoleChangeDto.builder()
+                .version(42L)
+                .username("alice")
+                .roles(List.of("USER", "MODERATOR"))
+                .changedAt(Instant.parse("2025-01-01T00:00:00Z"))
+                .build();
+        when(roleChangeFeed.changesSince(41, 10)).thenReturn(RoleChangePageDto.builder()
+                .changes(List.of(change))
+                .nextVersion(42L)
+                .hasMore(false)
+                .build());
+        mockMvc.perform(get("/role-changes").param("since", "41").param("limit", "10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.changes[0].version").value(42))
+                .andExpect(jsonPath("$.changes[0].username").value("alice"))
+                .andExpect(jsonPath("$.changes[0].roles.length()").value(2))
+                .andExpect(jsonPath("$.nextVersion").value(42))
+                .andExpect(jsonPath("$.hasMore").value(false));
+
+    }
+
+    @Test
+    @DisplayName("GET /role-changes - отрицательная версия")
+    @WithMockUser(username = "admin", roles = {"ADMIN"})
+    void getChanges_NegativeVersion_ReturnsBadRequest() throws Exception {
+
+        mockMvc.perform(get("/role-changes").param("since", "-1"))
+                .andExpect(status().isBadRequest());
+        verifyNoInteractions(roleChangeFeed);
+
+    }
+
+    @Test
+    @DisplayName("GET /role-changes - пользователь без роли ADMIN")
+    @WithMockUser(username = "alice", roles = {"USER"})
+    void getChanges_RegularUser_ReturnsForbidden() throws Exception {
+
+        mockMvc.perform(get("/role-changes"))
+                .andExpect(status().isForbidden());
+        verifyNoInteractions(roleChangeFeed);
+
+    }
+
+    @Test
+    @DisplayName("GET /role-changes/stream - подписка продолжается с Last-Event-ID")
+    @WithMockUser(username = "admin", roles = {"ADMIN"})
+    void stream_LastEventId_ResumesFromVersion() throws Exception {
+
+        when(roleChangeFeed.subscribe(17)).thenReturn(new SseEmitter());
+        mockMvc.perform(get("/role-changes/stream").header("Last-Event-ID", "17"))
+                .andExpect(request().asyncStarted());
+        verify(roleChangeFeed).subscribe(17);
+
+    }
+
+    @Test
+    @DisplayName("GET /role-changes/stream - без версии подписка начинается с конца журнала")
+    @WithMockUser(username = "admin", roles = {"ADMIN"})
+    void stream_WithoutVersion_StartsFromLatest() throws Exception {
+
+        when(roleChangeFeed.latestVersion()).thenReturn(99L);
+        when(roleChangeFeed.subscribe(99)).thenReturn(new SseEmitter());
+        mockMvc.perform(get("/role-changes/stream"))
+                .andExpect(request().asyncStarted());
+        verify(roleChangeFeed).subscribe(99);
+
+    }
+
+}
@@ -0,0 +1,216 @@
+package com.webbee.auth.controller;
+
+import com.webbee.auth.TestSecurityConfig;
+import com.webbee.auth.dto.UserImportResultDto;
+import com.webbee.auth.repository.UserListingRepository;
+import com.webbee.auth.service.UserBulkService;
+import com.webbee.auth.service.UserListingService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(UserController.class)
+@TestPropertySource(properties = {
+    "spring.autoconfigure.exclude=org.springframework.boot.autoconfigure.liquibase.LiquibaseAutoConfiguration," +
+    "org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration," +
+    "org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration",
+    "jwt.secret=TestSecret",
+    "spring.liquibase.enabled=false",
+    "spring.jpa.hibernate.ddl-auto=none"
+})
+@Import(TestSecurityConfig.class)
+class UserControllerTest {
+
+    private static final long STREAM_TIMEOUT_MILLIS = 600_000L;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private UserListingService userListingService;
+
+    @MockitoBean
+    private UserBulkService userBulkService;
+
+    @Test
+    @DisplayName("GET /users - администратор получает потоковую выгрузку с фильтрами")
+    @WithMockUser(username = "admin", roles = {"ADMIN"})
+    void listUsers_AdminUser_StreamsUsers() throws Exception {
+
+        UserListingRepository.Query query = new UserListingRepository.Query("ADMIN", "al", 10L, 2);
+        doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(1);
+            out.write("{\"users\":[{\"id\":11,\"username\":\"alice\"}],\"nextAfter\":null}".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(userListingService).writeUsers(eq(query), any());
+
+        MvcResult result = mockMvc.perform(get("/users")
+                        .param("role", "ADMIN")
+                        .param("prefix", "al")
+                        .param("after", "10")
+                        .param("limit", "2"))
+                .andExpect(request().asyncStarted())
+                .andExpect(started -> assertThat(started.getRequest().getAsyncContext().getTimeout()).isEqualTo(STREAM_TIMEOUT_MILLIS))
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.users[0].username").value("alice"))
+                .andExpect(jsonPath("$.nextAfter").isEmpty());
+
+        verify(userListingService).writeUsers(eq(query), any());
+
+    }
+
+    @Test
+    @DisplayName("GET /users - неположительный limit отклоняется")
+    @WithMockUser(username = "admin", roles = {"ADMIN"})
+    void listUsers_InvalidLimit_ReturnsBadRequest() throws Exception {
+
+        mockMvc.perform(get("/users").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(userListingService);
+
+    }
+
+    @Test
+    @DisplayName("GET /users/by-role - администратор получает число пользователей по ролям")
+    @WithMockUser(username = "admin", roles = {"ADMIN"})
+    void countUsersByRole_AdminUser_ReturnsCounts() throws Exception {
+
+        when(userListingService.countUsersByRole()).thenReturn(Map.of("ADMIN", 2L, "DEAL_SUPERUSER", 0L));
+
+        mockMvc.perform(get("/users/by-role"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.ADMIN").value(2))
+                .andExpect(jsonPath("$.DEAL_SUPERUSER").value(0));
+
+    }
+
+    @Test
+    @DisplayName("GET /users/by-role/{role} - выгрузка участников роли")
+    @WithMockUser(username = "admin", roles = {"ADMIN"})
+    void listRoleMembers_ExistingRole_StreamsMembers() throws Exception {
+
+        UserListingRepository.Query query = new UserListingRepository.Query("DEAL_SUPERUSER", null, 0L, 100);
+        when(userListingService.roleExists("DEAL_SUPERUSER")).thenReturn(true);
+
+        MvcResult result = mockMvc.perform(get("/users/by-role/DEAL_SUPERUSER").param("limit", "100"))
+                .andExpect(request().asyncStarted())
+                .andExpect(started -> assertThat(started.getRequest().getAsyncContext().getTimeout()).isEqualTo(STREAM_TIMEOUT_MILLIS))
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk());
+
+        verify(userListingService).writeUsers(eq(query), any());
+
+    }
+
+    @Test
+    @DisplayName("GET /users/by-role/{role} - несуществующая роль")
+    @WithMockUser(username = "admin", roles = {"ADMIN"})
+    void listRoleMembers_UnknownRole_ReturnsNotFound() throws Exception {
+
+        when(userListingService.roleExists("MISSING")).thenReturn(false);
+
+        mockMvc.perform(get("/users/by-role/MISSING"))
+                .andExpect(status().isNotFound());
+
+    }
+
+    @Test
+    @DisplayName("GET /users/export - выгрузка CSV")
+    @WithMockUser(username = "admin", roles = {"ADMIN"})
+    void exportUsers_AdminUser_StreamsCsv() throws Exception {
+
+        doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(0);
+            out.write("username,email,password,roles\nalice,alice@example.com,hash,ADMIN|USER\n".getBytes(StandardCharsets.UTF_8));
+            return 1L;
+        }).when(userBulkService).exportUsers(any());
+
+        MvcResult result = mockMvc.perform(get("/users/export"))
+                .andExpect(request().asyncStarted())
+                .andExpect(started -> assertThat(started.getRequest().getAsyncContext().getTimeout()).isEqualTo(STREAM_TIMEOUT_MILLIS))
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("text/csv"))
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"users.csv\""))
+                .andExpect(content().string(containsString("alice,alice@example.com")));
+
+    }
+
+    @Test
+    @DisplayName("POST /users/import - загрузка CSV")
+    @WithMockUser(username = "admin", roles = {"ADMIN"})
+    void importUsers_AdminUser_ReturnsResult() throws Exception {
+
+        when(userBulkService.importUsers(any(), eq("admin"))).thenReturn(UserImportResultDto.builder()
+                .rows(2)
+                .created(1)
+                .updated(1)
+                .rolesChanged(2)
+                .build());
+
+        mockMvc.perform(post("/users/import")
+                        .contentType("text/csv")
+                        .content("username,email,password,roles\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rows").value(2))
+                .andExpect(jsonPath("$.created").value(1))
+                .andExpect(jsonPath("$.rolesChanged").value(2));
+
+    }
+
+    @Test
+    @DisplayName("POST /users/import - доступ запрещен обычному пользователю")
+    @WithMockUser(username = "user", roles = {"USER"})
+    void importUsers_RegularUser_ReturnsForbidden() throws Exception {
+
+        mockMvc.perform(post("/users/import")
+                        .contentType("text/csv")
+                        .content("username,email,password,roles\n"))
+                .andExpect(status().isForbidden());
+
+        verifyNoInteractions(userBulkService);
+
+    }
+
+    @Test
+    @DisplayName("GET /users - доступ запрещен обычному пользователю")
+    @WithMockUser(username = "user", roles = {"USER"})
+    void listUsers_RegularUser_ReturnsForbidden() throws Exception {
+
+        mockMvc.perform(get("/users"))
+                .andExpect(status().isForbidden());
+
+        verifyNoInteractions(userListingService);
+
+    }
+
+}
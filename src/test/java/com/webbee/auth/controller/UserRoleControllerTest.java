@@ -4,6 +4,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.webbee.auth.TestSecurityConfig;
 import com.webbee.auth.dto.ChangeUserRolesRequest;
 import com.webbee.auth.dto.RoleStatusDto;
+import com.webbee.auth.dto.UserRolesBatchRequest;
+import com.webbee.auth.repository.projection.UserRolesVersionView;
 import com.webbee.auth.service.UserRoleService;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -12,6 +14,7 @@ import org.mockito.quality.Strictness;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
@@ -19,16 +22,22 @@ import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.times;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -148,8 +157,7 @@ class UserRoleControllerTest {
     @WithMockUser(username = "admin", roles = {"ADMIN"})
     void getUserRoles_AdminUser_ReturnsUserRoles() throws Exception {
 
-        when(userRoleService.getRoles("admin")).thenReturn(List.of("ADMIN"));
-        when(userRoleService.getRoles("testuser")).thenReturn(List.of("USER", "MODERATOR"));
+        when(userRoleService.getVersionedRoles("testuser")).thenReturn(versionedRoles(List.of("USER", "MODERATOR")));
         mockMvc.perform(get("/user-roles/testuser"))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
@@ -157,8 +165,8 @@ class UserRoleControllerTest {
                 .andExpect(jsonPath("$.length()").value(2))
                 .andExpect(jsonPath("$[0]").value("USER"))
                 .andExpect(jsonPath("$[1]").value("MODERATOR"));
-        verify(userRoleService).getRoles("admin");
-        verify(userRoleService).getRoles("testuser");
+        verify(userRoleService, never()).getVersionedRoles("admin");
+        verify(userRoleService).getVersionedRoles("testuser");
 
     }
 
@@ -167,14 +175,38 @@ class UserRoleControllerTest {
     @WithMockUser(username = "testuser", roles = {"USER"})
     void getUserRoles_OwnRoles_ReturnsUserRoles() throws Exception {
 
-        when(userRoleService.getRoles("testuser")).thenReturn(List.of("USER"));
+        when(userRoleService.getVersionedRoles("testuser")).thenReturn(versionedRoles(List.of("USER")));
         mockMvc.perform(get("/user-roles/testuser"))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$").isArray())
                 .andExpect(jsonPath("$.length()").value(1))
                 .andExpect(jsonPath("$[0]").value("USER"));
-        verify(userRoleService, times(2)).getRoles("testuser");
+        verify(userRoleService).getVersionedRoles("testuser");
+
+    }
+
+    @Test
+    @DisplayName("GET /user-roles/{login} - пользователь получает свои роли по логину в другом регистре")
+    @WithMockUser(username = "testuser", roles = {"USER"})
+    void getUserRoles_OwnLoginInOtherCase_ReturnsRoles() throws Exception {
+
+        when(userRoleService.getVersionedRoles("TestUser"))
+                .thenReturn(Optional.of(new UserRoleService.VersionedRoles(1L, 0L, List.of("USER"))));
+        mockMvc.perform(get("/user-roles/TestUser"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0]").value("USER"));
+
+    }
+
+    @Test
+    @DisplayName("GET /user-roles/{login} - суперпользователь без роли ADMIN не получает чужие роли")
+    @WithMockUser(username = "superuser", roles = {"SUPERUSER"})
+    void getUserRoles_SuperuserForeignRoles_IsRejected() throws Exception {
+
+        mockMvc.perform(get("/user-roles/testuser"))
+                .andExpect(status().is4xxClientError());
+        verifyNoInteractions(userRoleService);
 
     }
 
@@ -188,4 +220,169 @@ class UserRoleControllerTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    @DisplayName("POST /user-roles/batch - администратор получает роли всех пользователей")
+    @WithMockUser(username = "admin", roles = {"ADMIN"})
+    void getUserRolesBatch_AdminUser_ReturnsAllRoles() throws Exception {
+
+        Set<String> usernames = new LinkedHashSet<>(List.of("alice", "bob", "ghost"));
+        when(userRoleService.getRolesBatch(usernames)).thenReturn(Map.of(
+                "alice", List.of("USER"),
+                "bob", List.of("USER", "MODERATOR")));
+        mockMvc.perform(post("/user-roles/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new UserRolesBatchRequest(usernames))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.roles.alice[0]").value("USER"))
+                .andExpect(jsonPath("$.roles.bob.length()").value(2))
+                .andExpect(jsonPath("$.roles.ghost").doesNotExist())
+                .andExpect(jsonPath("$.denied").isEmpty());
+        verify(userRoleService).getRolesBatch(usernames);
+
+    }
+
+    @Test
+    @DisplayName("POST /user-roles/batch - пользователь получает только свои роли")
+    @WithMockUser(username = "alice", roles = {"USER"})
+    void getUserRolesBatch_RegularUser_ReturnsOnlyOwnRoles() throws Exception {
+
+        when(userRoleService.getRolesBatch(Set.of("alice"))).thenReturn(Map.of("alice", List.of("USER")));
+        mockMvc.perform(post("/user-roles/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new UserRolesBatchRequest(Set.of("alice", "bob")))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.roles.alice[0]").value("USER"))
+                .andExpect(jsonPath("$.roles.bob").doesNotExist())
+                .andExpect(jsonPath("$.denied[0]").value("bob"));
+        verify(userRoleService).getRolesBatch(Set.of("alice"));
+
+    }
+
+    @Test
+    @DisplayName("POST /user-roles/batch - свой логин в другом регистре считается своим")
+    @WithMockUser(username = "alice", roles = {"USER"})
+    void getUserRolesBatch_OwnLoginInOtherCase_IsAllowed() throws Exception {
+
+        when(userRoleService.getRolesBatch(Set.of(" Alice"))).thenReturn(Map.of("alice", List.of("USER")));
+        mockMvc.perform(post("/user-roles/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new UserRolesBatchRequest(Set.of(" Alice")))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.roles.alice[0]").value("USER"))
+                .andExpect(jsonPath("$.denied").isEmpty());
+        verify(userRoleService).getRolesBatch(Set.of(" Alice"));
+
+    }
+
+    @Test
+    @DisplayName("POST /user-roles/batch - без доступных логинов запрос в базу не выполняется")
+    @WithMockUser(username = "alice", roles = {"USER"})
+    void getUserRolesBatch_OnlyForeignUsers_SkipsLookup() throws Exception {
+
+        mockMvc.perform(post("/user-roles/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new UserRolesBatchRequest(Set.of("bob")))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.roles").isEmpty())
+                .andExpect(jsonPath("$.denied[0]").value("bob"));
+        verify(userRoleService, never()).getRolesBatch(anyCollection());
+
+    }
+
+    @Test
+    @DisplayName("POST /user-roles/batch - пустой список логинов")
+    @WithMockUser(username = "admin", roles = {"ADMIN"})
+    void getUserRolesBatch_EmptyRequest_ReturnsBadRequest() throws Exception {
+
+        mockMvc.perform(post("/user-roles/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new UserRolesBatchRequest(Set.of()))))
+                .andExpect(status().isBadRequest());
+        verifyNoInteractions(userRoleService);
+
+    }
+
+    @Test
+    @DisplayName("POST /user-roles/batch - неавторизованный пользователь")
+    void getUserRolesBatch_Unauthorized_ReturnsForbidden() throws Exception {
+
+        mockMvc.perform(post("/user-roles/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new UserRolesBatchRequest(Set.of("alice")))))
+                .andExpect(status().isForbidden());
+        verifyNoInteractions(userRoleService);
+
+    }
+
+    @Test
+    @DisplayName("GET /user-roles/{login} - ответ содержит ETag версии ролей")
+    @WithMockUser(username = "testuser", roles = {"USER"})
+    void getUserRoles_ReturnsEtag() throws Exception {
+
+        when(userRoleService.getVersionedRoles("testuser")).thenReturn(versionedRoles(List.of("USER")));
+        mockMvc.perform(get("/user-roles/testuser"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"7.3\""))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache, private"));
+        verify(userRoleService, never()).getRolesVersion("testuser");
+
+    }
+
+    @Test
+    @DisplayName("GET /user-roles/{login} - неизменившаяся версия возвращает 304 без загрузки ролей")
+    @WithMockUser(username = "testuser", roles = {"USER"})
+    void getUserRoles_MatchingEtag_ReturnsNotModified() throws Exception {
+
+        when(userRoleService.getRolesVersion("testuser")).thenReturn(Optional.of(rolesVersion(7L, 3L)));
+        mockMvc.perform(get("/user-roles/testuser").header(HttpHeaders.IF_NONE_MATCH, "\"7.2\", W/\"7.3\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"7.3\""))
+                .andExpect(content().string(""));
+        verify(userRoleService, never()).getVersionedRoles(anyString());
+
+    }
+
+    @Test
+    @DisplayName("GET /user-roles/{login} - изменившаяся версия возвращает новые роли")
+    @WithMockUser(username = "admin", roles = {"ADMIN"})
+    void getUserRoles_StaleEtag_ReturnsRoles() throws Exception {
+
+        when(userRoleService.getRolesVersion("testuser")).thenReturn(Optional.of(rolesVersion(7L, 3L)));
+        when(userRoleService.getVersionedRoles("testuser")).thenReturn(versionedRoles(List.of("USER")));
+        mockMvc.perform(get("/user-roles/testuser").header(HttpHeaders.IF_NONE_MATCH, "\"7.2\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"7.3\""))
+                .andExpect(jsonPath("$[0]").value("USER"));
+
+    }
+
+    @Test
+    @DisplayName("GET /user-roles/{login} - If-None-Match не обходит проверку доступа")
+    @WithMockUser(username = "testuser", roles = {"USER"})
+    void getUserRoles_ForeignUserWithEtag_IsRejected() throws Exception {
+
+        mockMvc.perform(get("/user-roles/admin").header(HttpHeaders.IF_NONE_MATCH, "*"))
+                .andExpect(status().is4xxClientError());
+        verifyNoInteractions(userRoleService);
+
+    }
+
+    private static Optional<UserRoleService.VersionedRoles> versionedRoles(List<String> roles) {
+        return Optional.of(new UserRoleService.VersionedRoles(7L, 3L, roles));
+    }
+
+    private static UserRolesVersionView rolesVersion(Long id, Long version) {
+        return new UserRolesVersionView() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public Long getRolesVersion() {
+                return version;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,125 @@
+package com.webbee.auth.datasource;
+
+import com.webbee.auth.dto.ChangeUserRolesRequest;
+import com.webbee.auth.service.UserRoleService;
+import io.micrometer.core.instrument.MeterRegistry;
+import liquibase.integration.spring.SpringLiquibase;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Проверяет маршрутизацию чтения на двух независимых контейнерах PostgreSQL.
+ * Данные намеренно различаются между базами, чтобы по результату было видно, откуда выполнено чтение.
+ */
+@SpringBootTest(properties = {
+        "replica.enabled=true",
+        "replica.read-your-writes-window=1m",
+        "jwt.secret=TestSecret",
+        "jwt.life-time=1800000",
+        "warmup.enabled=false"
+})
+@Testcontainers(disabledWithoutDocker = true)
+class ReadWriteRoutingIntegrationTest {
+
+    @Container
+    static final PostgreSQLContainer<?> PRIMARY = new PostgreSQLContainer<>("postgres:16");
+
+    @Container
+    static final PostgreSQLContainer<?> REPLICA = new PostgreSQLContainer<>("postgres:16");
+
+    @Autowired
+    private UserRoleService userRoleService;
+
+    @Autowired
+    @Qualifier("primaryDataSource")
+    private DataSource primaryDataSource;
+
+    @Autowired
+    @Qualifier("replicaDataSource")
+    private DataSource replicaDataSource;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @DynamicPropertySource
+    static void datasourceProperties(DynamicPropertyRegistry registry) throws Exception {
+        registry.add("spring.datasource.url", PRIMARY::getJdbcUrl);
+        registry.add("spring.datasource.username", PRIMARY::getUsername);
+        registry.add("spring.datasource.password", PRIMARY::getPassword);
+        registry.add("replica.datasource.url", REPLICA::getJdbcUrl);
+        registry.add("replica.datasource.username", REPLICA::getUsername);
+        registry.add("replica.datasource.password", REPLICA::getPassword);
+        migrate(REPLICA);
+    }
+
+    @BeforeEach
+    void setUp() {
+        new JdbcTemplate(primaryDataSource).update("DELETE FROM users");
+        new JdbcTemplate(replicaDataSource).update("DELETE FROM users");
+    }
+
+    @Test
+    void shouldReadRolesFromReplica() {
+        insertUser(replicaDataSource, "replica-only", "CREDIT_USER");
+
+        assertThat(userRoleService.getRoles("replica-only")).containsExactly("CREDIT_USER");
+    }
+
+    @Test
+    void shouldReadFromPrimaryAfterRoleChange() {
+        insertUser(primaryDataSource, "alice", "USER");
+        insertUser(replicaDataSource, "alice", "USER");
+
+        userRoleService.saveRoles(new ChangeUserRolesRequest("alice", Set.of("ADMIN")));
+
+        assertThat(userRoleService.getRoles("alice")).containsExactly("ADMIN");
+        assertThat(roleOf(replicaDataSource, "alice")).isEqualTo("USER");
+    }
+
+    @Test
+    void shouldPublishMetricsPerPool() {
+        userRoleService.getRoles("anyone");
+
+        assertThat(meterRegistry.find("hikaricp.connections").tag("pool", "primary").gauge()).isNotNull();
+        assertThat(meterRegistry.find("hikaricp.connections").tag("pool", "replica").gauge()).isNotNull();
+    }
+
+    private static void migrate(PostgreSQLContainer<?> container) throws Exception {
+        SpringLiquibase liquibase = new SpringLiquibase();
+        liquibase.setDataSource(new DriverManagerDataSource(container.getJdbcUrl(), container.getUsername(), container.getPassword()));
+        liquibase.setChangeLog("classpath:db/changelog/changelog-master.yaml");
+        liquibase.setResourceLoader(new DefaultResourceLoader());
+        liquibase.afterPropertiesSet();
+    }
+
+    private static void insertUser(DataSource dataSource, String username, String role) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        Long id = jdbcTemplate.queryForObject(
+                "INSERT INTO users (username, password, email) VALUES (?, 'hash', ?) RETURNING id",
+                Long.class, username, username + "@example.com");
+        jdbcTemplate.update("INSERT INTO user_roles (user_id, role_id) SELECT ?, id FROM roles WHERE name = ?", id, role);
+    }
+
+    private static String roleOf(DataSource dataSource, String username) {
+        return new JdbcTemplate(dataSource).queryForObject(
+                "SELECT r.name FROM users u JOIN user_roles ur ON ur.user_id = u.id JOIN roles r ON r.id = ur.role_id WHERE u.username = ?",
+                String.class, username);
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.webbee.auth.limiter;
+
+import com.webbee.auth.config.ConcurrencyLimitConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConcurrencyLimitFilterTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ConcurrencyLimiter authLimiter = limiter("auth", 1);
+    private final ConcurrencyLimiter rolesLimiter = limiter("roles", 5);
+    private final ConcurrencyLimitFilter filter = new ConcurrencyLimitConfig().concurrencyLimitFilter(authLimiter, rolesLimiter).getFilter();
+
+    @Test
+    void shouldShedRequestOverLimit() throws Exception {
+        ConcurrencyLimiter.Permit inflight = authLimiter.tryAcquire();
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("POST", "/auth/signin"), response, chain);
+
+        assertThat(response.getStatus()).isEqualTo(503);
+        assertThat(response.getHeader("Retry-After")).isEqualTo("1");
+        assertThat(chain.getRequest()).isNull();
+        assertThat(meterRegistry.get("auth.concurrency.rejected").tag("limiter", "auth").counter().count()).isEqualTo(1.0);
+        inflight.ignore();
+    }
+
+    @Test
+    void shouldReleasePermitAfterRequest() throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(new MockHttpServletRequest("POST", "/auth/signin"), new MockHttpServletResponse(), chain);
+
+        assertThat(chain.getRequest()).isNotNull();
+        assertThat(authLimiter.getInflight()).isZero();
+    }
+
+    @Test
+    void shouldLimitEndpointGroupsSeparately() throws Exception {
+        ConcurrencyLimiter.Permit inflight = authLimiter.tryAcquire();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/user-roles/admin"), response, new MockFilterChain());
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(rolesLimiter.getInflight()).isZero();
+        inflight.ignore();
+    }
+
+    @Test
+    void shouldLimitAvailabilityCheckAsCheapRead() throws Exception {
+        ConcurrencyLimiter.Permit inflight = authLimiter.tryAcquire();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/auth/availability");
+        request.setParameter("username", "alice");
+        MockFilterChain chain = new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest req, HttpServletResponse resp) {
+                assertThat(rolesLimiter.getInflight()).isEqualTo(1);
+            }
+        });
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        assertThat(chain.getRequest()).isNotNull();
+        assertThat(rolesLimiter.getInflight()).isZero();
+        inflight.ignore();
+    }
+
+    @Test
+    void shouldNotLimitOtherEndpoints() throws Exception {
+        ConcurrencyLimiter.Permit inflight = authLimiter.tryAcquire();
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(new MockHttpServletRequest("PUT", "/user-roles/save"), new MockHttpServletResponse(), chain);
+
+        assertThat(chain.getRequest()).isNotNull();
+        inflight.ignore();
+    }
+
+    @Test
+    void shouldPublishLimitAndInflight() {
+        ConcurrencyLimiter.Permit inflight = rolesLimiter.tryAcquire();
+
+        assertThat(meterRegistry.get("auth.concurrency.limit").tag("limiter", "roles").gauge().value()).isEqualTo(5.0);
+        assertThat(meterRegistry.get("auth.concurrency.inflight").tag("limiter", "roles").gauge().value()).isEqualTo(1.0);
+        inflight.release(false);
+        assertThat(meterRegistry.get("auth.concurrency.inflight").tag("limiter", "roles").gauge().value()).isZero();
+    }
+
+    private ConcurrencyLimiter limiter(String name, int limit) {
+        return new ConcurrencyLimiter(name, new GradientLimit(limit, 1, limit, TimeUnit.SECONDS.toNanos(1)), meterRegistry);
+    }
+
+}
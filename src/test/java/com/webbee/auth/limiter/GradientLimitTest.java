@@ -0,0 +1,101 @@
+package com.webbee.auth.limiter;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GradientLimitTest {
+
+    private static final long WINDOW = 1_000_000_000L;
+    private static final long RTT = 50_000_000L;
+
+    private long now;
+
+    @Test
+    void shouldGrowWhileLatencyIsStableAndLimitIsReached() {
+        GradientLimit limit = new GradientLimit(20, 4, 200, WINDOW);
+
+        windows(limit, 40, RTT, false);
+
+        assertThat(limit.getLimit()).isGreaterThan(50);
+    }
+
+    @Test
+    void shouldNotGrowWhenLoadStaysBelowLimit() {
+        GradientLimit limit = new GradientLimit(20, 4, 200, WINDOW);
+
+        for (int window = 0; window < 20; window++) {
+            window(limit, RTT, 3, false);
+        }
+
+        assertThat(limit.getLimit()).isEqualTo(20);
+    }
+
+    @Test
+    void shouldShrinkWhenLatencyGrowsUnderLoad() {
+        GradientLimit limit = new GradientLimit(100, 4, 200, WINDOW);
+        windows(limit, 5, RTT, false);
+        int before = limit.getLimit();
+
+        windows(limit, 10, RTT * 5, false);
+
+        assertThat(limit.getLimit()).isLessThan(before / 2);
+    }
+
+    @Test
+    void shouldBackOffOnServerErrors() {
+        GradientLimit limit = new GradientLimit(100, 4, 200, WINDOW);
+
+        // первое окно начинается с первого запроса и закрывается на следующем окне
+        window(limit, RTT, 1, true);
+        window(limit, RTT, 1, true);
+
+        assertThat(limit.getLimit()).isEqualTo(98);
+    }
+
+    @Test
+    void shouldStayWithinBounds() {
+        GradientLimit limit = new GradientLimit(20, 10, 30, WINDOW);
+
+        windows(limit, 50, RTT, false);
+        assertThat(limit.getLimit()).isEqualTo(30);
+
+        windows(limit, 50, RTT * 20, true);
+        assertThat(limit.getLimit()).isEqualTo(10);
+    }
+
+    @Test
+    void shouldWaitForFullWindow() {
+        GradientLimit limit = new GradientLimit(100, 4, 200, WINDOW);
+
+        for (int i = 0; i < 5; i++) {
+            limit.onSample(now += WINDOW, RTT, 100, true);
+        }
+
+        assertThat(limit.getLimit()).isEqualTo(100);
+    }
+
+    @Test
+    void shouldRejectInvalidBounds() {
+        assertThatThrownBy(() -> new GradientLimit(5, 10, 20, WINDOW)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new GradientLimit(5, 0, 20, WINDOW)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * Окна с нагрузкой, равной текущему лимиту
+     */
+    private void windows(GradientLimit limit, int count, long rtt, boolean dropped) {
+        for (int window = 0; window < count; window++) {
+            window(limit, rtt, limit.getLimit(), dropped);
+        }
+    }
+
+    private void window(GradientLimit limit, long rtt, int inflight, boolean dropped) {
+        for (int sample = 0; sample < 10; sample++) {
+            now += WINDOW / 10;
+            limit.onSample(now, rtt, inflight, dropped);
+        }
+    }
+
+}
@@ -0,0 +1,39 @@
+package com.webbee.auth.repository;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Запоминает SQL, который Hibernate отправляет в базу, чтобы тесты могли выполнить для него EXPLAIN.
+ * Подключается свойством spring.jpa.properties.hibernate.session_factory.statement_inspector
+ */
+public class CapturingStatementInspector implements StatementInspector {
+
+    static final String PROPERTY = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+            + "com.webbee.auth.repository.CapturingStatementInspector";
+
+    private static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+    @Override
+    public String inspect(String sql) {
+        STATEMENTS.add(sql);
+        return sql;
+    }
+
+    static void clear() {
+        STATEMENTS.clear();
+    }
+
+    /**
+     * Последний перехваченный запрос, содержащий указанный фрагмент
+     */
+    static String last(String fragment) {
+        return STATEMENTS.stream()
+                .filter(statement -> statement.contains(fragment))
+                .reduce((first, second) -> second)
+                .orElseThrow();
+    }
+
+}
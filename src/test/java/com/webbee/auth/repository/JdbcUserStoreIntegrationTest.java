@@ -0,0 +1,19 @@
+package com.webbee.auth.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.context.TestPropertySource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Проверки {@link UserStoreIntegrationTest} для чтения подготовленными запросами JDBC
+ */
+@TestPropertySource(properties = "user-store.backend=jdbc")
+class JdbcUserStoreIntegrationTest extends UserStoreIntegrationTest {
+
+    @Test
+    void shouldUseJdbcStore() {
+        assertThat(userStore).isInstanceOf(JdbcUserStore.class);
+    }
+
+}
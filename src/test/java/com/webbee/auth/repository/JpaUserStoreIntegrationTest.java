@@ -0,0 +1,19 @@
+package com.webbee.auth.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.context.TestPropertySource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Проверки {@link UserStoreIntegrationTest} для чтения через Hibernate
+ */
+@TestPropertySource(properties = "user-store.backend=jpa")
+class JpaUserStoreIntegrationTest extends UserStoreIntegrationTest {
+
+    @Test
+    void shouldUseJpaStore() {
+        assertThat(userStore).isInstanceOf(JpaUserStore.class);
+    }
+
+}
@@ -0,0 +1,116 @@
+package com.webbee.auth.repository;
+
+import com.webbee.auth.dto.RoleChangeDto;
+import com.webbee.auth.service.RoleChangeFeed;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Проверяет надежную границу журнала role_changes на PostgreSQL, когда запись с меньшей версией
+ * фиксируется позже записи с большей.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(RoleChangeRepository.class)
+@Testcontainers(disabledWithoutDocker = true)
+class RoleChangeRepositoryIntegrationTest {
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16");
+
+    @Autowired
+    private RoleChangeRepository repository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private RoleChangeFeed feed;
+
+    @DynamicPropertySource
+    static void datasourceProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+    }
+
+    @BeforeEach
+    void setUp() {
+        feed = new RoleChangeFeed(repository, 500, Duration.ofHours(1), Duration.ofHours(1), Duration.ofMinutes(1),
+                10, Duration.ofSeconds(30), new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        feed.shutdown();
+    }
+
+    @Test
+    void shouldHoldBackHigherVersionUntilLowerVersionCommits() throws Exception {
+        long start = feed.latestVersion();
+        long early;
+        long late;
+        List<Long> held;
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(RoleChangeRepository.ASSIGN_XID);
+                try (ResultSet resultSet = statement.executeQuery("INSERT INTO role_changes (username, roles) VALUES ('early', '{USER}') RETURNING version")) {
+                    resultSet.next();
+                    early = resultSet.getLong(1);
+                }
+            }
+            Long appended = new TransactionTemplate(transactionManager).execute(status -> repository.append("late", List.of("ADMIN")));
+            late = appended == null ? 0 : appended;
+
+            held = versions(start);
+            connection.commit();
+        }
+        List<Long> released = versions(start);
+
+        assertThat(late).isGreaterThan(early);
+        assertThat(held).isEmpty();
+        assertThat(released).containsExactly(early, late);
+        assertThat(feed.latestVersion()).isEqualTo(late);
+    }
+
+    @Test
+    void shouldReleaseCommittedVersionsWithoutConcurrentWriters() {
+        long start = feed.latestVersion();
+        Long appended = new TransactionTemplate(transactionManager).execute(status -> repository.append("alice", List.of("USER")));
+
+        assertThat(versions(start)).containsExactly(appended);
+    }
+
+    private List<Long> versions(long since) {
+        return feed.changesSince(since, 100).getChanges().stream().map(RoleChangeDto::getVersion).toList();
+    }
+
+}
@@ -0,0 +1,184 @@
+package com.webbee.auth.repository;
+
+import com.webbee.auth.dto.UserImportResultDto;
+import liquibase.integration.spring.SpringLiquibase;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Проверяет выгрузку и загрузку CSV через COPY на PostgreSQL: повторная загрузка выгрузки ничего не меняет,
+ * а изменение ролей попадает в журнал и отзывает токены только у существующих пользователей.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class UserBulkRepositoryIntegrationTest {
+
+    private static final String HASH = "$2a$10$7EqJtq98hPqEX7fNZaFWoOhi5BWX4Z6ImlCNPDaaEfwcqRHbpzXGa";
+    private static final String HEADER = "username,email,password,roles\n";
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16");
+
+    private static JdbcTemplate jdbcTemplate;
+    private static TransactionTemplate transaction;
+    private static UserBulkRepository repository;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword());
+        SpringLiquibase liquibase = new SpringLiquibase();
+        liquibase.setDataSource(dataSource);
+        liquibase.setChangeLog("classpath:db/changelog/changelog-master.yaml");
+        liquibase.setResourceLoader(new DefaultResourceLoader());
+        liquibase.afterPropertiesSet();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        repository = new UserBulkRepository(jdbcTemplate);
+    }
+
+    @BeforeEach
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM users");
+        jdbcTemplate.update("DELETE FROM role_changes");
+    }
+
+    @Test
+    void shouldCreateUsersWithRolesWithoutRevokingTokens() {
+        UserImportResultDto result = importCsv(HEADER
+                + "alice,alice@example.com," + HASH + ",USER|ADMIN\n"
+                + "bob,bob@example.com," + HASH + ",\n");
+
+        assertThat(result.getRows()).isEqualTo(2);
+        assertThat(result.getCreated()).isEqualTo(2);
+        assertThat(result.getRolesChanged()).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForList("SELECT r.name FROM users u JOIN user_roles ur ON ur.user_id = u.id "
+                + "JOIN roles r ON r.id = ur.role_id WHERE u.username = 'alice' ORDER BY r.name", String.class)).containsExactly("ADMIN", "USER");
+        assertThat(jdbcTemplate.queryForObject("SELECT max(token_version) FROM users", Long.class)).isZero();
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM role_changes", Long.class)).isEqualTo(1);
+    }
+
+    @Test
+    void shouldReimportExportWithoutChanges() {
+        importCsv(HEADER + "alice,alice@example.com," + HASH + ",USER|ADMIN\n" + "bob,bob@example.com," + HASH + ",USER\n");
+        String exported = export();
+
+        UserImportResultDto result = importCsv(exported);
+
+        assertThat(exported).startsWith(HEADER).contains("alice,alice@example.com," + HASH + ",ADMIN|USER");
+        assertThat(result.getCreated()).isZero();
+        assertThat(result.getUpdated()).isZero();
+        assertThat(result.getRolesChanged()).isZero();
+    }
+
+    @Test
+    void shouldReplaceChangedRolesAndRevokeTokens() {
+        importCsv(HEADER + "alice,alice@example.com," + HASH + ",USER\n" + "bob,bob@example.com," + HASH + ",USER\n");
+
+        UserImportResultDto result = importCsv(HEADER
+                + "alice,alice@example.com," + HASH + ",DEAL_SUPERUSER\n"
+                + "bob,bob@example.com," + HASH + ",USER\n");
+
+        assertThat(result.getRolesChanged()).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT token_version > 0 AND roles_version = 1 FROM users WHERE username = 'alice'", Boolean.class))
+                .isTrue();
+        assertThat(jdbcTemplate.queryForObject("SELECT token_version FROM users WHERE username = 'bob'", Long.class)).isZero();
+        assertThat(jdbcTemplate.queryForObject("SELECT roles FROM role_changes ORDER BY version DESC LIMIT 1", String.class))
+                .isEqualTo("{DEAL_SUPERUSER}");
+    }
+
+    @Test
+    void shouldMatchExistingUsersIgnoringCase() {
+        importCsv(HEADER + "alice,alice@example.com," + HASH + ",USER\n");
+
+        UserImportResultDto result = importCsv(HEADER + " Alice ,Alice@Example.com," + HASH + ",USER\n" + "BOB,Bob@Example.com," + HASH + ",USER\n");
+
+        assertThat(result.getCreated()).isEqualTo(1);
+        assertThat(result.getUpdated()).isZero();
+        assertThat(result.getRolesChanged()).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForList("SELECT username || ',' || email FROM users ORDER BY id", String.class))
+                .containsExactly("alice,alice@example.com", "bob,bob@example.com");
+    }
+
+    @Test
+    void shouldReportInvalidRowsAndUnknownRoles() {
+        transaction.executeWithoutResult(status -> {
+            repository.copyIntoStaging(csv(HEADER
+                    + "alice,alice@example.com," + HASH + ",MODERATOR\n"
+                    + "bob,bob@example.com,plain-text,USER\n"));
+
+            assertThat(repository.findInvalidRow()).contains(2L);
+            assertThat(repository.findUnknownRoles()).containsExactly("MODERATOR");
+            status.setRollbackOnly();
+        });
+    }
+
+    @Test
+    void shouldReportDuplicateAndTakenEmails() {
+        importCsv(HEADER + "alice,alice@example.com," + HASH + ",USER\n");
+
+        transaction.executeWithoutResult(status -> {
+            repository.copyIntoStaging(csv(HEADER
+                    + "alice,Alice@Example.com," + HASH + ",USER\n"
+                    + "bob,bob@example.com," + HASH + ",USER\n"
+                    + "carol,BOB@example.com," + HASH + ",USER\n"));
+
+            assertThat(repository.findDuplicateEmail()).contains("bob@example.com");
+            assertThat(repository.findTakenEmail()).isEmpty();
+            status.setRollbackOnly();
+        });
+        transaction.executeWithoutResult(status -> {
+            repository.copyIntoStaging(csv(HEADER + "bob,ALICE@example.com," + HASH + ",USER\n"));
+
+            assertThat(repository.findDuplicateEmail()).isEmpty();
+            assertThat(repository.findTakenEmail()).contains("alice@example.com");
+            status.setRollbackOnly();
+        });
+    }
+
+    @Test
+    void shouldListOnlyChangedExistingUsers() {
+        importCsv(HEADER + "alice,alice@example.com," + HASH + ",USER\n" + "bob,bob@example.com," + HASH + ",USER\n"
+                + "carol,carol@example.com," + HASH + ",USER\n");
+
+        List<String> changed = transaction.execute(status -> {
+            repository.merge(repository.copyIntoStaging(csv(HEADER
+                    + "Alice,alice@example.com," + HASH + ",ADMIN\n"
+                    + "bob,new-bob@example.com," + HASH + ",USER\n"
+                    + "carol,carol@example.com," + HASH + ",USER\n"
+                    + "dave,dave@example.com," + HASH + ",ADMIN\n")));
+            return repository.findChangedExistingUsernames();
+        });
+
+        assertThat(changed).containsExactlyInAnyOrder("alice", "bob");
+    }
+
+    private static UserImportResultDto importCsv(String content) {
+        return transaction.execute(status -> repository.merge(repository.copyIntoStaging(csv(content))));
+    }
+
+    private static String export() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        transaction.executeWithoutResult(status -> repository.copyOut(out));
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static ByteArrayInputStream csv(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,110 @@
+package com.webbee.auth.repository;
+
+import com.webbee.auth.dto.UserListItemDto;
+import liquibase.integration.spring.SpringLiquibase;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Проверяет планы запросов выгрузки по ролям на PostgreSQL с данными, где роль DEAL_SUPERUSER редкая:
+ * участники роли должны читаться по индексу idx_user_roles_role_id_user_id, а не полным просмотром user_roles.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class UserListingRepositoryIntegrationTest {
+
+    private static final int USERS = 20000;
+    private static final int SUPERUSER_EVERY = 500;
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16");
+
+    private static JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword());
+        SpringLiquibase liquibase = new SpringLiquibase();
+        liquibase.setDataSource(dataSource);
+        liquibase.setChangeLog("classpath:db/changelog/changelog-master.yaml");
+        liquibase.setResourceLoader(new DefaultResourceLoader());
+        liquibase.afterPropertiesSet();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update("INSERT INTO users (username, password, email) "
+                + "SELECT 'user' || n, 'hash', 'user' || n || '@example.com' FROM generate_series(1, ?) n", USERS);
+        jdbcTemplate.update("INSERT INTO user_roles (user_id, role_id) SELECT u.id, r.id FROM users u, roles r WHERE r.name = 'USER'");
+        jdbcTemplate.update("INSERT INTO user_roles (user_id, role_id) SELECT u.id, r.id FROM users u, roles r "
+                + "WHERE r.name = 'DEAL_SUPERUSER' AND u.id % ? = 0", SUPERUSER_EVERY);
+        jdbcTemplate.execute("ANALYZE users");
+        jdbcTemplate.execute("ANALYZE user_roles");
+    }
+
+    @Test
+    void shouldReadRoleMembersThroughReverseIndex() {
+        String plan = explain(new UserListingRepository.Query("DEAL_SUPERUSER", null, 0L, 20));
+
+        assertThat(plan).contains("idx_user_roles_role_id_user_id");
+        assertThat(plan).doesNotContain("Seq Scan on user_roles");
+        assertThat(plan).doesNotContain("Sort Key: m.user_id");
+        assertThat(plan).doesNotContain("Merge Join");
+    }
+
+    @Test
+    void shouldContinueRoleMembersFromKeyInsideIndex() {
+        String plan = explain(new UserListingRepository.Query("DEAL_SUPERUSER", null, USERS / 2, 20));
+
+        assertThat(plan.lines().filter(line -> line.contains("Index Cond") && line.contains("user_id >"))).isNotEmpty();
+    }
+
+    @Test
+    void shouldPageRoleMembersByUserId() {
+        UserListingRepository repository = new UserListingRepository(jdbcTemplate);
+        List<UserListItemDto> firstPage = new ArrayList<>();
+        List<UserListItemDto> secondPage = new ArrayList<>();
+
+        repository.forEachUser(new UserListingRepository.Query("DEAL_SUPERUSER", null, 0L, 3), 2, firstPage::add);
+        long after = firstPage.get(firstPage.size() - 1).getId();
+        repository.forEachUser(new UserListingRepository.Query("DEAL_SUPERUSER", null, after, 3), 2, secondPage::add);
+
+        assertThat(firstPage).hasSize(3);
+        assertThat(secondPage).hasSize(3);
+        assertThat(secondPage.get(0).getId()).isGreaterThan(after);
+        assertThat(firstPage.get(0).getRoles()).containsExactly("DEAL_SUPERUSER", "USER");
+    }
+
+    @Test
+    void shouldReturnNothingForUnknownRole() {
+        List<UserListItemDto> users = new ArrayList<>();
+
+        new UserListingRepository(jdbcTemplate).forEachUser(new UserListingRepository.Query("MISSING", null, 0L, null), 2, users::add);
+
+        assertThat(users).isEmpty();
+    }
+
+    @Test
+    void shouldCountUsersPerRole() {
+        Map<String, Long> counts = new UserListingRepository(jdbcTemplate).countUsersByRole();
+
+        assertThat(counts).containsEntry("USER", (long) USERS)
+                .containsEntry("DEAL_SUPERUSER", (long) USERS / SUPERUSER_EVERY)
+                .containsEntry("ADMIN", 0L);
+    }
+
+    private static String explain(UserListingRepository.Query query) {
+        Long roleId = jdbcTemplate.queryForObject("SELECT id FROM roles WHERE name = ?", Long.class, query.role());
+        UserListingRepository.Statement statement = UserListingRepository.select(query, roleId);
+        return String.join("\n", jdbcTemplate.queryForList("EXPLAIN " + statement.sql(), String.class, statement.parameters().toArray()));
+    }
+
+}
@@ -0,0 +1,185 @@
+package com.webbee.auth.repository;
+
+import com.webbee.auth.dto.UserImportResultDto;
+import com.webbee.auth.entity.Role;
+import com.webbee.auth.entity.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Проверяет секционированную схему (changeset partition-users-by-hash с usersPartitions=4) на PostgreSQL:
+ * поиск по логину затрагивает одну секцию, отображение User работает без изменений,
+ * уникальность логинов, email и id сохраняется между секциями, роли ссылаются на существующих пользователей,
+ * импорт CSV работает поверх секций.
+ */
+@DataJpaTest(properties = {CapturingStatementInspector.PROPERTY, "spring.liquibase.parameters.usersPartitions=" + UserPartitioningIntegrationTest.PARTITIONS})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+class UserPartitioningIntegrationTest {
+
+    static final int PARTITIONS = 4;
+
+    private static final int USERS = 1000;
+    private static final String HASH = "$2a$10$7EqJtq98hPqEX7fNZaFWoOhi5BWX4Z6ImlCNPDaaEfwcqRHbpzXGa";
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16");
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void datasourceProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+    }
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("INSERT INTO users (username, password, email) "
+                + "SELECT 'user' || n, 'hash', 'user' || n || '@example.com' FROM generate_series(1, ?) n", USERS);
+        CapturingStatementInspector.clear();
+    }
+
+    @Test
+    void shouldSplitUsersAndRolesIntoHashPartitions() {
+        assertThat(partitionsOf("users")).isEqualTo(PARTITIONS);
+        assertThat(partitionsOf("user_roles")).isEqualTo(PARTITIONS);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(DISTINCT tableoid) FROM users", Long.class)).isEqualTo(PARTITIONS);
+    }
+
+    @Test
+    void shouldPruneUsernameLookupToSinglePartition() {
+        userRepository.findByUsername("User42");
+
+        String plan = String.join("\n", jdbcTemplate.queryForList("EXPLAIN " + CapturingStatementInspector.last("lower("), String.class, "User42"));
+
+        assertThat(plan.lines().filter(line -> line.contains(" on users_p"))).hasSize(1);
+    }
+
+    @Test
+    void shouldMapUserWithRolesAcrossPartitions() {
+        Role admin = roleRepository.findByName("ADMIN").orElseThrow();
+        User saved = userRepository.save(User.builder()
+                .username("ivan")
+                .email("ivan@example.com")
+                .password("hash")
+                .roles(Set.of(admin))
+                .build());
+        entityManager.flush();
+        entityManager.clear();
+
+        User loaded = userRepository.findByUsername("IVAN").orElseThrow();
+
+        assertThat(loaded.getId()).isEqualTo(saved.getId());
+        assertThat(loaded.getRoles()).extracting(Role::getName).containsExactly("ADMIN");
+        assertThat(userRepository.findByEmail("Ivan@Example.com")).isPresent();
+        assertThat(userRepository.findById(saved.getId())).isPresent();
+    }
+
+    @Test
+    void shouldKeepUsernamesUniqueIgnoringCase() {
+        assertThatThrownBy(() -> jdbcTemplate.update("INSERT INTO users (username, password, email) VALUES ('USER42', 'hash', 'other@example.com')"))
+                .isInstanceOf(DataIntegrityViolationException.class)
+                .hasMessageContaining("uk_users_username_lower");
+    }
+
+    @Test
+    void shouldKeepEmailsUniqueAcrossPartitions() {
+        assertThatThrownBy(() -> jdbcTemplate.update("INSERT INTO users (username, password, email) VALUES ('other', 'hash', 'USER42@example.com')"))
+                .isInstanceOf(DataIntegrityViolationException.class)
+                .hasMessageContaining("uk_users_email_lower");
+    }
+
+    @Test
+    void shouldKeepIdsUniqueAcrossPartitions() {
+        Long id = jdbcTemplate.queryForObject("SELECT id FROM users WHERE username = 'user42'", Long.class);
+
+        assertThatThrownBy(() -> jdbcTemplate.update("INSERT INTO users (id, username, password, email) VALUES (?, 'other', 'hash', 'other@example.com')", id))
+                .isInstanceOf(DataIntegrityViolationException.class)
+                .hasMessageContaining("uk_users_id");
+    }
+
+    @Test
+    void shouldRejectRolesOfMissingUser() {
+        assertThatThrownBy(() -> jdbcTemplate.update("INSERT INTO user_roles (user_id, role_id) SELECT -1, id FROM roles WHERE name = 'USER'"))
+                .isInstanceOf(DataIntegrityViolationException.class)
+                .hasMessageContaining("fk_user_roles_user_id");
+    }
+
+    @Test
+    void shouldGenerateIdsFromSequenceOwnedByUsers() {
+        assertThat(jdbcTemplate.queryForObject("SELECT pg_get_serial_sequence('users', 'id')", String.class)).isEqualTo("public.users_id_seq");
+        assertThat(jdbcTemplate.queryForObject("SELECT max(id) FROM users", Long.class))
+                .isEqualTo(jdbcTemplate.queryForObject("SELECT last_value FROM users_id_seq", Long.class));
+    }
+
+    @Test
+    void shouldReleaseEmailOnChangeAndDelete() {
+        jdbcTemplate.update("UPDATE users SET email = 'renamed@example.com' WHERE username = 'user1'");
+        jdbcTemplate.update("DELETE FROM users WHERE username = 'user2'");
+
+        jdbcTemplate.update("INSERT INTO users (username, password, email) VALUES ('other1', 'hash', 'user1@example.com')");
+        jdbcTemplate.update("INSERT INTO users (username, password, email) VALUES ('other2', 'hash', 'user2@example.com')");
+
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM user_email_keys", Long.class)).isEqualTo(USERS + 1);
+    }
+
+    @Test
+    void shouldDeleteRolesWithUser() {
+        jdbcTemplate.update("INSERT INTO user_roles (user_id, role_id) SELECT u.id, r.id FROM users u, roles r WHERE r.name = 'USER'");
+
+        jdbcTemplate.update("DELETE FROM users WHERE username IN ('user1', 'user2')");
+
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM user_roles", Long.class)).isEqualTo(USERS - 2);
+    }
+
+    @Test
+    void shouldImportCsvIntoPartitions() {
+        UserBulkRepository repository = new UserBulkRepository(jdbcTemplate);
+        String csv = "username,email,password,roles\n"
+                + "User1,user1@example.com," + HASH + ",USER|ADMIN\n"
+                + "newcomer,newcomer@example.com," + HASH + ",USER\n";
+
+        UserImportResultDto result = repository.merge(repository.copyIntoStaging(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8))));
+
+        assertThat(result.getCreated()).isEqualTo(1);
+        assertThat(result.getUpdated()).isEqualTo(1);
+        assertThat(result.getRolesChanged()).isEqualTo(2);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM user_roles ur JOIN users u ON u.id = ur.user_id WHERE u.username = 'user1'", Long.class))
+                .isEqualTo(2);
+    }
+
+    private long partitionsOf(String table) {
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM pg_inherits WHERE inhparent = ?::regclass", Long.class, table);
+    }
+
+}
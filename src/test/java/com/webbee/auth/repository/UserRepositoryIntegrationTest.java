@@ -0,0 +1,119 @@
+package com.webbee.auth.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Проверяет поиск пользователей без учета регистра на PostgreSQL: SQL, который Hibernate строит для методов
+ * {@link UserRepository}, перехватывается и выполняется через EXPLAIN, план должен идти по функциональным
+ * индексам uk_users_username_lower и uk_users_email_lower, а не полным просмотром users.
+ */
+@DataJpaTest(properties = CapturingStatementInspector.PROPERTY)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+class UserRepositoryIntegrationTest {
+
+    private static final int USERS = 20000;
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16");
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void datasourceProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+    }
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("INSERT INTO users (username, password, email) "
+                + "SELECT 'User' || n, 'hash', 'User' || n || '@Example.com' FROM generate_series(1, ?) n", USERS);
+        jdbcTemplate.execute("ANALYZE users");
+        CapturingStatementInspector.clear();
+    }
+
+    @Test
+    void shouldFindUsersIgnoringCase() {
+        assertThat(userRepository.findByUsername("USER42")).hasValueSatisfying(user -> assertThat(user.getUsername()).isEqualTo("User42"));
+        assertThat(userRepository.findByEmail("user42@example.COM")).isPresent();
+        assertThat(userRepository.existsByUsername("user42")).isTrue();
+        assertThat(userRepository.existsByUsername("user" + (USERS + 1))).isFalse();
+        assertThat(userRepository.findRolesVersionByUsername("uSeR42")).isPresent();
+    }
+
+    @Test
+    void shouldRejectUsernamesDifferingOnlyInCase() {
+        assertThatThrownBy(() -> jdbcTemplate.update("INSERT INTO users (username, password, email) VALUES ('user42', 'hash', 'other@example.com')"))
+                .isInstanceOf(DataIntegrityViolationException.class)
+                .hasMessageContaining("uk_users_username_lower");
+    }
+
+    @Test
+    void shouldRejectEmailsDifferingOnlyInCase() {
+        assertThatThrownBy(() -> jdbcTemplate.update("INSERT INTO users (username, password, email) VALUES ('other', 'hash', 'USER42@EXAMPLE.COM')"))
+                .isInstanceOf(DataIntegrityViolationException.class)
+                .hasMessageContaining("uk_users_email_lower");
+    }
+
+    @Test
+    void shouldFindByUsernameThroughLowerIndex() {
+        userRepository.findByUsername("User42");
+
+        assertIndexScan(explainCaptured("User42"), "uk_users_username_lower");
+    }
+
+    @Test
+    void shouldFindByEmailThroughLowerIndex() {
+        userRepository.findByEmail("User42@Example.com");
+
+        assertIndexScan(explainCaptured("User42@Example.com"), "uk_users_email_lower");
+    }
+
+    @Test
+    void shouldCheckUsernameExistenceThroughLowerIndex() {
+        userRepository.existsByUsername("User42");
+
+        assertIndexScan(explainCaptured("User42"), "uk_users_username_lower");
+    }
+
+    @Test
+    void shouldReadRolesVersionThroughLowerIndex() {
+        userRepository.findRolesVersionByUsername("User42");
+
+        assertIndexScan(explainCaptured("User42"), "uk_users_username_lower");
+    }
+
+    private static void assertIndexScan(String plan, String index) {
+        assertThat(plan).contains(index);
+        assertThat(plan).doesNotContain("Seq Scan on users");
+    }
+
+    /**
+     * Выполняет EXPLAIN для перехваченного запроса к users с тем же значением параметра
+     */
+    private String explainCaptured(String parameter) {
+        String sql = CapturingStatementInspector.last("lower(");
+        return String.join("\n", jdbcTemplate.queryForList("EXPLAIN " + sql, String.class, parameter));
+    }
+
+}
@@ -0,0 +1,108 @@
+package com.webbee.auth.repository;
+
+import com.webbee.auth.entity.Role;
+import com.webbee.auth.entity.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Общие проверки реализаций {@link UserStore} на PostgreSQL. Подклассы выбирают реализацию
+ * свойством user-store.backend, в контекст попадает только она. @DataJpaTest объявлен здесь,
+ * чтобы унаследованные тесты выполнялись в откатываемой транзакции.
+ */
+@DataJpaTest
+@Import({JpaUserStore.class, JdbcUserStore.class})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+abstract class UserStoreIntegrationTest {
+
+    private static final Instant LAST_LOGIN = Instant.parse("2025-01-02T03:04:05Z");
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16");
+
+    @Autowired
+    protected UserStore userStore;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void datasourceProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+    }
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("INSERT INTO users (username, password, email, last_login_at, roles_version, token_version) "
+                + "VALUES ('ivan', 'hash', 'ivan@example.com', ?, 3, 2), ('petr', 'hash', 'petr@example.com', NULL, 0, 0)",
+                Timestamp.from(LAST_LOGIN));
+        jdbcTemplate.update("INSERT INTO user_roles (user_id, role_id) SELECT u.id, r.id FROM users u, roles r "
+                + "WHERE u.username = 'ivan' AND r.name IN ('USER', 'ADMIN')");
+    }
+
+    @Test
+    void shouldFindUserWithRolesIgnoringCase() {
+        User user = userStore.findByUsername("IVAN").orElseThrow();
+
+        assertThat(user.getId()).isEqualTo(idOf("ivan"));
+        assertThat(user.getUsername()).isEqualTo("ivan");
+        assertThat(user.getPassword()).isEqualTo("hash");
+        assertThat(user.getEmail()).isEqualTo("ivan@example.com");
+        assertThat(user.getLastLoginAt()).isEqualTo(LAST_LOGIN);
+        assertThat(user.getRolesVersion()).isEqualTo(3L);
+        assertThat(user.getTokenVersion()).isEqualTo(2L);
+        assertThat(user.getRoles()).extracting(Role::getName).containsExactlyInAnyOrder("USER", "ADMIN");
+        assertThat(user.getRoles()).extracting(Role::getId).doesNotContainNull();
+    }
+
+    @Test
+    void shouldFindUserWithoutRoles() {
+        User user = userStore.findByUsername("petr").orElseThrow();
+
+        assertThat(user.getLastLoginAt()).isNull();
+        assertThat(user.getRoles()).isEmpty();
+    }
+
+    @Test
+    void shouldNotFindMissingUser() {
+        assertThat(userStore.findByUsername("ghost")).isEmpty();
+    }
+
+    @Test
+    void shouldCheckUsernameExistenceIgnoringCase() {
+        assertThat(userStore.existsByUsername("Petr")).isTrue();
+        assertThat(userStore.existsByUsername("ghost")).isFalse();
+    }
+
+    @Test
+    void shouldReadRolesVersion() {
+        assertThat(userStore.findRolesVersionByUsername("Ivan")).hasValueSatisfying(view -> {
+            assertThat(view.getId()).isEqualTo(idOf("ivan"));
+            assertThat(view.getRolesVersion()).isEqualTo(3L);
+        });
+        assertThat(userStore.findRolesVersionByUsername("ghost")).isEmpty();
+    }
+
+    private Long idOf(String username) {
+        return jdbcTemplate.queryForObject("SELECT id FROM users WHERE username = ?", Long.class, username);
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.webbee.auth.security.service;
+
+import com.webbee.auth.security.model.TokenAuthentication;
+import com.webbee.auth.security.model.TokenData;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CompiledRoleHierarchyTest {
+
+    private static final String HIERARCHY = "SUPERUSER > DEAL_SUPERUSER, CONTRACTOR_SUPERUSER; "
+            + "DEAL_SUPERUSER > CREDIT_USER, OVERDRAFT_USER; CONTRACTOR_SUPERUSER > CONTRACTOR_RUS; "
+            + "CREDIT_USER > USER; OVERDRAFT_USER > USER; CONTRACTOR_RUS > USER; ADMIN > USER";
+
+    private RoleCatalog roleCatalog;
+    private CompiledRoleHierarchy roleHierarchy;
+
+    @BeforeEach
+    void setUp() {
+        roleCatalog = new RoleCatalog();
+        roleHierarchy = new CompiledRoleHierarchy(roleCatalog, HIERARCHY);
+    }
+
+    @Test
+    void shouldIncludeTransitiveRoles() {
+        Authentication superuser = authentication("ROLE_SUPERUSER");
+
+        assertThat(roleHierarchy.hasRole(superuser, roleHierarchy.roleBit("CONTRACTOR_RUS"))).isTrue();
+        assertThat(roleHierarchy.hasRole(superuser, roleHierarchy.roleBit("USER"))).isTrue();
+        assertThat(roleHierarchy.isAdmin(superuser)).isFalse();
+    }
+
+    @Test
+    void shouldNotGrantParentRoles() {
+        Authentication creditUser = authentication("ROLE_CREDIT_USER");
+
+        assertThat(roleHierarchy.hasRole(creditUser, roleHierarchy.roleBit("DEAL_SUPERUSER"))).isFalse();
+        assertThat(roleHierarchy.hasRole(creditUser, roleHierarchy.roleBit("OVERDRAFT_USER"))).isFalse();
+    }
+
+    @Test
+    void shouldUseMaskFromToken() {
+        TokenData tokenData = TokenData.builder()
+                .username("admin")
+                .authorities(List.of())
+                .roleMask(roleHierarchy.roleBit("ADMIN"))
+                .build();
+
+        assertThat(roleHierarchy.isAdmin(new TokenAuthentication(tokenData))).isTrue();
+    }
+
+    @Test
+    void shouldExpandReachableAuthorities() {
+        List<String> reachable = roleHierarchy.getReachableGrantedAuthorities(
+                        List.of(new SimpleGrantedAuthority("ROLE_DEAL_SUPERUSER"), new SimpleGrantedAuthority("SCOPE_read")))
+                .stream()
+                .map(GrantedAuthority::getAuthority)
+                .toList();
+
+        assertThat(reachable).containsExactlyInAnyOrder(
+                "ROLE_USER", "ROLE_CREDIT_USER", "ROLE_OVERDRAFT_USER", "ROLE_DEAL_SUPERUSER", "SCOPE_read");
+    }
+
+    @Test
+    void shouldRejectCycle() {
+        assertThatThrownBy(() -> new CompiledRoleHierarchy(roleCatalog, "USER > CREDIT_USER; CREDIT_USER > USER"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("cycle");
+    }
+
+    @Test
+    void shouldRejectUnknownRole() {
+        assertThatThrownBy(() -> new CompiledRoleHierarchy(roleCatalog, "ADMIN > AUDITOR"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("AUDITOR");
+    }
+
+    private static Authentication authentication(String... authorities) {
+        return UsernamePasswordAuthenticationToken.authenticated("user", null,
+                List.of(authorities).stream().map(SimpleGrantedAuthority::new).toList());
+    }
+
+}
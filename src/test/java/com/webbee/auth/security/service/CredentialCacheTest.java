@@ -0,0 +1,176 @@
+package com.webbee.auth.security.service;
+
+import com.webbee.auth.security.model.CustomUserDetails;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CredentialCacheTest {
+
+    private static final CustomUserDetails CACHED = details("cached-hash");
+    private static final CustomUserDetails FRESH = details("fresh-hash");
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CountDownLatch databaseStall = new CountDownLatch(1);
+    private final CountDownLatch databaseDown = new CountDownLatch(1);
+    private CredentialCache credentialCache;
+
+    @AfterEach
+    void tearDown() {
+        databaseStall.countDown();
+        databaseDown.countDown();
+        if (credentialCache != null) {
+            credentialCache.shutdown();
+        }
+    }
+
+    @Test
+    void shouldAlwaysQueryDatabaseWhenDisabled() {
+        credentialCache = new CredentialCache(false, 10, Duration.ofMinutes(1), Duration.ofMillis(50), 2, meterRegistry);
+        AtomicInteger calls = new AtomicInteger();
+
+        credentialCache.load("admin", username -> counted(calls, CACHED));
+        credentialCache.load("admin", username -> counted(calls, CACHED));
+
+        assertThat(calls).hasValue(2);
+    }
+
+    @Test
+    void shouldServeCachedUserWhenDatabaseIsSlow() {
+        credentialCache = cache(Duration.ofMinutes(1));
+        credentialCache.load("admin", username -> CACHED);
+
+        long started = System.nanoTime();
+        CustomUserDetails details = credentialCache.load("admin", stalledDatabase());
+
+        assertThat(details).isSameAs(CACHED);
+        assertThat(System.nanoTime() - started).isLessThan(TimeUnit.SECONDS.toNanos(2));
+        assertThat(servedCount("slow-database")).isEqualTo(1.0);
+    }
+
+    @Test
+    void shouldRefreshEntryWhenSlowQueryCompletes() throws Exception {
+        credentialCache = cache(Duration.ofMinutes(1));
+        credentialCache.load("admin", username -> CACHED);
+        credentialCache.load("admin", stalledDatabase());
+
+        databaseStall.countDown();
+
+        assertThat(eventually(() -> credentialCache.load("admin", unavailableDatabase()) == FRESH)).isTrue();
+    }
+
+    @Test
+    void shouldPreferDatabaseWhenItAnswersInTime() {
+        credentialCache = cache(Duration.ofMinutes(1));
+        credentialCache.load("admin", username -> CACHED);
+
+        assertThat(credentialCache.load("admin", username -> FRESH)).isSameAs(FRESH);
+        assertThat(servedCount("slow-database")).isZero();
+    }
+
+    @Test
+    void shouldNotServeEntryOlderThanFreshnessCap() {
+        credentialCache = cache(Duration.ZERO);
+        credentialCache.load("admin", username -> CACHED);
+        databaseStall.countDown();
+
+        assertThat(credentialCache.load("admin", stalledDatabase())).isSameAs(FRESH);
+    }
+
+    @Test
+    void shouldNotServeInvalidatedEntry() {
+        credentialCache = cache(Duration.ofMinutes(1));
+        credentialCache.load("admin", username -> CACHED);
+
+        credentialCache.invalidate("admin");
+        databaseStall.countDown();
+
+        assertThat(credentialCache.load("admin", stalledDatabase())).isSameAs(FRESH);
+    }
+
+    @Test
+    void shouldPropagateMissingUserFromDatabase() throws Exception {
+        credentialCache = cache(Duration.ofMinutes(1));
+        credentialCache.load("admin", username -> CACHED);
+
+        assertThatThrownBy(() -> credentialCache.load("admin", username -> {
+            throw new UsernameNotFoundException("Cant find user with name");
+        })).isInstanceOf(UsernameNotFoundException.class);
+        assertThat(eventually(() -> meterRegistry.get("auth.credential-cache.size").gauge().value() == 0)).isTrue();
+    }
+
+    @Test
+    void shouldNotGrowBeyondMaxSize() {
+        credentialCache = new CredentialCache(true, 2, Duration.ofMinutes(1), Duration.ofMillis(50), 2, meterRegistry);
+
+        for (int i = 0; i < 5; i++) {
+            credentialCache.load("user" + i, username -> CACHED);
+        }
+
+        assertThat(meterRegistry.get("auth.credential-cache.size").gauge().value()).isEqualTo(2.0);
+    }
+
+    private CredentialCache cache(Duration freshness) {
+        return new CredentialCache(true, 10, freshness, Duration.ofMillis(50), 2, meterRegistry);
+    }
+
+    private Function<String, CustomUserDetails> stalledDatabase() {
+        return username -> {
+            try {
+                databaseStall.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return FRESH;
+        };
+    }
+
+    private Function<String, CustomUserDetails> unavailableDatabase() {
+        return username -> {
+            try {
+                databaseDown.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        };
+    }
+
+    private static boolean eventually(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    private double servedCount(String reason) {
+        return meterRegistry.get("auth.credential-cache.served").tag("reason", reason).counter().count();
+    }
+
+    private static CustomUserDetails counted(AtomicInteger calls, CustomUserDetails details) {
+        calls.incrementAndGet();
+        return details;
+    }
+
+    private static CustomUserDetails details(String password) {
+        return new CustomUserDetails("admin", password, Set.of(), "admin@example.com", 1L);
+    }
+
+}
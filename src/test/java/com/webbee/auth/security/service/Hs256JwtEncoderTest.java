@@ -0,0 +1,97 @@
+package com.webbee.auth.security.service;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class Hs256JwtEncoderTest {
+
+    private static final SecretKey KEY = Keys.hmacShaKeyFor("0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.US_ASCII));
+
+    private final Hs256JwtEncoder encoder = new Hs256JwtEncoder(KEY);
+
+    @Test
+    void shouldProduceTokenVerifiedByJjwt() {
+        String token = encoder.begin()
+                .claim("username", "admin")
+                .startArray("roles").element("ROLE_USER").element("ROLE_ADMIN").endArray()
+                .claim("userId", 42L)
+                .claim(Claims.SUBJECT, "admin")
+                .sign();
+
+        Claims claims = parse(token);
+
+        assertThat(claims.getSubject()).isEqualTo("admin");
+        assertThat(claims.get("roles", List.class)).containsExactly("ROLE_USER", "ROLE_ADMIN");
+        assertThat(claims.get("userId", Long.class)).isEqualTo(42L);
+    }
+
+    @Test
+    void shouldUseSameHeaderAsJjwt() {
+        String jjwtToken = Jwts.builder().subject("admin").signWith(KEY).compact();
+
+        String token = encoder.begin().claim(Claims.SUBJECT, "admin").sign();
+
+        assertThat(token).isEqualTo(jjwtToken);
+    }
+
+    @Test
+    void shouldEscapeStringsAndEncodeUtf8() {
+        String username = "и\"в\\а\n\u0001 😀 \uD800";
+
+        String token = encoder.begin().claim(Claims.SUBJECT, username).sign();
+
+        assertThat(parse(token).getSubject()).isEqualTo("и\"в\\а\n\u0001 😀 ?");
+    }
+
+    @Test
+    void shouldWriteExtremeNumbers() {
+        String token = encoder.begin()
+                .claim("min", Long.MIN_VALUE)
+                .claim("max", Long.MAX_VALUE)
+                .claim("zero", 0)
+                .sign();
+
+        Claims claims = parse(token);
+
+        assertThat(claims.get("min", Long.class)).isEqualTo(Long.MIN_VALUE);
+        assertThat(claims.get("max", Long.class)).isEqualTo(Long.MAX_VALUE);
+        assertThat(claims.get("zero", Long.class)).isZero();
+    }
+
+    @Test
+    void shouldGrowBuffersForLargePayload() {
+        Hs256JwtEncoder.Writer writer = encoder.begin().startArray("roles");
+        for (int i = 0; i < 200; i++) {
+            writer.element("ROLE_" + i);
+        }
+
+        String token = writer.endArray().sign();
+
+        assertThat(parse(token).get("roles", List.class)).hasSize(200);
+        assertThat(parse(encoder.begin().claim(Claims.SUBJECT, "next").sign()).getSubject()).isEqualTo("next");
+    }
+
+    @Test
+    void shouldRejectShortKey() {
+        SecretKey shortKey = new javax.crypto.spec.SecretKeySpec(new byte[16], "HmacSHA256");
+
+        assertThatThrownBy(() -> new Hs256JwtEncoder(shortKey)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static Claims parse(String token) {
+        assertThat(new String(Base64.getUrlDecoder().decode(token.substring(0, token.indexOf('.'))), StandardCharsets.US_ASCII))
+                .isEqualTo("{\"alg\":\"HS256\"}");
+        return Jwts.parser().verifyWith(KEY).build().parseSignedClaims(token).getPayload();
+    }
+
+}
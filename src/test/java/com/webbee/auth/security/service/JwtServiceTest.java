@@ -0,0 +1,238 @@
+package com.webbee.auth.security.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.webbee.auth.repository.TokenVersionRepository;
+import com.webbee.auth.security.model.CustomUserDetails;
+import com.webbee.auth.security.model.TokenData;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.CredentialsExpiredException;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class JwtServiceTest {
+
+    private static final CustomUserDetails ADMIN = new CustomUserDetails(
+            "admin",
+            "password",
+            Set.of(new SimpleGrantedAuthority("ROLE_USER"), new SimpleGrantedAuthority("ROLE_ADMIN")),
+            "admin@example.com"
+    );
+
+    private RoleCatalog roleCatalog;
+    private JwtService fullJwtService;
+    private JwtService compactJwtService;
+
+    @BeforeEach
+    void setUp() {
+        roleCatalog = new RoleCatalog();
+        fullJwtService = jwtService(roleCatalog, false, 1800000L);
+        compactJwtService = jwtService(roleCatalog, true, 1800000L);
+    }
+
+    @Test
+    void shouldParseFullToken() {
+        TokenData tokenData = fullJwtService.parseToken(fullJwtService.generateJwtToken(ADMIN, 42L));
+
+        assertThat(tokenData.getUsername()).isEqualTo("admin");
+        assertThat(tokenData.getId()).isEqualTo(42L);
+        assertThat(authorities(tokenData)).containsExactlyInAnyOrder("ROLE_USER", "ROLE_ADMIN");
+    }
+
+    @Test
+    void shouldParseCompactToken() {
+        String token = compactJwtService.generateJwtToken(ADMIN, 42L);
+
+        TokenData tokenData = compactJwtService.parseToken(token);
+
+        assertThat(payload(token)).doesNotContain("\"username\"", "\"roles\"", "ROLE_");
+        assertThat(tokenData.getUsername()).isEqualTo("admin");
+        assertThat(tokenData.getId()).isEqualTo(42L);
+        assertThat(authorities(tokenData)).containsExactly("ROLE_USER", "ROLE_ADMIN");
+        assertThat(compactJwtService.getRolesFromToken(token)).containsExactly("ROLE_USER", "ROLE_ADMIN");
+    }
+
+    @Test
+    void shouldProduceShorterCompactToken() {
+        String fullToken = fullJwtService.generateJwtToken(ADMIN, 42L);
+        String compactToken = compactJwtService.generateJwtToken(ADMIN, 42L);
+
+        assertThat(compactToken.length()).isLessThan(fullToken.length() - 40);
+    }
+
+    @Test
+    void shouldReadFullTokenWhenCompactClaimsEnabled() {
+        TokenData tokenData = compactJwtService.parseToken(fullJwtService.generateJwtToken(ADMIN, 42L));
+
+        assertThat(authorities(tokenData)).containsExactlyInAnyOrder("ROLE_USER", "ROLE_ADMIN");
+    }
+
+    @Test
+    void shouldFallBackToFullClaimsForRoleOutsideCatalog() {
+        CustomUserDetails userDetails = new CustomUserDetails(
+                "auditor", "password", Set.of(new SimpleGrantedAuthority("ROLE_AUDITOR")), "auditor@example.com");
+
+        String token = compactJwtService.generateJwtToken(userDetails, 7L);
+
+        assertThat(payload(token)).contains("\"roles\"");
+        assertThat(authorities(compactJwtService.parseToken(token))).containsExactly("ROLE_AUDITOR");
+    }
+
+    @Test
+    void shouldRejectTokenIssuedForAnotherCatalog() {
+        JwtService otherCatalogService = jwtService(new RoleCatalog(List.of("ADMIN", "USER")), true, 1800000L);
+        String token = otherCatalogService.generateJwtToken(ADMIN, 42L);
+
+        assertThatThrownBy(() -> compactJwtService.parseToken(token))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void shouldReuseDecodedAuthorities() {
+        String first = compactJwtService.generateJwtToken(ADMIN, 1L);
+        String second = compactJwtService.generateJwtToken(ADMIN, 2L);
+
+        assertThat(compactJwtService.parseToken(first).getAuthorities())
+                .isSameAs(compactJwtService.parseToken(second).getAuthorities());
+    }
+
+    @Test
+    void shouldThrowExpiredExceptionWhenParsingExpiredToken() {
+        JwtService expiredJwtService = jwtService(roleCatalog, true, -1000L);
+        String token = expiredJwtService.generateJwtToken(ADMIN, 42L);
+
+        assertThat(expiredJwtService.isTokenExpired(token)).isTrue();
+        assertThatThrownBy(() -> expiredJwtService.parseToken(token)).isInstanceOf(ExpiredJwtException.class);
+    }
+
+    @Test
+    void shouldIssueRevocableSessionTokenInOpaqueMode() {
+        JwtService opaqueJwtService = jwtService(roleCatalog, false, 1800000L, "opaque");
+        String token = opaqueJwtService.generateJwtToken(ADMIN, 42L);
+
+        assertThat(token).hasSize(22);
+        assertThat(opaqueJwtService.parseToken(token).getUsername()).isEqualTo("admin");
+        assertThat(opaqueJwtService.parseToken(fullJwtService.generateJwtToken(ADMIN, 42L)).getUsername()).isEqualTo("admin");
+        assertThat(opaqueJwtService.revokeToken(token)).isTrue();
+        assertThat(opaqueJwtService.isTokenExpired(token)).isTrue();
+        assertThatThrownBy(() -> opaqueJwtService.parseToken(token)).isInstanceOf(CredentialsExpiredException.class);
+    }
+
+    @Test
+    void shouldIssueSignedTokenWithoutSessionInOpaqueMode() {
+        JwtService opaqueJwtService = jwtService(roleCatalog, false, 1800000L, "opaque");
+        String token = opaqueJwtService.generateSignedToken(ADMIN, 42L);
+
+        assertThat(token).contains(".");
+        assertThat(opaqueJwtService.parseToken(token).getUsername()).isEqualTo("admin");
+        assertThat(opaqueJwtService.revokeToken(token)).isFalse();
+    }
+
+    @Test
+    void shouldIssueSameClaimsAsJjwtBuilder() throws Exception {
+        JwtService fastFullService = jwtService(roleCatalog, false, 1800000L, "jwt", true);
+        JwtService fastCompactService = jwtService(roleCatalog, true, 1800000L, "jwt", true);
+
+        assertThat(claims(fastFullService.generateJwtToken(ADMIN, 42L))).isEqualTo(claims(fullJwtService.generateJwtToken(ADMIN, 42L)));
+        assertThat(claims(fastCompactService.generateJwtToken(ADMIN, 42L))).isEqualTo(claims(compactJwtService.generateJwtToken(ADMIN, 42L)));
+        assertThat(fullJwtService.parseToken(fastFullService.generateJwtToken(ADMIN, null)).getId()).isNull();
+    }
+
+    @Test
+    void shouldCarryTokenVersionInBothFormats() throws Exception {
+        CustomUserDetails userDetails = new CustomUserDetails("admin", "password", ADMIN.getAuthorities(), "admin@example.com", 42L, 7L);
+        JwtService fastFullService = jwtService(roleCatalog, false, 1800000L, "jwt", true);
+        String fullToken = fullJwtService.generateJwtToken(userDetails, 42L);
+        String compactToken = compactJwtService.generateJwtToken(userDetails, 42L);
+
+        assertThat(fullJwtService.parseToken(fullToken).getTokenVersion()).isEqualTo(7L);
+        assertThat(compactJwtService.parseToken(compactToken).getTokenVersion()).isEqualTo(7L);
+        assertThat(claims(compactToken)).containsEntry(JwtService.COMPACT_TOKEN_VERSION_CLAIM, 7);
+        assertThat(claims(fullToken)).isEqualTo(claims(fastFullService.generateJwtToken(userDetails, 42L)));
+        assertThat(claims(fullJwtService.generateJwtToken(ADMIN, 42L))).doesNotContainKey(JwtService.TOKEN_VERSION_CLAIM);
+        assertThat(fullJwtService.parseToken(fullJwtService.generateJwtToken(ADMIN, 42L)).getTokenVersion()).isZero();
+    }
+
+    @Test
+    void shouldNotAcceptTokenIssuedFromDetailsOlderThanRegistry() {
+        TokenVersionRepository tokenVersionRepository = mock(TokenVersionRepository.class);
+        when(tokenVersionRepository.findChangedSince(anyLong(), anyInt())).thenReturn(Map.of(42L, 1L), Map.of());
+        TokenVersionRegistry registry = new TokenVersionRegistry(tokenVersionRepository, true, 10, Duration.ofSeconds(1), Duration.ofHours(1), new SimpleMeterRegistry());
+        registry.refresh();
+        CustomUserDetails stale = new CustomUserDetails("admin", "password", ADMIN.getAuthorities(), "admin@example.com", 42L, 0L);
+
+        TokenData full = fullJwtService.parseToken(fullJwtService.generateJwtToken(stale, 42L));
+        TokenData compact = compactJwtService.parseToken(compactJwtService.generateJwtToken(stale, 42L));
+
+        assertThat(registry.isCurrent(full.getId(), full.getTokenVersion())).isFalse();
+        assertThat(registry.isCurrent(compact.getId(), compact.getTokenVersion())).isFalse();
+    }
+
+    @Test
+    void shouldNotRevokeJwt() {
+        assertThat(fullJwtService.revokeToken(fullJwtService.generateJwtToken(ADMIN, 42L))).isFalse();
+    }
+
+    private static JwtService jwtService(RoleCatalog roleCatalog, boolean compactClaims, long lifeTime) {
+        return jwtService(roleCatalog, compactClaims, lifeTime, "jwt");
+    }
+
+    private static JwtService jwtService(RoleCatalog roleCatalog, boolean compactClaims, long lifeTime, String tokenMode) {
+        return jwtService(roleCatalog, compactClaims, lifeTime, tokenMode, false);
+    }
+
+    private static JwtService jwtService(RoleCatalog roleCatalog, boolean compactClaims, long lifeTime, String tokenMode, boolean fastEncoder) {
+        CompiledRoleHierarchy roleHierarchy = new CompiledRoleHierarchy(roleCatalog, "");
+        SessionTokenService sessionTokenService = new SessionTokenService(
+                roleCatalog, roleHierarchy, tokenMode, 1024, 4, Duration.ofMinutes(30), "", 0, new SimpleMeterRegistry());
+        JwtService jwtService = new JwtService(roleCatalog, roleHierarchy, sessionTokenService);
+        ReflectionTestUtils.setField(jwtService, "secretKey", "TestSecret");
+        ReflectionTestUtils.setField(jwtService, "lifeTime", lifeTime);
+        ReflectionTestUtils.setField(jwtService, "compactClaims", compactClaims);
+        ReflectionTestUtils.setField(jwtService, "fastEncoder", fastEncoder);
+        return jwtService;
+    }
+
+    private static List<String> authorities(TokenData tokenData) {
+        return tokenData.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .toList();
+    }
+
+    /**
+     * Claims без iat и exp: токены сравниваемых сервисов могут быть выпущены в разные секунды
+     */
+    private static Map<String, Object> claims(String token) throws Exception {
+        Map<String, Object> claims = new ObjectMapper().readValue(payload(token), new TypeReference<>() {
+        });
+        claims.remove("iat");
+        claims.remove("exp");
+        if (claims.get(JwtService.ROLES_CLAIM) instanceof List<?> roles) {
+            claims.put(JwtService.ROLES_CLAIM, Set.copyOf(roles));
+        }
+        return claims;
+    }
+
+    private static String payload(String token) {
+        return new String(Base64.getUrlDecoder().decode(token.split("\\.")[1]), StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.webbee.auth.security.service;
+
+import com.webbee.auth.security.model.TokenData;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.security.authentication.CredentialsExpiredException;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SessionTokenServiceTest {
+
+    private static final List<SimpleGrantedAuthority> ROLES = List.of(
+            new SimpleGrantedAuthority("ROLE_USER"), new SimpleGrantedAuthority("ROLE_ADMIN"));
+
+    private RoleCatalog roleCatalog;
+    private CompiledRoleHierarchy roleHierarchy;
+    private SessionTokenService sessionTokenService;
+
+    @BeforeEach
+    void setUp() {
+        roleCatalog = new RoleCatalog();
+        roleHierarchy = new CompiledRoleHierarchy(roleCatalog, "");
+        sessionTokenService = sessionTokenService(Duration.ofMinutes(30));
+    }
+
+    @Test
+    void shouldIssueShortOpaqueToken() {
+        String token = sessionTokenService.createSession("admin", 42L, ROLES).orElseThrow();
+
+        TokenData tokenData = sessionTokenService.parse(token);
+
+        assertThat(token).hasSize(22).doesNotContain(".");
+        assertThat(tokenData.getUsername()).isEqualTo("admin");
+        assertThat(tokenData.getId()).isEqualTo(42L);
+        assertThat(tokenData.getAuthorities()).map(GrantedAuthority::getAuthority).containsExactly("ROLE_USER", "ROLE_ADMIN");
+        assertThat(tokenData.getRoleMask() & roleHierarchy.roleBit("ADMIN")).isNotZero();
+    }
+
+    @Test
+    void shouldRejectRevokedSession() {
+        String token = sessionTokenService.createSession("admin", 42L, ROLES).orElseThrow();
+
+        assertThat(sessionTokenService.revoke(token)).isTrue();
+
+        assertThat(sessionTokenService.revoke(token)).isFalse();
+        assertThatThrownBy(() -> sessionTokenService.parse(token)).isInstanceOf(CredentialsExpiredException.class);
+    }
+
+    @Test
+    void shouldSweepExpiredSessions() {
+        SessionTokenService expiringService = sessionTokenService(Duration.ofMillis(-1));
+        String token = expiringService.createSession("admin", 42L, ROLES).orElseThrow();
+
+        expiringService.sweepExpired();
+
+        assertThat(expiringService.isActive(token)).isFalse();
+    }
+
+    @Test
+    void shouldRestoreSessionsAfterRestart(@TempDir Path directory) throws Exception {
+        SessionTokenService beforeRestart = persistentService(directory);
+        String active = beforeRestart.createSession("admin", 42L, ROLES).orElseThrow();
+        String revoked = beforeRestart.createSession("user", 7L, ROLES).orElseThrow();
+        beforeRestart.snapshot();
+        beforeRestart.revoke(revoked);
+        String afterSnapshot = beforeRestart.createSession("manager", 9L, ROLES).orElseThrow();
+
+        SessionTokenService afterRestart = persistentService(directory);
+
+        assertThat(afterRestart.parse(active).getUsername()).isEqualTo("admin");
+        assertThat(afterRestart.parse(afterSnapshot).getId()).isEqualTo(9L);
+        assertThat(afterRestart.isActive(revoked)).isFalse();
+        beforeRestart.close();
+        afterRestart.close();
+    }
+
+    @Test
+    void shouldNotCreateSessionForRoleOutsideCatalog() {
+        assertThat(sessionTokenService.createSession("auditor", 7L, List.of(new SimpleGrantedAuthority("ROLE_AUDITOR")))).isEmpty();
+    }
+
+    @Test
+    void shouldRejectMalformedToken() {
+        assertThatThrownBy(() -> sessionTokenService.parse("not-a-session-token!!"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private SessionTokenService sessionTokenService(Duration ttl) {
+        return new SessionTokenService(roleCatalog, roleHierarchy, "opaque", 1024, 4, ttl, "", 0, new SimpleMeterRegistry());
+    }
+
+    private SessionTokenService persistentService(Path directory) {
+        return new SessionTokenService(roleCatalog, roleHierarchy, "opaque", 1024, 4, Duration.ofMinutes(30),
+                directory.toString(), 64, new SimpleMeterRegistry());
+    }
+
+}
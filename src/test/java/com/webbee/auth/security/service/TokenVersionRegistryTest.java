@@ -0,0 +1,126 @@
+package com.webbee.auth.security.service;
+
+import com.webbee.auth.repository.TokenVersionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class TokenVersionRegistryTest {
+
+    @Mock
+    private TokenVersionRepository tokenVersionRepository;
+
+    @Test
+    void shouldRejectTokensOlderThanBump() {
+        TokenVersionRegistry registry = registry(true);
+        when(tokenVersionRepository.bump(1L)).thenReturn(5L);
+        when(tokenVersionRepository.findChangedSince(anyLong(), anyInt())).thenReturn(Map.of());
+
+        registry.bump(1L);
+
+        assertThat(registry.isCurrent(1L, 4L)).isFalse();
+        assertThat(registry.isCurrent(1L, 5L)).isTrue();
+        assertThat(registry.isCurrent(2L, 0L)).isTrue();
+        assertThat(registry.currentVersion(1L)).isEqualTo(5L);
+    }
+
+    @Test
+    void shouldPageChangesFromWatermark() {
+        TokenVersionRegistry registry = registry(true);
+        when(tokenVersionRepository.findChangedSince(0L, 2)).thenReturn(ordered(1L, 1L, 2L, 2L));
+        when(tokenVersionRepository.findChangedSince(2L, 2)).thenReturn(ordered(3L, 3L));
+        when(tokenVersionRepository.findChangedSince(3L, 2)).thenReturn(ordered(1L, 4L));
+
+        registry.refresh();
+        assertThat(registry.currentVersion(3L)).isEqualTo(3L);
+        assertThat(registry.isCurrent(1L, 1L)).isTrue();
+
+        registry.refresh();
+        assertThat(registry.isCurrent(1L, 1L)).isFalse();
+        verify(tokenVersionRepository, times(3)).findChangedSince(anyLong(), anyInt());
+    }
+
+    @Test
+    void shouldCheckDatabaseWhileNotLoadedAndBackOffReloading() {
+        TokenVersionRegistry registry = registry(true);
+        when(tokenVersionRepository.findChangedSince(anyLong(), anyInt())).thenThrow(new IllegalStateException("down"));
+        when(tokenVersionRepository.findVersion(1L)).thenReturn(3L);
+
+        assertThat(registry.isCurrent(1L, 2L)).isFalse();
+        assertThat(registry.isCurrent(1L, 3L)).isTrue();
+
+        verify(tokenVersionRepository, times(1)).findChangedSince(anyLong(), anyInt());
+        verify(tokenVersionRepository, times(2)).findVersion(1L);
+    }
+
+    @Test
+    void shouldRejectTokensWhenNotLoadedAndDatabaseIsUnavailable() {
+        TokenVersionRegistry registry = registry(true);
+        when(tokenVersionRepository.findChangedSince(anyLong(), anyInt())).thenThrow(new IllegalStateException("down"));
+        when(tokenVersionRepository.findVersion(1L)).thenThrow(new IllegalStateException("down"));
+
+        assertThat(registry.isCurrent(1L, 0L)).isFalse();
+    }
+
+    @Test
+    void shouldForgetVersionsOlderThanRetention() {
+        TokenVersionRegistry registry = new TokenVersionRegistry(tokenVersionRepository, true, 2, Duration.ofHours(1), Duration.ZERO, new SimpleMeterRegistry());
+        when(tokenVersionRepository.findChangedSince(0L, 2)).thenReturn(ordered(1L, 1L));
+        when(tokenVersionRepository.findChangedSince(1L, 2)).thenReturn(Map.of());
+
+        registry.refresh();
+        registry.refresh();
+
+        assertThat(registry.currentVersion(1L)).isZero();
+        assertThat(registry.isCurrent(1L, 0L)).isTrue();
+        verify(tokenVersionRepository, never()).findVersion(anyLong());
+    }
+
+    @Test
+    void shouldSkipChecksWhenDisabled() {
+        TokenVersionRegistry registry = registry(false);
+
+        registry.bump(1L);
+        registry.refresh();
+
+        assertThat(registry.isCurrent(1L, 0L)).isTrue();
+        verifyNoInteractions(tokenVersionRepository);
+    }
+
+    @Test
+    void shouldNotCheckTokensWithoutUserId() {
+        TokenVersionRegistry registry = registry(true);
+
+        assertThat(registry.isCurrent(null, 0L)).isTrue();
+        verify(tokenVersionRepository, never()).findChangedSince(anyLong(), anyInt());
+    }
+
+    private TokenVersionRegistry registry(boolean enabled) {
+        return new TokenVersionRegistry(tokenVersionRepository, enabled, 2, Duration.ofHours(1), Duration.ofHours(1), new SimpleMeterRegistry());
+    }
+
+    private static Map<Long, Long> ordered(long... userVersionPairs) {
+        Map<Long, Long> versions = new LinkedHashMap<>();
+        for (int i = 0; i < userVersionPairs.length; i += 2) {
+            versions.put(userVersionPairs[i], userVersionPairs[i + 1]);
+        }
+        return versions;
+    }
+
+}
@@ -0,0 +1,136 @@
+package com.webbee.auth.security.service;
+
+import com.webbee.auth.datasource.ReplicaStalenessGuard;
+import com.webbee.auth.entity.User;
+import com.webbee.auth.repository.UserStore;
+import com.webbee.auth.security.model.CustomUserDetails;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class UserDetailsServiceImplTest {
+
+    @Mock
+    private UserStore userStore;
+
+    @Mock
+    private CredentialCache credentialCache;
+
+    @Mock
+    private ReplicaStalenessGuard stalenessGuard;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private UserDetailsServiceImpl userDetailsService;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final CountDownLatch firstQueryStarted = new CountDownLatch(1);
+    private final CountDownLatch bothQueriesStarted = new CountDownLatch(2);
+    private final CountDownLatch queryRelease = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() {
+        when(credentialCache.load(anyString(), any())).thenAnswer(invocation -> {
+            Function<String, CustomUserDetails> loader = invocation.getArgument(1);
+            return loader.apply(invocation.getArgument(0));
+        });
+        User user = User.builder().id(42L).username("admin").password("hash").email("admin@example.com").build();
+        when(userStore.findByUsername("admin")).thenAnswer(invocation -> {
+            firstQueryStarted.countDown();
+            bothQueriesStarted.countDown();
+            queryRelease.await();
+            return Optional.of(user);
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        queryRelease.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void shouldShareConcurrentLoginOfSameUser() throws Exception {
+        AtomicReference<Thread> followerThread = new AtomicReference<>();
+
+        Future<UserDetails> leader = executor.submit(() -> userDetailsService.loadUserByUsername("admin"));
+        firstQueryStarted.await();
+        Future<UserDetails> follower = executor.submit(() -> {
+            followerThread.set(Thread.currentThread());
+            return userDetailsService.loadUserByUsername("Admin");
+        });
+        awaitWaiting(followerThread);
+        queryRelease.countDown();
+
+        assertThat(leader.get(5, TimeUnit.SECONDS).getUsername()).isEqualTo("admin");
+        assertThat(follower.get(5, TimeUnit.SECONDS).getUsername()).isEqualTo("admin");
+        verify(userStore, times(1)).findByUsername("admin");
+    }
+
+    @Test
+    void shouldNotShareReplicaLoginWithPrimaryReader() throws Exception {
+        when(stalenessGuard.readsFromPrimary("admin")).thenReturn(false, true);
+
+        Future<UserDetails> replicaReader = executor.submit(() -> userDetailsService.loadUserByUsername("admin"));
+        firstQueryStarted.await();
+        Future<UserDetails> primaryReader = executor.submit(() -> userDetailsService.loadUserByUsername("admin"));
+        assertThat(bothQueriesStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        queryRelease.countDown();
+
+        assertThat(replicaReader.get(5, TimeUnit.SECONDS).getUsername()).isEqualTo("admin");
+        assertThat(primaryReader.get(5, TimeUnit.SECONDS).getUsername()).isEqualTo("admin");
+        verify(stalenessGuard).pinToPrimaryIfRecentlyWritten("admin");
+        verify(stalenessGuard).pinToPrimary();
+    }
+
+    @Test
+    void shouldNotJoinLookupStartedBeforeForget() throws Exception {
+        Future<UserDetails> stale = executor.submit(() -> userDetailsService.loadUserByUsername("admin"));
+        firstQueryStarted.await();
+
+        userDetailsService.forgetInFlight("Admin");
+        Future<UserDetails> fresh = executor.submit(() -> userDetailsService.loadUserByUsername("admin"));
+        assertThat(bothQueriesStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        queryRelease.countDown();
+
+        assertThat(stale.get(5, TimeUnit.SECONDS).getUsername()).isEqualTo("admin");
+        assertThat(fresh.get(5, TimeUnit.SECONDS).getUsername()).isEqualTo("admin");
+    }
+
+    /**
+     * Ждет, пока поток присоединится к выполняющемуся общему запросу и заблокируется в ожидании его результата
+     */
+    private static void awaitWaiting(AtomicReference<Thread> thread) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (thread.get() == null || thread.get().getState() != Thread.State.WAITING) {
+            assertThat(System.nanoTime()).as("caller joined the running lookup").isLessThan(deadline);
+            Thread.onSpinWait();
+        }
+    }
+
+}
@@ -1,17 +1,25 @@
 package com.webbee.auth.service;
 
+import com.webbee.auth.audit.model.AuditEventType;
+import com.webbee.auth.audit.service.AuditService;
+import com.webbee.auth.datasource.ReplicaStalenessGuard;
 import com.webbee.auth.dto.AuthStatusDto;
 import com.webbee.auth.dto.LoginRequest;
 import com.webbee.auth.dto.RegistrationDto;
+import com.webbee.auth.dto.UsernameAvailabilityDto;
 import com.webbee.auth.entity.Role;
 import com.webbee.auth.entity.User;
 import com.webbee.auth.repository.RoleRepository;
 import com.webbee.auth.repository.UserRepository;
+import com.webbee.auth.repository.UserStore;
 import com.webbee.auth.security.model.CustomUserDetails;
 import com.webbee.auth.security.service.JwtService;
+import com.webbee.auth.security.service.TokenVersionRegistry;
+import com.webbee.auth.security.service.UserDetailsServiceImpl;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -21,8 +29,10 @@ import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
+import java.time.Instant;
 import java.util.Collection;
 import java.util.Optional;
 import java.util.Set;
@@ -31,6 +41,7 @@ import java.util.stream.Collectors;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -38,6 +49,9 @@ class AuthServiceTest {
 
     @Mock
     private UserRepository userRepository;
+
+    @Mock
+    private UserStore userStore;
     
     @Mock
     private BCryptPasswordEncoder passwordEncoder;
@@ -51,6 +65,24 @@ class AuthServiceTest {
     @Mock
     private JwtService jwtService;
 
+    @Mock
+    private UserPresenceFilter userPresenceFilter;
+
+    @Mock
+    private AuditService auditService;
+
+    @Mock
+    private LastLoginTracker lastLoginTracker;
+
+    @Mock
+    private ReplicaStalenessGuard stalenessGuard;
+
+    @Mock
+    private TokenVersionRegistry tokenVersionRegistry;
+
+    @Mock
+    private UserDetailsServiceImpl userDetailsService;
+
     @InjectMocks
     private AuthService authService;
 
@@ -198,7 +230,7 @@ class AuthServiceTest {
         Authentication authentication = mock(Authentication.class);
         when(authentication.getPrincipal()).thenReturn(userDetails);
 
-        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(testUser));
+        when(userStore.findByUsername("testuser")).thenReturn(Optional.of(testUser));
         when(authenticationProvider.authenticate(any(UsernamePasswordAuthenticationToken.class)))
                 .thenReturn(authentication);
         when(jwtService.generateJwtToken(userDetails, 1L)).thenReturn("jwt-token");
@@ -207,11 +239,67 @@ class AuthServiceTest {
 
         assertThat(result.getCode()).isEqualTo(HttpStatus.OK.value());
         assertThat(result.getToken()).isEqualTo("jwt-token");
+        verify(auditService).publish(AuditEventType.LOGIN_SUCCESS, "testuser", null);
+        verify(lastLoginTracker).record(eq(1L), any(Instant.class));
+    }
+
+    @Test
+    void shouldTakeUserIdFromAuthenticatedPrincipal() {
+        CustomUserDetails userDetails = new CustomUserDetails(
+                testUser.getUsername(), testUser.getPassword(), Set.of(), testUser.getEmail(), 7L);
+        Authentication authentication = mock(Authentication.class);
+        when(authentication.getPrincipal()).thenReturn(userDetails);
+        when(authenticationProvider.authenticate(any(UsernamePasswordAuthenticationToken.class)))
+                .thenReturn(authentication);
+        when(jwtService.generateJwtToken(userDetails, 7L)).thenReturn("jwt-token");
+
+        AuthStatusDto result = authService.login(validLoginRequest);
+
+        assertThat(result.getToken()).isEqualTo("jwt-token");
+        verify(lastLoginTracker).record(eq(7L), any(Instant.class));
+        verifyNoInteractions(userStore);
+    }
+
+    @Test
+    void shouldReloadDetailsFromPrimaryWhenRegistryKnowsNewerVersion() {
+        CustomUserDetails stale = new CustomUserDetails(
+                "testuser", "encodedPassword", Set.of(new SimpleGrantedAuthority("ROLE_ADMIN")), "test@example.com", 1L, 0L);
+        CustomUserDetails fresh = new CustomUserDetails(
+                "testuser", "encodedPassword", Set.of(new SimpleGrantedAuthority("ROLE_USER")), "test@example.com", 1L, 1L);
+        Authentication authentication = mock(Authentication.class);
+        when(authentication.getPrincipal()).thenReturn(stale);
+        when(authenticationProvider.authenticate(any(UsernamePasswordAuthenticationToken.class))).thenReturn(authentication);
+        when(tokenVersionRegistry.currentVersion(1L)).thenReturn(1L);
+        when(userDetailsService.loadFromPrimary("testuser")).thenReturn(fresh);
+        when(passwordEncoder.matches("password123", "encodedPassword")).thenReturn(true);
+        when(jwtService.generateJwtToken(fresh, 1L)).thenReturn("jwt-token");
+
+        AuthStatusDto result = authService.login(validLoginRequest);
+
+        assertThat(result.getToken()).isEqualTo("jwt-token");
+        verify(jwtService, never()).generateJwtToken(eq(stale), any());
+    }
+
+    @Test
+    void shouldRejectLoginWhenPrimaryIsBehindRegistry() {
+        CustomUserDetails stale = new CustomUserDetails(
+                "testuser", "encodedPassword", Set.of(new SimpleGrantedAuthority("ROLE_ADMIN")), "test@example.com", 1L, 0L);
+        Authentication authentication = mock(Authentication.class);
+        when(authentication.getPrincipal()).thenReturn(stale);
+        when(authenticationProvider.authenticate(any(UsernamePasswordAuthenticationToken.class))).thenReturn(authentication);
+        when(tokenVersionRegistry.currentVersion(1L)).thenReturn(1L);
+        when(userDetailsService.loadFromPrimary("testuser")).thenReturn(stale);
+
+        AuthStatusDto result = authService.login(validLoginRequest);
+
+        assertThat(result.getCode()).isEqualTo(HttpStatus.FORBIDDEN.value());
+        assertThat(result.getToken()).isNull();
+        verify(jwtService, never()).generateJwtToken(any(), any());
+        verify(auditService).publish(AuditEventType.LOGIN_FAILURE, "testuser", "BadCredentialsException");
     }
 
     @Test
     void shouldRejectLoginWithInvalidCredentials() {
-        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(testUser));
         when(authenticationProvider.authenticate(any(UsernamePasswordAuthenticationToken.class)))
                 .thenThrow(new BadCredentialsException("Invalid credentials"));
 
@@ -219,6 +307,8 @@ class AuthServiceTest {
 
         assertThat(result.getCode()).isEqualTo(HttpStatus.FORBIDDEN.value());
         assertThat(result.getToken()).isNull();
+        verifyNoInteractions(lastLoginTracker);
+        verify(auditService).publish(AuditEventType.LOGIN_FAILURE, "testuser", "BadCredentialsException");
     }
 
     @Test
@@ -288,4 +378,128 @@ class AuthServiceTest {
 
         assertThat(result.getCode()).isEqualTo(HttpStatus.BAD_REQUEST.value());
     }
+
+    @Test
+    void shouldSkipDatabaseWhenUsernameDefinitelyAbsentOnLogin() {
+        when(userPresenceFilter.isUsernameDefinitelyAbsent("testuser")).thenReturn(true);
+
+        AuthStatusDto result = authService.login(validLoginRequest);
+
+        assertThat(result.getCode()).isEqualTo(HttpStatus.FORBIDDEN.value());
+        verifyNoInteractions(userRepository, userStore, authenticationProvider);
+    }
+
+    @Test
+    void shouldSkipDuplicateLookupsWhenIdentityDefinitelyAbsent() {
+        when(userPresenceFilter.isUsernameDefinitelyAbsent("testuser")).thenReturn(true);
+        when(userPresenceFilter.isEmailDefinitelyAbsent("test@example.com")).thenReturn(true);
+        when(roleRepository.findByName("USER")).thenReturn(Optional.of(userRole));
+        when(passwordEncoder.encode(anyString())).thenReturn("encodedPassword");
+
+        AuthStatusDto result = authService.registration(validRegistrationDto);
+
+        assertThat(result.getCode()).isEqualTo(HttpStatus.OK.value());
+        verify(userRepository, never()).findByUsername(anyString());
+        verify(userRepository, never()).findByEmail(anyString());
+        verify(userPresenceFilter).register("testuser", "test@example.com");
+    }
+
+    @Test
+    void shouldReportUsernameAvailableWithoutDatabaseWhenDefinitelyAbsent() {
+        when(userPresenceFilter.isUsernameDefinitelyAbsent("newuser")).thenReturn(true);
+
+        UsernameAvailabilityDto result = authService.checkUsernameAvailability("newuser");
+
+        assertThat(result.getAvailable()).isTrue();
+        verify(userStore, never()).existsByUsername(anyString());
+    }
+
+    @Test
+    void shouldCheckDatabaseWhenUsernameMightExist() {
+        when(userStore.existsByUsername("testuser")).thenReturn(true);
+
+        UsernameAvailabilityDto result = authService.checkUsernameAvailability("testuser");
+
+        assertThat(result.getAvailable()).isFalse();
+    }
+
+    @Test
+    void shouldStoreCanonicalIdentityOnRegistration() {
+        RegistrationDto mixedCaseDto = RegistrationDto.builder()
+                .username(" TestUser ")
+                .email("Test@Example.COM")
+                .password("password123")
+                .build();
+        when(userRepository.findByUsername("testuser")).thenReturn(Optional.empty());
+        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.empty());
+        when(roleRepository.findByName("USER")).thenReturn(Optional.of(userRole));
+        when(passwordEncoder.encode(anyString())).thenReturn("encodedPassword");
+
+        AuthStatusDto result = authService.registration(mixedCaseDto);
+
+        assertThat(result.getCode()).isEqualTo(HttpStatus.OK.value());
+        ArgumentCaptor<User> saved = ArgumentCaptor.forClass(User.class);
+        verify(userRepository).save(saved.capture());
+        assertThat(saved.getValue().getUsername()).isEqualTo("testuser");
+        assertThat(saved.getValue().getEmail()).isEqualTo("test@example.com");
+        verify(userPresenceFilter).register("testuser", "test@example.com");
+    }
+
+    @Test
+    void shouldRejectRegistrationWhenUsernameDiffersOnlyInCase() {
+        RegistrationDto mixedCaseDto = RegistrationDto.builder()
+                .username("TESTUSER")
+                .email("other@example.com")
+                .password("password123")
+                .build();
+        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(testUser));
+
+        AuthStatusDto result = authService.registration(mixedCaseDto);
+
+        assertThat(result.getCode()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+        verify(userRepository, never()).save(any(User.class));
+    }
+
+    @Test
+    void shouldAuthenticateWithCanonicalUsername() {
+        LoginRequest mixedCaseRequest = LoginRequest.builder()
+                .username("TestUser")
+                .password("password123")
+                .build();
+        when(authenticationProvider.authenticate(any(UsernamePasswordAuthenticationToken.class)))
+                .thenThrow(new BadCredentialsException("Invalid credentials"));
+
+        authService.login(mixedCaseRequest);
+
+        ArgumentCaptor<UsernamePasswordAuthenticationToken> token = ArgumentCaptor.forClass(UsernamePasswordAuthenticationToken.class);
+        verify(authenticationProvider).authenticate(token.capture());
+        assertThat(token.getValue().getName()).isEqualTo("testuser");
+        verify(userPresenceFilter).isUsernameDefinitelyAbsent("testuser");
+    }
+
+    @Test
+    void shouldCheckAvailabilityIgnoringCase() {
+        when(userStore.existsByUsername("testuser")).thenReturn(true);
+
+        UsernameAvailabilityDto result = authService.checkUsernameAvailability("TestUser");
+
+        assertThat(result.getAvailable()).isFalse();
+    }
+
+    @Test
+    void shouldRevokeSessionOnLogout() {
+        when(jwtService.revokeToken("session-token")).thenReturn(true);
+
+        AuthStatusDto result = authService.logout("session-token");
+
+        assertThat(result.getCode()).isEqualTo(HttpStatus.OK.value());
+    }
+
+    @Test
+    void shouldRejectLogoutForNonRevocableToken() {
+        AuthStatusDto result = authService.logout("jwt-token");
+
+        assertThat(result.getCode()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+    }
+
 }
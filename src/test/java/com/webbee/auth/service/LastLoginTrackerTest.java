@@ -0,0 +1,82 @@
+package com.webbee.auth.service;
+
+import com.webbee.auth.repository.LastLoginRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Instant;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class LastLoginTrackerTest {
+
+    private static final Instant EARLIER = Instant.parse("2026-01-01T10:00:00Z");
+    private static final Instant LATER = Instant.parse("2026-01-01T10:05:00Z");
+
+    @Mock
+    private LastLoginRepository lastLoginRepository;
+
+    private LastLoginTracker lastLoginTracker;
+
+    @BeforeEach
+    void setUp() {
+        lastLoginTracker = new LastLoginTracker(lastLoginRepository, true, 2, new SimpleMeterRegistry());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldKeepOnlyLatestLoginPerUser() {
+        lastLoginTracker.record(1L, LATER);
+        lastLoginTracker.record(1L, EARLIER);
+
+        lastLoginTracker.flush();
+
+        ArgumentCaptor<Map<Long, Instant>> batch = ArgumentCaptor.forClass(Map.class);
+        verify(lastLoginRepository).updateLastLogin(batch.capture());
+        assertThat(batch.getValue()).containsExactly(Map.entry(1L, LATER));
+    }
+
+    @Test
+    void shouldSplitFlushIntoBatches() {
+        lastLoginTracker.record(1L, LATER);
+        lastLoginTracker.record(2L, LATER);
+        lastLoginTracker.record(3L, LATER);
+
+        lastLoginTracker.flush();
+
+        verify(lastLoginRepository, times(2)).updateLastLogin(anyMap());
+    }
+
+    @Test
+    void shouldRetainLoginsWhenFlushFails() {
+        when(lastLoginRepository.updateLastLogin(anyMap()))
+                .thenThrow(new IllegalStateException("database unavailable"))
+                .thenReturn(1);
+        lastLoginTracker.record(1L, LATER);
+
+        lastLoginTracker.flush();
+        lastLoginTracker.flush();
+
+        verify(lastLoginRepository, times(2)).updateLastLogin(Map.of(1L, LATER));
+    }
+
+    @Test
+    void shouldNotQueryDatabaseWhenNothingRecorded() {
+        lastLoginTracker.flush();
+
+        verifyNoInteractions(lastLoginRepository);
+    }
+
+}
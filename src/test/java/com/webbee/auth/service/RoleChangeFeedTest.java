@@ -0,0 +1,285 @@
+package com.webbee.auth.service;
+
+import com.webbee.auth.dto.RoleChangeDto;
+import com.webbee.auth.dto.RoleChangePageDto;
+import com.webbee.auth.repository.RoleChangeRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class RoleChangeFeedTest {
+
+    @Mock
+    private RoleChangeRepository roleChangeRepository;
+
+    private final List<RoleChangeDto> journal = new CopyOnWriteArrayList<>();
+    private final AtomicLong oldestRunningXid = new AtomicLong(100);
+    private volatile long headHorizon = 100;
+    private RoleChangeFeed roleChangeFeed;
+
+    @BeforeEach
+    void setUp() {
+        when(roleChangeRepository.findSince(anyLong(), anyLong(), anyInt())).thenAnswer(invocation -> {
+            long since = invocation.getArgument(0);
+            long upTo = invocation.getArgument(1);
+            int limit = invocation.getArgument(2);
+            return journal.stream().filter(change -> change.getVersion() > since && change.getVersion() <= upTo).limit(limit).toList();
+        });
+        when(roleChangeRepository.findHead()).thenAnswer(invocation -> new RoleChangeRepository.Head(journal.size(), headHorizon));
+        when(roleChangeRepository.findOldestRunningXid()).thenAnswer(invocation -> oldestRunningXid.get());
+        roleChangeFeed = feed(Duration.ofMinutes(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        roleChangeFeed.shutdown();
+    }
+
+    @Test
+    void shouldPageChangesByVersion() {
+        append(5);
+
+        RoleChangePageDto first = roleChangeFeed.changesSince(0, 2);
+        RoleChangePageDto last = roleChangeFeed.changesSince(4, 2);
+
+        assertThat(first.getChanges()).extracting(RoleChangeDto::getVersion).containsExactly(1L, 2L);
+        assertThat(first.getNextVersion()).isEqualTo(2);
+        assertThat(first.getHasMore()).isTrue();
+        assertThat(last.getChanges()).extracting(RoleChangeDto::getVersion).containsExactly(5L);
+        assertThat(last.getHasMore()).isFalse();
+    }
+
+    @Test
+    void shouldKeepCursorWhenNothingChanged() {
+        RoleChangePageDto page = roleChangeFeed.changesSince(7, 100);
+
+        assertThat(page.getChanges()).isEmpty();
+        assertThat(page.getNextVersion()).isEqualTo(7);
+        assertThat(page.getHasMore()).isFalse();
+    }
+
+    @Test
+    void shouldCapPageSize() {
+        append(5);
+
+        assertThat(roleChangeFeed.changesSince(0, 1000).getChanges()).hasSize(2);
+    }
+
+    @Test
+    void shouldSendBacklogThenNewChangesToSubscriber() {
+        append(3);
+        RecordingEmitter emitter = new RecordingEmitter();
+
+        roleChangeFeed.register(emitter, 1);
+        roleChangeFeed.publish();
+        append(2);
+        roleChangeFeed.publish();
+        roleChangeFeed.publish();
+
+        assertThat(emitter.awaitVersions(4)).containsExactly(2L, 3L, 4L, 5L);
+    }
+
+    @Test
+    void shouldDeliverOnlyUnseenChangesToEachSubscriber() {
+        append(4);
+        RecordingEmitter behind = new RecordingEmitter();
+        RecordingEmitter current = new RecordingEmitter();
+
+        roleChangeFeed.register(behind, 0);
+        roleChangeFeed.register(current, 4);
+        roleChangeFeed.publish();
+        append(1);
+        roleChangeFeed.publish();
+
+        assertThat(behind.awaitVersions(5)).containsExactly(1L, 2L, 3L, 4L, 5L);
+        assertThat(current.awaitVersions(1)).containsExactly(5L);
+    }
+
+    @Test
+    void shouldDropSubscriberWhenSendFails() {
+        append(1);
+        RecordingEmitter broken = new RecordingEmitter();
+        broken.failing = true;
+
+        roleChangeFeed.register(broken, 0);
+        roleChangeFeed.publish();
+        broken.awaitAttempts(1);
+        broken.failing = false;
+        append(1);
+        roleChangeFeed.publish();
+
+        assertThat(broken.versions()).isEmpty();
+        assertThat(broken.attempts).isEqualTo(1);
+    }
+
+    @Test
+    void shouldHoldBackChangesUntilEarlierTransactionsFinish() {
+        append(2);
+        roleChangeFeed.changesSince(0, 100);
+        append(2);
+        headHorizon = 200;
+
+        RoleChangePageDto held = roleChangeFeed.changesSince(0, 100);
+        oldestRunningXid.set(200);
+        RoleChangePageDto released = roleChangeFeed.changesSince(2, 100);
+
+        assertThat(held.getChanges()).extracting(RoleChangeDto::getVersion).containsExactly(1L, 2L);
+        assertThat(held.getHasMore()).isFalse();
+        assertThat(released.getChanges()).extracting(RoleChangeDto::getVersion).containsExactly(3L, 4L);
+        assertThat(roleChangeFeed.latestVersion()).isEqualTo(4);
+    }
+
+    @Test
+    void shouldKeepSendingToOtherSubscribersWhileOneIsBlocked() throws InterruptedException {
+        append(1);
+        RecordingEmitter blocked = new RecordingEmitter();
+        blocked.gate = new CountDownLatch(1);
+        RecordingEmitter fast = new RecordingEmitter();
+
+        roleChangeFeed.register(blocked, 0);
+        roleChangeFeed.register(fast, 0);
+        roleChangeFeed.publish();
+        append(1);
+        roleChangeFeed.publish();
+
+        assertThat(fast.awaitVersions(2)).containsExactly(1L, 2L);
+        assertThat(blocked.versions()).isEmpty();
+        blocked.gate.countDown();
+        assertThat(blocked.awaitVersions(2)).containsExactly(1L, 2L);
+    }
+
+    @Test
+    void shouldDropSubscriberThatDoesNotAcceptChangesInTime() throws InterruptedException {
+        roleChangeFeed.shutdown();
+        roleChangeFeed = feed(Duration.ofMillis(1));
+        append(1);
+        RecordingEmitter blocked = new RecordingEmitter();
+        blocked.gate = new CountDownLatch(1);
+
+        roleChangeFeed.register(blocked, 0);
+        roleChangeFeed.publish();
+        blocked.awaitAttempts(1);
+        Thread.sleep(5);
+        append(1);
+        roleChangeFeed.publish();
+        blocked.gate.countDown();
+        roleChangeFeed.publish();
+
+        assertThat(blocked.awaitVersions(1)).containsExactly(1L);
+        assertThat(blocked.attempts).isEqualTo(1);
+    }
+
+    @Test
+    void shouldAppendChangeToJournal() {
+        roleChangeFeed.record("alice", Set.of("USER"));
+
+        verify(roleChangeRepository).append("alice", Set.of("USER"));
+    }
+
+    private RoleChangeFeed feed(Duration sendTimeout) {
+        return new RoleChangeFeed(roleChangeRepository, 2, Duration.ofHours(1), Duration.ofHours(1),
+                Duration.ofMinutes(1), 2, sendTimeout, new SimpleMeterRegistry());
+    }
+
+    private void append(int count) {
+        for (int i = 0; i < count; i++) {
+            journal.add(RoleChangeDto.builder()
+                    .version((long) journal.size() + 1)
+                    .username("user" + journal.size())
+                    .roles(List.of("USER"))
+                    .changedAt(Instant.now())
+                    .build());
+        }
+    }
+
+    /**
+     * Эмиттер, запоминающий отправленные события вместо записи в ответ
+     */
+    private static final class RecordingEmitter extends SseEmitter {
+
+        private final List<Object> sent = new ArrayList<>();
+        private volatile boolean failing;
+        private volatile CountDownLatch gate;
+        private volatile int attempts;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            synchronized (this) {
+                attempts++;
+                notifyAll();
+            }
+            if (gate != null) {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+            if (failing) {
+                throw new IOException("Broken pipe");
+            }
+            synchronized (this) {
+                builder.build().forEach(part -> sent.add(part.getData()));
+                notifyAll();
+            }
+        }
+
+        private synchronized List<Long> awaitVersions(int count) {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (versions().size() < count && System.currentTimeMillis() < deadline) {
+                waitQuietly(deadline);
+            }
+            return versions();
+        }
+
+        private synchronized void awaitAttempts(int count) {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (attempts < count && System.currentTimeMillis() < deadline) {
+                waitQuietly(deadline);
+            }
+        }
+
+        private void waitQuietly(long deadline) {
+            try {
+                wait(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private synchronized List<Long> versions() {
+            return sent.stream()
+                    .filter(RoleChangeDto.class::isInstance)
+                    .map(data -> ((RoleChangeDto) data).getVersion())
+                    .toList();
+        }
+
+    }
+
+}
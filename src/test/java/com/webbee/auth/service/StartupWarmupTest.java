@@ -0,0 +1,126 @@
+package com.webbee.auth.service;
+
+import com.webbee.auth.repository.RoleRepository;
+import com.webbee.auth.repository.UserStore;
+import com.webbee.auth.security.service.JwtService;
+import com.webbee.auth.security.service.RoleCatalog;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.BadCredentialsException;
+
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class StartupWarmupTest {
+
+    @Mock
+    private JwtService jwtService;
+
+    @Mock
+    private AuthenticationProvider authenticationProvider;
+
+    @Mock
+    private UserStore userStore;
+
+    @Mock
+    private RoleRepository roleRepository;
+
+    @Mock
+    private UserRoleService userRoleService;
+
+    @Mock
+    private ObjectProvider<HikariDataSource> dataSources;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Test
+    void shouldRefuseTrafficUntilWarmUpFinishes() throws Exception {
+        HikariDataSource dataSource = mock(HikariDataSource.class);
+        Connection connection = mock(Connection.class);
+        when(dataSources.orderedStream()).thenReturn(Stream.of(dataSource));
+        when(dataSource.getMinimumIdle()).thenReturn(3);
+        when(dataSource.getMaximumPoolSize()).thenReturn(10);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(jwtService.generateSignedToken(any(), anyLong())).thenReturn("token");
+        when(authenticationProvider.authenticate(any())).thenThrow(new BadCredentialsException("Bad credentials"));
+
+        warmup(true).warmUp();
+
+        InOrder order = inOrder(eventPublisher, dataSource, jwtService, userStore, authenticationProvider);
+        order.verify(eventPublisher).publishEvent(readiness(ReadinessState.REFUSING_TRAFFIC));
+        order.verify(dataSource, times(3)).getConnection();
+        order.verify(jwtService, times(5)).parseToken("token");
+        order.verify(userStore, times(4)).existsByUsername(anyString());
+        order.verify(authenticationProvider, times(2)).authenticate(any());
+        order.verify(eventPublisher).publishEvent(readiness(ReadinessState.ACCEPTING_TRAFFIC));
+        verify(connection, times(3)).close();
+        verify(jwtService, never()).generateJwtToken(any(), anyLong());
+        verify(jwtService, never()).revokeToken(anyString());
+        verify(userRoleService, times(4)).getRoles(anyString());
+    }
+
+    @Test
+    void shouldAcceptTrafficWhenDatabaseIsUnavailable() throws Exception {
+        HikariDataSource dataSource = mock(HikariDataSource.class);
+        when(dataSources.orderedStream()).thenReturn(Stream.of(dataSource));
+        when(dataSource.getMinimumIdle()).thenReturn(3);
+        when(dataSource.getMaximumPoolSize()).thenReturn(10);
+        when(dataSource.getConnection()).thenThrow(new SQLTransientConnectionException("Connection is not available"));
+        when(jwtService.generateSignedToken(any(), anyLong())).thenReturn("token");
+        when(userStore.findByUsername(anyString())).thenThrow(new DataAccessResourceFailureException("Connection refused"));
+
+        warmup(true).warmUp();
+
+        verify(jwtService, times(5)).parseToken("token");
+        verify(authenticationProvider, times(2)).authenticate(any());
+        ArgumentCaptor<AvailabilityChangeEvent<?>> events = ArgumentCaptor.forClass(AvailabilityChangeEvent.class);
+        verify(eventPublisher, times(2)).publishEvent(events.capture());
+        assertThat(events.getAllValues()).<Object>map(AvailabilityChangeEvent::getState)
+                .containsExactly(ReadinessState.REFUSING_TRAFFIC, ReadinessState.ACCEPTING_TRAFFIC);
+    }
+
+    @Test
+    void shouldDoNothingWhenDisabled() {
+        warmup(false).warmUp();
+
+        verifyNoInteractions(jwtService, authenticationProvider, userStore, dataSources, eventPublisher);
+    }
+
+    private StartupWarmup warmup(boolean enabled) {
+        return new StartupWarmup(jwtService, new RoleCatalog(), authenticationProvider, userStore, roleRepository,
+                userRoleService, dataSources, eventPublisher, enabled, 5, 2, 4, Duration.ofSeconds(30));
+    }
+
+    private static AvailabilityChangeEvent<ReadinessState> readiness(ReadinessState state) {
+        return argThat(event -> event.getState() == state);
+    }
+
+}
@@ -0,0 +1,148 @@
+package com.webbee.auth.service;
+
+import com.webbee.auth.audit.model.AuditEventType;
+import com.webbee.auth.audit.service.AuditService;
+import com.webbee.auth.datasource.ReplicaStalenessGuard;
+import com.webbee.auth.dto.UserImportResultDto;
+import com.webbee.auth.repository.UserBulkRepository;
+import com.webbee.auth.security.service.CredentialCache;
+import com.webbee.auth.security.service.TokenVersionRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class UserBulkServiceTest {
+
+    @Mock
+    private UserBulkRepository userBulkRepository;
+
+    @Mock
+    private CredentialCache credentialCache;
+
+    @Mock
+    private UserPresenceFilter userPresenceFilter;
+
+    @Mock
+    private TokenVersionRegistry tokenVersionRegistry;
+
+    @Mock
+    private AuditService auditService;
+
+    @Mock
+    private ReplicaStalenessGuard stalenessGuard;
+
+    @Mock
+    private UserRoleService userRoleService;
+
+    @InjectMocks
+    private UserBulkService userBulkService;
+
+    private final InputStream csv = new ByteArrayInputStream(new byte[0]);
+
+    @BeforeEach
+    void setUp() {
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    @Test
+    void shouldMergeValidFileAndRefreshAfterCommit() {
+        UserImportResultDto merged = UserImportResultDto.builder().rows(3).created(2).updated(1).rolesChanged(2).build();
+        when(userBulkRepository.copyIntoStaging(csv)).thenReturn(3L);
+        when(userBulkRepository.findInvalidRow()).thenReturn(Optional.empty());
+        when(userBulkRepository.findDuplicateUsername()).thenReturn(Optional.empty());
+        when(userBulkRepository.findUnknownRoles()).thenReturn(List.of());
+        when(userBulkRepository.merge(3L)).thenReturn(merged);
+        when(userBulkRepository.findChangedExistingUsernames()).thenReturn(List.of("alice"));
+
+        UserImportResultDto result = userBulkService.importUsers(csv, "admin");
+
+        assertThat(result).isSameAs(merged);
+        verify(stalenessGuard).recordWrites(List.of("alice"));
+        verify(userRoleService).forgetInFlightLookups(List.of("alice"));
+        verify(credentialCache).invalidateAll();
+        verify(auditService).publishAfterCommit(AuditEventType.USERS_IMPORTED, "admin", "rows=3,created=2,updated=1,rolesChanged=2");
+        verify(userPresenceFilter, never()).refresh();
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        verify(userPresenceFilter).refresh();
+        verify(tokenVersionRegistry).refresh();
+    }
+
+    @Test
+    void shouldRejectInvalidRowBeforeMerge() {
+        when(userBulkRepository.copyIntoStaging(csv)).thenReturn(3L);
+        when(userBulkRepository.findInvalidRow()).thenReturn(Optional.of(2L));
+
+        assertThatThrownBy(() -> userBulkService.importUsers(csv, "admin"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("row 2");
+        verify(userBulkRepository, never()).merge(anyLong());
+    }
+
+    @Test
+    void shouldRejectDuplicateEmailBeforeMerge() {
+        when(userBulkRepository.copyIntoStaging(csv)).thenReturn(2L);
+        when(userBulkRepository.findInvalidRow()).thenReturn(Optional.empty());
+        when(userBulkRepository.findDuplicateUsername()).thenReturn(Optional.empty());
+        when(userBulkRepository.findDuplicateEmail()).thenReturn(Optional.of("bob@example.com"));
+
+        assertThatThrownBy(() -> userBulkService.importUsers(csv, "admin"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Duplicate email in CSV: bob@example.com");
+        verify(userBulkRepository, never()).merge(anyLong());
+    }
+
+    @Test
+    void shouldRejectEmailOfAnotherUserBeforeMerge() {
+        when(userBulkRepository.copyIntoStaging(csv)).thenReturn(1L);
+        when(userBulkRepository.findInvalidRow()).thenReturn(Optional.empty());
+        when(userBulkRepository.findDuplicateUsername()).thenReturn(Optional.empty());
+        when(userBulkRepository.findDuplicateEmail()).thenReturn(Optional.empty());
+        when(userBulkRepository.findTakenEmail()).thenReturn(Optional.of("alice@example.com"));
+
+        assertThatThrownBy(() -> userBulkService.importUsers(csv, "admin"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Email is already used by another user: alice@example.com");
+        verify(userBulkRepository, never()).merge(anyLong());
+    }
+
+    @Test
+    void shouldRejectUnknownRoles() {
+        when(userBulkRepository.copyIntoStaging(csv)).thenReturn(1L);
+        when(userBulkRepository.findInvalidRow()).thenReturn(Optional.empty());
+        when(userBulkRepository.findDuplicateUsername()).thenReturn(Optional.empty());
+        when(userBulkRepository.findUnknownRoles()).thenReturn(List.of("MODERATOR"));
+
+        assertThatThrownBy(() -> userBulkService.importUsers(csv, "admin"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("MODERATOR");
+        verify(userBulkRepository, never()).merge(anyLong());
+        verify(auditService, never()).publishAfterCommit(eq(AuditEventType.USERS_IMPORTED), eq("admin"), anyString());
+    }
+
+}
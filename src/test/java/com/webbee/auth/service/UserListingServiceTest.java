@@ -0,0 +1,122 @@
+package com.webbee.auth.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.webbee.auth.dto.UserListItemDto;
+import com.webbee.auth.repository.RoleRepository;
+import com.webbee.auth.repository.UserListingRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class UserListingServiceTest {
+
+    @Mock
+    private UserListingRepository userListingRepository;
+
+    @Mock
+    private RoleRepository roleRepository;
+
+    private UserListingService userListingService;
+
+    @BeforeEach
+    void setUp() {
+        userListingService = new UserListingService(userListingRepository, roleRepository, new ObjectMapper(), 100, Duration.ofMinutes(1));
+    }
+
+    @Test
+    void shouldReturnNextKeyWhenPageIsFull() throws Exception {
+        UserListingRepository.Query query = new UserListingRepository.Query(null, null, 0L, 2);
+        stream(query, user(1L, "alice", "ADMIN", "USER"), user(5L, "bob", "USER"));
+
+        JsonNode page = write(query);
+
+        assertThat(page.get("users")).hasSize(2);
+        assertThat(page.get("users").get(0).get("roles").toString()).isEqualTo("[\"ADMIN\",\"USER\"]");
+        assertThat(page.get("users").get(1).get("username").asText()).isEqualTo("bob");
+        assertThat(page.get("nextAfter").asLong()).isEqualTo(5L);
+    }
+
+    @Test
+    void shouldReuseRoleCountsWithinTtl() {
+        when(userListingRepository.countUsersByRole()).thenReturn(Map.of("ADMIN", 1L, "USER", 2L));
+
+        assertThat(userListingService.countUsersByRole()).containsEntry("USER", 2L);
+        assertThat(userListingService.countUsersByRole()).containsEntry("ADMIN", 1L);
+        verify(userListingRepository, times(1)).countUsersByRole();
+    }
+
+    @Test
+    void shouldRecountRolesAfterTtl() {
+        UserListingService uncached = new UserListingService(userListingRepository, roleRepository, new ObjectMapper(), 100, Duration.ZERO);
+        when(userListingRepository.countUsersByRole()).thenReturn(Map.of("USER", 1L), Map.of("USER", 2L));
+
+        assertThat(uncached.countUsersByRole()).containsEntry("USER", 1L);
+        assertThat(uncached.countUsersByRole()).containsEntry("USER", 2L);
+    }
+
+    @Test
+    void shouldEndExportWithoutNextKey() throws Exception {
+        UserListingRepository.Query query = new UserListingRepository.Query("USER", "b", 1L, 2);
+        stream(query, user(5L, "bob", "USER"));
+
+        JsonNode page = write(query);
+
+        assertThat(page.get("users")).hasSize(1);
+        assertThat(page.get("nextAfter").isNull()).isTrue();
+    }
+
+    @Test
+    void shouldWriteEmptyListWithoutLimit() throws Exception {
+        UserListingRepository.Query query = new UserListingRepository.Query(null, null, 0L, null);
+        stream(query);
+
+        JsonNode page = write(query);
+
+        assertThat(page.get("users")).isEmpty();
+        assertThat(page.get("nextAfter").isNull()).isTrue();
+    }
+
+    private void stream(UserListingRepository.Query query, UserListItemDto... users) {
+        doAnswer(invocation -> {
+            Consumer<UserListItemDto> consumer = invocation.getArgument(2);
+            for (UserListItemDto user : users) {
+                consumer.accept(user);
+            }
+            return null;
+        }).when(userListingRepository).forEachUser(eq(query), eq(100), any());
+    }
+
+    private JsonNode write(UserListingRepository.Query query) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        userListingService.writeUsers(query, out);
+        return new ObjectMapper().readTree(out.toByteArray());
+    }
+
+    private static UserListItemDto user(long id, String username, String... roles) {
+        return UserListItemDto.builder()
+                .id(id)
+                .username(username)
+                .email(username + "@example.com")
+                .roles(List.of(roles))
+                .build();
+    }
+
+}
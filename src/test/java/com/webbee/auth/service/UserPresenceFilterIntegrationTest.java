@@ -0,0 +1,92 @@
+package com.webbee.auth.service;
+
+import com.webbee.auth.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Проверяет догрузку {@link UserPresenceFilter} на PostgreSQL, когда пользователь с меньшим id
+ * фиксируется позже пользователя с большим id, уже попавшего в фильтр.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Testcontainers(disabledWithoutDocker = true)
+class UserPresenceFilterIntegrationTest {
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16");
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private UserPresenceFilter filter;
+
+    @DynamicPropertySource
+    static void datasourceProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+    }
+
+    @BeforeEach
+    void setUp() {
+        filter = new UserPresenceFilter(userRepository, transactionManager);
+        ReflectionTestUtils.setField(filter, "enabled", true);
+        ReflectionTestUtils.setField(filter, "expectedInsertions", 1000L);
+        ReflectionTestUtils.setField(filter, "falsePositiveRate", 0.001);
+    }
+
+    @Test
+    void shouldPickUpLowerIdCommittedAfterHigherId() throws Exception {
+        try (Connection late = dataSource.getConnection()) {
+            late.setAutoCommit(false);
+            try (PreparedStatement insert = late.prepareStatement("INSERT INTO users (username, password, email) VALUES ('late', 'hash', 'late@example.com')")) {
+                insert.executeUpdate();
+            }
+            jdbcTemplate.update("INSERT INTO users (username, password, email) VALUES ('early', 'hash', 'early@example.com')");
+
+            filter.rebuild();
+            filter.refresh();
+            filter.refresh();
+
+            assertThat(filter.isUsernameDefinitelyAbsent("early")).isFalse();
+            assertThat(filter.isUsernameDefinitelyAbsent("late")).isTrue();
+            late.commit();
+        }
+
+        filter.refresh();
+
+        assertThat(filter.isUsernameDefinitelyAbsent("late")).isFalse();
+        assertThat(filter.isEmailDefinitelyAbsent("late@example.com")).isFalse();
+    }
+
+}
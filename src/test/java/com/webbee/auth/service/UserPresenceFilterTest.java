@@ -0,0 +1,162 @@
+package com.webbee.auth.service;
+
+import com.webbee.auth.repository.UserRepository;
+import com.webbee.auth.repository.projection.TransactionSnapshotView;
+import com.webbee.auth.repository.projection.UserIdentityView;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class UserPresenceFilterTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private UserPresenceFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        filter = filter(true);
+    }
+
+    @Test
+    void shouldAnswerMaybeExistsUntilBuilt() {
+        filter.register("ivan", "ivan@example.com");
+
+        assertThat(filter.isUsernameDefinitelyAbsent("ghost")).isFalse();
+        assertThat(filter.isEmailDefinitelyAbsent("ghost@example.com")).isFalse();
+    }
+
+    @Test
+    void shouldReportLoadedUsersIgnoringCase() {
+        when(userRepository.currentSnapshot()).thenReturn(snapshot(100L, 100L));
+        when(userRepository.findByIdGreaterThanOrderByIdAsc(0L)).thenReturn(Stream.of(user(1L, "ivan", "ivan@example.com")));
+
+        filter.rebuild();
+
+        assertThat(filter.isUsernameDefinitelyAbsent("IVAN")).isFalse();
+        assertThat(filter.isEmailDefinitelyAbsent("Ivan@Example.com")).isFalse();
+        assertThat(filter.isUsernameDefinitelyAbsent("ghost")).isTrue();
+        assertThat(filter.isEmailDefinitelyAbsent("ghost@example.com")).isTrue();
+    }
+
+    @Test
+    void shouldAddRegisteredUsers() {
+        when(userRepository.currentSnapshot()).thenReturn(snapshot(100L, 100L));
+        when(userRepository.findByIdGreaterThanOrderByIdAsc(0L)).thenReturn(Stream.empty());
+        filter.rebuild();
+
+        filter.register("Petr", "Petr@Example.com");
+
+        assertThat(filter.isUsernameDefinitelyAbsent("petr")).isFalse();
+        assertThat(filter.isEmailDefinitelyAbsent("petr@example.com")).isFalse();
+    }
+
+    @Test
+    void shouldLoadOnlyUsersAfterLastSeenIdOnRefresh() {
+        when(userRepository.currentSnapshot()).thenReturn(snapshot(100L, 100L));
+        when(userRepository.findByIdGreaterThanOrderByIdAsc(0L)).thenAnswer(invocation -> Stream.of(
+                user(1L, "ivan", "ivan@example.com"), user(2L, "petr", "petr@example.com")));
+        when(userRepository.findByIdGreaterThanOrderByIdAsc(2L)).thenAnswer(invocation -> Stream.of(user(3L, "anna", "anna@example.com")));
+        when(userRepository.findByIdGreaterThanOrderByIdAsc(3L)).thenReturn(Stream.empty());
+        filter.rebuild();
+
+        filter.refresh();
+        filter.refresh();
+        filter.refresh();
+        filter.refresh();
+
+        assertThat(filter.isUsernameDefinitelyAbsent("anna")).isFalse();
+        verify(userRepository, times(2)).findByIdGreaterThanOrderByIdAsc(0L);
+        verify(userRepository, times(2)).findByIdGreaterThanOrderByIdAsc(2L);
+        verify(userRepository).findByIdGreaterThanOrderByIdAsc(3L);
+    }
+
+    @Test
+    void shouldPickUpLowerIdCommittedAfterHigherId() {
+        when(userRepository.currentSnapshot()).thenReturn(snapshot(10L, 12L), snapshot(10L, 13L), snapshot(13L, 13L), snapshot(13L, 13L));
+        when(userRepository.findByIdGreaterThanOrderByIdAsc(0L)).thenAnswer(invocation -> Stream.of(
+                user(1L, "ivan", "ivan@example.com"), user(3L, "anna", "anna@example.com")));
+        filter.rebuild();
+        filter.refresh();
+        when(userRepository.findByIdGreaterThanOrderByIdAsc(0L)).thenAnswer(invocation -> Stream.of(
+                user(1L, "ivan", "ivan@example.com"), user(2L, "petr", "petr@example.com"), user(3L, "anna", "anna@example.com")));
+        when(userRepository.findByIdGreaterThanOrderByIdAsc(3L)).thenReturn(Stream.empty());
+
+        filter.refresh();
+        filter.refresh();
+
+        assertThat(filter.isUsernameDefinitelyAbsent("petr")).isFalse();
+        verify(userRepository, times(3)).findByIdGreaterThanOrderByIdAsc(0L);
+        verify(userRepository).findByIdGreaterThanOrderByIdAsc(3L);
+    }
+
+    @Test
+    void shouldDoNothingWhenDisabled() {
+        UserPresenceFilter disabled = filter(false);
+
+        disabled.rebuild();
+        disabled.refresh();
+
+        assertThat(disabled.isUsernameDefinitelyAbsent("ghost")).isFalse();
+        verify(userRepository, never()).findByIdGreaterThanOrderByIdAsc(0L);
+    }
+
+    private UserPresenceFilter filter(boolean enabled) {
+        UserPresenceFilter presenceFilter = new UserPresenceFilter(userRepository, transactionManager);
+        ReflectionTestUtils.setField(presenceFilter, "enabled", enabled);
+        ReflectionTestUtils.setField(presenceFilter, "expectedInsertions", 1000L);
+        ReflectionTestUtils.setField(presenceFilter, "falsePositiveRate", 0.01);
+        return presenceFilter;
+    }
+
+    private static TransactionSnapshotView snapshot(Long xmin, Long xmax) {
+        return new TransactionSnapshotView() {
+            @Override
+            public Long getXmin() {
+                return xmin;
+            }
+
+            @Override
+            public Long getXmax() {
+                return xmax;
+            }
+        };
+    }
+
+    private static UserIdentityView user(Long id, String username, String email) {
+        return new UserIdentityView() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public String getUsername() {
+                return username;
+            }
+
+            @Override
+            public String getEmail() {
+                return email;
+            }
+        };
+    }
+
+}
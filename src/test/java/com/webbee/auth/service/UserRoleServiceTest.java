@@ -1,11 +1,19 @@
 package com.webbee.auth.service;
 
+import com.webbee.auth.audit.model.AuditEventType;
+import com.webbee.auth.audit.service.AuditService;
+import com.webbee.auth.datasource.ReplicaStalenessGuard;
 import com.webbee.auth.dto.ChangeUserRolesRequest;
 import com.webbee.auth.dto.RoleStatusDto;
 import com.webbee.auth.entity.Role;
 import com.webbee.auth.entity.User;
 import com.webbee.auth.repository.RoleRepository;
 import com.webbee.auth.repository.UserRepository;
+import com.webbee.auth.repository.UserRoleLookupRepository;
+import com.webbee.auth.repository.UserStore;
+import com.webbee.auth.security.service.CredentialCache;
+import com.webbee.auth.security.service.TokenVersionRegistry;
+import com.webbee.auth.security.service.UserDetailsServiceImpl;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -14,11 +22,20 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -31,6 +48,33 @@ class UserRoleServiceTest {
     @Mock
     private RoleRepository roleRepository;
 
+    @Mock
+    private UserStore userStore;
+
+    @Mock
+    private UserRoleLookupRepository userRoleLookupRepository;
+
+    @Mock
+    private AuditService auditService;
+
+    @Mock
+    private ReplicaStalenessGuard stalenessGuard;
+
+    @Mock
+    private CredentialCache credentialCache;
+
+    @Mock
+    private UserDetailsServiceImpl userDetailsService;
+
+    @Mock
+    private RoleChangeFeed roleChangeFeed;
+
+    @Mock
+    private TokenVersionRegistry tokenVersionRegistry;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     @InjectMocks
     private UserRoleService userRoleService;
 
@@ -85,6 +129,13 @@ class UserRoleServiceTest {
 
         Set<Role> expectedRoles = Set.of(userRole, adminRole);
         assertThat(testUser.getRoles()).isEqualTo(expectedRoles);
+        verify(auditService).publishAfterCommit(eq(AuditEventType.ROLES_CHANGED), eq("testuser"), anyString());
+        verify(stalenessGuard).recordWrite("testuser");
+        verify(credentialCache).invalidate("testuser");
+        verify(userDetailsService).forgetInFlight("testuser");
+        verify(roleChangeFeed).record("testuser", Set.of("USER", "ADMIN"));
+        verify(userRepository).incrementRolesVersion(1L);
+        verify(tokenVersionRegistry).bump(1L);
     }
 
     @Test
@@ -121,6 +172,8 @@ class UserRoleServiceTest {
         assertThat(result.getRoles()).isNull();
 
         verify(roleRepository, never()).findByName(anyString());
+        verifyNoInteractions(auditService);
+        verifyNoInteractions(roleChangeFeed);
     }
 
     @Test
@@ -162,7 +215,7 @@ class UserRoleServiceTest {
 
     @Test
     void shouldReturnEmptyListWhenUserNotFound() {
-        when(userRepository.findByUsername("nonexistentuser")).thenReturn(Optional.empty());
+        when(userStore.findByUsername("nonexistentuser")).thenReturn(Optional.empty());
 
         List<String> result = userRoleService.getRoles("nonexistentuser");
 
@@ -172,7 +225,7 @@ class UserRoleServiceTest {
     @Test
     void shouldReturnEmptyListWhenUserHasNoRoles() {
         testUser.setRoles(Collections.emptySet());
-        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(testUser));
+        when(userStore.findByUsername("testuser")).thenReturn(Optional.of(testUser));
 
         List<String> result = userRoleService.getRoles("testuser");
 
@@ -182,7 +235,7 @@ class UserRoleServiceTest {
     @Test
     void shouldReturnSingleRoleWhenUserHasOneRole() {
         testUser.setRoles(Set.of(userRole));
-        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(testUser));
+        when(userStore.findByUsername("testuser")).thenReturn(Optional.of(testUser));
 
         List<String> result = userRoleService.getRoles("testuser");
 
@@ -192,7 +245,7 @@ class UserRoleServiceTest {
     @Test
     void shouldReturnAllRolesWhenUserHasMultipleRoles() {
         testUser.setRoles(Set.of(userRole, adminRole, moderatorRole));
-        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(testUser));
+        when(userStore.findByUsername("testuser")).thenReturn(Optional.of(testUser));
 
         List<String> result = userRoleService.getRoles("testuser");
 
@@ -201,11 +254,113 @@ class UserRoleServiceTest {
 
     @Test
     void shouldHandleEmptyUsernameGracefully() {
-        when(userRepository.findByUsername("")).thenReturn(Optional.empty());
+        when(userStore.findByUsername("")).thenReturn(Optional.empty());
 
         List<String> result = userRoleService.getRoles("");
 
         assertThat(result).isEmpty();
     }
 
-}
\ No newline at end of file
+    @Test
+    void shouldShareConcurrentLookupOfSameUser() throws Exception {
+        testUser.setRoles(Set.of(userRole));
+        CountDownLatch queryStarted = new CountDownLatch(1);
+        CountDownLatch queryRelease = new CountDownLatch(1);
+        when(userStore.findByUsername("testuser")).thenAnswer(invocation -> {
+            queryStarted.countDown();
+            queryRelease.await();
+            return Optional.of(testUser);
+        });
+        AtomicReference<Thread> followerThread = new AtomicReference<>();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<String>> leader = executor.submit(() -> userRoleService.getRoles("testuser"));
+            queryStarted.await();
+            Future<List<String>> follower = executor.submit(() -> {
+                followerThread.set(Thread.currentThread());
+                return userRoleService.getRoles("testuser");
+            });
+            awaitWaiting(followerThread);
+            queryRelease.countDown();
+
+            assertThat(leader.get(5, TimeUnit.SECONDS)).containsExactly("USER");
+            assertThat(follower.get(5, TimeUnit.SECONDS)).containsExactly("USER");
+            verify(userStore, times(1)).findByUsername("testuser");
+            verify(transactionManager, times(1)).getTransaction(any());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldNotShareReplicaLookupWithPrimaryReader() throws Exception {
+        testUser.setRoles(Set.of(userRole));
+        CountDownLatch replicaQueryStarted = new CountDownLatch(1);
+        CountDownLatch bothQueriesStarted = new CountDownLatch(2);
+        CountDownLatch queryRelease = new CountDownLatch(1);
+        when(stalenessGuard.readsFromPrimary("testuser")).thenReturn(false, true);
+        when(userStore.findByUsername("testuser")).thenAnswer(invocation -> {
+            replicaQueryStarted.countDown();
+            bothQueriesStarted.countDown();
+            queryRelease.await();
+            return Optional.of(testUser);
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<String>> replicaReader = executor.submit(() -> userRoleService.getRoles("testuser"));
+            replicaQueryStarted.await();
+            Future<List<String>> primaryReader = executor.submit(() -> userRoleService.getRoles("testuser"));
+            assertThat(bothQueriesStarted.await(5, TimeUnit.SECONDS)).isTrue();
+            queryRelease.countDown();
+
+            assertThat(replicaReader.get(5, TimeUnit.SECONDS)).containsExactly("USER");
+            assertThat(primaryReader.get(5, TimeUnit.SECONDS)).containsExactly("USER");
+            verify(userStore, times(2)).findByUsername("testuser");
+            verify(stalenessGuard).pinToPrimary();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldResolveRolesOfSeveralUsersInOneLookup() {
+        List<String> usernames = List.of("testuser", "other");
+        when(userRoleLookupRepository.findRolesByUsernames(usernames)).thenReturn(Map.of("testuser", List.of("USER")));
+
+        Map<String, List<String>> result = userRoleService.getRolesBatch(usernames);
+
+        assertThat(result).containsOnlyKeys("testuser");
+        verify(stalenessGuard).pinToPrimaryIfAnyRecentlyWritten(usernames);
+        verifyNoInteractions(userRepository, userStore);
+    }
+
+    @Test
+    void shouldReturnRolesWithVersion() {
+        testUser.setRoles(Set.of(adminRole));
+        testUser.setRolesVersion(4L);
+        when(userStore.findByUsername("testuser")).thenReturn(Optional.of(testUser));
+
+        Optional<UserRoleService.VersionedRoles> result = userRoleService.getVersionedRoles("testuser");
+
+        assertThat(result).contains(new UserRoleService.VersionedRoles(1L, 4L, List.of("ADMIN")));
+    }
+
+    @Test
+    void shouldReturnNoVersionedRolesWhenUserNotFound() {
+        when(userStore.findByUsername("ghost")).thenReturn(Optional.empty());
+
+        assertThat(userRoleService.getVersionedRoles("ghost")).isEmpty();
+    }
+
+    /**
+     * Ждет, пока поток присоединится к выполняющемуся общему запросу и заблокируется в ожидании его результата
+     */
+    private static void awaitWaiting(AtomicReference<Thread> thread) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (thread.get() == null || thread.get().getState() != Thread.State.WAITING) {
+            assertThat(System.nanoTime()).as("caller joined the running lookup").isLessThan(deadline);
+            Thread.onSpinWait();
+        }
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.webbee.auth.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BloomFilterTest {
+
+    private static final int INSERTIONS = 100_000;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    @Test
+    void shouldContainEveryAddedKey() {
+        BloomFilter filter = new BloomFilter(INSERTIONS, FALSE_POSITIVE_RATE);
+
+        IntStream.range(0, INSERTIONS).forEach(i -> filter.put("user" + i));
+
+        assertThat(IntStream.range(0, INSERTIONS).allMatch(i -> filter.mightContain("user" + i))).isTrue();
+    }
+
+    @Test
+    void shouldKeepFalsePositiveRateNearConfiguredBound() {
+        BloomFilter filter = new BloomFilter(INSERTIONS, FALSE_POSITIVE_RATE);
+        IntStream.range(0, INSERTIONS).forEach(i -> filter.put("user" + i));
+
+        long falsePositives = IntStream.range(0, INSERTIONS).filter(i -> filter.mightContain("absent" + i)).count();
+
+        assertThat((double) falsePositives / INSERTIONS).isLessThan(FALSE_POSITIVE_RATE * 1.5);
+    }
+
+    @Test
+    void shouldNotContainKeysOfEmptyFilter() {
+        BloomFilter filter = new BloomFilter(INSERTIONS, FALSE_POSITIVE_RATE);
+
+        assertThat(filter.mightContain("user1")).isFalse();
+        assertThat(filter.mightContain("")).isFalse();
+    }
+
+    @Test
+    void shouldRejectInvalidParameters() {
+        assertThatThrownBy(() -> new BloomFilter(0, FALSE_POSITIVE_RATE)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new BloomFilter(INSERTIONS, 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new BloomFilter(INSERTIONS, 1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+}
@@ -0,0 +1,204 @@
+package com.webbee.auth.utils;
+
+import com.webbee.auth.security.model.SessionRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import static com.webbee.auth.utils.SessionJournalCrashWriter.keyHi;
+import static com.webbee.auth.utils.SessionJournalCrashWriter.keyLo;
+import static com.webbee.auth.utils.SessionJournalCrashWriter.session;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MappedSessionStoreTest {
+
+    private static final long NOW = 1_000L;
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void shouldRestoreSessionsFromJournal() throws Exception {
+        try (MappedSessionStore store = MappedSessionStore.open(directory, 16)) {
+            store.load(new OffHeapSessionTable(64, 1), NOW);
+            store.appendPut(keyHi(1), keyLo(1), session(1));
+            store.appendPut(keyHi(2), keyLo(2), session(2));
+            store.appendRemove(keyHi(1), keyLo(1));
+        }
+
+        OffHeapSessionTable restored = reload(16);
+
+        assertThat(restored.size()).isEqualTo(1);
+        assertThat(restored.get(keyHi(2), keyLo(2), NOW)).isEqualTo(session(2));
+    }
+
+    @Test
+    void shouldRestoreSnapshotAndLaterJournal() throws Exception {
+        OffHeapSessionTable table = new OffHeapSessionTable(64, 1);
+        try (MappedSessionStore store = MappedSessionStore.open(directory, 16)) {
+            store.load(table, NOW);
+            put(table, store, 1);
+            put(table, store, 2);
+            store.snapshot(table, NOW);
+            put(table, store, 3);
+            table.remove(keyHi(1), keyLo(1));
+            store.appendRemove(keyHi(1), keyLo(1));
+        }
+
+        OffHeapSessionTable restored = reload(16);
+
+        assertThat(restored.size()).isEqualTo(2);
+        assertThat(restored.get(keyHi(2), keyLo(2), NOW)).isEqualTo(session(2));
+        assertThat(restored.get(keyHi(3), keyLo(3), NOW)).isEqualTo(session(3));
+    }
+
+    @Test
+    void shouldSkipExpiredSessionsOnLoad() throws Exception {
+        try (MappedSessionStore store = MappedSessionStore.open(directory, 16)) {
+            store.load(new OffHeapSessionTable(64, 1), NOW);
+            store.appendPut(1, 1, new SessionRecord(1, "expired", 0, NOW - 1));
+        }
+
+        assertThat(reload(16).size()).isZero();
+    }
+
+    @Test
+    void shouldDropTornRecordAndReuseItsPosition() throws Exception {
+        try (MappedSessionStore store = MappedSessionStore.open(directory, 16)) {
+            store.load(new OffHeapSessionTable(64, 1), NOW);
+            store.appendPut(keyHi(1), keyLo(1), session(1));
+            store.appendPut(keyHi(2), keyLo(2), session(2));
+            store.appendPut(keyHi(3), keyLo(3), session(3));
+        }
+        corruptByte(MappedSessionStore.JOURNAL_FILE, recordOffset(1) + MappedSessionStore.RECORD_HEADER_SIZE + 40);
+
+        try (MappedSessionStore store = MappedSessionStore.open(directory, 16)) {
+            OffHeapSessionTable table = new OffHeapSessionTable(64, 1);
+            store.load(table, NOW);
+            assertThat(table.size()).isEqualTo(1);
+            store.appendPut(keyHi(4), keyLo(4), session(4));
+        }
+
+        OffHeapSessionTable restored = reload(16);
+        assertThat(restored.size()).isEqualTo(2);
+        assertThat(restored.get(keyHi(3), keyLo(3), NOW)).isNull();
+        assertThat(restored.get(keyHi(4), keyLo(4), NOW)).isEqualTo(session(4));
+    }
+
+    @Test
+    void shouldIgnorePreviousGenerationWhenJournalResetWasLost() throws Exception {
+        OffHeapSessionTable table = new OffHeapSessionTable(64, 1);
+        Path journalCopy = directory.resolve("journal.copy");
+        try (MappedSessionStore store = MappedSessionStore.open(directory, 16)) {
+            store.load(table, NOW);
+            put(table, store, 1);
+            put(table, store, 2);
+            table.remove(keyHi(2), keyLo(2));
+            store.appendRemove(keyHi(2), keyLo(2));
+            store.force();
+            Files.copy(directory.resolve(MappedSessionStore.JOURNAL_FILE), journalCopy);
+            store.snapshot(table, NOW);
+        }
+        Files.copy(journalCopy, directory.resolve(MappedSessionStore.JOURNAL_FILE), StandardCopyOption.REPLACE_EXISTING);
+
+        OffHeapSessionTable restored = reload(16);
+
+        assertThat(restored.size()).isEqualTo(1);
+        assertThat(restored.get(keyHi(1), keyLo(1), NOW)).isEqualTo(session(1));
+    }
+
+    @Test
+    void shouldReportFullJournal() throws Exception {
+        try (MappedSessionStore store = MappedSessionStore.open(directory, 2)) {
+            store.load(new OffHeapSessionTable(64, 1), NOW);
+
+            assertThat(store.appendPut(keyHi(1), keyLo(1), session(1))).isTrue();
+            assertThat(store.appendPut(keyHi(2), keyLo(2), session(2))).isTrue();
+            assertThat(store.appendPut(keyHi(3), keyLo(3), session(3))).isFalse();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 700})
+    void shouldRecoverConsistentPrefixAfterWriterIsKilled(int snapshotEvery) throws Exception {
+        Process writer = new ProcessBuilder(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                SessionJournalCrashWriter.class.getName(),
+                directory.toString(),
+                String.valueOf(snapshotEvery))
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        long acknowledged = -1;
+        try (BufferedReader output = new BufferedReader(new InputStreamReader(writer.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = output.readLine()) != null && acknowledged < 3000) {
+                acknowledged = Long.parseLong(line);
+            }
+            writer.destroyForcibly().waitFor();
+        }
+
+        OffHeapSessionTable restored = reload(4096);
+
+        long firstMissing = 1;
+        while (firstMissing % 10 == 0 || isPresent(restored, firstMissing)) {
+            firstMissing++;
+        }
+        int present = 0;
+        for (long i = 0; i < firstMissing; i++) {
+            boolean revoked = i % 10 == 0;
+            boolean pendingRevoke = revoked && i == firstMissing - 1;
+            if (!revoked || pendingRevoke && isPresent(restored, i)) {
+                assertThat(restored.get(keyHi(i), keyLo(i), NOW)).isEqualTo(session(i));
+                present++;
+            } else {
+                assertThat(isPresent(restored, i)).isFalse();
+            }
+        }
+        assertThat(acknowledged).isGreaterThanOrEqualTo(3000);
+        assertThat(firstMissing - 1).isGreaterThanOrEqualTo(acknowledged);
+        assertThat(restored.size()).isEqualTo(present);
+    }
+
+    private static boolean isPresent(OffHeapSessionTable table, long i) {
+        return table.get(keyHi(i), keyLo(i), NOW) != null;
+    }
+
+    private OffHeapSessionTable reload(int journalRecords) throws Exception {
+        OffHeapSessionTable table = new OffHeapSessionTable(1 << 16, 16);
+        try (MappedSessionStore store = MappedSessionStore.open(directory, journalRecords)) {
+            store.load(table, NOW);
+        }
+        return table;
+    }
+
+    private static void put(OffHeapSessionTable table, MappedSessionStore store, long i) {
+        table.put(keyHi(i), keyLo(i), session(i));
+        store.appendPut(keyHi(i), keyLo(i), session(i));
+    }
+
+    private static int recordOffset(int index) {
+        return MappedSessionStore.HEADER_SIZE + index * MappedSessionStore.RECORD_SIZE;
+    }
+
+    private void corruptByte(String file, int offset) throws Exception {
+        try (FileChannel channel = FileChannel.open(directory.resolve(file), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer value = ByteBuffer.allocate(1);
+            channel.read(value, offset);
+            value.put(0, (byte) (value.get(0) ^ 0x5A));
+            channel.write(value.rewind(), offset);
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.webbee.auth.utils;
+
+import com.webbee.auth.security.model.SessionRecord;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OffHeapSessionTableTest {
+
+    private static final long NOW = 1_000_000L;
+
+    @Test
+    void shouldFindCollidingKeysAfterRemovalFromChainMiddle() {
+        OffHeapSessionTable table = new OffHeapSessionTable(16, 1);
+        for (long i = 0; i < 5; i++) {
+            table.put(i, 3 + 16 * i, session("user" + i, NOW + 1000));
+        }
+
+        assertThat(table.remove(1, 3 + 16)).isTrue();
+
+        assertThat(table.get(1, 3 + 16, NOW)).isNull();
+        for (long i : new long[] {0, 2, 3, 4}) {
+            assertThat(table.get(i, 3 + 16 * i, NOW).username()).isEqualTo("user" + i);
+        }
+        assertThat(table.size()).isEqualTo(4);
+    }
+
+    @Test
+    void shouldKeepChainsAcrossSegmentEnd() {
+        OffHeapSessionTable table = new OffHeapSessionTable(8, 1);
+        table.put(1, 7, session("last", NOW + 1000));
+        table.put(2, 15, session("wrapped", NOW + 1000));
+        table.put(3, 0, session("first", NOW + 1000));
+
+        table.remove(1, 7);
+
+        assertThat(table.get(2, 15, NOW).username()).isEqualTo("wrapped");
+        assertThat(table.get(3, 0, NOW).username()).isEqualTo("first");
+    }
+
+    @Test
+    void shouldSweepOnlyExpiredSessions() {
+        OffHeapSessionTable table = new OffHeapSessionTable(64, 4);
+        table.put(1, 1, session("expired", NOW - 1));
+        table.put(2, 2, session("active", NOW + 1000));
+
+        assertThat(table.sweep(NOW)).isEqualTo(1);
+
+        assertThat(table.size()).isEqualTo(1);
+        assertThat(table.get(2, 2, NOW).username()).isEqualTo("active");
+    }
+
+    @Test
+    void shouldRejectInsertWhenSegmentIsFull() {
+        OffHeapSessionTable table = new OffHeapSessionTable(4, 1);
+
+        assertThat(table.put(1, 1, session("a", NOW + 1000))).isTrue();
+        assertThat(table.put(2, 2, session("b", NOW + 1000))).isTrue();
+        assertThat(table.put(3, 3, session("c", NOW + 1000))).isTrue();
+        assertThat(table.put(4, 4, session("d", NOW + 1000))).isFalse();
+    }
+
+    @Test
+    void shouldMatchReferenceMapUnderRandomOperations() {
+        OffHeapSessionTable table = new OffHeapSessionTable(1024, 4);
+        Map<Long, String> reference = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            long key = random.nextInt(600);
+            if (random.nextBoolean()) {
+                if (table.put(key << 32, key * 31, session("user" + key, NOW + 1000))) {
+                    reference.put(key, "user" + key);
+                }
+            } else {
+                assertThat(table.remove(key << 32, key * 31)).isEqualTo(reference.remove(key) != null);
+            }
+        }
+
+        assertThat(table.size()).isEqualTo(reference.size());
+        reference.forEach((key, username) -> assertThat(table.get(key << 32, key * 31, NOW).username()).isEqualTo(username));
+    }
+
+    private static SessionRecord session(String username, long expiresAt) {
+        return new SessionRecord(1L, username, 0L, expiresAt);
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.webbee.auth.utils;
+
+import com.webbee.auth.security.model.SessionRecord;
+
+import java.nio.file.Path;
+
+/**
+ * Процесс-писатель для проверки восстановления после падения.
+ * Бесконечно добавляет сессии с ключами по порядковому номеру, отзывает каждую десятую,
+ * периодически пишет снимок и сообщает в stdout номер последней завершенной записи.
+ * Тест завершает процесс принудительно в произвольный момент.
+ */
+public final class SessionJournalCrashWriter {
+
+    static final long EXPIRES_AT = Long.MAX_VALUE;
+
+    private SessionJournalCrashWriter() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path directory = Path.of(args[0]);
+        int snapshotEvery = Integer.parseInt(args[1]);
+        OffHeapSessionTable table = new OffHeapSessionTable(1 << 20, 64);
+        try (MappedSessionStore store = MappedSessionStore.open(directory, 4096)) {
+            store.load(table, 0);
+            for (long i = 0; ; i++) {
+                SessionRecord session = session(i);
+                table.put(keyHi(i), keyLo(i), session);
+                if (!store.appendPut(keyHi(i), keyLo(i), session)) {
+                    store.snapshot(table, 0);
+                }
+                if (i % 10 == 0) {
+                    table.remove(keyHi(i), keyLo(i));
+                    if (!store.appendRemove(keyHi(i), keyLo(i))) {
+                        store.snapshot(table, 0);
+                    }
+                }
+                if (snapshotEvery > 0 && i % snapshotEvery == snapshotEvery - 1) {
+                    store.snapshot(table, 0);
+                }
+                System.out.println(i);
+            }
+        }
+    }
+
+    static long keyHi(long i) {
+        return i * 0x9E3779B97F4A7C15L;
+    }
+
+    static long keyLo(long i) {
+        return i;
+    }
+
+    static SessionRecord session(long i) {
+        return new SessionRecord(i, "user" + i, i & 0xFF, EXPIRES_AT);
+    }
+
+}
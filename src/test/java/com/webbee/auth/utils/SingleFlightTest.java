@@ -0,0 +1,125 @@
+package com.webbee.auth.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final CountDownLatch loadStarted = new CountDownLatch(1);
+    private final CountDownLatch loadRelease = new CountDownLatch(1);
+    private final AtomicInteger loads = new AtomicInteger();
+    private final List<Thread> callers = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        loadRelease.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void shouldShareOneLoadBetweenConcurrentCallers() throws Exception {
+        Future<String> leader = executor.submit(() -> singleFlight.execute("admin", this::blockingLoad));
+        loadStarted.await();
+        Future<String> first = executor.submit(() -> joinLoad("admin"));
+        Future<String> second = executor.submit(() -> joinLoad("admin"));
+        awaitWaitingCallers(2);
+
+        loadRelease.countDown();
+
+        assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("admin-1");
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("admin-1");
+        assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo("admin-1");
+        assertThat(loads).hasValue(1);
+        assertThat(singleFlight.inFlight()).isZero();
+    }
+
+    @Test
+    void shouldNotShareLoadsOfDifferentKeys() throws Exception {
+        Future<String> leader = executor.submit(() -> singleFlight.execute("admin", this::blockingLoad));
+        loadStarted.await();
+
+        assertThat(singleFlight.execute("user", key -> key + "-" + loads.incrementAndGet())).isEqualTo("user-2");
+        loadRelease.countDown();
+        assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("admin-1");
+    }
+
+    @Test
+    void shouldLoadAgainAfterCompletion() {
+        loadRelease.countDown();
+        singleFlight.execute("admin", this::blockingLoad);
+
+        assertThat(singleFlight.execute("admin", this::blockingLoad)).isEqualTo("admin-2");
+    }
+
+    @Test
+    void shouldPropagateFailureToAllCallers() throws Exception {
+        Future<String> leader = executor.submit(() -> singleFlight.execute("admin", key -> {
+            blockingLoad(key);
+            throw new IllegalStateException("database is down");
+        }));
+        loadStarted.await();
+        Future<String> follower = executor.submit(() -> joinLoad("admin"));
+        awaitWaitingCallers(1);
+
+        loadRelease.countDown();
+
+        assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> follower.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(loads).hasValue(1);
+        assertThat(singleFlight.inFlight()).isZero();
+    }
+
+    @Test
+    void shouldStartNewLoadAfterForget() throws Exception {
+        Future<String> leader = executor.submit(() -> singleFlight.execute("admin", this::blockingLoad));
+        loadStarted.await();
+
+        singleFlight.forget("admin");
+
+        assertThat(singleFlight.execute("admin", key -> key + "-" + loads.incrementAndGet())).isEqualTo("admin-2");
+        loadRelease.countDown();
+        assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("admin-1");
+    }
+
+    private String blockingLoad(String key) {
+        int load = loads.incrementAndGet();
+        loadStarted.countDown();
+        try {
+            loadRelease.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return key + "-" + load;
+    }
+
+    private String joinLoad(String key) {
+        callers.add(Thread.currentThread());
+        return singleFlight.execute(key, this::blockingLoad);
+    }
+
+    /**
+     * Ждет, пока count вызовов присоединятся к выполняющейся загрузке и заблокируются в ожидании ее результата
+     */
+    private void awaitWaitingCallers(int count) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (callers.size() < count || callers.stream().anyMatch(thread -> thread.getState() != Thread.State.WAITING)) {
+            assertThat(System.nanoTime()).as("callers joined the running load").isLessThan(deadline);
+            Thread.onSpinWait();
+        }
+    }
+
+}